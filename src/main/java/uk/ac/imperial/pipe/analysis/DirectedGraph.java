@@ -0,0 +1,25 @@
+package uk.ac.imperial.pipe.analysis;
+
+/**
+ * Directed graph over dense state indices whose edges are stored in compressed sparse row
+ * arrays, so that graph algorithms can walk it without creating an object per edge
+ */
+public interface DirectedGraph {
+    /**
+     * @return number of states in the graph
+     */
+    int getStateCount();
+
+    /**
+     * @param source state index, or the state count to get the total number of edges
+     * @return offset of the first outgoing edge of the state, the edges of the state end at the
+     *         first edge of the next state
+     */
+    int getEdgeStart(int source);
+
+    /**
+     * @param edge edge offset
+     * @return target state index of the edge
+     */
+    int getEdgeTarget(int edge);
+}
@@ -0,0 +1,50 @@
+package uk.ac.imperial.pipe.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of ints used to buffer the edges found by the explorers
+ */
+final class IntArray {
+    /**
+     * Values, of which only the first {@link #size()} are set
+     */
+    int[] values = new int[16];
+
+    /**
+     * Number of values
+     */
+    private int size;
+
+    /**
+     * @param value value to append
+     */
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @param index index of the value
+     * @return the value
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the values
+     */
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,172 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledAnimationLogic;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Liveness properties of a Petri net read off the bottom strongly connected components of its
+ * complete reachability graph.
+ * <p>
+ * A transition is dead if it labels no edge of the graph, so it can never fire from the initial
+ * marking. It is live if it labels an edge inside every bottom component: every run ends up in a
+ * bottom component, and within one every edge can be taken again from every state, so from any
+ * reachable marking the transition can always fire again.
+ * </p>
+ */
+public final class LivenessAnalysis {
+    /**
+     * Reachability graph analysed
+     */
+    private final ReachabilityGraph graph;
+
+    /**
+     * Strongly connected components of the graph
+     */
+    private final StronglyConnectedComponents components;
+
+    /**
+     * Transitions of the Petri net
+     */
+    private final Collection<Transition> transitions;
+
+    /**
+     * Transitions labelling at least one edge of the graph
+     */
+    private final Set<Transition> fired = new HashSet<>();
+
+    /**
+     * Transitions labelling an edge inside every bottom component
+     */
+    private final Set<Transition> live = new HashSet<>();
+
+    /**
+     * Constructor exploring the reachability graph from the current marking of the Petri net
+     *
+     * @param petriNet Petri net to analyse
+     */
+    public LivenessAnalysis(PetriNet petriNet) {
+        this(petriNet.getTransitions(),
+                new ReachabilityExplorer(new CompiledAnimationLogic(new CompiledPetriNet(petriNet))).explore(
+                        AnimationUtils.getState(petriNet)));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param transitions transitions of the Petri net the graph was explored from
+     * @param graph       complete reachability graph whose initial state has index 0
+     * @throws IllegalArgumentException if the graph was not completely explored, since unexpanded
+     *                                  states would look like deadlocks
+     */
+    public LivenessAnalysis(Collection<Transition> transitions, ReachabilityGraph graph) {
+        if (!graph.isComplete()) {
+            throw new IllegalArgumentException("Liveness needs a completely explored reachability graph");
+        }
+        this.graph = graph;
+        this.transitions = new ArrayList<>(transitions);
+        components = new StronglyConnectedComponents(graph);
+
+        int[] bottomComponents = components.getBottomComponents();
+        List<Set<Transition>> bottomTransitions = new ArrayList<>();
+        int[] bottomIndex = new int[components.getComponentCount()];
+        for (int i = 0; i < bottomComponents.length; i++) {
+            bottomIndex[bottomComponents[i]] = i;
+            bottomTransitions.add(new HashSet<Transition>());
+        }
+        for (int state = 0; state < graph.getStateCount(); state++) {
+            int component = components.getComponent(state);
+            for (int edge = graph.getEdgeStart(state); edge < graph.getEdgeStart(state + 1); edge++) {
+                Collection<Transition> labels = graph.getEdgeTransitions(edge);
+                fired.addAll(labels);
+                if (components.isBottom(component)
+                        && components.getComponent(graph.getEdgeTarget(edge)) == component) {
+                    bottomTransitions.get(bottomIndex[component]).addAll(labels);
+                }
+            }
+        }
+        if (!bottomTransitions.isEmpty()) {
+            live.addAll(bottomTransitions.get(0));
+            for (Set<Transition> componentTransitions : bottomTransitions) {
+                live.retainAll(componentTransitions);
+            }
+        }
+    }
+
+    /**
+     * @return reachability graph analysed
+     */
+    public ReachabilityGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return strongly connected components of the reachability graph
+     */
+    public StronglyConnectedComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * @return transitions that can never fire from the initial marking
+     */
+    public List<Transition> getDeadTransitions() {
+        List<Transition> dead = new ArrayList<>();
+        for (Transition transition : transitions) {
+            if (!fired.contains(transition)) {
+                dead.add(transition);
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * @return transitions that can fire again from every reachable marking
+     */
+    public List<Transition> getLiveTransitions() {
+        List<Transition> liveTransitions = new ArrayList<>();
+        for (Transition transition : transitions) {
+            if (live.contains(transition)) {
+                liveTransitions.add(transition);
+            }
+        }
+        return liveTransitions;
+    }
+
+    /**
+     * @return true if every transition is live
+     */
+    public boolean isLive() {
+        return live.size() == transitions.size();
+    }
+
+    /**
+     * @return indices of the states reachable from every reachable state in ascending order
+     */
+    public int[] getHomeStates() {
+        return components.getHomeStates();
+    }
+
+    /**
+     * @return true if the initial marking can be reached again from every reachable marking
+     */
+    public boolean isReversible() {
+        return components.getStateCount() > 0 && components.isBottom(components.getComponent(0))
+                && components.getBottomComponents().length == 1;
+    }
+
+    /**
+     * @return indices of the states in which no transition is enabled in ascending order
+     */
+    public int[] getDeadlocks() {
+        return graph.getDeadlocks();
+    }
+}
@@ -0,0 +1,437 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.animation.AnimationLogic;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Explores the reachability graph of a Petri net in parallel using the successor function of
+ * an {@link AnimationLogic}.
+ * <p>
+ * The state space is explored one breadth first level at a time. Each level is split recursively
+ * into fork join tasks so that idle worker threads steal work from busy ones, and newly discovered
+ * states are recorded in a concurrent map. Levels rather than individual states are forked
+ * so that the task depth stays logarithmic in the width of a level rather than growing with the
+ * depth of the state space.
+ * </p>
+ * <p>
+ * The animation logic must be safe to call from multiple threads, which both
+ * {@link uk.ac.imperial.pipe.animation.PetriNetAnimationLogic} and
+ * {@link uk.ac.imperial.pipe.animation.CompiledAnimationLogic} are since they evaluate functional
+ * expressions in a new context for every call. For large state spaces the enabled transitions
+ * cache of the logic should be bounded.
+ * </p>
+ * <p>
+ * The states first discovered by a level are indexed once the whole level has been expanded, in
+ * order of the first state and successor that led to them, so states are indexed in breadth first
+ * order and the graph, including which states are left unexpanded when the state limit is reached,
+ * is the same regardless of the number of threads used. Each worker thread then appends the edges
+ * of the level to its own primitive buffers, which are merged into the compressed sparse row arrays
+ * of the graph once exploration has finished, so only the successors of a single level are held at
+ * a time.
+ * </p>
+ * <p>
+ * If a {@link StubbornSetReduction} is given only the transitions of a stubborn set of each state
+ * are fired, which preserves the deadlocks but may leave out most other states. When the reduction
+ * has visible places a state is expanded fully whenever one of its reduced successors was
+ * discovered at the same or an earlier level, so that every cycle contains a fully expanded state.
+ * </p>
+ */
+public final class ReachabilityExplorer {
+    /**
+     * Number of states a task explores sequentially rather than splitting further
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /**
+     * Logic used to calculate the successors of each state
+     */
+    private final AnimationLogic animationLogic;
+
+    /**
+     * Number of worker threads
+     */
+    private final int parallelism;
+
+    /**
+     * Maximum number of states whose successors are calculated
+     */
+    private final int maxStates;
+
+    /**
+     * Partial order reduction applied to the successors of each state, or null to fire every enabled transition
+     */
+    private final StubbornSetReduction reduction;
+
+    /**
+     * Constructor for an unbounded exploration using one thread per available processor
+     * @param animationLogic logic used to calculate the successors of each state
+     */
+    public ReachabilityExplorer(AnimationLogic animationLogic) {
+        this(animationLogic, Runtime.getRuntime().availableProcessors(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     * @param animationLogic logic used to calculate the successors of each state
+     * @param parallelism    number of worker threads
+     * @param maxStates      maximum number of states whose successors are calculated, once reached
+     *                       the remaining frontier states are included in the graph unexpanded
+     */
+    public ReachabilityExplorer(AnimationLogic animationLogic, int parallelism, int maxStates) {
+        this(animationLogic, null, parallelism, maxStates);
+    }
+
+    /**
+     * Constructor for an exploration reduced by stubborn sets
+     * @param animationLogic logic used to calculate the successors of each state
+     * @param reduction      partial order reduction applied to the successors of each state, or null
+     *                       to fire every enabled transition
+     * @param parallelism    number of worker threads
+     * @param maxStates      maximum number of states whose successors are calculated, once reached
+     *                       the remaining frontier states are included in the graph unexpanded
+     */
+    public ReachabilityExplorer(AnimationLogic animationLogic, StubbornSetReduction reduction, int parallelism,
+                                int maxStates) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (maxStates < 1) {
+            throw new IllegalArgumentException("Maximum number of states must be at least 1: " + maxStates);
+        }
+        this.animationLogic = animationLogic;
+        this.parallelism = parallelism;
+        this.maxStates = maxStates;
+        this.reduction = reduction;
+    }
+
+    /**
+     * Explores every state reachable from the initial state
+     *
+     * @param initial initial state of the Petri net
+     * @return reachability graph whose state 0 is the initial state
+     */
+    public ReachabilityGraph explore(State initial) {
+        return new Exploration().run(initial);
+    }
+
+    /**
+     * State of a single exploration
+     */
+    private final class Exploration {
+        /**
+         * States indexed by state index, in breadth first order
+         */
+        private final List<State> states = new ArrayList<>();
+
+        /**
+         * State -&gt; state index of every state of the levels indexed so far. It is only written
+         * between levels so worker threads read it without locking
+         */
+        private final Map<State, Integer> indices = new HashMap<>();
+
+        /**
+         * State discovered by the level being expanded -&gt; order of the first state and successor
+         * that led to it, the state index in the high word and the position of the successor in the
+         * low word
+         */
+        private final ConcurrentMap<State, Long> discovered = new ConcurrentHashMap<>();
+
+        /**
+         * Every worker created, whose edge buffers are merged once exploration finishes
+         */
+        private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Worker of each thread
+         */
+        private final ThreadLocal<Worker> localWorker = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker();
+                workers.add(worker);
+                return worker;
+            }
+        };
+
+        /**
+         * Index of the first state of the level being expanded
+         */
+        private int levelStart;
+
+        /**
+         * Successors of each state of the level being expanded
+         */
+        private AtomicReferenceArray<Map<State, Collection<Transition>>> levelSuccessors;
+
+        /**
+         * @param initial initial state
+         * @return reachability graph
+         */
+        private ReachabilityGraph run(State initial) {
+            states.add(initial);
+            indices.put(initial, 0);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                levelStart = 0;
+                int levelEnd = 1;
+                while (levelStart < levelEnd) {
+                    levelSuccessors = new AtomicReferenceArray<>(levelEnd - levelStart);
+                    pool.invoke(new LevelTask(levelStart, levelEnd, false));
+                    indexDiscoveredStates();
+                    pool.invoke(new LevelTask(levelStart, levelEnd, true));
+                    levelStart = levelEnd;
+                    levelEnd = Math.min(states.size(), maxStates);
+                }
+            } finally {
+                pool.shutdown();
+            }
+            return buildGraph();
+        }
+
+        /**
+         * Indexes the states discovered by the level in order of the first state and successor that
+         * led to them
+         */
+        private void indexDiscoveredStates() {
+            List<Map.Entry<State, Long>> entries = new ArrayList<>(discovered.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<State, Long>>() {
+                @Override
+                public int compare(Map.Entry<State, Long> first, Map.Entry<State, Long> second) {
+                    return first.getValue().compareTo(second.getValue());
+                }
+            });
+            for (Map.Entry<State, Long> entry : entries) {
+                indices.put(entry.getKey(), states.size());
+                states.add(entry.getKey());
+            }
+            discovered.clear();
+        }
+
+        /**
+         * Merges the edge buffers of the workers into the graph
+         *
+         * @return reachability graph
+         */
+        private ReachabilityGraph buildGraph() {
+            int stateCount = states.size();
+            int[] edgeStart = new int[stateCount + 1];
+            for (Worker worker : workers) {
+                for (int run = 0; run < worker.runSources.size(); run++) {
+                    edgeStart[worker.runSources.get(run) + 1] = worker.getRunLength(run);
+                }
+            }
+            for (int state = 0; state < stateCount; state++) {
+                edgeStart[state + 1] += edgeStart[state];
+            }
+            int[] edgeTarget = new int[edgeStart[stateCount]];
+            List<Collection<Transition>> transitions =
+                    new ArrayList<>(Collections.<Collection<Transition>>nCopies(edgeTarget.length, null));
+            for (Worker worker : workers) {
+                for (int run = 0; run < worker.runSources.size(); run++) {
+                    int from = worker.runStarts.get(run);
+                    int to = edgeStart[worker.runSources.get(run)];
+                    int length = worker.getRunLength(run);
+                    System.arraycopy(worker.edgeTargets.values, from, edgeTarget, to, length);
+                    for (int edge = 0; edge < length; edge++) {
+                        transitions.set(to + edge, worker.edgeTransitions.get(from + edge));
+                    }
+                }
+            }
+
+            int expandedCount = Math.min(stateCount, maxStates);
+            boolean[] expanded = new boolean[stateCount];
+            IntArray deadlocks = new IntArray();
+            for (int state = 0; state < expandedCount; state++) {
+                expanded[state] = true;
+                if (edgeStart[state] == edgeStart[state + 1]) {
+                    deadlocks.add(state);
+                }
+            }
+            return new ReachabilityGraph(states, indices, edgeStart, edgeTarget, transitions, expanded,
+                    deadlocks.toArray());
+        }
+
+        /**
+         * Expands or records the edges of a range of the states of a breadth first level, splitting
+         * the range in half until it is small enough to process sequentially
+         */
+        private final class LevelTask extends RecursiveAction {
+            /**
+             * First state index this task processes
+             */
+            private final int from;
+
+            /**
+             * Index after the last state this task processes
+             */
+            private final int to;
+
+            /**
+             * True to record the edges of the states once the states they lead to are indexed,
+             * false to calculate their successors
+             */
+            private final boolean record;
+
+            /**
+             * Constructor
+             * @param from   first state index this task processes
+             * @param to     index after the last state this task processes
+             * @param record true to record the edges of the states once the states they lead to
+             *               are indexed, false to calculate their successors
+             */
+            private LevelTask(int from, int to, boolean record) {
+                this.from = from;
+                this.to = to;
+                this.record = record;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > SEQUENTIAL_THRESHOLD) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new LevelTask(from, middle, record), new LevelTask(middle, to, record));
+                    return;
+                }
+                Worker worker = localWorker.get();
+                for (int state = from; state < to; state++) {
+                    if (record) {
+                        worker.record(state);
+                    } else {
+                        worker.expand(state);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Edge buffers of a single thread. The edges of each expanded state are appended to the
+         * buffers as a contiguous run
+         */
+        private final class Worker {
+            /**
+             * Source state index of each run of edges
+             */
+            private final IntArray runSources = new IntArray();
+
+            /**
+             * Offset into the edge buffers of each run of edges
+             */
+            private final IntArray runStarts = new IntArray();
+
+            /**
+             * Target state index of each buffered edge
+             */
+            private final IntArray edgeTargets = new IntArray();
+
+            /**
+             * Transitions labelling each buffered edge
+             */
+            private final List<Collection<Transition>> edgeTransitions = new ArrayList<>();
+
+            /**
+             * @param run run index
+             * @return number of edges in the run
+             */
+            private int getRunLength(int run) {
+                int end = run + 1 < runStarts.size() ? runStarts.get(run + 1) : edgeTargets.size();
+                return end - runStarts.get(run);
+            }
+
+            /**
+             * Calculates the successors of a state of the level and notes the states they discover
+             *
+             * @param state state index
+             */
+            private void expand(int state) {
+                State current = states.get(state);
+                Map<State, Collection<Transition>> stateSuccessors =
+                        reduction == null ? animationLogic.getSuccessors(current) : getReducedSuccessors(current);
+                levelSuccessors.set(state - levelStart, stateSuccessors);
+                long position = (long) state << 32;
+                for (State successor : stateSuccessors.keySet()) {
+                    if (!indices.containsKey(successor)) {
+                        discover(successor, position);
+                    }
+                    position++;
+                }
+            }
+
+            /**
+             * Records the order of a newly discovered state unless it was already discovered
+             * earlier in the order
+             *
+             * @param successor newly discovered state
+             * @param position  order of the state and successor that led to it
+             */
+            private void discover(State successor, long position) {
+                Long current = discovered.putIfAbsent(successor, position);
+                while (current != null && position < current) {
+                    if (discovered.replace(successor, current, position)) {
+                        return;
+                    }
+                    current = discovered.get(successor);
+                }
+            }
+
+            /**
+             * Appends the edges of an expanded state of the level to the buffers
+             *
+             * @param state state index
+             */
+            private void record(int state) {
+                runSources.add(state);
+                runStarts.add(edgeTargets.size());
+                for (Map.Entry<State, Collection<Transition>> entry : levelSuccessors.get(state - levelStart)
+                        .entrySet()) {
+                    edgeTargets.add(indices.get(entry.getKey()));
+                    edgeTransitions.add(Collections.unmodifiableCollection(entry.getValue()));
+                }
+                levelSuccessors.set(state - levelStart, null);
+            }
+
+            /**
+             * Fires the transitions of a stubborn set of the state, or every enabled transition if the
+             * cycle proviso requires the state to be expanded fully
+             *
+             * @param state state to expand
+             * @return successors of the state and the transitions leading to each
+             */
+            private Map<State, Collection<Transition>> getReducedSuccessors(State state) {
+                CompiledPetriNet compiledPetriNet = reduction.getCompiledPetriNet();
+                int[] stubborn = reduction.getStubbornTransitions(compiledPetriNet.getMarking(state));
+                Map<State, Collection<Transition>> stateSuccessors = new HashMap<>();
+                for (int t : stubborn) {
+                    Transition transition = compiledPetriNet.getTransition(t);
+                    State successor = animationLogic.getFiredState(state, transition);
+                    if (reduction.hasVisiblePlaces() && indices.containsKey(successor)) {
+                        return animationLogic.getSuccessors(state);
+                    }
+                    Collection<Transition> transitions = stateSuccessors.get(successor);
+                    if (transitions == null) {
+                        transitions = new ArrayList<>();
+                        stateSuccessors.put(successor, transitions);
+                    }
+                    transitions.add(transition);
+                }
+                return stateSuccessors;
+            }
+        }
+    }
+}
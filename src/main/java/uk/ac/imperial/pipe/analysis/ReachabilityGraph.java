@@ -0,0 +1,243 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable reachability graph of a Petri net produced by a {@link ReachabilityExplorer}.
+ * <p>
+ * States are given dense indices in breadth first order from the initial state, which always has
+ * index 0. The outgoing edges of each state are stored in compressed sparse row arrays and are
+ * labelled with the transitions whose firing leads to the target state.
+ * </p>
+ */
+public final class ReachabilityGraph implements DirectedGraph {
+    /**
+     * States indexed by state index
+     */
+    private final List<State> states;
+
+    /**
+     * State -&gt; state index
+     */
+    private final Map<State, Integer> indices;
+
+    /**
+     * Start offsets into the edge arrays for each state, of length state count + 1
+     */
+    private final int[] edgeStart;
+
+    /**
+     * Target state index of each edge
+     */
+    private final int[] edgeTarget;
+
+    /**
+     * Transitions labelling each edge
+     */
+    private final List<Collection<Transition>> edgeTransitions;
+
+    /**
+     * True if the successors of the state at the index were calculated
+     */
+    private final boolean[] expanded;
+
+    /**
+     * Indices of the expanded states which have no successors
+     */
+    private final int[] deadlocks;
+
+    /**
+     * Constructor
+     *
+     * @param states          states indexed by state index
+     * @param indices         state -&gt; state index
+     * @param edgeStart       start offsets into the edge arrays for each state
+     * @param edgeTarget      target state index of each edge
+     * @param edgeTransitions transitions labelling each edge
+     * @param expanded        true if the successors of the state at the index were calculated
+     * @param deadlocks       indices of the expanded states which have no successors
+     */
+    ReachabilityGraph(List<State> states, Map<State, Integer> indices, int[] edgeStart, int[] edgeTarget,
+                      List<Collection<Transition>> edgeTransitions, boolean[] expanded, int[] deadlocks) {
+        this.states = Collections.unmodifiableList(states);
+        this.indices = Collections.unmodifiableMap(indices);
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeTransitions = Collections.unmodifiableList(edgeTransitions);
+        this.expanded = expanded;
+        this.deadlocks = deadlocks;
+    }
+
+    @Override
+    public int getStateCount() {
+        return states.size();
+    }
+
+    /**
+     * @return number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * @return all states indexed by their state index
+     */
+    public List<State> getStates() {
+        return states;
+    }
+
+    /**
+     * @param index state index
+     * @return the state with the index
+     */
+    public State getState(int index) {
+        return states.get(index);
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return index of the state or -1 if it is not in the graph
+     */
+    public int getIndex(State state) {
+        Integer index = indices.get(state);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param source state index
+     * @return outgoing edges of the state
+     */
+    public List<Edge> getEdges(final int source) {
+        final int start = edgeStart[source];
+        final int end = edgeStart[source + 1];
+        return new AbstractList<Edge>() {
+            @Override
+            public Edge get(int i) {
+                if (i < 0 || i >= end - start) {
+                    throw new IndexOutOfBoundsException("Edge index " + i + " out of range");
+                }
+                return new Edge(source, edgeTarget[start + i], edgeTransitions.get(start + i));
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    @Override
+    public int getEdgeStart(int source) {
+        return edgeStart[source];
+    }
+
+    @Override
+    public int getEdgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    /**
+     * @param edge edge offset
+     * @return transitions labelling the edge
+     */
+    public Collection<Transition> getEdgeTransitions(int edge) {
+        return edgeTransitions.get(edge);
+    }
+
+    /**
+     * @param source state index
+     * @return number of outgoing edges of the state
+     */
+    public int getOutDegree(int source) {
+        return edgeStart[source + 1] - edgeStart[source];
+    }
+
+    /**
+     * @param index state index
+     * @return true if the successors of the state were calculated, this is only false for
+     *         states on the frontier of an exploration that reached its state limit
+     */
+    public boolean isExpanded(int index) {
+        return expanded[index];
+    }
+
+    /**
+     * @return true if every reachable state was expanded
+     */
+    public boolean isComplete() {
+        for (boolean stateExpanded : expanded) {
+            if (!stateExpanded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return indices of the states in which no transition is enabled in ascending order
+     */
+    public int[] getDeadlocks() {
+        return deadlocks.clone();
+    }
+
+    /**
+     * Edge of the reachability graph
+     */
+    public static final class Edge {
+        /**
+         * Source state index
+         */
+        private final int source;
+
+        /**
+         * Target state index
+         */
+        private final int target;
+
+        /**
+         * Transitions whose firing leads from the source to the target
+         */
+        private final Collection<Transition> transitions;
+
+        /**
+         * Constructor
+         * @param source      source state index
+         * @param target      target state index
+         * @param transitions transitions whose firing leads from the source to the target
+         */
+        private Edge(int source, int target, Collection<Transition> transitions) {
+            this.source = source;
+            this.target = target;
+            this.transitions = transitions;
+        }
+
+        /**
+         * @return source state index
+         */
+        public int getSource() {
+            return source;
+        }
+
+        /**
+         * @return target state index
+         */
+        public int getTarget() {
+            return target;
+        }
+
+        /**
+         * @return transitions whose firing leads from the source to the target
+         */
+        public Collection<Transition> getTransitions() {
+            return transitions;
+        }
+    }
+}
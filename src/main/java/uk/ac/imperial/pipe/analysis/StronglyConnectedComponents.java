@@ -0,0 +1,232 @@
+package uk.ac.imperial.pipe.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Decomposition of a {@link DirectedGraph} into strongly connected components, found with
+ * Tarjan's algorithm.
+ * <p>
+ * The depth first search keeps its call stack in primitive arrays rather than recursing, so graphs
+ * with paths of any length are decomposed without a {@link StackOverflowError}, and apart from the
+ * graph itself only a handful of int arrays of the state count are allocated. Components are
+ * numbered in the order Tarjan's algorithm completes them, which is a reverse topological order of
+ * the condensation: every edge between two components leads from a higher numbered component to a
+ * lower numbered one.
+ * </p>
+ * <p>
+ * A bottom component is one that no edge leaves. Every run of the underlying system eventually
+ * enters a bottom component and stays there, so they are the closed classes of a Markov chain and
+ * the candidates for home states.
+ * </p>
+ */
+public final class StronglyConnectedComponents {
+    /**
+     * Component index of each state indexed by state index
+     */
+    private final int[] component;
+
+    /**
+     * Start offsets into {@link #componentStates} for each component, of length component count + 1
+     */
+    private final int[] componentStart;
+
+    /**
+     * State indices grouped by component, ascending within each component
+     */
+    private final int[] componentStates;
+
+    /**
+     * True for each component that no edge leaves
+     */
+    private final boolean[] bottom;
+
+    /**
+     * Indices of the bottom components in ascending order
+     */
+    private final int[] bottomComponents;
+
+    /**
+     * Constructor, decomposes the graph
+     *
+     * @param graph graph to decompose
+     */
+    public StronglyConnectedComponents(DirectedGraph graph) {
+        int n = graph.getStateCount();
+        component = new int[n];
+        int count = decompose(graph);
+
+        componentStart = new int[count + 1];
+        for (int state = 0; state < n; state++) {
+            componentStart[component[state] + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        componentStates = new int[n];
+        int[] next = new int[count];
+        for (int state = 0; state < n; state++) {
+            int c = component[state];
+            componentStates[componentStart[c] + next[c]++] = state;
+        }
+
+        bottom = new boolean[count];
+        Arrays.fill(bottom, true);
+        int bottomCount = count;
+        for (int state = 0; state < n; state++) {
+            int c = component[state];
+            if (!bottom[c]) {
+                continue;
+            }
+            for (int edge = graph.getEdgeStart(state); edge < graph.getEdgeStart(state + 1); edge++) {
+                if (component[graph.getEdgeTarget(edge)] != c) {
+                    bottom[c] = false;
+                    bottomCount--;
+                    break;
+                }
+            }
+        }
+        bottomComponents = new int[bottomCount];
+        int filled = 0;
+        for (int c = 0; c < count; c++) {
+            if (bottom[c]) {
+                bottomComponents[filled++] = c;
+            }
+        }
+    }
+
+    /**
+     * Runs Tarjan's algorithm, filling in the component of every state
+     *
+     * @param graph graph to decompose
+     * @return number of components
+     */
+    private int decompose(DirectedGraph graph) {
+        int n = graph.getStateCount();
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] nextEdge = new int[n];
+        int[] callStack = new int[n];
+        int[] tarjanStack = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(component, -1);
+        int visited = 0;
+        int count = 0;
+        int stackSize = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = visited++;
+            nextEdge[root] = graph.getEdgeStart(root);
+            tarjanStack[stackSize++] = root;
+            while (depth > 0) {
+                int state = callStack[depth - 1];
+                if (nextEdge[state] < graph.getEdgeStart(state + 1)) {
+                    int target = graph.getEdgeTarget(nextEdge[state]++);
+                    if (index[target] < 0) {
+                        index[target] = lowLink[target] = visited++;
+                        nextEdge[target] = graph.getEdgeStart(target);
+                        tarjanStack[stackSize++] = target;
+                        callStack[depth++] = target;
+                    } else if (component[target] < 0 && index[target] < lowLink[state]) {
+                        lowLink[state] = index[target];
+                    }
+                    continue;
+                }
+                depth--;
+                if (lowLink[state] == index[state]) {
+                    int member;
+                    do {
+                        member = tarjanStack[--stackSize];
+                        component[member] = count;
+                    } while (member != state);
+                    count++;
+                }
+                if (depth > 0) {
+                    int caller = callStack[depth - 1];
+                    if (lowLink[state] < lowLink[caller]) {
+                        lowLink[caller] = lowLink[state];
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return number of states in the decomposed graph
+     */
+    public int getStateCount() {
+        return component.length;
+    }
+
+    /**
+     * @return number of strongly connected components
+     */
+    public int getComponentCount() {
+        return bottom.length;
+    }
+
+    /**
+     * @param state state index
+     * @return index of the component containing the state
+     */
+    public int getComponent(int state) {
+        return component[state];
+    }
+
+    /**
+     * @param component component index
+     * @return number of states in the component
+     */
+    public int getComponentSize(int component) {
+        return componentStart[component + 1] - componentStart[component];
+    }
+
+    /**
+     * @param component component index
+     * @return indices of the states in the component in ascending order
+     */
+    public int[] getComponentStates(int component) {
+        int[] states = new int[getComponentSize(component)];
+        System.arraycopy(componentStates, componentStart[component], states, 0, states.length);
+        return states;
+    }
+
+    /**
+     * @param component component index
+     * @return true if no edge leaves the component
+     */
+    public boolean isBottom(int component) {
+        return bottom[component];
+    }
+
+    /**
+     * @return indices of the bottom components in ascending order
+     */
+    public int[] getBottomComponents() {
+        return bottomComponents.clone();
+    }
+
+    /**
+     * @param state state index
+     * @return true if the state lies in a bottom component, and so is recurrent
+     */
+    public boolean isRecurrent(int state) {
+        return bottom[component[state]];
+    }
+
+    /**
+     * Home states are those reachable from every state. A bottom component can only be left for
+     * itself, so there are home states exactly when there is a single bottom component and they are
+     * its states
+     *
+     * @return indices of the home states in ascending order, empty if there are none
+     */
+    public int[] getHomeStates() {
+        return bottomComponents.length == 1 ? getComponentStates(bottomComponents[0]) : new int[0];
+    }
+}
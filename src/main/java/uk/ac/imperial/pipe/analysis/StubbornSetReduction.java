@@ -0,0 +1,342 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Partial order reduction that chooses, for each marking, a stubborn set of transitions whose
+ * enabled members are the only ones that need to be fired to preserve every deadlock.
+ * <p>
+ * The stubborn set is built from a key enabled transition by closing it under a structural
+ * relation computed once from the arcs. Two transitions are dependent if one may change a place
+ * the other reads, where the places read by a transition are its input and inhibitor places, its
+ * output places with a capacity and the places its functional weights refer to. An enabled member
+ * brings in every transition dependent on it, and a disabled member brings in every transition
+ * that can change a place currently disabling it. Transitions of a higher priority class, with
+ * immediate transitions above timed ones, are treated as able to disable every transition below
+ * them. Every enabled transition is tried as the key and the set with the fewest enabled members
+ * is used.
+ * </p>
+ * <p>
+ * If visible places are given, the transitions that change them are visible and a stubborn set
+ * containing an enabled visible transition contains every visible transition. The explorer must
+ * then also fully expand at least one state on every cycle, so that reachability of markings of
+ * the visible places is preserved as well.
+ * </p>
+ * <p>
+ * This class holds no mutable state and may be shared between threads.
+ * </p>
+ */
+public final class StubbornSetReduction {
+    /**
+     * Compiled Petri net the stubborn sets are computed for
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Transitions dependent on each transition
+     */
+    private final int[][] dependents;
+
+    /**
+     * Transitions that can change the token counts of each place
+     */
+    private final int[][] writers;
+
+    /**
+     * Places read by each transition
+     */
+    private final int[][] readPlaces;
+
+    /**
+     * True for each transition whose enabling may depend on places it is not connected to at
+     */
+    private final boolean[] nonLocal;
+
+    /**
+     * Transitions sorted by ascending priority class
+     */
+    private final int[] byClass;
+
+    /**
+     * Position in {@link #byClass} of the first transition with a strictly higher class than each transition
+     */
+    private final int[] higherClassStart;
+
+    /**
+     * True for each visible transition
+     */
+    private final boolean[] visible;
+
+    /**
+     * Visible transitions
+     */
+    private final int[] visibleTransitions;
+
+    /**
+     * Constructor for a reduction preserving deadlocks
+     *
+     * @param compiledPetriNet compiled Petri net to reduce the state space of
+     */
+    public StubbornSetReduction(CompiledPetriNet compiledPetriNet) {
+        this(compiledPetriNet, Collections.<String>emptySet());
+    }
+
+    /**
+     * Constructor for a reduction preserving deadlocks and the reachable markings of some places
+     *
+     * @param compiledPetriNet compiled Petri net to reduce the state space of
+     * @param visiblePlaceIds  ids of the places whose reachable markings must be preserved
+     */
+    public StubbornSetReduction(CompiledPetriNet compiledPetriNet, Collection<String> visiblePlaceIds) {
+        this.compiledPetriNet = compiledPetriNet;
+        int transitions = compiledPetriNet.getTransitionCount();
+        int places = compiledPetriNet.getPlaceCount();
+
+        List<List<Integer>> placeWriters = new ArrayList<>();
+        List<List<Integer>> placeReaders = new ArrayList<>();
+        for (int p = 0; p < places; p++) {
+            placeWriters.add(new ArrayList<Integer>());
+            placeReaders.add(new ArrayList<Integer>());
+        }
+        readPlaces = new int[transitions][];
+        int[][] writePlaces = new int[transitions][];
+        nonLocal = new boolean[transitions];
+        for (int t = 0; t < transitions; t++) {
+            readPlaces[t] = compiledPetriNet.getReadPlaces(t);
+            writePlaces[t] = compiledPetriNet.getWritePlaces(t);
+            nonLocal[t] = !compiledPetriNet.hasLocalEffect(t);
+            for (int place : readPlaces[t]) {
+                placeReaders.get(place).add(t);
+            }
+            for (int place : writePlaces[t]) {
+                placeWriters.get(place).add(t);
+            }
+        }
+        writers = new int[places][];
+        for (int p = 0; p < places; p++) {
+            writers[p] = toArray(placeWriters.get(p));
+        }
+
+        dependents = new int[transitions][];
+        for (int t = 0; t < transitions; t++) {
+            Set<Integer> dependent = new TreeSet<>();
+            for (int place : writePlaces[t]) {
+                dependent.addAll(placeReaders.get(place));
+            }
+            for (int place : readPlaces[t]) {
+                dependent.addAll(placeWriters.get(place));
+            }
+            dependent.remove(t);
+            dependents[t] = toArray(dependent);
+        }
+
+        Integer[] sorted = new Integer[transitions];
+        for (int t = 0; t < transitions; t++) {
+            sorted[t] = t;
+        }
+        Arrays.sort(sorted, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Long.compare(getPriorityClass(first), getPriorityClass(second));
+            }
+        });
+        byClass = new int[transitions];
+        higherClassStart = new int[transitions];
+        for (int i = 0; i < transitions; i++) {
+            byClass[i] = sorted[i];
+        }
+        int start = transitions;
+        for (int i = transitions - 1; i >= 0; i--) {
+            if (i < transitions - 1 && getPriorityClass(byClass[i]) != getPriorityClass(byClass[i + 1])) {
+                start = i + 1;
+            }
+            higherClassStart[byClass[i]] = start;
+        }
+
+        visible = new boolean[transitions];
+        Set<Integer> visibleSet = new TreeSet<>();
+        for (String placeId : visiblePlaceIds) {
+            int place = compiledPetriNet.getPlaceIndex(placeId);
+            if (place < 0) {
+                throw new IllegalArgumentException("No place with id " + placeId);
+            }
+            for (int t : writers[place]) {
+                visible[t] = true;
+                visibleSet.add(t);
+            }
+        }
+        visibleTransitions = toArray(visibleSet);
+    }
+
+    /**
+     * @param transition transition index
+     * @return priority class of the transition, immediate transitions preempting every timed
+     *         transition and immediate transitions of lower priority
+     */
+    private long getPriorityClass(int transition) {
+        return compiledPetriNet.isTimed(transition) ? Long.MIN_VALUE : compiledPetriNet.getPriority(transition);
+    }
+
+    /**
+     * @param values indices
+     * @return the indices as an array
+     */
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    /**
+     * @return true if visible places were given, in which case a cycle proviso is needed
+     */
+    public boolean hasVisiblePlaces() {
+        return visibleTransitions.length > 0;
+    }
+
+    /**
+     * Calculates the enabled transitions of a stubborn set of the marking
+     *
+     * @param marking marking to reduce the successors of
+     * @return indices of the enabled transitions to fire in ascending order, empty only if the
+     *         marking is a deadlock
+     */
+    public int[] getStubbornTransitions(int[] marking) {
+        int transitions = compiledPetriNet.getTransitionCount();
+        int[] enabledTransitions = new int[transitions];
+        int enabledCount = compiledPetriNet.getEnabledTransitions(marking, enabledTransitions);
+        if (enabledCount <= 1) {
+            return Arrays.copyOf(enabledTransitions, enabledCount);
+        }
+        boolean[] enabled = new boolean[transitions];
+        for (int i = 0; i < enabledCount; i++) {
+            enabled[enabledTransitions[i]] = true;
+        }
+
+        boolean[] best = null;
+        int bestCount = Integer.MAX_VALUE;
+        boolean[] members = new boolean[transitions];
+        int[] stack = new int[transitions];
+        for (int i = 0; i < enabledCount && bestCount > 1; i++) {
+            Arrays.fill(members, false);
+            int count = close(enabledTransitions[i], marking, enabled, members, stack, bestCount);
+            if (count < bestCount) {
+                bestCount = count;
+                best = members.clone();
+            }
+        }
+
+        int[] stubborn = new int[bestCount];
+        int size = 0;
+        for (int i = 0; i < enabledCount; i++) {
+            if (best[enabledTransitions[i]]) {
+                stubborn[size++] = enabledTransitions[i];
+            }
+        }
+        return stubborn;
+    }
+
+    /**
+     * Builds the stubborn set closure of a key transition
+     *
+     * @param key     enabled key transition
+     * @param marking current marking
+     * @param enabled true for each enabled transition
+     * @param members set to true for each member of the stubborn set
+     * @param stack   work stack of at least one entry per transition
+     * @param limit   number of enabled members at which the closure is abandoned
+     * @return number of enabled members, at least the limit if abandoned
+     */
+    private int close(int key, int[] marking, boolean[] enabled, boolean[] members, int[] stack, int limit) {
+        int size = 0;
+        int enabledMembers = 0;
+        members[key] = true;
+        stack[size++] = key;
+        while (size > 0) {
+            int t = stack[--size];
+            if (enabled[t]) {
+                if (++enabledMembers >= limit) {
+                    return enabledMembers;
+                }
+                size = push(dependents[t], members, stack, size);
+                size = pushHigherClasses(t, members, stack, size);
+                if (visible[t]) {
+                    size = push(visibleTransitions, members, stack, size);
+                }
+            } else if (compiledPetriNet.isEnabled(t, marking)) {
+                size = pushHigherClasses(t, members, stack, size);
+            } else if (nonLocal[t]) {
+                for (int place : readPlaces[t]) {
+                    size = push(writers[place], members, stack, size);
+                }
+            } else {
+                for (int place : readPlaces[t]) {
+                    if (!compiledPetriNet.isEnabledAt(t, place, marking)) {
+                        size = push(writers[place], members, stack, size);
+                        break;
+                    }
+                }
+            }
+        }
+        return enabledMembers;
+    }
+
+    /**
+     * Pushes the transitions not already members onto the stack
+     *
+     * @param transitions transitions to add
+     * @param members     members of the stubborn set
+     * @param stack       work stack
+     * @param size        size of the stack
+     * @return new size of the stack
+     */
+    private static int push(int[] transitions, boolean[] members, int[] stack, int size) {
+        int newSize = size;
+        for (int t : transitions) {
+            if (!members[t]) {
+                members[t] = true;
+                stack[newSize++] = t;
+            }
+        }
+        return newSize;
+    }
+
+    /**
+     * Pushes every transition with a higher priority class than the transition
+     *
+     * @param transition transition index
+     * @param members    members of the stubborn set
+     * @param stack      work stack
+     * @param size       size of the stack
+     * @return new size of the stack
+     */
+    private int pushHigherClasses(int transition, boolean[] members, int[] stack, int size) {
+        int newSize = size;
+        for (int i = higherClassStart[transition]; i < byClass.length; i++) {
+            int t = byClass[i];
+            if (!members[t]) {
+                members[t] = true;
+                stack[newSize++] = t;
+            }
+        }
+        return newSize;
+    }
+
+    /**
+     * @return compiled Petri net the stubborn sets are computed for
+     */
+    public CompiledPetriNet getCompiledPetriNet() {
+        return compiledPetriNet;
+    }
+}
@@ -0,0 +1,773 @@
+package uk.ac.imperial.pipe.analysis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import uk.ac.imperial.pipe.analysis.state.PackedStateEncoder;
+import uk.ac.imperial.pipe.analysis.state.StateStore;
+import uk.ac.imperial.pipe.analysis.state.StateStoreFactory;
+import uk.ac.imperial.pipe.analysis.state.StateStores;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Explores the tangible reachability graph of a generalised stochastic Petri net, eliminating
+ * vanishing states on the fly.
+ * <p>
+ * A state is vanishing if an immediate transition is enabled in it, in which case only immediate
+ * transitions of the highest enabled priority may fire and no time passes. Whenever firing a timed
+ * transition leads to a vanishing state, the vanishing states reachable from it are explored into a
+ * small local graph whose edges carry the probability of each immediate transition, its weight
+ * divided by the total weight of the enabled immediate transitions. The probability of leaving the
+ * local graph for each tangible state is found by pushing probability mass through it, which also
+ * handles vanishing loops, and the rate of the timed transition is split between the tangible
+ * states accordingly. The local graph is then discarded, so vanishing states are never stored in
+ * the graph. The resulting distribution over tangible states is kept in a bounded memo keyed by the
+ * encoded vanishing marking that was entered, so a vanishing marking entered again from another
+ * tangible state is usually not explored again. The memo evicts its least recently used entries once
+ * the markings and exits it holds reach a fixed total size, after which an evicted marking is
+ * explored again if it is entered again, so its memory stays small next to the tangible states.
+ * </p>
+ * <p>
+ * Mass is no longer pushed on from a vanishing state once it falls below a tolerance relative to
+ * the mass entered, which bounds the work in vanishing loops. The mass left behind, at most the
+ * tolerance times the number of local vanishing states, is handed to the tangible states in
+ * proportion to the mass that reached them, so the exit probabilities always sum to one.
+ * </p>
+ * <p>
+ * A set of vanishing states from which no tangible state can be reached is a timeless trap, in
+ * which the net would fire immediate transitions forever, and is reported as an error.
+ * </p>
+ * <p>
+ * Tangible states are explored one breadth first level at a time by fork join tasks sharing a
+ * {@link StateStore}, a lock free table on the heap unless another store is asked for, such as an
+ * off heap store for state spaces larger than the heap. Each worker thread appends the edges of the
+ * states it expands to its own primitive buffers, which are merged into the compressed sparse row
+ * arrays of the graph once exploration has finished. With more than one thread the state indices depend on the order in
+ * which threads insert states, although the graph is otherwise the same.
+ * </p>
+ */
+public final class TangibleReachabilityExplorer {
+    /**
+     * Bound used to encode places whose bound cannot be determined structurally
+     */
+    private static final int DEFAULT_PLACE_BOUND = 255;
+
+    /**
+     * Probability mass in a vanishing state, relative to the mass entered, below which it is no
+     * longer pushed on to its successors
+     */
+    private static final double VANISHING_TOLERANCE = 1e-14;
+
+    /**
+     * Maximum total number of encoded words and exits held in the memo of vanishing exits of an
+     * exploration before the least recently used are evicted
+     */
+    private static final long VANISHING_EXITS_WEIGHT = 1 << 20;
+
+    /**
+     * Number of states a task expands sequentially rather than splitting further
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /**
+     * Compiled Petri net being explored
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Encoder of the markings stored in the graph
+     */
+    private final PackedStateEncoder encoder;
+
+    /**
+     * Number of worker threads
+     */
+    private final int parallelism;
+
+    /**
+     * Creates the store of the tangible markings of each exploration
+     */
+    private final StateStoreFactory storeFactory;
+
+    /**
+     * Constructor using one thread per available processor
+     *
+     * @param petriNet Petri net to explore
+     */
+    public TangibleReachabilityExplorer(PetriNet petriNet) {
+        this(new CompiledPetriNet(petriNet));
+    }
+
+    /**
+     * Constructor using one thread per available processor
+     *
+     * @param compiledPetriNet compiled Petri net to explore
+     */
+    public TangibleReachabilityExplorer(CompiledPetriNet compiledPetriNet) {
+        this(compiledPetriNet, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net to explore
+     * @param parallelism      number of worker threads
+     */
+    public TangibleReachabilityExplorer(CompiledPetriNet compiledPetriNet, int parallelism) {
+        this(new PackedStateEncoder(compiledPetriNet, DEFAULT_PLACE_BOUND), parallelism);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param encoder     encoder of the markings stored in the graph, which determines the compiled
+     *                    Petri net that is explored
+     * @param parallelism number of worker threads
+     */
+    public TangibleReachabilityExplorer(PackedStateEncoder encoder, int parallelism) {
+        this(encoder, StateStoreFactory.LOCK_FREE, parallelism);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param encoder      encoder of the markings stored in the graph, which determines the compiled
+     *                     Petri net that is explored
+     * @param storeFactory creates the store of the tangible markings of each exploration, which is
+     *                     held by the graph it produces
+     * @param parallelism  number of worker threads
+     */
+    public TangibleReachabilityExplorer(PackedStateEncoder encoder, StateStoreFactory storeFactory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.encoder = encoder;
+        this.compiledPetriNet = encoder.getCompiledPetriNet();
+        this.parallelism = parallelism;
+        this.storeFactory = storeFactory;
+    }
+
+    /**
+     * Explores every tangible state reachable from the marking the compiled Petri net was created with
+     *
+     * @return tangible reachability graph
+     */
+    public TangibleReachabilityGraph explore() {
+        return explore(compiledPetriNet.getCurrentMarking());
+    }
+
+    /**
+     * Explores every tangible state reachable from the initial marking
+     *
+     * @param initialMarking initial marking in the layout of the compiled Petri net
+     * @return tangible reachability graph
+     * @throws IllegalStateException if a timeless trap is reachable or an enabled transition has an
+     *                               invalid rate
+     */
+    public TangibleReachabilityGraph explore(int[] initialMarking) {
+        return new Exploration().run(initialMarking);
+    }
+
+    /**
+     * State of a single exploration
+     */
+    private final class Exploration {
+        /**
+         * Encoded tangible markings, whose insertion order is a breadth first order
+         */
+        private final StateStore states = storeFactory.create();
+
+        /**
+         * Every worker created, whose edge buffers are merged once exploration finishes
+         */
+        private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Vanishing marking entered from a tangible state -&gt; tangible states it leads to, weighed
+         * by the words of the marking and the number of exits
+         */
+        private final Cache<EncodedMarking, VanishingExits> vanishingExits = CacheBuilder.newBuilder().maximumWeight(
+                VANISHING_EXITS_WEIGHT).weigher(new Weigher<EncodedMarking, VanishingExits>() {
+                    @Override
+                    public int weigh(EncodedMarking key, VanishingExits value) {
+                        return key.encoded.length + value.targets.length;
+                    }
+                }).build();
+
+        /**
+         * Worker of each thread
+         */
+        private final ThreadLocal<Worker> localWorker = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                Worker worker = new Worker();
+                workers.add(worker);
+                return worker;
+            }
+        };
+
+        /**
+         * @param initialMarking initial marking
+         * @return tangible reachability graph
+         */
+        private TangibleReachabilityGraph run(int[] initialMarking) {
+            Worker initialWorker = new Worker();
+            initialWorker.addSuccessor(initialMarking, 1);
+            initialWorker.sortSuccessors();
+            int[] initialStates = Arrays.copyOf(initialWorker.targets, initialWorker.successorCount);
+            double[] initialProbabilities = Arrays.copyOf(initialWorker.rates, initialWorker.successorCount);
+            long vanishingStateCount = initialWorker.vanishingStateCount;
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                int levelStart = 0;
+                int levelEnd = states.size();
+                while (levelStart < levelEnd) {
+                    pool.invoke(new LevelTask(levelStart, levelEnd));
+                    levelStart = levelEnd;
+                    levelEnd = states.size();
+                }
+            } finally {
+                pool.shutdown();
+            }
+
+            int stateCount = states.size();
+            int[] edgeStart = new int[stateCount + 1];
+            for (Worker worker : workers) {
+                vanishingStateCount += worker.vanishingStateCount;
+                for (int run = 0; run < worker.runSources.size(); run++) {
+                    edgeStart[worker.runSources.get(run) + 1] = worker.getRunLength(run);
+                }
+            }
+            for (int state = 0; state < stateCount; state++) {
+                edgeStart[state + 1] += edgeStart[state];
+            }
+            int[] edgeTarget = new int[edgeStart[stateCount]];
+            double[] edgeRate = new double[edgeTarget.length];
+            for (Worker worker : workers) {
+                for (int run = 0; run < worker.runSources.size(); run++) {
+                    int from = worker.runStarts.get(run);
+                    int to = edgeStart[worker.runSources.get(run)];
+                    int length = worker.getRunLength(run);
+                    System.arraycopy(worker.edgeTargets.values, from, edgeTarget, to, length);
+                    System.arraycopy(worker.edgeRates.values, from, edgeRate, to, length);
+                }
+            }
+            return new TangibleReachabilityGraph(encoder, states, edgeStart, edgeTarget, edgeRate, initialStates,
+                    initialProbabilities, vanishingStateCount);
+        }
+
+        /**
+         * Expands a range of the states of a breadth first level, splitting the range in half
+         * until it is small enough to expand sequentially
+         */
+        private final class LevelTask extends RecursiveAction {
+            /**
+             * First state index this task expands
+             */
+            private final int from;
+
+            /**
+             * Index after the last state this task expands
+             */
+            private final int to;
+
+            /**
+             * Constructor
+             * @param from first state index this task expands
+             * @param to   index after the last state this task expands
+             */
+            private LevelTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > SEQUENTIAL_THRESHOLD) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new LevelTask(from, middle), new LevelTask(middle, to));
+                    return;
+                }
+                Worker worker = localWorker.get();
+                for (int state = from; state < to; state++) {
+                    worker.expand(state);
+                }
+            }
+        }
+
+        /**
+         * Scratch space and edge buffers of a single thread. The edges of each expanded state are
+         * appended to the buffers as a contiguous run sorted by target
+         */
+        private final class Worker {
+            /**
+             * Buffer enabled transitions are written to
+             */
+            private final int[] enabled = new int[compiledPetriNet.getTransitionCount()];
+
+            /**
+             * Marking of the state being expanded
+             */
+            private final int[] marking = new int[compiledPetriNet.getMarkingLength()];
+
+            /**
+             * Buffer successor markings are written to
+             */
+            private final int[] successor = new int[compiledPetriNet.getMarkingLength()];
+
+            /**
+             * Successor target state indices of the state being expanded
+             */
+            private int[] targets = new int[16];
+
+            /**
+             * Rates of the successors of the state being expanded
+             */
+            private double[] rates = new double[16];
+
+            /**
+             * Number of successors of the state being expanded
+             */
+            private int successorCount;
+
+            /**
+             * Source state index of each run of edges
+             */
+            private final IntArray runSources = new IntArray();
+
+            /**
+             * Offset into the edge buffers of each run of edges
+             */
+            private final IntArray runStarts = new IntArray();
+
+            /**
+             * Target state index of each buffered edge
+             */
+            private final IntArray edgeTargets = new IntArray();
+
+            /**
+             * Rate of each buffered edge
+             */
+            private final DoubleArray edgeRates = new DoubleArray();
+
+            /**
+             * Number of vanishing states passed through by this worker
+             */
+            private long vanishingStateCount;
+
+            /**
+             * @param run run index
+             * @return number of edges in the run
+             */
+            private int getRunLength(int run) {
+                int end = run + 1 < runStarts.size() ? runStarts.get(run + 1) : edgeTargets.size();
+                return end - runStarts.get(run);
+            }
+
+            /**
+             * Fires every enabled timed transition of a tangible state and buffers its edges
+             *
+             * @param state state index
+             */
+            private void expand(int state) {
+                encoder.decode(states.get(state), marking);
+                int count = compiledPetriNet.getEnabledTransitions(marking, enabled);
+                int[] timed = Arrays.copyOf(enabled, count);
+                for (int t : timed) {
+                    double rate = getRate(t, marking);
+                    if (rate > 0) {
+                        compiledPetriNet.fire(t, marking, successor);
+                        addSuccessor(successor, rate);
+                    }
+                }
+                sortSuccessors();
+                runSources.add(state);
+                runStarts.add(edgeTargets.size());
+                for (int i = 0; i < successorCount; i++) {
+                    edgeTargets.add(targets[i]);
+                    edgeRates.add(rates[i]);
+                }
+                successorCount = 0;
+            }
+
+            /**
+             * @param transition enabled transition index
+             * @param marking    marking to evaluate against
+             * @return rate or weight of the transition
+             */
+            private double getRate(int transition, int[] marking) {
+                double rate = compiledPetriNet.getRate(transition, marking);
+                if (rate < 0 || Double.isNaN(rate)) {
+                    throw new IllegalStateException("Transition " + compiledPetriNet.getTransition(transition).getId()
+                            + " has an invalid rate " + rate);
+                }
+                return rate;
+            }
+
+            /**
+             * @param marking marking
+             * @return number of enabled transitions written to {@link #enabled} if the marking is
+             *         vanishing, otherwise zero
+             */
+            private int getEnabledImmediate(int[] marking) {
+                int count = compiledPetriNet.getEnabledTransitions(marking, enabled);
+                return count > 0 && !compiledPetriNet.isTimed(enabled[0]) ? count : 0;
+            }
+
+            /**
+             * Adds the rate to the tangible state the marking is, or splits it between the tangible
+             * states reached from the marking if it is vanishing
+             *
+             * @param marking marking entered
+             * @param rate    rate at which it is entered
+             */
+            private void addSuccessor(int[] marking, double rate) {
+                if (getEnabledImmediate(marking) == 0) {
+                    addTarget(getStateIndex(marking), rate);
+                    return;
+                }
+                EncodedMarking key = new EncodedMarking(encoder.encode(marking));
+                VanishingExits exits = vanishingExits.getIfPresent(key);
+                if (exits == null) {
+                    exits = eliminate(marking, key);
+                    if (vanishingExits.asMap().putIfAbsent(key, exits) == null) {
+                        vanishingStateCount += exits.vanishingStates;
+                    }
+                }
+                for (int i = 0; i < exits.targets.length; i++) {
+                    addTarget(exits.targets[i], rate * exits.probabilities[i]);
+                }
+            }
+
+            /**
+             * @param marking tangible marking
+             * @return index of the tangible state, inserted if it is new
+             */
+            private int getStateIndex(int[] marking) {
+                return StateStores.getIndex(states.insertIfAbsent(encoder.encode(marking)));
+            }
+
+            /**
+             * @param target tangible state index
+             * @param rate   rate at which it is entered
+             */
+            private void addTarget(int target, double rate) {
+                if (successorCount == targets.length) {
+                    targets = Arrays.copyOf(targets, successorCount * 2);
+                    rates = Arrays.copyOf(rates, successorCount * 2);
+                }
+                targets[successorCount] = target;
+                rates[successorCount] = rate;
+                successorCount++;
+            }
+
+            /**
+             * Sorts the successors of the state being expanded by target state index with a shell
+             * sort, and merges successors with the same target by adding their rates
+             */
+            private void sortSuccessors() {
+                int gap = 1;
+                while (gap < successorCount / 3) {
+                    gap = 3 * gap + 1;
+                }
+                for (; gap > 0; gap /= 3) {
+                    for (int i = gap; i < successorCount; i++) {
+                        int target = targets[i];
+                        double rate = rates[i];
+                        int j = i;
+                        while (j >= gap && targets[j - gap] > target) {
+                            targets[j] = targets[j - gap];
+                            rates[j] = rates[j - gap];
+                            j -= gap;
+                        }
+                        targets[j] = target;
+                        rates[j] = rate;
+                    }
+                }
+                int merged = 0;
+                for (int i = 0; i < successorCount; i++) {
+                    if (merged > 0 && targets[merged - 1] == targets[i]) {
+                        rates[merged - 1] += rates[i];
+                    } else {
+                        targets[merged] = targets[i];
+                        rates[merged] = rates[i];
+                        merged++;
+                    }
+                }
+                successorCount = merged;
+            }
+
+            /**
+             * Explores the vanishing states reachable from a vanishing marking and works out the
+             * probability of leaving them for each tangible state
+             *
+             * @param entry vanishing marking
+             * @param key   encoded vanishing marking
+             * @return tangible states the marking leads to
+             */
+            private VanishingExits eliminate(int[] entry, EncodedMarking key) {
+                Map<EncodedMarking, Integer> indices = new HashMap<>();
+                List<int[]> markings = new ArrayList<>();
+                IntArray successorStart = new IntArray();
+                IntArray successorTargets = new IntArray();
+                DoubleArray probabilities = new DoubleArray();
+                List<int[]> exits = new ArrayList<>();
+
+                indices.put(key, 0);
+                markings.add(entry.clone());
+                for (int v = 0; v < markings.size(); v++) {
+                    successorStart.add(successorTargets.size());
+                    int[] marking = markings.get(v);
+                    int count = getEnabledImmediate(marking);
+                    int[] immediate = Arrays.copyOf(enabled, count);
+                    double total = 0;
+                    double[] weights = new double[count];
+                    for (int i = 0; i < count; i++) {
+                        weights[i] = getRate(immediate[i], marking);
+                        total += weights[i];
+                    }
+                    if (total <= 0) {
+                        throw new IllegalStateException("Every enabled immediate transition with priority "
+                                + compiledPetriNet.getPriority(immediate[0]) + " has zero weight");
+                    }
+                    for (int i = 0; i < count; i++) {
+                        if (weights[i] == 0) {
+                            continue;
+                        }
+                        int[] successor = new int[marking.length];
+                        compiledPetriNet.fire(immediate[i], marking, successor);
+                        int target;
+                        if (getEnabledImmediate(successor) == 0) {
+                            target = -(exits.size() + 1);
+                            exits.add(successor);
+                        } else {
+                            EncodedMarking successorKey = new EncodedMarking(encoder.encode(successor));
+                            Integer existing = indices.get(successorKey);
+                            if (existing == null) {
+                                existing = markings.size();
+                                indices.put(successorKey, existing);
+                                markings.add(successor);
+                            }
+                            target = existing;
+                        }
+                        successorTargets.add(target);
+                        probabilities.add(weights[i] / total);
+                    }
+                }
+                successorStart.add(successorTargets.size());
+
+                int[] start = successorStart.toArray();
+                int[] successors = successorTargets.toArray();
+                double[] probability = probabilities.toArray();
+                checkForTimelessTrap(markings, start, successors);
+
+                double[] exitProbabilities = new double[exits.size()];
+                double[] mass = new double[markings.size()];
+                boolean[] queued = new boolean[markings.size()];
+                int[] queue = new int[markings.size()];
+                int head = 0;
+                int size = 1;
+                mass[0] = 1;
+                queued[0] = true;
+                while (size > 0) {
+                    int v = queue[head];
+                    head = (head + 1) % queue.length;
+                    size--;
+                    queued[v] = false;
+                    double vanishingMass = mass[v];
+                    mass[v] = 0;
+                    for (int s = start[v]; s < start[v + 1]; s++) {
+                        double flow = vanishingMass * probability[s];
+                        int target = successors[s];
+                        if (target < 0) {
+                            exitProbabilities[-target - 1] += flow;
+                        } else {
+                            mass[target] += flow;
+                            if (!queued[target] && mass[target] > VANISHING_TOLERANCE) {
+                                queued[target] = true;
+                                queue[(head + size) % queue.length] = target;
+                                size++;
+                            }
+                        }
+                    }
+                }
+                double total = 0;
+                for (double exitProbability : exitProbabilities) {
+                    total += exitProbability;
+                }
+                int[] exitTargets = new int[exits.size()];
+                for (int i = 0; i < exitTargets.length; i++) {
+                    exitTargets[i] = getStateIndex(exits.get(i));
+                    exitProbabilities[i] /= total;
+                }
+                return new VanishingExits(exitTargets, exitProbabilities, markings.size());
+            }
+
+            /**
+             * @param markings   local vanishing markings
+             * @param start      start offsets of the successors of each local marking
+             * @param successors local index of each vanishing successor, or a negative value for a tangible one
+             * @throws IllegalStateException if a tangible marking cannot be reached from every vanishing marking
+             */
+            private void checkForTimelessTrap(List<int[]> markings, int[] start, int[] successors) {
+                int n = markings.size();
+                int[] predecessorStart = new int[n + 1];
+                for (int successor : successors) {
+                    if (successor >= 0) {
+                        predecessorStart[successor + 1]++;
+                    }
+                }
+                for (int v = 0; v < n; v++) {
+                    predecessorStart[v + 1] += predecessorStart[v];
+                }
+                int[] fill = Arrays.copyOf(predecessorStart, n);
+                int[] predecessors = new int[predecessorStart[n]];
+                boolean[] canExit = new boolean[n];
+                int[] stack = new int[n];
+                int size = 0;
+                for (int v = 0; v < n; v++) {
+                    for (int s = start[v]; s < start[v + 1]; s++) {
+                        if (successors[s] >= 0) {
+                            predecessors[fill[successors[s]]++] = v;
+                        } else if (!canExit[v]) {
+                            canExit[v] = true;
+                            stack[size++] = v;
+                        }
+                    }
+                }
+                while (size > 0) {
+                    int v = stack[--size];
+                    for (int p = predecessorStart[v]; p < predecessorStart[v + 1]; p++) {
+                        if (!canExit[predecessors[p]]) {
+                            canExit[predecessors[p]] = true;
+                            stack[size++] = predecessors[p];
+                        }
+                    }
+                }
+                for (int v = 0; v < n; v++) {
+                    if (!canExit[v]) {
+                        throw new IllegalStateException("Timeless trap: no tangible state is reachable from the "
+                                + "vanishing state " + compiledPetriNet.getState(markings.get(v)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Distribution over the tangible states that a vanishing marking leads to
+     */
+    private static final class VanishingExits {
+        /**
+         * Tangible state index of each exit, a state may appear more than once
+         */
+        private final int[] targets;
+
+        /**
+         * Probability of each exit, summing to one
+         */
+        private final double[] probabilities;
+
+        /**
+         * Number of vanishing states explored to find the exits
+         */
+        private final int vanishingStates;
+
+        /**
+         * Constructor
+         * @param targets         tangible state index of each exit
+         * @param probabilities   probability of each exit
+         * @param vanishingStates number of vanishing states explored to find the exits
+         */
+        private VanishingExits(int[] targets, double[] probabilities, int vanishingStates) {
+            this.targets = targets;
+            this.probabilities = probabilities;
+            this.vanishingStates = vanishingStates;
+        }
+    }
+
+    /**
+     * Encoded marking with value equality, used as a key of the local vanishing graph and of the
+     * vanishing exits of an exploration
+     */
+    private static final class EncodedMarking {
+        /**
+         * Encoded marking
+         */
+        private final long[] encoded;
+
+        /**
+         * Cached hash of the encoded marking
+         */
+        private final int hash;
+
+        /**
+         * Constructor
+         * @param encoded encoded marking
+         */
+        private EncodedMarking(long[] encoded) {
+            this.encoded = encoded;
+            hash = StateStores.hash(encoded);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return Arrays.equals(encoded, ((EncodedMarking) o).encoded);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Growable array of doubles
+     */
+    private static final class DoubleArray {
+        /**
+         * Values
+         */
+        private double[] values = new double[16];
+
+        /**
+         * Number of values
+         */
+        private int size;
+
+        /**
+         * @param value value to append
+         */
+        private void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * @return the values
+         */
+        private double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.analysis.state.PackedStateEncoder;
+import uk.ac.imperial.pipe.analysis.state.StateStore;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.state.State;
+
+/**
+ * Immutable tangible reachability graph of a generalised stochastic Petri net produced by a
+ * {@link TangibleReachabilityExplorer}.
+ * <p>
+ * Only tangible states, in which no immediate transition is enabled, are stored. They are held
+ * encoded in a {@link StateStore} and given dense indices in breadth first order. The outgoing edges
+ * of each state are stored in compressed sparse row arrays sorted by target and labelled with the
+ * total rate at which the target is entered, including any paths through vanishing states. Edges
+ * from a state back to itself are kept so that the rates of every enabled timed transition are
+ * accounted for.
+ * </p>
+ * <p>
+ * If the initial marking is vanishing the graph starts in a distribution over tangible states
+ * rather than a single state.
+ * </p>
+ */
+public final class TangibleReachabilityGraph implements DirectedGraph {
+    /**
+     * Encoder of the stored markings
+     */
+    private final PackedStateEncoder encoder;
+
+    /**
+     * Encoded tangible markings indexed by state index
+     */
+    private final StateStore states;
+
+    /**
+     * Start offsets into the edge arrays for each state, of length state count + 1
+     */
+    private final int[] edgeStart;
+
+    /**
+     * Target state index of each edge
+     */
+    private final int[] edgeTarget;
+
+    /**
+     * Rate of each edge
+     */
+    private final double[] edgeRate;
+
+    /**
+     * Indices of the tangible states the net may start in
+     */
+    private final int[] initialStates;
+
+    /**
+     * Probability of starting in each initial state
+     */
+    private final double[] initialProbabilities;
+
+    /**
+     * Number of vanishing states passed through whilst eliminating them
+     */
+    private final long vanishingStateCount;
+
+    /**
+     * Constructor
+     *
+     * @param encoder              encoder of the stored markings
+     * @param states               encoded tangible markings indexed by state index
+     * @param edgeStart            start offsets into the edge arrays for each state
+     * @param edgeTarget           target state index of each edge
+     * @param edgeRate             rate of each edge
+     * @param initialStates        indices of the tangible states the net may start in
+     * @param initialProbabilities probability of starting in each initial state
+     * @param vanishingStateCount  number of vanishing states passed through whilst eliminating them
+     */
+    TangibleReachabilityGraph(PackedStateEncoder encoder, StateStore states, int[] edgeStart, int[] edgeTarget,
+                              double[] edgeRate, int[] initialStates, double[] initialProbabilities,
+                              long vanishingStateCount) {
+        this.encoder = encoder;
+        this.states = states;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeRate = edgeRate;
+        this.initialStates = initialStates;
+        this.initialProbabilities = initialProbabilities;
+        this.vanishingStateCount = vanishingStateCount;
+    }
+
+    /**
+     * @return compiled Petri net the graph was explored from
+     */
+    public CompiledPetriNet getCompiledPetriNet() {
+        return encoder.getCompiledPetriNet();
+    }
+
+    @Override
+    public int getStateCount() {
+        return edgeStart.length - 1;
+    }
+
+    /**
+     * @return number of edges in the graph
+     */
+    public int getEdgeCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * @param index state index
+     * @return marking of the state in the layout of the compiled Petri net
+     */
+    public int[] getMarking(int index) {
+        return encoder.decode(states.get(index));
+    }
+
+    /**
+     * @param index state index
+     * @return the state with the index
+     */
+    public State getState(int index) {
+        return encoder.decodeState(states.get(index));
+    }
+
+    /**
+     * @param marking marking in the layout of the compiled Petri net
+     * @return index of the marking or -1 if it is not a tangible state of the graph
+     */
+    public int getIndex(int[] marking) {
+        return states.indexOf(encoder.encode(marking));
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return index of the state or -1 if it is not a tangible state of the graph
+     */
+    public int getIndex(State state) {
+        return states.indexOf(encoder.encode(state));
+    }
+
+    @Override
+    public int getEdgeStart(int source) {
+        return edgeStart[source];
+    }
+
+    /**
+     * @param source state index
+     * @return number of outgoing edges of the state
+     */
+    public int getOutDegree(int source) {
+        return edgeStart[source + 1] - edgeStart[source];
+    }
+
+    @Override
+    public int getEdgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    /**
+     * @param edge edge offset
+     * @return rate of the edge
+     */
+    public double getEdgeRate(int edge) {
+        return edgeRate[edge];
+    }
+
+    /**
+     * @param source state index
+     * @return total rate of the edges leaving the state for a different state
+     */
+    public double getExitRate(int source) {
+        double rate = 0;
+        for (int edge = edgeStart[source]; edge < edgeStart[source + 1]; edge++) {
+            if (edgeTarget[edge] != source) {
+                rate += edgeRate[edge];
+            }
+        }
+        return rate;
+    }
+
+    /**
+     * @return indices of the states in which no transition is enabled in ascending order
+     */
+    public int[] getDeadlocks() {
+        int count = 0;
+        for (int state = 0; state < getStateCount(); state++) {
+            if (getOutDegree(state) == 0) {
+                count++;
+            }
+        }
+        int[] deadlocks = new int[count];
+        int next = 0;
+        for (int state = 0; state < getStateCount(); state++) {
+            if (getOutDegree(state) == 0) {
+                deadlocks[next++] = state;
+            }
+        }
+        return deadlocks;
+    }
+
+    /**
+     * @return indices of the tangible states the net may start in
+     */
+    public int[] getInitialStates() {
+        return initialStates.clone();
+    }
+
+    /**
+     * @return probability of starting in each initial state, in the order of {@link #getInitialStates()}
+     */
+    public double[] getInitialProbabilities() {
+        return initialProbabilities.clone();
+    }
+
+    /**
+     * @return initial probability of every state indexed by state index
+     */
+    public double[] getInitialDistribution() {
+        double[] distribution = new double[getStateCount()];
+        for (int i = 0; i < initialStates.length; i++) {
+            distribution[initialStates[i]] += initialProbabilities[i];
+        }
+        return distribution;
+    }
+
+    /**
+     * @return number of vanishing states passed through whilst eliminating them, a vanishing state
+     *         reached from several distinct vanishing markings entered from tangible states is
+     *         counted once for each, and again if the exits of the marking entered were evicted
+     *         from the bounded memo of the explorer and had to be found again
+     */
+    public long getVanishingStateCount() {
+        return vanishingStateCount;
+    }
+}
@@ -0,0 +1,276 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.StronglyConnectedComponents;
+import uk.ac.imperial.state.State;
+
+/**
+ * Mean time to absorption and probability of absorption into each absorbing class from every state
+ * of a chain, calculated by an {@link AbsorptionSolver}. States of an absorbing class are already
+ * absorbed, so their time to absorption is zero and they are absorbed into their own class with
+ * probability one. Only the values of the transient states are stored, and the probabilities of a
+ * class are solved the first time they are asked for and kept from then on.
+ */
+public final class AbsorptionResult {
+    /**
+     * Generator solved
+     */
+    private final GeneratorMatrix generator;
+
+    /**
+     * Strongly connected components of the chain
+     */
+    private final StronglyConnectedComponents components;
+
+    /**
+     * Component index of each absorbing class
+     */
+    private final int[] absorbingComponents;
+
+    /**
+     * Transient states of the chain
+     */
+    private final TransientBlock block;
+
+    /**
+     * Mean time to absorption from each transient state in block order
+     */
+    private final double[] times;
+
+    /**
+     * Probability of absorption into each class from each transient state in block order, indexed by
+     * class then state, null until the class is first asked for
+     */
+    private final double[][] probabilities;
+
+    /**
+     * Time taken to solve in nanoseconds
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Constructor
+     *
+     * @param generator           generator solved
+     * @param components          strongly connected components of the chain
+     * @param absorbingComponents component index of each absorbing class
+     * @param block               transient states of the chain
+     * @param times               mean time to absorption from each transient state in block order
+     * @param elapsedNanos        time taken to solve in nanoseconds
+     */
+    AbsorptionResult(GeneratorMatrix generator, StronglyConnectedComponents components, int[] absorbingComponents,
+                     TransientBlock block, double[] times, long elapsedNanos) {
+        this.generator = generator;
+        this.components = components;
+        this.absorbingComponents = absorbingComponents;
+        this.block = block;
+        this.times = times;
+        this.elapsedNanos = elapsedNanos;
+        probabilities = new double[absorbingComponents.length][];
+    }
+
+    /**
+     * @return generator solved
+     */
+    public GeneratorMatrix getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return strongly connected components of the chain, over the rows of the generator
+     */
+    public StronglyConnectedComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * @return number of absorbing classes
+     */
+    public int getAbsorbingClassCount() {
+        return absorbingComponents.length;
+    }
+
+    /**
+     * @param absorbingClass absorbing class number, from 0 to {@link #getAbsorbingClassCount()}
+     * @return rows of the generator in the class in ascending order
+     */
+    public int[] getAbsorbingClassStates(int absorbingClass) {
+        return components.getComponentStates(absorbingComponents[absorbingClass]);
+    }
+
+    /**
+     * @param row row of the generator
+     * @return absorbing class number of the state, or -1 if it is transient
+     */
+    public int getAbsorbingClass(int row) {
+        int component = components.getComponent(row);
+        for (int absorbingClass = 0; absorbingClass < absorbingComponents.length; absorbingClass++) {
+            if (absorbingComponents[absorbingClass] == component) {
+                return absorbingClass;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row row of the generator
+     * @return mean time to absorption starting from the state
+     */
+    public double getMeanTimeToAbsorption(int row) {
+        int blockRow = block.getBlockRow(row);
+        return blockRow < 0 ? 0 : times[blockRow];
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return mean time to absorption starting from the state
+     * @throws IllegalArgumentException if the state is not a tangible reachable state
+     */
+    public double getMeanTimeToAbsorption(State state) {
+        return getMeanTimeToAbsorption(getRow(state));
+    }
+
+    /**
+     * @param initial initial probability of each row of the generator
+     * @return mean time to absorption starting from the distribution
+     */
+    public double getMeanTimeToAbsorption(double[] initial) {
+        checkLength(initial);
+        return dot(block.restrict(initial), times);
+    }
+
+    /**
+     * @return mean time to absorption starting from the initial distribution of the generator
+     */
+    public double getMeanTimeToAbsorption() {
+        return getMeanTimeToAbsorption(generator.getInitialDistribution());
+    }
+
+    /**
+     * @param row            row of the generator
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class starting from the state
+     * @throws IllegalStateException if the iterative solve for the class does not converge
+     */
+    public double getAbsorptionProbability(int row, int absorbingClass) {
+        int blockRow = block.getBlockRow(row);
+        if (blockRow < 0) {
+            return components.getComponent(row) == absorbingComponents[absorbingClass] ? 1 : 0;
+        }
+        return getTransientProbabilities(absorbingClass)[blockRow];
+    }
+
+    /**
+     * @param state          state of the Petri net
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class starting from the state
+     * @throws IllegalArgumentException if the state is not a tangible reachable state
+     * @throws IllegalStateException if the iterative solve for the class does not converge
+     */
+    public double getAbsorptionProbability(State state, int absorbingClass) {
+        return getAbsorptionProbability(getRow(state), absorbingClass);
+    }
+
+    /**
+     * @param initial        initial probability of each row of the generator
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class starting from the distribution
+     * @throws IllegalStateException if the iterative solve for the class does not converge
+     */
+    public double getAbsorptionProbability(double[] initial, int absorbingClass) {
+        checkLength(initial);
+        double probability = dot(block.restrict(initial), getTransientProbabilities(absorbingClass));
+        for (int row : components.getComponentStates(absorbingComponents[absorbingClass])) {
+            probability += initial[row];
+        }
+        return probability;
+    }
+
+    /**
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class starting from the initial distribution of
+     *         the generator
+     * @throws IllegalStateException if the iterative solve for the class does not converge
+     */
+    public double getAbsorptionProbability(int absorbingClass) {
+        return getAbsorptionProbability(generator.getInitialDistribution(), absorbingClass);
+    }
+
+    /**
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class from each row of the generator
+     * @throws IllegalStateException if the iterative solve for the class does not converge
+     */
+    public double[] getAbsorptionProbabilities(int absorbingClass) {
+        double[] transientProbabilities = getTransientProbabilities(absorbingClass);
+        double[] rowProbabilities = new double[generator.getSize()];
+        int[] transientRows = block.getTransientRows();
+        for (int i = 0; i < transientRows.length; i++) {
+            rowProbabilities[transientRows[i]] = transientProbabilities[i];
+        }
+        for (int row : components.getComponentStates(absorbingComponents[absorbingClass])) {
+            rowProbabilities[row] = 1;
+        }
+        return rowProbabilities;
+    }
+
+    /**
+     * @return time taken to solve the mean times to absorption in milliseconds, the absorption
+     *         probabilities of each class are solved when first asked for
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return row of the state in the generator
+     * @throws IllegalArgumentException if the state is not a tangible reachable state
+     */
+    private int getRow(State state) {
+        int row = generator.getRow(state);
+        if (row < 0) {
+            throw new IllegalArgumentException("State is not a tangible reachable state: " + state);
+        }
+        return row;
+    }
+
+    /**
+     * Solves for the probabilities of absorption into a class from the transient states the first
+     * time they are asked for
+     *
+     * @param absorbingClass absorbing class number
+     * @return probability of absorption into the class from each transient state in block order
+     * @throws IllegalStateException if the iterative solve does not converge
+     */
+    private synchronized double[] getTransientProbabilities(int absorbingClass) {
+        if (probabilities[absorbingClass] == null) {
+            probabilities[absorbingClass] = block.getSize() > 0 ? block.getExitProbabilities(
+                    block.getExitRates(absorbingComponents[absorbingClass])) : new double[0];
+        }
+        return probabilities[absorbingClass];
+    }
+
+    /**
+     * @param initial initial probability of each row of the generator
+     * @throws IllegalArgumentException if the distribution does not have an entry for each row
+     */
+    private void checkLength(double[] initial) {
+        if (initial.length != generator.getSize()) {
+            throw new IllegalArgumentException("Initial distribution has " + initial.length + " entries for "
+                    + generator.getSize() + " states");
+        }
+    }
+
+    /**
+     * @param initial initial probability of each transient state
+     * @param values  value of each transient state
+     * @return expected value under the distribution
+     */
+    private static double dot(double[] initial, double[] values) {
+        double sum = 0;
+        for (int i = 0; i < initial.length; i++) {
+            sum += initial[i] * values[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.StronglyConnectedComponents;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+/**
+ * Calculates the mean time to absorption and the probability of absorption into each absorbing
+ * class of a continuous time Markov chain, from every state at once.
+ * <p>
+ * The absorbing classes are the bottom strongly connected components of the chain: deadlock
+ * markings, in which no transition is enabled, are absorbing classes of a single state, and closed
+ * sets of markings the net can cycle between forever are absorbing classes too. Absorption is the
+ * first entry into any of them. Writing Q_TT for the generator restricted to the transient states,
+ * the mean times t solve Q_TT t = -1 and the probabilities h of absorption into a class solve
+ * Q_TT h = -r, where r is the rate from each transient state into the class. These sparse systems
+ * are solved by Gauss-Seidel, which gives exact answers to the tolerance far faster than simulating
+ * until absorption. The times are solved up front, the probabilities of a class are solved the first
+ * time the result is asked about that class, so a chain with many absorbing classes, deadlocks in
+ * particular, only pays in time and memory for the classes of interest.
+ * </p>
+ */
+public final class AbsorptionSolver {
+    /**
+     * Tolerance of the relative change between iterations
+     */
+    private final double tolerance;
+
+    /**
+     * Maximum number of iterations of each solve
+     */
+    private final int maxIterations;
+
+    /**
+     * Constructor using the default tolerance and iteration limit of the {@link SteadyStateSolver}
+     */
+    public AbsorptionSolver() {
+        this(SteadyStateSolver.DEFAULT_TOLERANCE, SteadyStateSolver.DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tolerance     tolerance of the relative change between iterations
+     * @param maxIterations maximum number of iterations of each solve
+     */
+    public AbsorptionSolver(double tolerance, int maxIterations) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Maximum number of iterations must be at least 1: " + maxIterations);
+        }
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Explores the tangible state space reachable from the current marking of the Petri net,
+     * builds its generator and solves it
+     *
+     * @param petriNet Petri net to analyse
+     * @return absorption times and probabilities of every tangible state
+     */
+    public AbsorptionResult solve(PetriNet petriNet) {
+        return solve(new GeneratorMatrix(new TangibleReachabilityExplorer(new CompiledPetriNet(petriNet)).explore()));
+    }
+
+    /**
+     * Solves for the absorption times and probabilities of every state of the chain
+     *
+     * @param generator generator matrix Q
+     * @return absorption times of every state, and probabilities solved on demand
+     * @throws IllegalStateException if the iterative solve for the times does not converge
+     */
+    public AbsorptionResult solve(GeneratorMatrix generator) {
+        long start = System.nanoTime();
+        StronglyConnectedComponents components = new StronglyConnectedComponents(generator.getTransitionGraph());
+        TransientBlock block = new TransientBlock(generator, components, tolerance, maxIterations);
+        double[] times = block.getSize() > 0 ? block.getExitTimes() : new double[0];
+        return new AbsorptionResult(generator, components, components.getBottomComponents(), block, times,
+                System.nanoTime() - start);
+    }
+}
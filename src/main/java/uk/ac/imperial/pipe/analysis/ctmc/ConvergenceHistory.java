@@ -0,0 +1,42 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import java.util.Arrays;
+
+/**
+ * Growable record of the convergence measure after each iteration of a solver
+ */
+final class ConvergenceHistory {
+    /**
+     * Measures
+     */
+    private double[] measures = new double[16];
+
+    /**
+     * Number of iterations recorded
+     */
+    private int size;
+
+    /**
+     * @param measure convergence measure after the latest iteration
+     */
+    void add(double measure) {
+        if (size == measures.length) {
+            measures = Arrays.copyOf(measures, size * 2);
+        }
+        measures[size++] = measure;
+    }
+
+    /**
+     * @return number of iterations recorded
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the recorded measures
+     */
+    double[] toArray() {
+        return Arrays.copyOf(measures, size);
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+/**
+ * Truncation points and weights of the Poisson distribution, in the manner of Fox and Glynn, for
+ * uniformisation.
+ * <p>
+ * The truncation points are chosen from the mode outwards using geometric bounds on the tails,
+ * since below the mode the probabilities of a Poisson distribution with mean lambda fall by at
+ * least k / lambda per step and above it by at least lambda / (k + 1). The probability of the mode
+ * is calculated in log space with Stirling's series and the other weights by the recurrence
+ * between neighbouring probabilities, so neither overflows nor underflows within the truncation
+ * points for any mean representable as a double. The weights are normalised to sum to one.
+ * </p>
+ */
+final class FoxGlynn {
+    /**
+     * Smallest k for which log k! is calculated with Stirling's series rather than exactly
+     */
+    private static final int STIRLING_THRESHOLD = 20;
+
+    /**
+     * Left truncation point
+     */
+    private final int left;
+
+    /**
+     * Right truncation point
+     */
+    private final int right;
+
+    /**
+     * Normalised weights of left to right inclusive
+     */
+    private final double[] weights;
+
+    /**
+     * Constructor
+     *
+     * @param lambda  mean of the Poisson distribution
+     * @param epsilon bound on the probability outside the truncation points
+     */
+    FoxGlynn(double lambda, double epsilon) {
+        if (lambda < 0 || Double.isNaN(lambda) || Double.isInfinite(lambda)) {
+            throw new IllegalArgumentException("Poisson mean must be finite and non negative: " + lambda);
+        }
+        if (lambda > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Poisson mean " + lambda + " is too large to uniformise");
+        }
+        if (lambda == 0) {
+            left = 0;
+            right = 0;
+            weights = new double[]{1};
+            return;
+        }
+        int mode = (int) Math.floor(lambda);
+        double modeProbability = Math.exp(-lambda + mode * Math.log(lambda) - logFactorial(mode));
+
+        double bound = epsilon / 2;
+        int k = mode;
+        double probability = modeProbability;
+        while (k > 0) {
+            double ratio = k / lambda;
+            if (ratio < 1 && probability * ratio / (1 - ratio) <= bound) {
+                break;
+            }
+            probability *= k / lambda;
+            k--;
+        }
+        left = k;
+
+        k = mode;
+        probability = modeProbability;
+        while (true) {
+            double ratio = lambda / (k + 1);
+            if (ratio < 1 && probability * ratio / (1 - ratio) <= bound) {
+                break;
+            }
+            probability *= lambda / (k + 1);
+            k++;
+        }
+        right = k;
+
+        weights = new double[right - left + 1];
+        weights[mode - left] = modeProbability;
+        for (int j = mode; j > left; j--) {
+            weights[j - 1 - left] = weights[j - left] * j / lambda;
+        }
+        for (int j = mode; j < right; j++) {
+            weights[j + 1 - left] = weights[j - left] * lambda / (j + 1);
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        for (int j = 0; j < weights.length; j++) {
+            weights[j] /= total;
+        }
+    }
+
+    /**
+     * @param k non negative integer
+     * @return log k!
+     */
+    static double logFactorial(int k) {
+        if (k < STIRLING_THRESHOLD) {
+            double factorial = 1;
+            for (int i = 2; i <= k; i++) {
+                factorial *= i;
+            }
+            return Math.log(factorial);
+        }
+        double x = k;
+        double inverse = 1 / x;
+        double inverseSquared = inverse * inverse;
+        double series = 1.0 / 12 - inverseSquared * (1.0 / 360 - inverseSquared * (1.0 / 1260 - inverseSquared / 1680));
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x) + inverse * series;
+    }
+
+    /**
+     * @return left truncation point
+     */
+    int getLeft() {
+        return left;
+    }
+
+    /**
+     * @return right truncation point
+     */
+    int getRight() {
+        return right;
+    }
+
+    /**
+     * @param k number of jumps between the truncation points inclusive
+     * @return normalised weight of k jumps
+     */
+    double getWeight(int k) {
+        return weights[k - left];
+    }
+}
@@ -0,0 +1,296 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.DirectedGraph;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityGraph;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.state.State;
+
+import java.util.Arrays;
+
+/**
+ * Infinitesimal generator Q of the continuous time Markov chain underlying a generalised
+ * stochastic Petri net.
+ * <p>
+ * Q is built from a {@link TangibleReachabilityGraph}, whose edge rates come from
+ * {@link CompiledPetriNet#getRate(int, int[])} and so match
+ * {@link uk.ac.imperial.pipe.models.petrinet.Transition#getActualRate}, including the scaling of
+ * infinite server transitions by their enabling degree. Edges from a state to itself are dropped
+ * since they do not change the chain, and every row holds a diagonal entry equal to minus the exit
+ * rate of the state, so the rows of Q sum to zero. Rows and columns are indexed by the state
+ * indices of the graph.
+ * </p>
+ * <p>
+ * A generator may be restricted to a subset of its states. The restriction of a closed class is
+ * itself a generator, and the restriction to the transient states is the block of Q whose rows no
+ * longer sum to zero because the rates out of the subset are dropped. The rows of a restriction are
+ * numbered in the order of the graph states they stand for.
+ * </p>
+ */
+public final class GeneratorMatrix {
+    /**
+     * Tangible reachability graph the generator was built from
+     */
+    private final TangibleReachabilityGraph graph;
+
+    /**
+     * Q in compressed sparse row form
+     */
+    private final SparseMatrix matrix;
+
+    /**
+     * Offset of the diagonal entry of each row
+     */
+    private final int[] diagonalEntry;
+
+    /**
+     * Graph state index of each row in ascending order, null if every graph state is a row
+     */
+    private final int[] graphStates;
+
+    /**
+     * Constructor
+     *
+     * @param graph tangible reachability graph to build the generator of
+     */
+    public GeneratorMatrix(TangibleReachabilityGraph graph) {
+        this.graph = graph;
+        graphStates = null;
+        int size = graph.getStateCount();
+        int[] rowStart = new int[size + 1];
+        for (int row = 0; row < size; row++) {
+            int entries = 1;
+            int start = graph.getEdgeStart(row);
+            for (int edge = start; edge < start + graph.getOutDegree(row); edge++) {
+                if (graph.getEdgeTarget(edge) != row) {
+                    entries++;
+                }
+            }
+            rowStart[row + 1] = rowStart[row] + entries;
+        }
+
+        int[] columns = new int[rowStart[size]];
+        double[] values = new double[columns.length];
+        diagonalEntry = new int[size];
+        for (int row = 0; row < size; row++) {
+            int entry = rowStart[row];
+            int start = graph.getEdgeStart(row);
+            int end = start + graph.getOutDegree(row);
+            double exitRate = 0;
+            boolean diagonalPlaced = false;
+            for (int edge = start; edge < end; edge++) {
+                int column = graph.getEdgeTarget(edge);
+                if (column == row) {
+                    continue;
+                }
+                if (!diagonalPlaced && column > row) {
+                    diagonalEntry[row] = entry++;
+                    diagonalPlaced = true;
+                }
+                columns[entry] = column;
+                values[entry++] = graph.getEdgeRate(edge);
+                exitRate += graph.getEdgeRate(edge);
+            }
+            if (!diagonalPlaced) {
+                diagonalEntry[row] = entry;
+            }
+            columns[diagonalEntry[row]] = row;
+            values[diagonalEntry[row]] = -exitRate;
+        }
+        matrix = new SparseMatrix(size, size, rowStart, columns, values);
+    }
+
+    /**
+     * Constructor of a restriction
+     *
+     * @param graph         tangible reachability graph the generator was built from
+     * @param matrix        restricted Q
+     * @param diagonalEntry offset of the diagonal entry of each row
+     * @param graphStates   graph state index of each row in ascending order
+     */
+    private GeneratorMatrix(TangibleReachabilityGraph graph, SparseMatrix matrix, int[] diagonalEntry,
+                            int[] graphStates) {
+        this.graph = graph;
+        this.matrix = matrix;
+        this.diagonalEntry = diagonalEntry;
+        this.graphStates = graphStates;
+    }
+
+    /**
+     * Restricts the generator to a subset of its states, keeping the diagonal of each row and
+     * dropping the entries for states outside the subset
+     *
+     * @param rows rows of this generator to keep in strictly ascending order
+     * @return generator over the rows, whose row i stands for the row rows[i] of this generator
+     */
+    public GeneratorMatrix restrict(int[] rows) {
+        int n = getSize();
+        int[] newRow = new int[n];
+        Arrays.fill(newRow, -1);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] < 0 || rows[i] >= n || (i > 0 && rows[i] <= rows[i - 1])) {
+                throw new IllegalArgumentException("Rows must be distinct, ascending and below " + n);
+            }
+            newRow[rows[i]] = i;
+        }
+        int[] rowStart = new int[rows.length + 1];
+        for (int i = 0; i < rows.length; i++) {
+            int entries = 0;
+            for (int entry = matrix.getRowStart(rows[i]); entry < matrix.getRowStart(rows[i] + 1); entry++) {
+                if (newRow[matrix.getColumn(entry)] >= 0) {
+                    entries++;
+                }
+            }
+            rowStart[i + 1] = rowStart[i] + entries;
+        }
+        int[] columns = new int[rowStart[rows.length]];
+        double[] values = new double[columns.length];
+        int[] newDiagonalEntry = new int[rows.length];
+        int[] newGraphStates = new int[rows.length];
+        int next = 0;
+        for (int i = 0; i < rows.length; i++) {
+            for (int entry = matrix.getRowStart(rows[i]); entry < matrix.getRowStart(rows[i] + 1); entry++) {
+                int column = newRow[matrix.getColumn(entry)];
+                if (column >= 0) {
+                    if (entry == diagonalEntry[rows[i]]) {
+                        newDiagonalEntry[i] = next;
+                    }
+                    columns[next] = column;
+                    values[next++] = matrix.getValue(entry);
+                }
+            }
+            newGraphStates[i] = getGraphState(rows[i]);
+        }
+        return new GeneratorMatrix(graph, new SparseMatrix(rows.length, rows.length, rowStart, columns, values),
+                newDiagonalEntry, newGraphStates);
+    }
+
+    /**
+     * @return tangible reachability graph the generator was built from
+     */
+    public TangibleReachabilityGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return true if the generator is a restriction to a subset of the states of the graph
+     */
+    public boolean isRestricted() {
+        return graphStates != null;
+    }
+
+    /**
+     * @param row row index
+     * @return index in the tangible reachability graph of the state of the row
+     */
+    public int getGraphState(int row) {
+        return graphStates == null ? row : graphStates[row];
+    }
+
+    /**
+     * @param graphState state index in the tangible reachability graph
+     * @return row of the state, or -1 if the state is not part of the generator
+     */
+    public int getRow(int graphState) {
+        if (graphStates == null || graphState < 0) {
+            return graphState;
+        }
+        int row = Arrays.binarySearch(graphStates, graphState);
+        return row < 0 ? -1 : row;
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return row of the state, or -1 if the state is not part of the generator
+     */
+    public int getRow(State state) {
+        return getRow(graph.getIndex(state));
+    }
+
+    /**
+     * @return Q in compressed sparse row form, including the diagonal
+     */
+    public SparseMatrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return view of the non zero pattern of Q as a graph over its rows, in which every state also
+     *         has an edge to itself
+     */
+    public DirectedGraph getTransitionGraph() {
+        return new DirectedGraph() {
+            @Override
+            public int getStateCount() {
+                return matrix.getRowCount();
+            }
+
+            @Override
+            public int getEdgeStart(int source) {
+                return matrix.getRowStart(source);
+            }
+
+            @Override
+            public int getEdgeTarget(int edge) {
+                return matrix.getColumn(edge);
+            }
+        };
+    }
+
+    /**
+     * @return number of states of the chain, the number of rows of Q
+     */
+    public int getSize() {
+        return matrix.getRowCount();
+    }
+
+    /**
+     * @param row row index
+     * @return offset into the entries of {@link #getMatrix()} of the diagonal entry of the row
+     */
+    public int getDiagonalEntry(int row) {
+        return diagonalEntry[row];
+    }
+
+    /**
+     * @param row state index
+     * @return Q[row][row], minus the exit rate of the state
+     */
+    public double getDiagonal(int row) {
+        return matrix.getValue(diagonalEntry[row]);
+    }
+
+    /**
+     * @param row state index
+     * @return true if the state cannot be left
+     */
+    public boolean isAbsorbing(int row) {
+        return getDiagonal(row) == 0;
+    }
+
+    /**
+     * @return largest exit rate of any state
+     */
+    public double getMaximumExitRate() {
+        double maximum = 0;
+        for (int row = 0; row < getSize(); row++) {
+            maximum = Math.max(maximum, -getDiagonal(row));
+        }
+        return maximum;
+    }
+
+    /**
+     * @return initial probability of the state of every row, which for a restriction need not sum
+     *         to one
+     */
+    public double[] getInitialDistribution() {
+        double[] distribution = graph.getInitialDistribution();
+        if (graphStates == null) {
+            return distribution;
+        }
+        double[] restricted = new double[graphStates.length];
+        for (int row = 0; row < graphStates.length; row++) {
+            restricted[row] = distribution[graphStates[row]];
+        }
+        return restricted;
+    }
+}
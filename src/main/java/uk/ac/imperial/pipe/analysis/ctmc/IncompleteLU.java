@@ -0,0 +1,128 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import java.util.Arrays;
+
+/**
+ * Incomplete LU factorisation with zero fill, ILU(0), used to precondition the Krylov solvers.
+ * <p>
+ * L and U have the sparsity pattern of the factorised matrix and are stored together in a copy
+ * of its compressed sparse row arrays, L below the diagonal with an implicit unit diagonal and U
+ * on and above it. The transposed generator is singular, so a pivot that becomes negligible
+ * relative to the original diagonal entry is replaced by a small multiple of it, which is the
+ * usual treatment of the singular last pivot of a Markov chain.
+ * </p>
+ * <p>
+ * The triangular solves of {@link #solve(double[], double[])} are inherently sequential.
+ * </p>
+ */
+final class IncompleteLU {
+    /**
+     * Smallest magnitude of a pivot relative to the original diagonal entry
+     */
+    private static final double PIVOT_TOLERANCE = 1e-8;
+
+    /**
+     * Start offsets of each row, of length size + 1
+     */
+    private final int[] rowStart;
+
+    /**
+     * Column of each entry, ascending within each row
+     */
+    private final int[] columns;
+
+    /**
+     * Factorised values, L strictly below the diagonal and U on and above it
+     */
+    private final double[] values;
+
+    /**
+     * Offset of the diagonal entry of each row
+     */
+    private final int[] diagonal;
+
+    /**
+     * Factorises the matrix
+     *
+     * @param matrix square matrix with a non zero entry on every diagonal
+     * @throws IllegalArgumentException if a diagonal entry is missing or zero
+     */
+    IncompleteLU(SparseMatrix matrix) {
+        int n = matrix.getRowCount();
+        rowStart = new int[n + 1];
+        columns = new int[matrix.getNonZeroCount()];
+        values = new double[columns.length];
+        diagonal = new int[n];
+        for (int row = 0; row < n; row++) {
+            rowStart[row + 1] = matrix.getRowStart(row + 1);
+            diagonal[row] = -1;
+            for (int entry = matrix.getRowStart(row); entry < rowStart[row + 1]; entry++) {
+                columns[entry] = matrix.getColumn(entry);
+                values[entry] = matrix.getValue(entry);
+                if (columns[entry] == row) {
+                    diagonal[row] = entry;
+                }
+            }
+            if (diagonal[row] < 0 || values[diagonal[row]] == 0) {
+                throw new IllegalArgumentException("Row " + row + " has no diagonal entry");
+            }
+        }
+        factorise();
+    }
+
+    /**
+     * Performs the IKJ variant of Gaussian elimination restricted to the existing pattern
+     */
+    private void factorise() {
+        int n = diagonal.length;
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < n; i++) {
+            double original = values[diagonal[i]];
+            for (int entry = rowStart[i]; entry < rowStart[i + 1]; entry++) {
+                position[columns[entry]] = entry;
+            }
+            for (int entry = rowStart[i]; entry < diagonal[i]; entry++) {
+                int k = columns[entry];
+                double factor = values[entry] / values[diagonal[k]];
+                values[entry] = factor;
+                for (int kj = diagonal[k] + 1; kj < rowStart[k + 1]; kj++) {
+                    int target = position[columns[kj]];
+                    if (target >= 0) {
+                        values[target] -= factor * values[kj];
+                    }
+                }
+            }
+            if (Math.abs(values[diagonal[i]]) < PIVOT_TOLERANCE * Math.abs(original)) {
+                values[diagonal[i]] = PIVOT_TOLERANCE * original;
+            }
+            for (int entry = rowStart[i]; entry < rowStart[i + 1]; entry++) {
+                position[columns[entry]] = -1;
+            }
+        }
+    }
+
+    /**
+     * Solves L U z = r
+     *
+     * @param r right hand side
+     * @param z vector the solution is written to, it may be r
+     */
+    void solve(double[] r, double[] z) {
+        int n = diagonal.length;
+        for (int i = 0; i < n; i++) {
+            double sum = r[i];
+            for (int entry = rowStart[i]; entry < diagonal[i]; entry++) {
+                sum -= values[entry] * z[columns[entry]];
+            }
+            z[i] = sum;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = z[i];
+            for (int entry = diagonal[i] + 1; entry < rowStart[i + 1]; entry++) {
+                sum -= values[entry] * z[columns[entry]];
+            }
+            z[i] = sum / values[diagonal[i]];
+        }
+    }
+}
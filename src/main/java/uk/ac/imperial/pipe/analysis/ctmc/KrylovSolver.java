@@ -0,0 +1,271 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import java.util.Arrays;
+
+/**
+ * Krylov subspace solvers for the homogeneous system Q^T pi = 0, right preconditioned by ILU(0).
+ * <p>
+ * Both solvers start from the current iterate and drive the residual -Q^T x towards zero. Their
+ * convergence measure is the two norm of the residual relative to the norm of the iterate times
+ * the largest exit rate, so it does not depend on the scale of the rates. Every work vector is
+ * allocated once per solve, and the matrix vector products, dot products and vector updates run in
+ * parallel through the {@link VectorKernels}, leaving only the triangular solves of the
+ * preconditioner sequential.
+ * </p>
+ */
+final class KrylovSolver {
+    /**
+     * Transpose of the generator
+     */
+    private final SparseMatrix transposed;
+
+    /**
+     * Preconditioner of the transposed generator
+     */
+    private final IncompleteLU preconditioner;
+
+    /**
+     * Kernels used for vector operations
+     */
+    private final VectorKernels kernels;
+
+    /**
+     * Scale of the matrix used to make the residual relative
+     */
+    private final double scale;
+
+    /**
+     * Tolerance of the relative residual
+     */
+    private final double tolerance;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int maxIterations;
+
+    /**
+     * Relative residual after each iteration
+     */
+    private final ConvergenceHistory history;
+
+    /**
+     * Constructor
+     *
+     * @param transposed     transpose of the generator
+     * @param maximumExitRate largest exit rate of the chain
+     * @param kernels        kernels used for vector operations
+     * @param tolerance      tolerance of the relative residual
+     * @param maxIterations  maximum number of iterations
+     * @param history        relative residual after each iteration
+     */
+    KrylovSolver(SparseMatrix transposed, double maximumExitRate, VectorKernels kernels, double tolerance,
+                 int maxIterations, ConvergenceHistory history) {
+        this.transposed = transposed;
+        this.kernels = kernels;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.history = history;
+        scale = maximumExitRate > 0 ? maximumExitRate : 1;
+        preconditioner = new IncompleteLU(transposed);
+    }
+
+    /**
+     * @param x vector
+     * @return two norm of the vector
+     */
+    private double norm(double[] x) {
+        return Math.sqrt(kernels.dot(x, x));
+    }
+
+    /**
+     * Writes the residual -Q^T x
+     *
+     * @param x iterate
+     * @param r vector the residual is written to
+     * @return relative residual
+     */
+    private double residual(double[] x, double[] r) {
+        kernels.multiply(transposed, x, r);
+        kernels.scale(r, -1);
+        return norm(r) / (scale * norm(x));
+    }
+
+    /**
+     * Restarted GMRES with modified Gram-Schmidt orthogonalisation and Givens rotations
+     *
+     * @param x       initial iterate, updated in place
+     * @param restart dimension of the Krylov subspace before restarting
+     * @return true if the relative residual fell below the tolerance
+     */
+    boolean gmres(double[] x, int restart) {
+        int n = x.length;
+        int m = Math.min(restart, n);
+        double[][] basis = new double[m + 1][n];
+        double[][] hessenberg = new double[m + 1][m];
+        double[] cosines = new double[m];
+        double[] sines = new double[m];
+        double[] g = new double[m + 1];
+        double[] y = new double[m];
+        double[] w = new double[n];
+        double[] z = new double[n];
+
+        while (true) {
+            if (residual(x, basis[0]) < tolerance) {
+                return true;
+            }
+            if (history.size() >= maxIterations) {
+                return false;
+            }
+            double xNorm = norm(x);
+            double beta = norm(basis[0]);
+            kernels.scale(basis[0], 1 / beta);
+            Arrays.fill(g, 0);
+            g[0] = beta;
+
+            int j = 0;
+            while (j < m && history.size() < maxIterations) {
+                preconditioner.solve(basis[j], z);
+                kernels.multiply(transposed, z, w);
+                for (int i = 0; i <= j; i++) {
+                    hessenberg[i][j] = kernels.dot(w, basis[i]);
+                    kernels.axpy(-hessenberg[i][j], basis[i], w);
+                }
+                double subdiagonal = norm(w);
+                hessenberg[j + 1][j] = subdiagonal;
+                if (subdiagonal > 0) {
+                    kernels.combine(1 / subdiagonal, w, 0, w, basis[j + 1]);
+                }
+                for (int i = 0; i < j; i++) {
+                    double upper = hessenberg[i][j];
+                    double lower = hessenberg[i + 1][j];
+                    hessenberg[i][j] = cosines[i] * upper + sines[i] * lower;
+                    hessenberg[i + 1][j] = -sines[i] * upper + cosines[i] * lower;
+                }
+                double radius = Math.hypot(hessenberg[j][j], hessenberg[j + 1][j]);
+                cosines[j] = radius == 0 ? 1 : hessenberg[j][j] / radius;
+                sines[j] = radius == 0 ? 0 : hessenberg[j + 1][j] / radius;
+                hessenberg[j][j] = radius;
+                hessenberg[j + 1][j] = 0;
+                g[j + 1] = -sines[j] * g[j];
+                g[j] = cosines[j] * g[j];
+                j++;
+                double measure = Math.abs(g[j]) / (scale * xNorm);
+                record(measure);
+                if (measure < tolerance || subdiagonal == 0) {
+                    break;
+                }
+            }
+
+            for (int i = j - 1; i >= 0; i--) {
+                double sum = g[i];
+                for (int k = i + 1; k < j; k++) {
+                    sum -= hessenberg[i][k] * y[k];
+                }
+                y[i] = hessenberg[i][i] == 0 ? 0 : sum / hessenberg[i][i];
+            }
+            Arrays.fill(w, 0);
+            for (int i = 0; i < j; i++) {
+                kernels.axpy(y[i], basis[i], w);
+            }
+            preconditioner.solve(w, z);
+            kernels.axpy(1, z, x);
+            normalise(x);
+        }
+    }
+
+    /**
+     * BiCGSTAB, restarted with a new shadow residual if it breaks down
+     *
+     * @param x initial iterate, updated in place
+     * @return true if the relative residual fell below the tolerance
+     */
+    boolean bicgstab(double[] x) {
+        int n = x.length;
+        double[] r = new double[n];
+        double[] shadow = new double[n];
+        double[] p = new double[n];
+        double[] v = new double[n];
+        double[] s = new double[n];
+        double[] t = new double[n];
+        double[] preconditionedP = new double[n];
+        double[] preconditionedS = new double[n];
+
+        double measure = residual(x, r);
+        boolean restart = true;
+        double rho = 1;
+        double alpha = 1;
+        double omega = 1;
+        while (measure >= tolerance) {
+            if (history.size() >= maxIterations) {
+                normalise(x);
+                return false;
+            }
+            if (restart) {
+                kernels.combine(1, r, 0, r, shadow);
+                Arrays.fill(p, 0);
+                Arrays.fill(v, 0);
+                rho = 1;
+                alpha = 1;
+                omega = 1;
+                restart = false;
+            }
+            double rhoNext = kernels.dot(shadow, r);
+            if (rhoNext == 0) {
+                measure = residual(x, r);
+                restart = true;
+                continue;
+            }
+            double beta = (rhoNext / rho) * (alpha / omega);
+            kernels.axpy(-omega, v, p);
+            kernels.combine(1, r, beta, p, p);
+            preconditioner.solve(p, preconditionedP);
+            kernels.multiply(transposed, preconditionedP, v);
+            double shadowV = kernels.dot(shadow, v);
+            if (shadowV == 0) {
+                measure = residual(x, r);
+                restart = true;
+                continue;
+            }
+            alpha = rhoNext / shadowV;
+            kernels.combine(1, r, -alpha, v, s);
+            preconditioner.solve(s, preconditionedS);
+            kernels.multiply(transposed, preconditionedS, t);
+            double tt = kernels.dot(t, t);
+            omega = tt == 0 ? 0 : kernels.dot(t, s) / tt;
+            kernels.axpy(alpha, preconditionedP, x);
+            kernels.axpy(omega, preconditionedS, x);
+            kernels.combine(1, s, -omega, t, r);
+            rho = rhoNext;
+            measure = norm(r) / (scale * norm(x));
+            record(measure);
+            if (omega == 0) {
+                restart = true;
+            }
+        }
+        normalise(x);
+        return residual(x, r) < tolerance;
+    }
+
+    /**
+     * @param measure relative residual after the latest iteration
+     * @throws IllegalStateException if the residual is not finite, which happens when the
+     *                               probabilities span more than the range of a double
+     */
+    private void record(double measure) {
+        if (Double.isNaN(measure) || Double.isInfinite(measure)) {
+            throw new IllegalStateException("Krylov solver broke down after " + history.size()
+                    + " iterations, the preconditioned iterate overflowed");
+        }
+        history.add(measure);
+    }
+
+    /**
+     * Scales the iterate so that its entries sum to one
+     *
+     * @param x iterate
+     */
+    private void normalise(double[] x) {
+        kernels.scale(x, 1 / kernels.sum(x));
+    }
+}
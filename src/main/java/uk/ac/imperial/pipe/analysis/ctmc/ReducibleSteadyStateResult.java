@@ -0,0 +1,143 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.StronglyConnectedComponents;
+import uk.ac.imperial.state.State;
+
+/**
+ * Long run distribution of a possibly reducible continuous time Markov chain calculated by a
+ * {@link ReducibleSteadyStateSolver}, along with the steady state of each bottom strongly connected
+ * component and the probability of ending up in it
+ */
+public final class ReducibleSteadyStateResult {
+    /**
+     * Generator the distribution solves
+     */
+    private final GeneratorMatrix generator;
+
+    /**
+     * Strongly connected components of the chain
+     */
+    private final StronglyConnectedComponents components;
+
+    /**
+     * Component index of each bottom component
+     */
+    private final int[] bottomComponents;
+
+    /**
+     * Steady state of each bottom component, over the rows of its restricted generator
+     */
+    private final SteadyStateResult[] componentResults;
+
+    /**
+     * Probability of ending up in each bottom component
+     */
+    private final double[] componentProbabilities;
+
+    /**
+     * Long run probability of each row of the generator
+     */
+    private final double[] distribution;
+
+    /**
+     * Constructor
+     *
+     * @param generator              generator the distribution solves
+     * @param components             strongly connected components of the chain
+     * @param bottomComponents       component index of each bottom component
+     * @param componentResults       steady state of each bottom component
+     * @param componentProbabilities probability of ending up in each bottom component
+     * @param distribution           long run probability of each row of the generator
+     */
+    ReducibleSteadyStateResult(GeneratorMatrix generator, StronglyConnectedComponents components,
+                               int[] bottomComponents, SteadyStateResult[] componentResults,
+                               double[] componentProbabilities, double[] distribution) {
+        this.generator = generator;
+        this.components = components;
+        this.bottomComponents = bottomComponents;
+        this.componentResults = componentResults;
+        this.componentProbabilities = componentProbabilities;
+        this.distribution = distribution;
+    }
+
+    /**
+     * @return generator the distribution solves
+     */
+    public GeneratorMatrix getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return strongly connected components of the chain, over the rows of the generator
+     */
+    public StronglyConnectedComponents getComponents() {
+        return components;
+    }
+
+    /**
+     * @return number of bottom components, the closed classes of the chain
+     */
+    public int getBottomComponentCount() {
+        return bottomComponents.length;
+    }
+
+    /**
+     * @param bottom bottom component number, from 0 to {@link #getBottomComponentCount()}
+     * @return rows of the generator in the bottom component in ascending order
+     */
+    public int[] getBottomComponentStates(int bottom) {
+        return components.getComponentStates(bottomComponents[bottom]);
+    }
+
+    /**
+     * @param bottom bottom component number
+     * @return probability that the chain ends up in the bottom component
+     */
+    public double getComponentProbability(int bottom) {
+        return componentProbabilities[bottom];
+    }
+
+    /**
+     * @param bottom bottom component number
+     * @return steady state of the chain restricted to the bottom component
+     */
+    public SteadyStateResult getComponentResult(int bottom) {
+        return componentResults[bottom];
+    }
+
+    /**
+     * @return true if the steady state of every bottom component converged
+     */
+    public boolean isConverged() {
+        for (SteadyStateResult result : componentResults) {
+            if (!result.isConverged()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return long run probability of each row of the generator, zero for transient states
+     */
+    public double[] getDistribution() {
+        return distribution.clone();
+    }
+
+    /**
+     * @param index row of the generator
+     * @return long run probability of the state
+     */
+    public double getProbability(int index) {
+        return distribution[index];
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return long run probability of the state, zero if it is not a tangible reachable state
+     */
+    public double getProbability(State state) {
+        int index = generator.getRow(state);
+        return index < 0 ? 0 : distribution[index];
+    }
+}
@@ -0,0 +1,133 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.StronglyConnectedComponents;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+/**
+ * Calculates the long run distribution of a continuous time Markov chain that need not be
+ * irreducible, from a given initial distribution.
+ * <p>
+ * The chain is decomposed into strongly connected components. Each bottom component is a closed
+ * class, which is irreducible on its own, so its steady state is found by a {@link SteadyStateSolver}
+ * applied to the generator restricted to it. The probability of ending up in each bottom component
+ * is the initial probability of the component plus the flow into it from the transient states,
+ * weighted by the expected time the chain spends in each transient state, which solves a linear
+ * system over the transient block of the generator. The long run distribution is the steady state
+ * of each bottom component scaled by the probability of ending up in it.
+ * </p>
+ */
+public final class ReducibleSteadyStateSolver {
+    /**
+     * Solver applied to each bottom component
+     */
+    private final SteadyStateSolver componentSolver;
+
+    /**
+     * Tolerance of the relative change between iterations of the transient block solve
+     */
+    private final double tolerance;
+
+    /**
+     * Maximum number of iterations of the transient block solve
+     */
+    private final int maxIterations;
+
+    /**
+     * Constructor using the default tolerance and iteration limit for the transient block
+     *
+     * @param componentSolver solver applied to each bottom component
+     */
+    public ReducibleSteadyStateSolver(SteadyStateSolver componentSolver) {
+        this(componentSolver, SteadyStateSolver.DEFAULT_TOLERANCE, SteadyStateSolver.DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param componentSolver solver applied to each bottom component
+     * @param tolerance       tolerance of the relative change between iterations of the transient
+     *                        block solve
+     * @param maxIterations   maximum number of iterations of the transient block solve
+     */
+    public ReducibleSteadyStateSolver(SteadyStateSolver componentSolver, double tolerance, int maxIterations) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Maximum number of iterations must be at least 1: " + maxIterations);
+        }
+        this.componentSolver = componentSolver;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Explores the tangible state space reachable from the current marking of the Petri net,
+     * builds its generator and solves it from the initial distribution
+     *
+     * @param petriNet Petri net to analyse
+     * @return long run distribution over the tangible states
+     */
+    public ReducibleSteadyStateResult solve(PetriNet petriNet) {
+        return solve(new GeneratorMatrix(new TangibleReachabilityExplorer(new CompiledPetriNet(petriNet)).explore()));
+    }
+
+    /**
+     * Solves the chain from the initial distribution of its tangible reachability graph
+     *
+     * @param generator generator matrix Q
+     * @return long run distribution
+     */
+    public ReducibleSteadyStateResult solve(GeneratorMatrix generator) {
+        return solve(generator, generator.getInitialDistribution());
+    }
+
+    /**
+     * Solves the chain from an initial distribution
+     *
+     * @param generator generator matrix Q
+     * @param initial   initial probability of each row of the generator
+     * @return long run distribution
+     */
+    public ReducibleSteadyStateResult solve(GeneratorMatrix generator, double[] initial) {
+        int n = generator.getSize();
+        if (initial.length != n) {
+            throw new IllegalArgumentException("Initial distribution has " + initial.length + " entries for " + n
+                    + " states");
+        }
+        StronglyConnectedComponents components = new StronglyConnectedComponents(generator.getTransitionGraph());
+        int[] bottomComponents = components.getBottomComponents();
+        int[] bottomNumber = new int[components.getComponentCount()];
+        for (int bottom = 0; bottom < bottomComponents.length; bottom++) {
+            bottomNumber[bottomComponents[bottom]] = bottom;
+        }
+
+        double[] probabilities = new double[bottomComponents.length];
+        for (int row = 0; row < n; row++) {
+            if (components.isRecurrent(row)) {
+                probabilities[bottomNumber[components.getComponent(row)]] += initial[row];
+            }
+        }
+        TransientBlock block = new TransientBlock(generator, components, tolerance, maxIterations);
+        if (block.getSize() > 0) {
+            double[] flow = block.getExitFlow(block.getOccupancy(block.restrict(initial)));
+            for (int bottom = 0; bottom < bottomComponents.length; bottom++) {
+                probabilities[bottom] += flow[bottomComponents[bottom]];
+            }
+        }
+
+        SteadyStateResult[] componentResults = new SteadyStateResult[bottomComponents.length];
+        double[] distribution = new double[n];
+        for (int bottom = 0; bottom < bottomComponents.length; bottom++) {
+            int[] rows = components.getComponentStates(bottomComponents[bottom]);
+            componentResults[bottom] = componentSolver.solve(generator.restrict(rows));
+            for (int i = 0; i < rows.length; i++) {
+                distribution[rows[i]] = probabilities[bottom] * componentResults[bottom].getProbability(i);
+            }
+        }
+        return new ReducibleSteadyStateResult(generator, components, bottomComponents, componentResults,
+                probabilities, distribution);
+    }
+}
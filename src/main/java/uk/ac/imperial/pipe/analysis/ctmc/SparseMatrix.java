@@ -0,0 +1,176 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+/**
+ * Immutable sparse matrix in compressed sparse row form.
+ * <p>
+ * The entries of each row are stored in ascending column order in primitive arrays, so a matrix
+ * with hundreds of millions of non zeros needs no object per entry.
+ * </p>
+ */
+public final class SparseMatrix {
+    /**
+     * Number of rows
+     */
+    private final int rowCount;
+
+    /**
+     * Number of columns
+     */
+    private final int columnCount;
+
+    /**
+     * Start offsets into the entry arrays for each row, of length row count + 1
+     */
+    private final int[] rowStart;
+
+    /**
+     * Column of each entry
+     */
+    private final int[] columns;
+
+    /**
+     * Value of each entry
+     */
+    private final double[] values;
+
+    /**
+     * Constructor, the arrays are not copied and must not be modified afterwards
+     *
+     * @param rowCount    number of rows
+     * @param columnCount number of columns
+     * @param rowStart    start offsets into the entry arrays for each row, of length row count + 1
+     * @param columns     column of each entry, ascending within each row
+     * @param values      value of each entry
+     */
+    public SparseMatrix(int rowCount, int columnCount, int[] rowStart, int[] columns, double[] values) {
+        if (rowStart.length != rowCount + 1 || columns.length != values.length
+                || rowStart[rowCount] != columns.length) {
+            throw new IllegalArgumentException("Inconsistent compressed sparse row arrays");
+        }
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    public int getNonZeroCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param row row index
+     * @return offset of the first entry of the row, the entries of the row end at the first entry
+     *         of the next row
+     */
+    public int getRowStart(int row) {
+        return rowStart[row];
+    }
+
+    /**
+     * @param entry entry offset
+     * @return column of the entry
+     */
+    public int getColumn(int entry) {
+        return columns[entry];
+    }
+
+    /**
+     * @param entry entry offset
+     * @return value of the entry
+     */
+    public double getValue(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * @param row    row index
+     * @param column column index
+     * @return value at the row and column, zero if no entry is stored
+     */
+    public double get(int row, int column) {
+        int low = rowStart[row];
+        int high = rowStart[row + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (columns[middle] < column) {
+                low = middle + 1;
+            } else if (columns[middle] > column) {
+                high = middle - 1;
+            } else {
+                return values[middle];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Calculates y = A x
+     *
+     * @param x vector of length column count
+     * @param y vector of length row count the result is written to
+     */
+    public void multiply(double[] x, double[] y) {
+        multiply(x, y, 0, rowCount);
+    }
+
+    /**
+     * Calculates the rows of y = A x in a range
+     *
+     * @param x    vector of length column count
+     * @param y    vector of length row count the result is written to
+     * @param from first row to calculate
+     * @param to   row after the last row to calculate
+     */
+    public void multiply(double[] x, double[] y, int from, int to) {
+        for (int row = from; row < to; row++) {
+            double sum = 0;
+            for (int entry = rowStart[row]; entry < rowStart[row + 1]; entry++) {
+                sum += values[entry] * x[columns[entry]];
+            }
+            y[row] = sum;
+        }
+    }
+
+    /**
+     * @return the transpose of this matrix
+     */
+    public SparseMatrix transpose() {
+        int[] transposedStart = new int[columnCount + 1];
+        for (int column : columns) {
+            transposedStart[column + 1]++;
+        }
+        for (int column = 0; column < columnCount; column++) {
+            transposedStart[column + 1] += transposedStart[column];
+        }
+        int[] fill = new int[columnCount];
+        System.arraycopy(transposedStart, 0, fill, 0, columnCount);
+        int[] transposedColumns = new int[columns.length];
+        double[] transposedValues = new double[values.length];
+        for (int row = 0; row < rowCount; row++) {
+            for (int entry = rowStart[row]; entry < rowStart[row + 1]; entry++) {
+                int position = fill[columns[entry]]++;
+                transposedColumns[position] = row;
+                transposedValues[position] = values[entry];
+            }
+        }
+        return new SparseMatrix(columnCount, rowCount, transposedStart, transposedColumns, transposedValues);
+    }
+}
@@ -0,0 +1,43 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+/**
+ * Iterative methods a {@link SteadyStateSolver} can use to solve pi Q = 0
+ */
+public enum SteadyStateMethod {
+    /**
+     * Power method on the uniformised chain, slow but converges for any chain with an aperiodic
+     * uniformisation, including chains with absorbing states
+     */
+    POWER,
+
+    /**
+     * Jacobi iteration, every state is updated from the previous iterate in parallel
+     */
+    JACOBI,
+
+    /**
+     * Gauss-Seidel iteration, states are updated in place in index order on a single thread
+     */
+    GAUSS_SEIDEL,
+
+    /**
+     * Successive over-relaxation, Gauss-Seidel extrapolated by the relaxation factor
+     */
+    SOR,
+
+    /**
+     * Block Jacobi iteration, the states are split into one contiguous block per thread and each
+     * block is swept with Gauss-Seidel using the previous iterate for states of other blocks
+     */
+    BLOCK_JACOBI,
+
+    /**
+     * Restarted GMRES right preconditioned by ILU(0), which keeps a basis of 30 vectors
+     */
+    GMRES,
+
+    /**
+     * BiCGSTAB right preconditioned by ILU(0), which needs only eight work vectors
+     */
+    BICGSTAB
+}
@@ -0,0 +1,140 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.state.State;
+
+/**
+ * Steady state distribution calculated by a {@link SteadyStateSolver}, along with telemetry
+ * describing how the solver converged
+ */
+public final class SteadyStateResult {
+    /**
+     * Generator the distribution solves
+     */
+    private final GeneratorMatrix generator;
+
+    /**
+     * Method used
+     */
+    private final SteadyStateMethod method;
+
+    /**
+     * Probability of each state indexed by state index
+     */
+    private final double[] distribution;
+
+    /**
+     * Convergence measure after each iteration
+     */
+    private final double[] convergenceHistory;
+
+    /**
+     * True if the convergence measure fell below the tolerance
+     */
+    private final boolean converged;
+
+    /**
+     * Largest absolute entry of pi Q
+     */
+    private final double residual;
+
+    /**
+     * Time taken to solve in nanoseconds
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Constructor
+     *
+     * @param generator          generator the distribution solves
+     * @param method             method used
+     * @param distribution       probability of each state indexed by state index
+     * @param convergenceHistory convergence measure after each iteration
+     * @param converged          true if the convergence measure fell below the tolerance
+     * @param residual           largest absolute entry of pi Q
+     * @param elapsedNanos       time taken to solve in nanoseconds
+     */
+    SteadyStateResult(GeneratorMatrix generator, SteadyStateMethod method, double[] distribution,
+                      double[] convergenceHistory, boolean converged, double residual, long elapsedNanos) {
+        this.generator = generator;
+        this.method = method;
+        this.distribution = distribution;
+        this.convergenceHistory = convergenceHistory;
+        this.converged = converged;
+        this.residual = residual;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return generator the distribution solves
+     */
+    public GeneratorMatrix getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return method used
+     */
+    public SteadyStateMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @return probability of each state indexed by the state indices of the tangible reachability graph
+     */
+    public double[] getDistribution() {
+        return distribution.clone();
+    }
+
+    /**
+     * @param index state index
+     * @return steady state probability of the state
+     */
+    public double getProbability(int index) {
+        return distribution[index];
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return steady state probability of the state, zero if it is not a tangible reachable state
+     */
+    public double getProbability(State state) {
+        int index = generator.getRow(state);
+        return index < 0 ? 0 : distribution[index];
+    }
+
+    /**
+     * @return number of iterations performed
+     */
+    public int getIterations() {
+        return convergenceHistory.length;
+    }
+
+    /**
+     * @return convergence measure after each iteration, the relative change of the iterate for the
+     *         stationary methods and the relative residual norm for the Krylov methods
+     */
+    public double[] getConvergenceHistory() {
+        return convergenceHistory.clone();
+    }
+
+    /**
+     * @return true if the convergence measure fell below the tolerance
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * @return largest absolute entry of pi Q for the returned distribution
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return time taken to solve in milliseconds
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+}
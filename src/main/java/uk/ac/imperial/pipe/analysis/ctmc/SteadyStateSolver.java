@@ -0,0 +1,390 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the steady state distribution pi of a continuous time Markov chain, the solution of
+ * pi Q = 0 whose entries sum to one, with an iterative {@link SteadyStateMethod}.
+ * <p>
+ * The solvers work on the transpose of the generator so that each entry of the new iterate is a
+ * row of a compressed sparse row matrix times the old iterate. The iterate is normalised after
+ * every iteration and the solver stops once the largest change of an entry, relative to the
+ * largest entry, falls below the tolerance. The residual pi Q of the final iterate is reported
+ * alongside the distribution.
+ * </p>
+ * <p>
+ * GMRES and BiCGSTAB are Krylov subspace methods preconditioned by an incomplete LU factorisation,
+ * which converge far faster than the stationary methods on stiff chains whose rates span many
+ * orders of magnitude. Their convergence measure is the residual relative to the largest exit rate.
+ * </p>
+ * <p>
+ * The chain should be irreducible, except for the power method which also handles chains whose
+ * states all lead to a single absorbing state or closed class. The other methods divide by the
+ * exit rate of every state and so reject chains with absorbing states.
+ * </p>
+ */
+public final class SteadyStateSolver {
+    /**
+     * Default tolerance of the relative change between iterations
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    /**
+     * Default maximum number of iterations
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 100000;
+
+    /**
+     * Factor by which the uniformisation rate of the power method exceeds the largest exit rate,
+     * which keeps the uniformised chain aperiodic
+     */
+    private static final double UNIFORMISATION_FACTOR = 1.02;
+
+    /**
+     * Dimension of the Krylov subspace GMRES builds before restarting
+     */
+    private static final int GMRES_RESTART = 30;
+
+    /**
+     * Method used to solve
+     */
+    private final SteadyStateMethod method;
+
+    /**
+     * Tolerance of the relative change between iterations
+     */
+    private final double tolerance;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int maxIterations;
+
+    /**
+     * Relaxation factor of the Jacobi, SOR and block Jacobi methods
+     */
+    private final double relaxation;
+
+    /**
+     * Number of worker threads
+     */
+    private final int parallelism;
+
+    /**
+     * Constructor using the default tolerance, iteration limit and relaxation factor with one
+     * thread per available processor
+     *
+     * @param method method used to solve
+     */
+    public SteadyStateSolver(SteadyStateMethod method) {
+        this(method, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor using the default relaxation factor of the method, which damps Jacobi by 0.9 so
+     * that it converges on periodic chains and over-relaxes SOR by 1.2
+     *
+     * @param method        method used to solve
+     * @param tolerance     tolerance of the relative change between iterations
+     * @param maxIterations maximum number of iterations
+     * @param parallelism   number of worker threads
+     */
+    public SteadyStateSolver(SteadyStateMethod method, double tolerance, int maxIterations, int parallelism) {
+        this(method, tolerance, maxIterations, getDefaultRelaxation(method), parallelism);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param method        method used to solve
+     * @param tolerance     tolerance of the relative change between iterations
+     * @param maxIterations maximum number of iterations
+     * @param relaxation    relaxation factor between 0 and 2 of the Jacobi, SOR and block Jacobi
+     *                      methods, ignored by the others
+     * @param parallelism   number of worker threads
+     */
+    public SteadyStateSolver(SteadyStateMethod method, double tolerance, int maxIterations, double relaxation,
+                             int parallelism) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("Maximum number of iterations must be at least 1: " + maxIterations);
+        }
+        if (!(relaxation > 0 && relaxation < 2)) {
+            throw new IllegalArgumentException("Relaxation factor must be between 0 and 2: " + relaxation);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.method = method;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.relaxation = relaxation;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param method steady state method
+     * @return default relaxation factor of the method
+     */
+    private static double getDefaultRelaxation(SteadyStateMethod method) {
+        switch (method) {
+            case JACOBI:
+                return 0.9;
+            case SOR:
+                return 1.2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Explores the tangible state space reachable from the current marking of the Petri net,
+     * builds its generator and solves it
+     *
+     * @param petriNet Petri net to analyse
+     * @return steady state distribution over the tangible states
+     */
+    public SteadyStateResult solve(PetriNet petriNet) {
+        return solve(new GeneratorMatrix(
+                new TangibleReachabilityExplorer(new CompiledPetriNet(petriNet), parallelism).explore()));
+    }
+
+    /**
+     * Solves pi Q = 0
+     *
+     * @param generator generator matrix Q
+     * @return steady state distribution
+     * @throws IllegalArgumentException if the method needs every state to have a positive exit rate
+     *                                  and one does not
+     */
+    public SteadyStateResult solve(GeneratorMatrix generator) {
+        long start = System.nanoTime();
+        int n = generator.getSize();
+        if (method != SteadyStateMethod.POWER && n > 1) {
+            for (int row = 0; row < n; row++) {
+                if (generator.isAbsorbing(row)) {
+                    throw new IllegalArgumentException("State " + row + " is absorbing, which " + method
+                            + " cannot solve. Use the power method or solve each closed class separately");
+                }
+            }
+        }
+        try (VectorKernels kernels = new VectorKernels(parallelism)) {
+            SparseMatrix transposed = generator.getMatrix().transpose();
+            ConvergenceHistory history = new ConvergenceHistory();
+            double[] x = new double[n];
+            Arrays.fill(x, 1.0 / n);
+            boolean converged = n <= 1;
+            if (!converged && (method == SteadyStateMethod.GMRES || method == SteadyStateMethod.BICGSTAB)) {
+                KrylovSolver krylov = new KrylovSolver(transposed, generator.getMaximumExitRate(), kernels, tolerance,
+                        maxIterations, history);
+                converged = method == SteadyStateMethod.GMRES ? krylov.gmres(x, GMRES_RESTART) : krylov.bicgstab(x);
+            } else if (!converged) {
+                Iteration iteration = new Iteration(generator, transposed, x, kernels);
+                while (!converged && history.size() < maxIterations) {
+                    double change = iteration.step();
+                    if (Double.isNaN(change) || Double.isInfinite(change)) {
+                        throw new IllegalStateException(method + " diverged after " + history.size() + " iterations");
+                    }
+                    history.add(change);
+                    converged = change < tolerance;
+                }
+                x = iteration.x;
+            }
+            double[] residual = new double[n];
+            kernels.multiply(transposed, x, residual);
+            return new SteadyStateResult(generator, method, x, history.toArray(), converged, kernels.normInf(residual),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * State of the iteration of a single solve
+     */
+    private final class Iteration {
+        /**
+         * Transpose of the generator
+         */
+        private final SparseMatrix transposed;
+
+        /**
+         * Diagonal of the generator
+         */
+        private final double[] diagonal;
+
+        /**
+         * Kernels used for vector operations
+         */
+        private final VectorKernels kernels;
+
+        /**
+         * Current iterate
+         */
+        private double[] x;
+
+        /**
+         * Work vector of the same length as the iterate
+         */
+        private double[] work;
+
+        /**
+         * Uniformisation rate of the power method
+         */
+        private final double uniformisationRate;
+
+        /**
+         * Constructor
+         * @param generator  generator matrix
+         * @param transposed transpose of the generator
+         * @param initial    initial iterate, which may be updated in place
+         * @param kernels    kernels used for vector operations
+         */
+        private Iteration(GeneratorMatrix generator, SparseMatrix transposed, double[] initial,
+                          VectorKernels kernels) {
+            this.kernels = kernels;
+            this.transposed = transposed;
+            int n = generator.getSize();
+            diagonal = new double[n];
+            for (int row = 0; row < n; row++) {
+                diagonal[row] = generator.getDiagonal(row);
+            }
+            x = initial;
+            work = new double[n];
+            double maximumExitRate = generator.getMaximumExitRate();
+            uniformisationRate = maximumExitRate > 0 ? maximumExitRate * UNIFORMISATION_FACTOR : 1;
+        }
+
+        /**
+         * Performs one iteration of the method
+         *
+         * @return largest change of an entry relative to the largest entry
+         */
+        private double step() {
+            switch (method) {
+                case POWER:
+                    return power();
+                case JACOBI:
+                    return jacobi();
+                case GAUSS_SEIDEL:
+                    return gaussSeidel(1);
+                case SOR:
+                    return gaussSeidel(relaxation);
+                case BLOCK_JACOBI:
+                    return blockJacobi();
+                case GMRES:
+                case BICGSTAB:
+                default:
+                    throw new IllegalStateException("Unsupported method " + method);
+            }
+        }
+
+        /**
+         * x = x (I + Q / rate)
+         *
+         * @return relative change
+         */
+        private double power() {
+            kernels.multiply(transposed, x, work);
+            kernels.axpy(1 / uniformisationRate, work, x);
+            normalise();
+            return kernels.normInf(work) / uniformisationRate / kernels.normInf(x);
+        }
+
+        /**
+         * Damped Jacobi iteration into the work vector, which then becomes the iterate
+         *
+         * @return relative change
+         */
+        private double jacobi() {
+            final double[] previous = x;
+            final double[] next = work;
+            kernels.forEachChunk(previous.length, new VectorKernels.RangeAction() {
+                @Override
+                public void run(int chunk, int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        double offDiagonal = 0;
+                        for (int entry = transposed.getRowStart(i); entry < transposed.getRowStart(i + 1); entry++) {
+                            int j = transposed.getColumn(entry);
+                            if (j != i) {
+                                offDiagonal += transposed.getValue(entry) * previous[j];
+                            }
+                        }
+                        next[i] = (1 - relaxation) * previous[i] - relaxation * offDiagonal / diagonal[i];
+                    }
+                }
+            });
+            x = next;
+            work = previous;
+            normalise();
+            return kernels.distanceInf(x, work) / kernels.normInf(x);
+        }
+
+        /**
+         * Gauss-Seidel sweep updating the iterate in place
+         *
+         * @param omega relaxation factor
+         * @return relative change
+         */
+        private double gaussSeidel(double omega) {
+            System.arraycopy(x, 0, work, 0, x.length);
+            sweep(0, x.length, x, x, omega);
+            normalise();
+            return kernels.distanceInf(x, work) / kernels.normInf(x);
+        }
+
+        /**
+         * Sweeps each block with Gauss-Seidel in parallel, reading the previous iterate for states
+         * outside the block
+         *
+         * @return relative change
+         */
+        private double blockJacobi() {
+            System.arraycopy(x, 0, work, 0, x.length);
+            final double[] current = x;
+            final double[] previous = work;
+            kernels.forEachChunk(x.length, new VectorKernels.RangeAction() {
+                @Override
+                public void run(int chunk, int from, int to) {
+                    sweep(from, to, current, previous, relaxation);
+                }
+            });
+            normalise();
+            return kernels.distanceInf(x, work) / kernels.normInf(x);
+        }
+
+        /**
+         * Relaxed Gauss-Seidel sweep over a block of states
+         *
+         * @param from     first state of the block
+         * @param to       state after the last state of the block
+         * @param current  iterate updated in place
+         * @param previous previous iterate read for states outside the block
+         * @param omega    relaxation factor
+         */
+        private void sweep(int from, int to, double[] current, double[] previous, double omega) {
+            for (int i = from; i < to; i++) {
+                double offDiagonal = 0;
+                for (int entry = transposed.getRowStart(i); entry < transposed.getRowStart(i + 1); entry++) {
+                    int j = transposed.getColumn(entry);
+                    if (j != i) {
+                        double value = j >= from && j < to ? current[j] : previous[j];
+                        offDiagonal += transposed.getValue(entry) * value;
+                    }
+                }
+                current[i] = (1 - omega) * current[i] - omega * offDiagonal / diagonal[i];
+            }
+        }
+
+        /**
+         * Scales the iterate so that its entries sum to one
+         */
+        private void normalise() {
+            kernels.scale(x, 1 / kernels.sum(x));
+        }
+    }
+}
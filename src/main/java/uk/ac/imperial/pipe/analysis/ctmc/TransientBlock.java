@@ -0,0 +1,254 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.pipe.analysis.StronglyConnectedComponents;
+
+import java.util.Arrays;
+
+/**
+ * Restriction Q_TT of a generator to its transient states, the states outside every closed class,
+ * the rates at which they leave for each closed class, and the linear systems over them that
+ * describe how the chain leaves the block.
+ * <p>
+ * Every transient state eventually leads out of the block, so -Q_TT and its transpose are
+ * nonsingular M-matrices and Gauss-Seidel, a regular splitting of them, converges from any start.
+ * </p>
+ */
+final class TransientBlock {
+    /**
+     * Strongly connected components of the chain
+     */
+    private final StronglyConnectedComponents components;
+
+    /**
+     * Rows of the transient states in the generator in ascending order
+     */
+    private final int[] transientRows;
+
+    /**
+     * Generator restricted to the transient states
+     */
+    private final GeneratorMatrix block;
+
+    /**
+     * Index of the first exit of each transient state into a closed class, with a trailing end marker
+     */
+    private final int[] exitStart;
+
+    /**
+     * Component index of the closed class each exit enters
+     */
+    private final int[] exitComponent;
+
+    /**
+     * Rate of each exit
+     */
+    private final double[] exitRate;
+
+    /**
+     * Tolerance of the relative change between iterations
+     */
+    private final double tolerance;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int maxIterations;
+
+    /**
+     * Constructor
+     *
+     * @param generator     generator of the whole chain
+     * @param components    strongly connected components of the chain
+     * @param tolerance     tolerance of the relative change between iterations
+     * @param maxIterations maximum number of iterations
+     */
+    TransientBlock(GeneratorMatrix generator, StronglyConnectedComponents components, double tolerance,
+                   int maxIterations) {
+        this.components = components;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        int n = generator.getSize();
+        int transientCount = 0;
+        for (int row = 0; row < n; row++) {
+            if (!components.isRecurrent(row)) {
+                transientCount++;
+            }
+        }
+        transientRows = new int[transientCount];
+        int next = 0;
+        for (int row = 0; row < n; row++) {
+            if (!components.isRecurrent(row)) {
+                transientRows[next++] = row;
+            }
+        }
+        block = generator.restrict(transientRows);
+
+        SparseMatrix q = generator.getMatrix();
+        exitStart = new int[transientCount + 1];
+        for (int i = 0; i < transientCount; i++) {
+            int exits = 0;
+            for (int entry = q.getRowStart(transientRows[i]); entry < q.getRowStart(transientRows[i] + 1); entry++) {
+                if (components.isRecurrent(q.getColumn(entry))) {
+                    exits++;
+                }
+            }
+            exitStart[i + 1] = exitStart[i] + exits;
+        }
+        exitComponent = new int[exitStart[transientCount]];
+        exitRate = new double[exitComponent.length];
+        next = 0;
+        for (int i = 0; i < transientCount; i++) {
+            for (int entry = q.getRowStart(transientRows[i]); entry < q.getRowStart(transientRows[i] + 1); entry++) {
+                int column = q.getColumn(entry);
+                if (components.isRecurrent(column)) {
+                    exitComponent[next] = components.getComponent(column);
+                    exitRate[next++] = q.getValue(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of transient states
+     */
+    int getSize() {
+        return transientRows.length;
+    }
+
+    /**
+     * @return rows of the transient states in the generator in ascending order, not to be modified
+     */
+    int[] getTransientRows() {
+        return transientRows;
+    }
+
+    /**
+     * @param row row of the generator
+     * @return index of the row in the block, or -1 if the state is recurrent
+     */
+    int getBlockRow(int row) {
+        int index = Arrays.binarySearch(transientRows, row);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param values value of each row of the generator
+     * @return values of the transient states in block order
+     */
+    double[] restrict(double[] values) {
+        double[] restricted = new double[transientRows.length];
+        for (int i = 0; i < transientRows.length; i++) {
+            restricted[i] = values[transientRows[i]];
+        }
+        return restricted;
+    }
+
+    /**
+     * @param component component index of a closed class
+     * @return total rate from each transient state into the class in block order
+     */
+    double[] getExitRates(int component) {
+        double[] rates = new double[transientRows.length];
+        for (int i = 0; i < transientRows.length; i++) {
+            for (int exit = exitStart[i]; exit < exitStart[i + 1]; exit++) {
+                if (exitComponent[exit] == component) {
+                    rates[i] += exitRate[exit];
+                }
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * @param occupancy expected time spent in each transient state in block order
+     * @return expected flow into each component of the chain, which is zero for transient components
+     */
+    double[] getExitFlow(double[] occupancy) {
+        double[] flow = new double[components.getComponentCount()];
+        for (int i = 0; i < transientRows.length; i++) {
+            for (int exit = exitStart[i]; exit < exitStart[i + 1]; exit++) {
+                flow[exitComponent[exit]] += occupancy[i] * exitRate[exit];
+            }
+        }
+        return flow;
+    }
+
+    /**
+     * Solves x (-Q_TT) = initial, whose entries are the expected total time spent in each
+     * transient state before the chain leaves the block
+     *
+     * @param initial initial probability of each transient state in block order
+     * @return expected time spent in each transient state in block order
+     * @throws IllegalStateException if the iteration does not converge
+     */
+    double[] getOccupancy(double[] initial) {
+        return solve(block.getMatrix().transpose(), initial, false);
+    }
+
+    /**
+     * Solves Q_TT t = -1, whose entries are the expected time until the chain leaves the block
+     * from each transient state
+     *
+     * @return expected time to leave the block from each transient state in block order
+     * @throws IllegalStateException if the iteration does not converge
+     */
+    double[] getExitTimes() {
+        double[] ones = new double[block.getSize()];
+        Arrays.fill(ones, 1);
+        return solve(block.getMatrix(), ones, true);
+    }
+
+    /**
+     * Solves Q_TT h = -r, whose entries are the probability that the chain leaves the block for a
+     * given set of states from each transient state
+     *
+     * @param exitRates total rate from each transient state into the set in block order
+     * @return probability of leaving the block for the set from each transient state in block order
+     * @throws IllegalStateException if the iteration does not converge
+     */
+    double[] getExitProbabilities(double[] exitRates) {
+        return solve(block.getMatrix(), exitRates, true);
+    }
+
+    /**
+     * Solves a x = -b by Gauss-Seidel, where a is Q_TT or its transpose and so shares its diagonal.
+     * States are indexed in breadth first order so successors tend to follow their predecessors,
+     * and sweeping against that order for Q_TT carries values back along paths in a single sweep.
+     *
+     * @param a          matrix with the diagonal of the block
+     * @param b          right hand side
+     * @param descending true to sweep from the last state to the first
+     * @return solution
+     * @throws IllegalStateException if the iteration does not converge
+     */
+    private double[] solve(SparseMatrix a, double[] b, boolean descending) {
+        int n = block.getSize();
+        double[] x = new double[n];
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double change = 0;
+            double largest = 0;
+            for (int k = 0; k < n; k++) {
+                int i = descending ? n - 1 - k : k;
+                double sum = -b[i];
+                for (int entry = a.getRowStart(i); entry < a.getRowStart(i + 1); entry++) {
+                    int j = a.getColumn(entry);
+                    if (j != i) {
+                        sum -= a.getValue(entry) * x[j];
+                    }
+                }
+                double value = sum / block.getDiagonal(i);
+                change = Math.max(change, Math.abs(value - x[i]));
+                largest = Math.max(largest, Math.abs(value));
+                x[i] = value;
+            }
+            if (Double.isNaN(change) || Double.isInfinite(change)) {
+                throw new IllegalStateException("Transient block solve diverged after " + iteration + " iterations");
+            }
+            if (change <= tolerance * largest) {
+                return x;
+            }
+        }
+        throw new IllegalStateException("Transient block solve did not converge in " + maxIterations
+                + " iterations");
+    }
+}
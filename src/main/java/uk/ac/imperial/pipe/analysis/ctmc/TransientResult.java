@@ -0,0 +1,123 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import uk.ac.imperial.state.State;
+
+/**
+ * Distributions over the states of a continuous time Markov chain at a number of time points,
+ * calculated by a {@link TransientSolver}
+ */
+public final class TransientResult {
+    /**
+     * Generator the distributions were calculated for
+     */
+    private final GeneratorMatrix generator;
+
+    /**
+     * Time points in the order they were requested
+     */
+    private final double[] times;
+
+    /**
+     * Distribution at each time point
+     */
+    private final double[][] distributions;
+
+    /**
+     * Uniformisation rate
+     */
+    private final double uniformisationRate;
+
+    /**
+     * Number of vector matrix products performed
+     */
+    private final int iterations;
+
+    /**
+     * Iteration at which the uniformised chain was detected to be in steady state, or -1
+     */
+    private final int steadyStateIteration;
+
+    /**
+     * Constructor
+     *
+     * @param generator            generator the distributions were calculated for
+     * @param times                time points in the order they were requested
+     * @param distributions        distribution at each time point
+     * @param uniformisationRate   uniformisation rate
+     * @param iterations           number of vector matrix products performed
+     * @param steadyStateIteration iteration at which steady state was detected, or -1
+     */
+    TransientResult(GeneratorMatrix generator, double[] times, double[][] distributions, double uniformisationRate,
+                    int iterations, int steadyStateIteration) {
+        this.generator = generator;
+        this.times = times;
+        this.distributions = distributions;
+        this.uniformisationRate = uniformisationRate;
+        this.iterations = iterations;
+        this.steadyStateIteration = steadyStateIteration;
+    }
+
+    /**
+     * @return generator the distributions were calculated for
+     */
+    public GeneratorMatrix getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return time points in the order they were requested
+     */
+    public double[] getTimes() {
+        return times.clone();
+    }
+
+    /**
+     * @param timeIndex index of the time point in the order they were requested
+     * @return probability of each state at the time point indexed by state index
+     */
+    public double[] getDistribution(int timeIndex) {
+        return distributions[timeIndex].clone();
+    }
+
+    /**
+     * @param timeIndex index of the time point in the order they were requested
+     * @param index     state index
+     * @return probability of being in the state at the time point
+     */
+    public double getProbability(int timeIndex, int index) {
+        return distributions[timeIndex][index];
+    }
+
+    /**
+     * @param timeIndex index of the time point in the order they were requested
+     * @param state     state of the Petri net
+     * @return probability of being in the state at the time point, zero if it is not a tangible
+     *         reachable state
+     */
+    public double getProbability(int timeIndex, State state) {
+        int index = generator.getRow(state);
+        return index < 0 ? 0 : distributions[timeIndex][index];
+    }
+
+    /**
+     * @return uniformisation rate
+     */
+    public double getUniformisationRate() {
+        return uniformisationRate;
+    }
+
+    /**
+     * @return number of vector matrix products performed, shared by every time point
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return iteration at which the uniformised chain was detected to be in steady state, or -1
+     *         if the iterations ran to the right truncation point of the latest time
+     */
+    public int getSteadyStateIteration() {
+        return steadyStateIteration;
+    }
+}
@@ -0,0 +1,157 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+/**
+ * Calculates the distribution of a continuous time Markov chain at given times by uniformisation.
+ * <p>
+ * The chain is uniformised at a rate slightly above its largest exit rate, giving the discrete
+ * time chain P = I + Q / rate, and the distribution at time t is the sum over k of the Poisson
+ * probability of k jumps at mean rate t times the distribution after k steps of P. The sum is
+ * truncated with {@link FoxGlynn} so that the neglected Poisson probability is at most the error
+ * bound. Every requested time shares the same sequence of vector matrix products, each time
+ * adding the steps within its truncation points to its own accumulator, so many time points cost
+ * little more than the latest one.
+ * </p>
+ * <p>
+ * If steady state detection is on the iteration stops once successive vectors differ by less
+ * than a tenth of the error bound in every entry, and the Poisson weight of the remaining steps
+ * is given to the last vector. The iteration vectors are allocated once and the products and
+ * vector updates run in parallel over chunks of the states.
+ * </p>
+ */
+public final class TransientSolver {
+    /**
+     * Default bound on the neglected Poisson probability
+     */
+    public static final double DEFAULT_EPSILON = 1e-10;
+
+    /**
+     * Factor by which the uniformisation rate exceeds the largest exit rate
+     */
+    private static final double UNIFORMISATION_FACTOR = 1.02;
+
+    /**
+     * Fraction of the error bound below which successive vectors are considered equal
+     */
+    private static final double STEADY_STATE_FRACTION = 0.1;
+
+    /**
+     * Bound on the neglected Poisson probability
+     */
+    private final double epsilon;
+
+    /**
+     * True if the iteration stops once the vectors reach steady state
+     */
+    private final boolean detectSteadyState;
+
+    /**
+     * Number of worker threads
+     */
+    private final int parallelism;
+
+    /**
+     * Constructor using the default error bound with steady state detection and one thread per
+     * available processor
+     */
+    public TransientSolver() {
+        this(DEFAULT_EPSILON, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param epsilon           bound on the neglected Poisson probability
+     * @param detectSteadyState true to stop once the vectors reach steady state
+     * @param parallelism       number of worker threads
+     */
+    public TransientSolver(double epsilon, boolean detectSteadyState, int parallelism) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("Error bound must be between 0 and 1: " + epsilon);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.epsilon = epsilon;
+        this.detectSteadyState = detectSteadyState;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Calculates the distributions starting from the initial distribution of the generator's graph
+     *
+     * @param generator generator matrix
+     * @param times     non negative time points
+     * @return distribution at each time point
+     */
+    public TransientResult solve(GeneratorMatrix generator, double... times) {
+        return solve(generator, generator.getInitialDistribution(), times);
+    }
+
+    /**
+     * Calculates the distributions starting from the initial distribution
+     *
+     * @param generator generator matrix
+     * @param initial   initial probability of every state
+     * @param times     non negative time points
+     * @return distribution at each time point
+     */
+    public TransientResult solve(GeneratorMatrix generator, double[] initial, double... times) {
+        int n = generator.getSize();
+        if (initial.length != n) {
+            throw new IllegalArgumentException("Initial distribution has " + initial.length + " entries for "
+                    + n + " states");
+        }
+        double maximumExitRate = generator.getMaximumExitRate();
+        double rate = maximumExitRate > 0 ? maximumExitRate * UNIFORMISATION_FACTOR : 1;
+        FoxGlynn[] truncations = new FoxGlynn[times.length];
+        double[][] accumulators = new double[times.length][n];
+        int lastStep = 0;
+        for (int i = 0; i < times.length; i++) {
+            if (!(times[i] >= 0) || Double.isInfinite(times[i])) {
+                throw new IllegalArgumentException("Time must be finite and non negative: " + times[i]);
+            }
+            truncations[i] = new FoxGlynn(maximumExitRate > 0 ? rate * times[i] : 0, epsilon);
+            lastStep = Math.max(lastStep, truncations[i].getRight());
+        }
+
+        try (VectorKernels kernels = new VectorKernels(parallelism)) {
+            SparseMatrix transposed = generator.getMatrix().transpose();
+            double[] vector = initial.clone();
+            double[] next = new double[n];
+            double[] work = new double[n];
+            double threshold = epsilon * STEADY_STATE_FRACTION;
+            int steadyStateIteration = -1;
+            int step = 0;
+            while (true) {
+                for (int i = 0; i < times.length; i++) {
+                    if (step >= truncations[i].getLeft() && step <= truncations[i].getRight()) {
+                        kernels.axpy(truncations[i].getWeight(step), vector, accumulators[i]);
+                    }
+                }
+                if (step == lastStep) {
+                    break;
+                }
+                kernels.multiply(transposed, vector, work);
+                kernels.combine(1, vector, 1 / rate, work, next);
+                double[] previous = vector;
+                vector = next;
+                next = previous;
+                step++;
+                if (detectSteadyState && kernels.distanceInf(vector, next) < threshold) {
+                    steadyStateIteration = step;
+                    for (int i = 0; i < times.length; i++) {
+                        double remaining = 0;
+                        for (int k = Math.max(step, truncations[i].getLeft()); k <= truncations[i].getRight(); k++) {
+                            remaining += truncations[i].getWeight(k);
+                        }
+                        if (remaining > 0) {
+                            kernels.axpy(remaining, vector, accumulators[i]);
+                        }
+                    }
+                    break;
+                }
+            }
+            return new TransientResult(generator, times.clone(), accumulators, rate, step, steadyStateIteration);
+        }
+    }
+}
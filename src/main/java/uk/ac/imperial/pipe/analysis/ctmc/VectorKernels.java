@@ -0,0 +1,333 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Primitive array kernels shared by the iterative solvers, run in parallel over contiguous chunks
+ * of a vector.
+ * <p>
+ * Vectors are split into a fixed number of chunks for a given length, and reductions add the
+ * partial result of each chunk in chunk order, so results do not depend on thread scheduling.
+ * Vectors shorter than {@link #PARALLEL_THRESHOLD} are processed on the calling thread.
+ * </p>
+ */
+final class VectorKernels implements AutoCloseable {
+    /**
+     * Length below which vectors are processed sequentially
+     */
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Number of chunks per worker thread, so that faster threads can take on more chunks
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Number of worker threads
+     */
+    private final int parallelism;
+
+    /**
+     * Pool running the chunks, null if only one thread is used
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Work done on a contiguous range of a vector
+     */
+    interface RangeAction {
+        /**
+         * @param chunk chunk index
+         * @param from  first index of the chunk
+         * @param to    index after the last index of the chunk
+         */
+        void run(int chunk, int from, int to);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param parallelism number of worker threads
+     */
+    VectorKernels(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * @param length vector length
+     * @return number of chunks a vector of the length is split into
+     */
+    int getChunkCount(int length) {
+        return pool == null || length < PARALLEL_THRESHOLD ? 1 : parallelism * CHUNKS_PER_THREAD;
+    }
+
+    /**
+     * @param length vector length
+     * @param chunks number of chunks
+     * @param chunk  chunk index
+     * @return first index of the chunk
+     */
+    static int getChunkStart(int length, int chunks, int chunk) {
+        return (int) ((long) length * chunk / chunks);
+    }
+
+    /**
+     * Runs the action on every chunk of a vector and waits for them all to finish
+     *
+     * @param length vector length
+     * @param action action to run
+     */
+    void forEachChunk(int length, RangeAction action) {
+        int chunks = getChunkCount(length);
+        if (chunks == 1) {
+            action.run(0, 0, length);
+        } else {
+            pool.invoke(new ChunkTask(length, chunks, 0, chunks, action));
+        }
+    }
+
+    /**
+     * Calculates y = A x
+     *
+     * @param matrix matrix A
+     * @param x      vector of length column count
+     * @param y      vector of length row count the result is written to
+     */
+    void multiply(final SparseMatrix matrix, final double[] x, final double[] y) {
+        forEachChunk(matrix.getRowCount(), new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                matrix.multiply(x, y, from, to);
+            }
+        });
+    }
+
+    /**
+     * @param x vector
+     * @param y vector of the same length
+     * @return dot product of the vectors
+     */
+    double dot(final double[] x, final double[] y) {
+        final double[] partial = new double[getChunkCount(x.length)];
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += x[i] * y[i];
+                }
+                partial[chunk] = sum;
+            }
+        });
+        return addInOrder(partial);
+    }
+
+    /**
+     * @param x vector
+     * @return sum of the entries of the vector
+     */
+    double sum(final double[] x) {
+        final double[] partial = new double[getChunkCount(x.length)];
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += x[i];
+                }
+                partial[chunk] = sum;
+            }
+        });
+        return addInOrder(partial);
+    }
+
+    /**
+     * @param x vector
+     * @return largest absolute entry of the vector
+     */
+    double normInf(final double[] x) {
+        final double[] partial = new double[getChunkCount(x.length)];
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                double maximum = 0;
+                for (int i = from; i < to; i++) {
+                    maximum = Math.max(maximum, Math.abs(x[i]));
+                }
+                partial[chunk] = maximum;
+            }
+        });
+        double maximum = 0;
+        for (double value : partial) {
+            maximum = Math.max(maximum, value);
+        }
+        return maximum;
+    }
+
+    /**
+     * Multiplies every entry of a vector in place
+     *
+     * @param x      vector
+     * @param factor factor to multiply by
+     */
+    void scale(final double[] x, final double factor) {
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    x[i] *= factor;
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates y = y + a x
+     *
+     * @param a factor
+     * @param x vector
+     * @param y vector updated in place
+     */
+    void axpy(final double a, final double[] x, final double[] y) {
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    y[i] += a * x[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates out = a x + b y, out may be x or y
+     *
+     * @param a   factor of x
+     * @param x   vector
+     * @param b   factor of y
+     * @param y   vector
+     * @param out vector the result is written to
+     */
+    void combine(final double a, final double[] x, final double b, final double[] y, final double[] out) {
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    out[i] = a * x[i] + b * y[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * @param x vector
+     * @param y vector of the same length
+     * @return largest absolute difference between the entries of the vectors
+     */
+    double distanceInf(final double[] x, final double[] y) {
+        final double[] partial = new double[getChunkCount(x.length)];
+        forEachChunk(x.length, new RangeAction() {
+            @Override
+            public void run(int chunk, int from, int to) {
+                double maximum = 0;
+                for (int i = from; i < to; i++) {
+                    maximum = Math.max(maximum, Math.abs(x[i] - y[i]));
+                }
+                partial[chunk] = maximum;
+            }
+        });
+        double maximum = 0;
+        for (double value : partial) {
+            maximum = Math.max(maximum, value);
+        }
+        return maximum;
+    }
+
+    /**
+     * @param values values
+     * @return sum of the values in order
+     */
+    private static double addInOrder(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * @return number of worker threads
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs an action on a range of chunks, splitting the range in half until it is a single chunk
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        /**
+         * Vector length
+         */
+        private final int length;
+
+        /**
+         * Total number of chunks
+         */
+        private final int chunks;
+
+        /**
+         * First chunk this task runs
+         */
+        private final int from;
+
+        /**
+         * Chunk after the last chunk this task runs
+         */
+        private final int to;
+
+        /**
+         * Action to run on each chunk
+         */
+        private final RangeAction action;
+
+        /**
+         * Constructor
+         * @param length vector length
+         * @param chunks total number of chunks
+         * @param from   first chunk this task runs
+         * @param to     chunk after the last chunk this task runs
+         * @param action action to run on each chunk
+         */
+        private ChunkTask(int length, int chunks, int from, int to, RangeAction action) {
+            this.length = length;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(length, chunks, from, middle, action),
+                        new ChunkTask(length, chunks, middle, to, action));
+                return;
+            }
+            action.run(from, getChunkStart(length, chunks, from), getChunkStart(length, chunks, from + 1));
+        }
+    }
+}
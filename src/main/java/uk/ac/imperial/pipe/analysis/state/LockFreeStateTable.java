@@ -0,0 +1,626 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock free open addressing hash table of encoded markings.
+ * <p>
+ * Keys are copied into an append only arena of long chunks and are identified by a dense index.
+ * Each slot of the hash table is a single long holding a 32 bit hash memo in its upper half and the
+ * index plus one in its lower half, so no objects are allocated per entry. A slot moves from empty,
+ * to busy (hash memo only, whilst the inserting thread copies its key into the arena), to its final
+ * entry. Threads looking up an equal hash wait for a busy slot to be published. Indices are only
+ * reserved by the thread that wins a slot, so they are dense.
+ * </p>
+ * <p>
+ * When the table becomes half full a table of twice the size is created and every thread that
+ * touches the old table helps to migrate it, claiming blocks of slots and marking each migrated or
+ * empty slot as moved. There is no global lock and no stop the world pause, only threads that need
+ * the new table wait for the migration they are helping with to finish.
+ * </p>
+ */
+public final class LockFreeStateTable implements StateStore {
+    /**
+     * Slot value of an empty slot
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * Slot value of a slot whose contents have been migrated to the next table
+     */
+    private static final long MOVED = -1L;
+
+    /**
+     * Mask of the index plus one in a slot, zero for a busy slot
+     */
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Number of slots a thread claims at a time when helping with a migration
+     */
+    private static final int MIGRATION_BLOCK = 1024;
+
+    /**
+     * log2 of the number of longs in an arena chunk
+     */
+    private static final int ARENA_CHUNK_BITS = 14;
+
+    /**
+     * log2 of the number of offsets in an offset chunk
+     */
+    private static final int OFFSET_CHUNK_BITS = 12;
+
+    /**
+     * Largest number of slots of a hash table, the largest power of two an array can hold
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * Current hash table
+     */
+    private volatile Table table;
+
+    /**
+     * Number of indices reserved
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Next free position in the arena
+     */
+    private final AtomicLong arenaTop = new AtomicLong();
+
+    /**
+     * Key storage, each key is stored as its length followed by its words
+     */
+    private final ChunkedLongArray arena = new ChunkedLongArray(ARENA_CHUNK_BITS);
+
+    /**
+     * Index -&gt; arena offset of the key plus one, zero until the key has been copied into the arena
+     */
+    private final ChunkedAtomicLongArray offsets = new ChunkedAtomicLongArray(OFFSET_CHUNK_BITS);
+
+    /**
+     * Constructor for a small initial table
+     */
+    public LockFreeStateTable() {
+        this(1024);
+    }
+
+    /**
+     * Constructor
+     * @param expectedSize number of markings expected to be stored, the table grows beyond this as needed.
+     *                     Sizes the largest table cannot hold at half occupancy are clamped to it
+     */
+    public LockFreeStateTable(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * @param expectedSize number of markings expected to be stored
+     * @return power of two number of slots holding the markings at most half full, at most
+     *         {@link #MAXIMUM_CAPACITY}
+     */
+    static int capacityFor(int expectedSize) {
+        if (expectedSize >= MAXIMUM_CAPACITY / 2) {
+            return MAXIMUM_CAPACITY;
+        }
+        return Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+    }
+
+    @Override
+    public int insertIfAbsent(long[] encoded) {
+        long tag = tag(StateStores.hash(encoded));
+        while (true) {
+            Table current = table;
+            long result = current.insert(encoded, tag);
+            if (result != Table.RETRY) {
+                return (int) result;
+            }
+            helpMigrate(current);
+        }
+    }
+
+    @Override
+    public int indexOf(long[] encoded) {
+        long tag = tag(StateStores.hash(encoded));
+        while (true) {
+            Table current = table;
+            long result = current.find(encoded, tag);
+            if (result != Table.RETRY) {
+                return (int) result;
+            }
+            helpMigrate(current);
+        }
+    }
+
+    /**
+     * Indices are reserved before their key is copied into the arena, so a reserved index whose key
+     * is still being copied by another thread waits for it to be published.
+     *
+     * @param index index of the marking
+     * @return copy of the encoded marking
+     */
+    @Override
+    public long[] get(int index) {
+        if (index < 0 || index >= size.get()) {
+            throw new IndexOutOfBoundsException("No marking with index " + index);
+        }
+        long offset = awaitOffset(index);
+        long[] chunk = arena.chunk(chunkOf(offset, ARENA_CHUNK_BITS));
+        int position = positionOf(offset, ARENA_CHUNK_BITS);
+        int length = (int) chunk[position];
+        return Arrays.copyOfRange(chunk, position + 1, position + 1 + length);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of slots in the current hash table
+     */
+    public int getCapacity() {
+        return table.slots.length();
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        Table current = table;
+        long slots = current.slots.length();
+        Table next = current.next.get();
+        if (next != null) {
+            slots += next.slots.length();
+        }
+        return slots * Long.SIZE / Byte.SIZE + arena.getMemoryFootprint() + offsets.getMemoryFootprint();
+    }
+
+    /**
+     * Waits for the key of a reserved index to be published
+     * @param index reserved index
+     * @return arena offset of the key
+     */
+    private long awaitOffset(int index) {
+        long value = offsets.get(index);
+        while (value == 0) {
+            Thread.yield();
+            value = offsets.get(index);
+        }
+        return value - 1;
+    }
+
+    /**
+     * @param hash hash of a key
+     * @return the hash memo of a key in the upper half of a slot, never zero
+     */
+    private static long tag(int hash) {
+        return ((long) (hash | 1)) << 32;
+    }
+
+    /**
+     * Helps migrate the table into its successor and waits for the migration to finish
+     * @param old table being migrated
+     */
+    private void helpMigrate(Table old) {
+        Table next = old.next.get();
+        if (next == null) {
+            return;
+        }
+        int length = old.slots.length();
+        int start;
+        while ((start = old.migrationCursor.getAndAdd(MIGRATION_BLOCK)) < length) {
+            int end = Math.min(length, start + MIGRATION_BLOCK);
+            for (int i = start; i < end; i++) {
+                migrateSlot(old, next, i);
+            }
+            old.migrated.addAndGet(end - start);
+        }
+        while (old.migrated.get() < length) {
+            Thread.yield();
+        }
+        if (table == old) {
+            table = next;
+        }
+    }
+
+    /**
+     * Copies the slot into the next table, waiting for a busy slot to be published first
+     * @param old   table being migrated
+     * @param next  table being migrated into
+     * @param index slot index
+     */
+    private static void migrateSlot(Table old, Table next, int index) {
+        while (true) {
+            long slot = old.slots.get(index);
+            if (slot == EMPTY) {
+                if (old.slots.compareAndSet(index, EMPTY, MOVED)) {
+                    return;
+                }
+            } else if ((slot & INDEX_MASK) == 0) {
+                Thread.yield();
+            } else {
+                next.transfer(slot);
+                old.slots.set(index, MOVED);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reserves the next index and copies the key into the arena
+     * @param encoded key
+     * @return reserved index
+     */
+    private int store(long[] encoded) {
+        int index = size.getAndIncrement();
+        if (index < 0 || index == Integer.MAX_VALUE) {
+            throw new IllegalStateException("State table cannot hold more than " + Integer.MAX_VALUE + " markings");
+        }
+        long offset = allocate(encoded.length + 1);
+        long[] chunk = arena.chunk(chunkOf(offset, ARENA_CHUNK_BITS));
+        int position = positionOf(offset, ARENA_CHUNK_BITS);
+        chunk[position] = encoded.length;
+        System.arraycopy(encoded, 0, chunk, position + 1, encoded.length);
+        offsets.set(index, offset + 1);
+        return index;
+    }
+
+    /**
+     * Allocates space in the arena that does not straddle a chunk boundary
+     * @param length number of longs
+     * @return arena offset of the space
+     */
+    private long allocate(int length) {
+        long chunkSize = 1L << ARENA_CHUNK_BITS;
+        if (length > chunkSize) {
+            throw new IllegalArgumentException("Encoded marking of " + length + " words is too long");
+        }
+        while (true) {
+            long top = arenaTop.get();
+            long start = (top & (chunkSize - 1)) + length > chunkSize ? (top | (chunkSize - 1)) + 1 : top;
+            if (arenaTop.compareAndSet(top, start + length)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * @param index   index of a stored key
+     * @param encoded key to compare
+     * @return true if the stored key equals the key
+     */
+    private boolean keyEquals(int index, long[] encoded) {
+        long offset = offsets.get(index) - 1;
+        long[] chunk = arena.chunk(chunkOf(offset, ARENA_CHUNK_BITS));
+        int position = positionOf(offset, ARENA_CHUNK_BITS);
+        if (chunk[position] != encoded.length) {
+            return false;
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (chunk[position + 1 + i] != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param offset    offset into a chunked array
+     * @param chunkBits log2 of the chunk size
+     * @return chunk holding the offset
+     */
+    private static int chunkOf(long offset, int chunkBits) {
+        return (int) (offset >>> chunkBits);
+    }
+
+    /**
+     * @param offset    offset into a chunked array
+     * @param chunkBits log2 of the chunk size
+     * @return position of the offset within its chunk
+     */
+    private static int positionOf(long offset, int chunkBits) {
+        return (int) (offset & ((1L << chunkBits) - 1));
+    }
+
+    /**
+     * Open addressing hash table of slots
+     */
+    private final class Table {
+        /**
+         * Result returned when the operation must be retried on the next table
+         */
+        private static final long RETRY = Long.MIN_VALUE;
+
+        /**
+         * Slots of the table, the length is a power of two
+         */
+        private final AtomicLongArray slots;
+
+        /**
+         * Number of occupied slots
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Table this table is being migrated into, null if it is not being migrated
+         */
+        private final AtomicReference<Table> next = new AtomicReference<>();
+
+        /**
+         * Next slot to be claimed for migration
+         */
+        private final AtomicInteger migrationCursor = new AtomicInteger();
+
+        /**
+         * Number of slots that have been migrated
+         */
+        private final AtomicInteger migrated = new AtomicInteger();
+
+        /**
+         * Constructor
+         * @param capacity number of slots, must be a power of two
+         */
+        private Table(int capacity) {
+            slots = new AtomicLongArray(capacity);
+        }
+
+        /**
+         * @param tag hash memo of the key
+         * @return first slot to probe for the key
+         */
+        private int home(long tag) {
+            int hash = (int) (tag >>> 32);
+            return (hash ^ (hash >>> 16)) & (slots.length() - 1);
+        }
+
+        /**
+         * @param encoded key
+         * @param tag     hash memo of the key
+         * @return the result of {@link StateStore#insertIfAbsent(long[])} or {@link #RETRY}
+         */
+        private long insert(long[] encoded, long tag) {
+            int mask = slots.length() - 1;
+            int i = home(tag);
+            for (int probes = 0; probes <= mask; ) {
+                long slot = slots.get(i);
+                if (slot == EMPTY) {
+                    if (next.get() != null) {
+                        return RETRY;
+                    }
+                    if (slots.compareAndSet(i, EMPTY, tag)) {
+                        int index = store(encoded);
+                        slots.set(i, tag | (index + 1L));
+                        if (count.incrementAndGet() > slots.length() / 2) {
+                            startMigration();
+                        }
+                        return index;
+                    }
+                    continue;
+                }
+                if (slot == MOVED) {
+                    return RETRY;
+                }
+                if ((slot & ~INDEX_MASK) == tag) {
+                    int index = awaitIndex(i, slot);
+                    if (index < 0) {
+                        return RETRY;
+                    }
+                    if (keyEquals(index, encoded)) {
+                        return -(index + 1L);
+                    }
+                }
+                i = (i + 1) & mask;
+                probes++;
+            }
+            if (slots.length() == MAXIMUM_CAPACITY) {
+                throw new IllegalStateException("State table cannot hold more than " + MAXIMUM_CAPACITY
+                        + " markings");
+            }
+            startMigration();
+            return RETRY;
+        }
+
+        /**
+         * @param encoded key
+         * @param tag     hash memo of the key
+         * @return index of the key, -1 if it is absent or {@link #RETRY}
+         */
+        private long find(long[] encoded, long tag) {
+            int mask = slots.length() - 1;
+            int i = home(tag);
+            for (int probes = 0; probes <= mask; probes++) {
+                long slot = slots.get(i);
+                if (slot == EMPTY) {
+                    return -1;
+                }
+                if (slot == MOVED) {
+                    return RETRY;
+                }
+                if ((slot & ~INDEX_MASK) == tag) {
+                    int index = awaitIndex(i, slot);
+                    if (index < 0) {
+                        return RETRY;
+                    }
+                    if (keyEquals(index, encoded)) {
+                        return index;
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Waits for a busy slot to be published
+         * @param i    slot index
+         * @param slot last value read from the slot
+         * @return index stored in the slot, or -1 if the entry has since been migrated
+         */
+        private int awaitIndex(int i, long slot) {
+            long value = slot;
+            while ((value & INDEX_MASK) == 0) {
+                Thread.yield();
+                value = slots.get(i);
+            }
+            return value == MOVED ? -1 : (int) (value & INDEX_MASK) - 1;
+        }
+
+        /**
+         * Inserts a migrated entry, which is known not to be in this table
+         * @param entry slot value of the entry
+         */
+        private void transfer(long entry) {
+            int mask = slots.length() - 1;
+            int i = home(entry & ~INDEX_MASK);
+            while (!slots.compareAndSet(i, EMPTY, entry)) {
+                i = (i + 1) & mask;
+            }
+            count.incrementAndGet();
+        }
+
+        /**
+         * Creates the table to migrate into if it has not already been created. A table of the
+         * maximum capacity is never migrated and fills beyond half full instead
+         */
+        private void startMigration() {
+            if (next.get() == null && slots.length() < MAXIMUM_CAPACITY) {
+                next.compareAndSet(null, new Table(slots.length() << 1));
+            }
+        }
+    }
+
+    /**
+     * Array of longs made up of fixed size chunks which are created on first use. The chunk
+     * directory is replaced with a grown copy by compare and set, so chunks are never moved.
+     */
+    private static final class ChunkedLongArray {
+        /**
+         * log2 of the chunk size
+         */
+        private final int chunkBits;
+
+        /**
+         * Chunk directory
+         */
+        private final AtomicReference<long[][]> directory = new AtomicReference<>(new long[0][]);
+
+        /**
+         * Constructor
+         * @param chunkBits log2 of the chunk size
+         */
+        private ChunkedLongArray(int chunkBits) {
+            this.chunkBits = chunkBits;
+        }
+
+        /**
+         * @param chunk chunk index
+         * @return the chunk, created if it does not yet exist
+         */
+        private long[] chunk(int chunk) {
+            while (true) {
+                long[][] current = directory.get();
+                if (chunk < current.length && current[chunk] != null) {
+                    return current[chunk];
+                }
+                long[][] grown = Arrays.copyOf(current, Math.max(current.length, chunk + 1));
+                grown[chunk] = new long[1 << chunkBits];
+                if (directory.compareAndSet(current, grown)) {
+                    return grown[chunk];
+                }
+            }
+        }
+
+        /**
+         * @return bytes used by the chunks and directory
+         */
+        private long getMemoryFootprint() {
+            long[][] current = directory.get();
+            long bytes = (long) current.length * Long.SIZE / Byte.SIZE;
+            for (long[] chunk : current) {
+                if (chunk != null) {
+                    bytes += (long) chunk.length * Long.SIZE / Byte.SIZE;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Array of longs made up of fixed size chunks of atomic longs which are created on first use,
+     * so a value set by one thread is read with its preceding writes by another. The chunk directory
+     * is replaced with a grown copy by compare and set, so chunks are never moved.
+     */
+    private static final class ChunkedAtomicLongArray {
+        /**
+         * log2 of the chunk size
+         */
+        private final int chunkBits;
+
+        /**
+         * Chunk directory
+         */
+        private final AtomicReference<AtomicLongArray[]> directory =
+                new AtomicReference<>(new AtomicLongArray[0]);
+
+        /**
+         * Constructor
+         * @param chunkBits log2 of the chunk size
+         */
+        private ChunkedAtomicLongArray(int chunkBits) {
+            this.chunkBits = chunkBits;
+        }
+
+        /**
+         * @param chunk chunk index
+         * @return the chunk, created if it does not yet exist
+         */
+        private AtomicLongArray chunk(int chunk) {
+            while (true) {
+                AtomicLongArray[] current = directory.get();
+                if (chunk < current.length && current[chunk] != null) {
+                    return current[chunk];
+                }
+                AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(current.length, chunk + 1));
+                grown[chunk] = new AtomicLongArray(1 << chunkBits);
+                if (directory.compareAndSet(current, grown)) {
+                    return grown[chunk];
+                }
+            }
+        }
+
+        /**
+         * @param index array index
+         * @return value at the index
+         */
+        private long get(long index) {
+            return chunk(chunkOf(index, chunkBits)).get(positionOf(index, chunkBits));
+        }
+
+        /**
+         * @param index array index
+         * @param value value to set
+         */
+        private void set(long index, long value) {
+            chunk(chunkOf(index, chunkBits)).set(positionOf(index, chunkBits), value);
+        }
+
+        /**
+         * @return bytes used by the chunks and directory
+         */
+        private long getMemoryFootprint() {
+            AtomicLongArray[] current = directory.get();
+            long bytes = (long) current.length * Long.SIZE / Byte.SIZE;
+            for (AtomicLongArray chunk : current) {
+                if (chunk != null) {
+                    bytes += (long) chunk.length() * Long.SIZE / Byte.SIZE;
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Store of encoded markings held outside of the Java heap so that state spaces larger than the heap
+ * can be explored without long garbage collection pauses.
+ * <p>
+ * Encoded markings and the index -&gt; marking offsets are written into large chunks of memory which
+ * are either direct {@link ByteBuffer}s or, if a scratch directory is given, regions of a temporary
+ * file mapped into memory so that the operating system can page them out. The hash index is split
+ * into segments, each with its own lock and its own direct buffer of slots holding a hash memo and
+ * the index of a marking, so inserts into different segments proceed in parallel and nothing the
+ * store holds per marking is a Java object.
+ * </p>
+ * <p>
+ * Buffer writes are not ordered between threads, so a marking is only published once it and every
+ * marking with a lower index have been written. {@link #get(int)} waits for an index that has been
+ * reserved but not yet published.
+ * </p>
+ * <p>
+ * Direct and mapped buffers are only released when they are garbage collected, so the store should
+ * be reused or closed rather than created per exploration. Closing a file backed store deletes its
+ * file.
+ * </p>
+ */
+public final class OffHeapStateStore implements StateStore, Closeable {
+    /**
+     * Default number of bytes in each arena chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+    /**
+     * log2 of the number of hash index segments
+     */
+    private static final int SEGMENT_BITS = 6;
+
+    /**
+     * Initial number of slots in each segment
+     */
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    /**
+     * Mask of the index plus one in a slot
+     */
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Number of bytes in a long
+     */
+    private static final int LONG_BYTES = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Hash index segments
+     */
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    /**
+     * Number of bytes in each arena chunk
+     */
+    private final int chunkSize;
+
+    /**
+     * Channel of the file backing the chunks, null if they are direct buffers
+     */
+    private final FileChannel channel;
+
+    /**
+     * Number of indices reserved
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Number of indices whose key and offset have been written, every lower index is written too
+     */
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * Guards allocation in the arena and creation of chunks
+     */
+    private final Object allocationLock = new Object();
+
+    /**
+     * Chunks holding encoded markings, each as its length followed by its words
+     */
+    private volatile ByteBuffer[] arenaChunks = new ByteBuffer[0];
+
+    /**
+     * Chunks holding the arena offset of each index
+     */
+    private volatile ByteBuffer[] offsetChunks = new ByteBuffer[0];
+
+    /**
+     * Next free byte in the arena
+     */
+    private long arenaTop;
+
+    /**
+     * Number of chunks mapped from the backing file
+     */
+    private long mappedChunks;
+
+    /**
+     * True once the store has been closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a store held in direct buffers
+     */
+    public OffHeapStateStore() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for a store held in direct buffers
+     * @param chunkSize number of bytes in each chunk, a multiple of 8 which bounds the longest encoded marking
+     */
+    public OffHeapStateStore(int chunkSize) {
+        this.chunkSize = checkChunkSize(chunkSize);
+        this.channel = null;
+        initialiseSegments();
+    }
+
+    /**
+     * Constructor for a store whose markings are held in a temporary file mapped into memory
+     * @param scratchDirectory directory to create the file in
+     * @throws IOException if the file cannot be created
+     */
+    public OffHeapStateStore(Path scratchDirectory) throws IOException {
+        this(scratchDirectory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for a store whose markings are held in a temporary file mapped into memory
+     * @param scratchDirectory directory to create the file in
+     * @param chunkSize        number of bytes mapped at a time, a multiple of 8 which bounds the
+     *                         longest encoded marking
+     * @throws IOException if the file cannot be created
+     */
+    public OffHeapStateStore(Path scratchDirectory, int chunkSize) throws IOException {
+        this.chunkSize = checkChunkSize(chunkSize);
+        Path file = Files.createTempFile(scratchDirectory, "pipe-states", ".arena");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        initialiseSegments();
+    }
+
+    /**
+     * @param chunkSize requested chunk size
+     * @return the chunk size if it is valid
+     */
+    private static int checkChunkSize(int chunkSize) {
+        if (chunkSize < 2 * LONG_BYTES || chunkSize % LONG_BYTES != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of 8 bytes: " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Creates every hash index segment
+     */
+    private void initialiseSegments() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @return true if the markings are held in a memory mapped file
+     */
+    public boolean isFileBacked() {
+        return channel != null;
+    }
+
+    @Override
+    public int insertIfAbsent(long[] encoded) {
+        checkOpen();
+        long tag = tag(StateStores.hash(encoded));
+        return segmentFor(tag).insertIfAbsent(encoded, tag);
+    }
+
+    @Override
+    public int indexOf(long[] encoded) {
+        checkOpen();
+        long tag = tag(StateStores.hash(encoded));
+        return segmentFor(tag).indexOf(encoded, tag);
+    }
+
+    @Override
+    public long[] get(int index) {
+        checkOpen();
+        if (index < 0 || index >= size.get()) {
+            throw new IndexOutOfBoundsException("No marking with index " + index);
+        }
+        awaitPublication(index);
+        long offset = offsetOf(index);
+        ByteBuffer chunk = arenaChunks[(int) (offset / chunkSize)];
+        int position = (int) (offset % chunkSize);
+        long[] encoded = new long[(int) chunk.getLong(position)];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = chunk.getLong(position + (i + 1) * LONG_BYTES);
+        }
+        return encoded;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        long bytes = (long) arenaChunks.length * chunkSize + (long) offsetChunks.length * chunkSize;
+        for (Segment segment : segments) {
+            bytes += segment.getMemoryFootprint();
+        }
+        return bytes;
+    }
+
+    /**
+     * Closes the store, deleting its backing file if it has one. The memory it holds is released once
+     * the store is no longer referenced.
+     *
+     * @throws IOException if the backing file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the store has been closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("State store has been closed");
+        }
+    }
+
+    /**
+     * @param hash hash of a key
+     * @return the hash memo of a key in the upper half of a slot, never zero
+     */
+    private static long tag(int hash) {
+        return ((long) (hash | 1)) << 32;
+    }
+
+    /**
+     * @param tag hash memo of a key
+     * @return segment holding the key
+     */
+    private Segment segmentFor(long tag) {
+        return segments[(int) (tag >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    /**
+     * Waits until a reserved index has been published by the thread that stored it
+     * @param index reserved index
+     */
+    private void awaitPublication(int index) {
+        while (index >= published.get()) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Reserves the next index, copies the key into the arena and publishes it once every lower index
+     * has been published. Threads storing lower indices never wait on locks, so this cannot deadlock.
+     * @param encoded key
+     * @return reserved index
+     */
+    private int store(long[] encoded) {
+        int bytes = (encoded.length + 1) * LONG_BYTES;
+        if (bytes > chunkSize) {
+            throw new IllegalArgumentException("Encoded marking of " + encoded.length
+                    + " words does not fit in a chunk of " + chunkSize + " bytes");
+        }
+        int index;
+        long offset;
+        synchronized (allocationLock) {
+            index = size.get();
+            if (index == Integer.MAX_VALUE) {
+                throw new IllegalStateException("State store cannot hold more than " + Integer.MAX_VALUE + " markings");
+            }
+            if (arenaTop % chunkSize + bytes > chunkSize) {
+                arenaTop += chunkSize - arenaTop % chunkSize;
+            }
+            offset = arenaTop;
+            arenaTop += bytes;
+            if (offset / chunkSize >= arenaChunks.length) {
+                arenaChunks = grow(arenaChunks);
+            }
+            long offsetPosition = (long) index * LONG_BYTES;
+            if (offsetPosition / chunkSize >= offsetChunks.length) {
+                offsetChunks = grow(offsetChunks);
+            }
+            size.set(index + 1);
+        }
+        ByteBuffer chunk = arenaChunks[(int) (offset / chunkSize)];
+        int position = (int) (offset % chunkSize);
+        chunk.putLong(position, encoded.length);
+        for (int i = 0; i < encoded.length; i++) {
+            chunk.putLong(position + (i + 1) * LONG_BYTES, encoded[i]);
+        }
+        long offsetPosition = (long) index * LONG_BYTES;
+        offsetChunks[(int) (offsetPosition / chunkSize)].putLong((int) (offsetPosition % chunkSize), offset);
+        while (!published.compareAndSet(index, index + 1)) {
+            Thread.yield();
+        }
+        return index;
+    }
+
+    /**
+     * @param index index of a stored key
+     * @return arena offset of the key
+     */
+    private long offsetOf(int index) {
+        long offsetPosition = (long) index * LONG_BYTES;
+        return offsetChunks[(int) (offsetPosition / chunkSize)].getLong((int) (offsetPosition % chunkSize));
+    }
+
+    /**
+     * @param index   index of a stored key
+     * @param encoded key to compare
+     * @return true if the stored key equals the key
+     */
+    private boolean keyEquals(int index, long[] encoded) {
+        long offset = offsetOf(index);
+        ByteBuffer chunk = arenaChunks[(int) (offset / chunkSize)];
+        int position = (int) (offset % chunkSize);
+        if (chunk.getLong(position) != encoded.length) {
+            return false;
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            if (chunk.getLong(position + (i + 1) * LONG_BYTES) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Must be called whilst holding the allocation lock
+     * @param chunks current chunks
+     * @return the chunks with a new chunk appended
+     */
+    private ByteBuffer[] grow(ByteBuffer[] chunks) {
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = allocateChunk();
+        return grown;
+    }
+
+    /**
+     * Must be called whilst holding the allocation lock
+     * @return a new chunk, mapped from the end of the backing file if there is one
+     */
+    private ByteBuffer allocateChunk() {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.nativeOrder());
+        }
+        try {
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, mappedChunks * chunkSize, chunkSize);
+            mappedChunks++;
+            return chunk.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map state store chunk " + mappedChunks, e);
+        }
+    }
+
+    /**
+     * Open addressing hash index over part of the hash space, slots hold the hash memo
+     * and index plus one of a key
+     */
+    private final class Segment {
+        /**
+         * Slots of the segment, the number of slots is a power of two
+         */
+        private ByteBuffer slots = allocateSlots(INITIAL_SEGMENT_CAPACITY);
+
+        /**
+         * Number of slots in the segment
+         */
+        private int capacity = INITIAL_SEGMENT_CAPACITY;
+
+        /**
+         * Number of occupied slots
+         */
+        private int count;
+
+        /**
+         * @param encoded key
+         * @param tag     hash memo of the key
+         * @return the result of {@link StateStore#insertIfAbsent(long[])}
+         */
+        private synchronized int insertIfAbsent(long[] encoded, long tag) {
+            int mask = capacity - 1;
+            int i = home(tag, mask);
+            while (true) {
+                long slot = slots.getLong(i * LONG_BYTES);
+                if (slot == 0) {
+                    int index = store(encoded);
+                    slots.putLong(i * LONG_BYTES, tag | (index + 1L));
+                    if (++count > capacity / 2) {
+                        resize();
+                    }
+                    return index;
+                }
+                if ((slot & ~INDEX_MASK) == tag) {
+                    int index = (int) (slot & INDEX_MASK) - 1;
+                    if (keyEquals(index, encoded)) {
+                        return -(index + 1);
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * @param encoded key
+         * @param tag     hash memo of the key
+         * @return index of the key or -1 if it is absent
+         */
+        private synchronized int indexOf(long[] encoded, long tag) {
+            int mask = capacity - 1;
+            int i = home(tag, mask);
+            while (true) {
+                long slot = slots.getLong(i * LONG_BYTES);
+                if (slot == 0) {
+                    return -1;
+                }
+                if ((slot & ~INDEX_MASK) == tag) {
+                    int index = (int) (slot & INDEX_MASK) - 1;
+                    if (keyEquals(index, encoded)) {
+                        return index;
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * Doubles the number of slots, rehashing from the hash memos without touching the arena
+         */
+        private void resize() {
+            int newCapacity = capacity << 1;
+            if (newCapacity > Integer.MAX_VALUE / LONG_BYTES) {
+                throw new IllegalStateException("State store segment cannot grow beyond " + capacity + " slots");
+            }
+            ByteBuffer resized = allocateSlots(newCapacity);
+            int mask = newCapacity - 1;
+            for (int s = 0; s < capacity; s++) {
+                long slot = slots.getLong(s * LONG_BYTES);
+                if (slot != 0) {
+                    int i = home(slot & ~INDEX_MASK, mask);
+                    while (resized.getLong(i * LONG_BYTES) != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    resized.putLong(i * LONG_BYTES, slot);
+                }
+            }
+            slots = resized;
+            capacity = newCapacity;
+        }
+
+        /**
+         * @param tag  hash memo of a key
+         * @param mask slot mask
+         * @return first slot to probe for the key, ignoring the bits used to choose the segment
+         */
+        private int home(long tag, int mask) {
+            int hash = (int) (tag >>> 32);
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        /**
+         * @return bytes used by the slots
+         */
+        private synchronized long getMemoryFootprint() {
+            return (long) capacity * LONG_BYTES;
+        }
+
+        /**
+         * @param capacity number of slots
+         * @return zeroed direct buffer of slots
+         */
+        private ByteBuffer allocateSlots(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * LONG_BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.OutboundArc;
+import uk.ac.imperial.state.State;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes markings of a {@link CompiledPetriNet} into bit packed {@code long[]} arrays.
+ * <p>
+ * Each (place, token) count is stored in a field just wide enough for the bound of its place. The
+ * bound of a place is taken from, in order of preference, its capacity, a user supplied bound, its
+ * initial token count if no transition ever adds tokens to it, or a default bound. Fields are packed
+ * consecutively after a single flag bit and may straddle word boundaries.
+ * </p>
+ * <p>
+ * If any count of a marking does not fit its field, for example because a user supplied bound was
+ * too small or a count is {@link Integer#MAX_VALUE} representing infinity, the marking is encoded in
+ * a wide form with 32 bits per field and the flag bit set. A marking always has exactly one
+ * encoding, so encoded arrays can be compared with {@link java.util.Arrays#equals(long[], long[])}.
+ * </p>
+ * <p>
+ * Encoded markings convert back into {@link State}s so they can be used with any
+ * {@link uk.ac.imperial.pipe.animation.AnimationLogic}.
+ * </p>
+ */
+public final class PackedStateEncoder {
+    /**
+     * Bits used by each field of a wide encoding
+     */
+    private static final int WIDE_FIELD_WIDTH = 32;
+
+    /**
+     * Compiled Petri net whose markings are encoded
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Width in bits of each field indexed by marking index
+     */
+    private final int[] fieldWidths;
+
+    /**
+     * Bit offset of each field indexed by marking index
+     */
+    private final int[] fieldOffsets;
+
+    /**
+     * Number of longs in a packed encoding
+     */
+    private final int packedLength;
+
+    /**
+     * Number of longs in a wide encoding
+     */
+    private final int wideLength;
+
+    /**
+     * Constructor using only capacities and structural bounds, places without either
+     * are given the default bound
+     *
+     * @param compiledPetriNet compiled Petri net whose markings are encoded
+     * @param defaultBound     bound of places whose bound cannot otherwise be determined
+     */
+    public PackedStateEncoder(CompiledPetriNet compiledPetriNet, int defaultBound) {
+        this(compiledPetriNet, Collections.<String, Integer>emptyMap(), defaultBound);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net whose markings are encoded
+     * @param placeBounds      place id -&gt; user supplied bound on the number of tokens of each type in the place
+     * @param defaultBound     bound of places whose bound cannot otherwise be determined
+     */
+    public PackedStateEncoder(CompiledPetriNet compiledPetriNet, Map<String, Integer> placeBounds, int defaultBound) {
+        if (defaultBound < 0) {
+            throw new IllegalArgumentException("Default bound cannot be negative: " + defaultBound);
+        }
+        this.compiledPetriNet = compiledPetriNet;
+
+        Set<String> incremented = new HashSet<>();
+        for (OutboundArc arc : compiledPetriNet.getPetriNet().getOutboundArcs()) {
+            incremented.add(arc.getTarget().getId());
+        }
+        int[] initial = compiledPetriNet.getCurrentMarking();
+
+        int tokenCount = compiledPetriNet.getTokenCount();
+        fieldWidths = new int[compiledPetriNet.getMarkingLength()];
+        fieldOffsets = new int[fieldWidths.length];
+        int offset = 1;
+        for (int p = 0; p < compiledPetriNet.getPlaceCount(); p++) {
+            String placeId = compiledPetriNet.getPlaceId(p);
+            int bound = defaultBound;
+            if (compiledPetriNet.getPlaceCapacity(p) > 0) {
+                bound = compiledPetriNet.getPlaceCapacity(p);
+            } else if (placeBounds.containsKey(placeId)) {
+                bound = placeBounds.get(placeId);
+            } else if (!incremented.contains(placeId)) {
+                bound = 0;
+                for (int k = 0; k < tokenCount; k++) {
+                    bound = Math.max(bound, initial[compiledPetriNet.getMarkingIndex(p, k)]);
+                }
+            }
+            int width = bitsFor(bound);
+            for (int k = 0; k < tokenCount; k++) {
+                int index = compiledPetriNet.getMarkingIndex(p, k);
+                fieldWidths[index] = width;
+                fieldOffsets[index] = offset;
+                offset += width;
+            }
+        }
+        packedLength = wordsFor(offset);
+        wideLength = wordsFor(1 + WIDE_FIELD_WIDTH * fieldWidths.length);
+    }
+
+    /**
+     * @param bound maximum value
+     * @return number of bits needed to store values from 0 to the bound, at most 31
+     */
+    private static int bitsFor(int bound) {
+        return bound <= 0 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(bound);
+    }
+
+    /**
+     * @param bits number of bits
+     * @return number of longs needed to store the bits
+     */
+    private static int wordsFor(int bits) {
+        return Math.max(1, (bits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * @return compiled Petri net whose markings are encoded
+     */
+    public CompiledPetriNet getCompiledPetriNet() {
+        return compiledPetriNet;
+    }
+
+    /**
+     * @param place place index
+     * @return number of bits used by each token count of the place in a packed encoding
+     */
+    public int getFieldWidth(int place) {
+        return compiledPetriNet.getTokenCount() == 0 ? 0 :
+                fieldWidths[compiledPetriNet.getMarkingIndex(place, 0)];
+    }
+
+    /**
+     * @return number of longs in a packed encoding
+     */
+    public int getPackedLength() {
+        return packedLength;
+    }
+
+    /**
+     * @return number of longs in a wide encoding, used when a count does not fit its field
+     */
+    public int getWideLength() {
+        return wideLength;
+    }
+
+    /**
+     * @param encoded encoded marking
+     * @return true if the marking is in the wide encoding
+     */
+    public static boolean isWide(long[] encoded) {
+        return (encoded[0] & 1L) != 0;
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return encoded state
+     */
+    public long[] encode(State state) {
+        return encode(compiledPetriNet.getMarking(state));
+    }
+
+    /**
+     * @param marking marking of the compiled Petri net
+     * @return encoded marking, packed if every count fits its field otherwise wide
+     */
+    public long[] encode(int[] marking) {
+        if (!fits(marking)) {
+            long[] wide = new long[wideLength];
+            wide[0] = 1L;
+            for (int i = 0; i < marking.length; i++) {
+                write(wide, 1 + WIDE_FIELD_WIDTH * i, WIDE_FIELD_WIDTH, marking[i] & 0xFFFFFFFFL);
+            }
+            return wide;
+        }
+        long[] packed = new long[packedLength];
+        for (int i = 0; i < marking.length; i++) {
+            write(packed, fieldOffsets[i], fieldWidths[i], marking[i]);
+        }
+        return packed;
+    }
+
+    /**
+     * @param marking marking of the compiled Petri net
+     * @return true if every count of the marking fits its packed field
+     */
+    private boolean fits(int[] marking) {
+        for (int i = 0; i < marking.length; i++) {
+            if (marking[i] < 0 || (marking[i] >>> fieldWidths[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param encoded encoded marking
+     * @return decoded marking of the compiled Petri net
+     */
+    public int[] decode(long[] encoded) {
+        int[] marking = new int[fieldWidths.length];
+        decode(encoded, marking);
+        return marking;
+    }
+
+    /**
+     * @param encoded encoded marking
+     * @param marking buffer of at least {@link CompiledPetriNet#getMarkingLength()} entries to decode into
+     */
+    public void decode(long[] encoded, int[] marking) {
+        if (isWide(encoded)) {
+            for (int i = 0; i < fieldWidths.length; i++) {
+                marking[i] = (int) read(encoded, 1 + WIDE_FIELD_WIDTH * i, WIDE_FIELD_WIDTH);
+            }
+        } else {
+            for (int i = 0; i < fieldWidths.length; i++) {
+                marking[i] = (int) read(encoded, fieldOffsets[i], fieldWidths[i]);
+            }
+        }
+    }
+
+    /**
+     * @param encoded encoded marking
+     * @return the state the encoding represents
+     */
+    public State decodeState(long[] encoded) {
+        return compiledPetriNet.getState(decode(encoded));
+    }
+
+    /**
+     * Writes the low width bits of value at the bit offset
+     *
+     * @param words  destination
+     * @param offset bit offset
+     * @param width  number of bits, at most 32
+     * @param value  value to write
+     */
+    private static void write(long[] words, int offset, int width, long value) {
+        if (width == 0) {
+            return;
+        }
+        int word = offset >>> 6;
+        int bit = offset & 63;
+        words[word] |= value << bit;
+        if (bit + width > Long.SIZE) {
+            words[word + 1] |= value >>> (Long.SIZE - bit);
+        }
+    }
+
+    /**
+     * @param words  source
+     * @param offset bit offset
+     * @param width  number of bits, at most 32
+     * @return the width bits at the bit offset
+     */
+    private static long read(long[] words, int offset, int width) {
+        if (width == 0) {
+            return 0;
+        }
+        int word = offset >>> 6;
+        int bit = offset & 63;
+        long value = words[word] >>> bit;
+        if (bit + width > Long.SIZE) {
+            value |= words[word + 1] << (Long.SIZE - bit);
+        }
+        return value & ((1L << width) - 1);
+    }
+}
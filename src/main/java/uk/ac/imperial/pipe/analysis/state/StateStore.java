@@ -0,0 +1,44 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+/**
+ * Store of encoded markings, as produced by {@link PackedStateEncoder}, which gives every distinct
+ * marking a dense index in insertion order. It serves as the visited set and state -&gt; index map
+ * of state space explorations.
+ * <p>
+ * Implementations are safe to use from multiple threads.
+ * </p>
+ */
+public interface StateStore {
+    /**
+     * Inserts the encoded marking if it is not already in the store. The array is copied so it
+     * may be reused by the caller once this method returns.
+     *
+     * @param encoded encoded marking
+     * @return the index of the marking if it was inserted, otherwise {@code -(index + 1)} of the
+     *         existing marking. Use {@link StateStores#isNew(int)} and {@link StateStores#getIndex(int)}
+     *         to interpret the result
+     */
+    int insertIfAbsent(long[] encoded);
+
+    /**
+     * @param encoded encoded marking
+     * @return index of the marking or -1 if it is not in the store
+     */
+    int indexOf(long[] encoded);
+
+    /**
+     * @param index index returned by {@link #insertIfAbsent(long[])}
+     * @return a copy of the encoded marking with the index
+     */
+    long[] get(int index);
+
+    /**
+     * @return number of markings in the store
+     */
+    int size();
+
+    /**
+     * @return approximate number of bytes used to hold the markings and their index
+     */
+    long getMemoryFootprint();
+}
@@ -0,0 +1,33 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+/**
+ * Creates the store of encoded markings used by a single state space exploration. Factories for
+ * each of the built in stores are provided as constants.
+ */
+public interface StateStoreFactory {
+    /**
+     * Creates {@link LockFreeStateTable}s held on the Java heap
+     */
+    StateStoreFactory LOCK_FREE = new StateStoreFactory() {
+        @Override
+        public StateStore create() {
+            return new LockFreeStateTable();
+        }
+    };
+
+    /**
+     * Creates {@link OffHeapStateStore}s held in direct buffers, whose memory is released once the
+     * graph holding them is garbage collected
+     */
+    StateStoreFactory OFF_HEAP = new StateStoreFactory() {
+        @Override
+        public StateStore create() {
+            return new OffHeapStateStore();
+        }
+    };
+
+    /**
+     * @return a new empty store
+     */
+    StateStore create();
+}
@@ -0,0 +1,55 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+/**
+ * Utility methods for interpreting the results of a {@link StateStore}
+ */
+public final class StateStores {
+
+    /**
+     * Private utility constructor
+     */
+    private StateStores() {}
+
+    /**
+     * @param result result of {@link StateStore#insertIfAbsent(long[])}
+     * @return true if the marking was inserted
+     */
+    public static boolean isNew(int result) {
+        return result >= 0;
+    }
+
+    /**
+     * @param result result of {@link StateStore#insertIfAbsent(long[])}
+     * @return index of the marking whether or not it was inserted
+     */
+    public static int getIndex(int result) {
+        return result >= 0 ? result : -(result + 1);
+    }
+
+    /**
+     * Hashes an encoded marking, spreading the bits of every word so that markings which
+     * differ in a single field are unlikely to collide
+     *
+     * @param encoded encoded marking
+     * @return hash of the encoded marking
+     */
+    public static int hash(long[] encoded) {
+        long hash = 0x9E3779B97F4A7C15L * (encoded.length + 1);
+        for (long word : encoded) {
+            hash = (hash ^ mix(word)) * 0xBF58476D1CE4E5B9L;
+        }
+        hash = mix(hash);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @param value value to mix
+     * @return the value with its bits avalanched
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.imperial.pipe.analysis.symbolic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers the distinct token count vectors of a single place in the order they are discovered,
+ * so that each MDD level only needs as many children as local states actually reached
+ */
+final class LocalStateTable {
+    /**
+     * Token counts of each local state
+     */
+    private final List<int[]> states = new ArrayList<>();
+
+    /**
+     * Index of each local state keyed by its token counts
+     */
+    private final Map<Key, Integer> indices = new HashMap<>();
+
+    /**
+     * @param counts token counts of the place, copied if new
+     * @return index of the local state, adding it if it has not been seen
+     */
+    int intern(int[] counts) {
+        Key key = new Key(counts);
+        Integer index = indices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int[] copy = counts.clone();
+        states.add(copy);
+        indices.put(new Key(copy), states.size() - 1);
+        return states.size() - 1;
+    }
+
+    /**
+     * @param counts token counts of the place
+     * @return index of the local state, or -1 if it has not been seen
+     */
+    int find(int[] counts) {
+        Integer index = indices.get(new Key(counts));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index local state index
+     * @return token counts of the local state, which must not be modified
+     */
+    int[] get(int index) {
+        return states.get(index);
+    }
+
+    /**
+     * @return number of local states seen
+     */
+    int size() {
+        return states.size();
+    }
+
+    /**
+     * Token count vector with value equality
+     */
+    private static final class Key {
+        /**
+         * Token counts
+         */
+        private final int[] counts;
+
+        /**
+         * Constructor
+         *
+         * @param counts token counts, not copied
+         */
+        private Key(int[] counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(counts, ((Key) o).counts);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(counts);
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package uk.ac.imperial.pipe.analysis.symbolic;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared store of quasi-reduced multi-valued decision diagram nodes.
+ * <p>
+ * Node 0 is the empty set and node 1 the set containing the empty tuple, both at level 0. Every
+ * other node belongs to a level between 1 and the number of variables and has one child per local
+ * state of its variable, a missing trailing child being node 0. Children are always one level down,
+ * so every path visits every level. Nodes are hash consed in a unique table so that equal sets
+ * are represented by the same node.
+ * </p>
+ * <p>
+ * Unused nodes are reclaimed by mark and sweep. Nodes reachable from a registered root or from a
+ * node or {@link MutableNode} on the protection stack survive, every other node is freed and the
+ * operation caches, which may refer to freed nodes, are cleared. Collection only happens when
+ * {@link #collectIfNeeded()} is called, so callers choose points where every node they hold is
+ * protected.
+ * </p>
+ */
+final class MddForest {
+    /**
+     * The empty set
+     */
+    static final int EMPTY = 0;
+
+    /**
+     * The set containing only the empty tuple
+     */
+    static final int ONE = 1;
+
+    /**
+     * Initial number of node slots
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * Minimum number of nodes created between collections
+     */
+    private static final int MIN_COLLECTION_THRESHOLD = 1 << 16;
+
+    /**
+     * Level of each node, -1 if the slot is free
+     */
+    private int[] levels = new int[INITIAL_CAPACITY];
+
+    /**
+     * Children of each node, trimmed of trailing empty children
+     */
+    private int[][] children = new int[INITIAL_CAPACITY][];
+
+    /**
+     * Next node in the same unique table bucket, or -1
+     */
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    /**
+     * Unique table buckets holding the first node of each chain, or -1
+     */
+    private int[] buckets = new int[INITIAL_CAPACITY];
+
+    /**
+     * Free node slots
+     */
+    private int[] free = new int[16];
+
+    /**
+     * Number of free slots
+     */
+    private int freeCount;
+
+    /**
+     * Number of slots ever used, including the terminals
+     */
+    private int used = 2;
+
+    /**
+     * Number of live nodes including the terminals
+     */
+    private int nodeCount = 2;
+
+    /**
+     * Highest number of live nodes
+     */
+    private int peakNodeCount = 2;
+
+    /**
+     * Number of live nodes after the last collection
+     */
+    private int liveAfterCollection = 2;
+
+    /**
+     * Number of collections run
+     */
+    private int collections;
+
+    /**
+     * Nodes kept alive across collections
+     */
+    private final List<Integer> roots = new ArrayList<>();
+
+    /**
+     * Nodes and partially built nodes of the operations in progress
+     */
+    private final List<Object> protectedStack = new ArrayList<>();
+
+    /**
+     * Caches of operations on nodes, cleared by collection
+     */
+    private final List<OperationCache> caches = new ArrayList<>();
+
+    /**
+     * Cache of unions keyed by both operands
+     */
+    private final OperationCache unionCache = newCache(1 << 16);
+
+    /**
+     * Constructor for a forest holding only the terminals
+     */
+    MddForest() {
+        Arrays.fill(levels, -1);
+        Arrays.fill(buckets, -1);
+        levels[EMPTY] = 0;
+        levels[ONE] = 0;
+        children[EMPTY] = new int[0];
+        children[ONE] = new int[0];
+    }
+
+    /**
+     * @param size number of entries, rounded up to a power of two
+     * @return a cache cleared whenever nodes are collected
+     */
+    OperationCache newCache(int size) {
+        OperationCache cache = new OperationCache(size);
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * @param node node
+     * @return level of the node, 0 for the terminals
+     */
+    int getLevel(int node) {
+        return levels[node];
+    }
+
+    /**
+     * @param node node
+     * @return number of children stored, children beyond this are empty
+     */
+    int getChildCount(int node) {
+        return children[node].length;
+    }
+
+    /**
+     * @param node  node
+     * @param index local state index
+     * @return child of the node for the local state
+     */
+    int getChild(int node, int index) {
+        int[] nodeChildren = children[node];
+        return index < nodeChildren.length ? nodeChildren[index] : EMPTY;
+    }
+
+    /**
+     * Returns the unique node with the given children, creating it if it does not exist
+     *
+     * @param level         level of the node
+     * @param nodeChildren  children one level down, it is not modified
+     * @param length        number of children to read
+     * @return the node, or {@link #EMPTY} if every child is empty
+     */
+    int checkIn(int level, int[] nodeChildren, int length) {
+        int size = length;
+        while (size > 0 && nodeChildren[size - 1] == EMPTY) {
+            size--;
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        int bucket = hash(level, nodeChildren, size) & (buckets.length - 1);
+        for (int node = buckets[bucket]; node >= 0; node = next[node]) {
+            if (levels[node] == level && equal(children[node], nodeChildren, size)) {
+                return node;
+            }
+        }
+        int node = allocate();
+        levels[node] = level;
+        children[node] = Arrays.copyOf(nodeChildren, size);
+        next[node] = buckets[bucket];
+        buckets[bucket] = node;
+        nodeCount++;
+        peakNodeCount = Math.max(peakNodeCount, nodeCount);
+        if (nodeCount > buckets.length) {
+            resizeBuckets(buckets.length * 2);
+        }
+        return node;
+    }
+
+    /**
+     * @return a free node slot
+     */
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (used == levels.length) {
+            int capacity = levels.length * 2;
+            int oldCapacity = levels.length;
+            levels = Arrays.copyOf(levels, capacity);
+            Arrays.fill(levels, oldCapacity, capacity, -1);
+            children = Arrays.copyOf(children, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return used++;
+    }
+
+    /**
+     * Rebuilds the unique table with the given number of buckets
+     *
+     * @param size number of buckets, a power of two
+     */
+    private void resizeBuckets(int size) {
+        buckets = new int[size];
+        Arrays.fill(buckets, -1);
+        for (int node = ONE + 1; node < used; node++) {
+            if (levels[node] >= 0) {
+                int bucket = hash(levels[node], children[node], children[node].length) & (size - 1);
+                next[node] = buckets[bucket];
+                buckets[bucket] = node;
+            }
+        }
+    }
+
+    /**
+     * @param level        level of the node
+     * @param nodeChildren children of the node
+     * @param length       number of children
+     * @return hash of the node
+     */
+    private static int hash(int level, int[] nodeChildren, int length) {
+        int hash = level;
+        for (int i = 0; i < length; i++) {
+            hash = hash * 0x9E3779B1 + nodeChildren[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param stored   children of an existing node
+     * @param children candidate children
+     * @param length   number of candidate children
+     * @return true if they are the same
+     */
+    private static boolean equal(int[] stored, int[] children, int length) {
+        if (stored.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (stored[i] != children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param first  node
+     * @param second node at the same level
+     * @return node representing the union of the sets of both nodes
+     */
+    int union(int first, int second) {
+        if (first == EMPTY || first == second) {
+            return second;
+        }
+        if (second == EMPTY) {
+            return first;
+        }
+        int low = Math.min(first, second);
+        int high = Math.max(first, second);
+        int cached = unionCache.get(low, high);
+        if (cached >= 0) {
+            return cached;
+        }
+        int length = Math.max(children[low].length, children[high].length);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = union(getChild(low, i), getChild(high, i));
+        }
+        int node = checkIn(levels[low], result, length);
+        unionCache.put(low, high, node);
+        return node;
+    }
+
+    /**
+     * @param root node
+     * @return number of tuples in the set of the node
+     */
+    BigInteger count(int root) {
+        return count(root, new HashMap<Integer, BigInteger>());
+    }
+
+    /**
+     * @param node   node
+     * @param counts counts of the nodes already visited
+     * @return number of tuples in the set of the node
+     */
+    private BigInteger count(int node, Map<Integer, BigInteger> counts) {
+        if (node == EMPTY) {
+            return BigInteger.ZERO;
+        }
+        if (node == ONE) {
+            return BigInteger.ONE;
+        }
+        BigInteger count = counts.get(node);
+        if (count == null) {
+            count = BigInteger.ZERO;
+            for (int child : children[node]) {
+                count = count.add(count(child, counts));
+            }
+            counts.put(node, count);
+        }
+        return count;
+    }
+
+    /**
+     * @param root node
+     * @return number of distinct non terminal nodes reachable from the node
+     */
+    int countNodes(int root) {
+        BitSet marked = new BitSet(used);
+        mark(root, marked);
+        marked.clear(EMPTY);
+        marked.clear(ONE);
+        return marked.cardinality();
+    }
+
+    /**
+     * @param root node to keep alive across collections
+     */
+    void addRoot(int root) {
+        roots.add(root);
+    }
+
+    /**
+     * @param node node to keep alive until it is unprotected
+     */
+    void protect(int node) {
+        protectedStack.add(node);
+    }
+
+    /**
+     * @param node node under construction whose children are kept alive until it is unprotected
+     */
+    void protect(MutableNode node) {
+        protectedStack.add(node);
+    }
+
+    /**
+     * Removes the most recently protected entry
+     */
+    void unprotect() {
+        protectedStack.remove(protectedStack.size() - 1);
+    }
+
+    /**
+     * Collects unused nodes if enough nodes have been created since the last collection. Every node
+     * the caller holds must be a root or protected.
+     */
+    void collectIfNeeded() {
+        if (nodeCount - liveAfterCollection > Math.max(MIN_COLLECTION_THRESHOLD, liveAfterCollection)) {
+            collect();
+        }
+    }
+
+    /**
+     * Frees every node not reachable from a root or a protected entry and clears the operation caches
+     */
+    void collect() {
+        BitSet marked = new BitSet(used);
+        for (int root : roots) {
+            mark(root, marked);
+        }
+        for (Object entry : protectedStack) {
+            if (entry instanceof MutableNode) {
+                MutableNode node = (MutableNode) entry;
+                for (int i = 0; i < node.size(); i++) {
+                    mark(node.get(i), marked);
+                }
+            } else {
+                mark((Integer) entry, marked);
+            }
+        }
+        for (int node = ONE + 1; node < used; node++) {
+            if (levels[node] >= 0 && !marked.get(node)) {
+                levels[node] = -1;
+                children[node] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = node;
+                nodeCount--;
+            }
+        }
+        resizeBuckets(buckets.length);
+        for (OperationCache cache : caches) {
+            cache.clear();
+        }
+        liveAfterCollection = nodeCount;
+        collections++;
+    }
+
+    /**
+     * Marks a node and its descendants
+     *
+     * @param root   node
+     * @param marked nodes already marked
+     */
+    private void mark(int root, BitSet marked) {
+        if (marked.get(root)) {
+            return;
+        }
+        int[] stack = new int[64];
+        int size = 0;
+        stack[size++] = root;
+        marked.set(root);
+        while (size > 0) {
+            int node = stack[--size];
+            for (int child : children[node]) {
+                if (!marked.get(child)) {
+                    marked.set(child);
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of live nodes including the terminals
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return highest number of live nodes including the terminals
+     */
+    int getPeakNodeCount() {
+        return peakNodeCount;
+    }
+
+    /**
+     * @return number of collections run
+     */
+    int getCollectionCount() {
+        return collections;
+    }
+
+    /**
+     * Children of a node under construction at a single level
+     */
+    static final class MutableNode {
+        /**
+         * Level of the node
+         */
+        private final int level;
+
+        /**
+         * Children, only the first {@link #size} are meaningful
+         */
+        private int[] nodeChildren;
+
+        /**
+         * Number of local states that may have a non empty child
+         */
+        private int size;
+
+        /**
+         * Constructor for a node with every child empty
+         *
+         * @param level    level of the node
+         * @param capacity expected number of children
+         */
+        MutableNode(int level, int capacity) {
+            this.level = level;
+            nodeChildren = new int[Math.max(capacity, 4)];
+        }
+
+        /**
+         * @return level of the node
+         */
+        int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return number of local states that may have a non empty child
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param index local state index
+         * @return child for the local state
+         */
+        int get(int index) {
+            return index < size ? nodeChildren[index] : EMPTY;
+        }
+
+        /**
+         * @param index local state index
+         * @param child new child for the local state
+         */
+        void set(int index, int child) {
+            if (index >= nodeChildren.length) {
+                nodeChildren = Arrays.copyOf(nodeChildren, Math.max(index + 1, nodeChildren.length * 2));
+            }
+            if (index >= size) {
+                size = index + 1;
+            }
+            nodeChildren[index] = child;
+        }
+
+        /**
+         * @param forest forest to store the node in
+         * @return the unique node with these children
+         */
+        int checkIn(MddForest forest) {
+            return forest.checkIn(level, nodeChildren, size);
+        }
+    }
+
+    /**
+     * Lossy direct mapped cache from a pair of non negative ints to a node. A new entry
+     * overwrites whatever occupied its slot, which bounds the memory used by the cache.
+     */
+    static final class OperationCache {
+        /**
+         * Packed keys of each slot, -1 if empty
+         */
+        private final long[] keys;
+
+        /**
+         * Value of each slot
+         */
+        private final int[] values;
+
+        /**
+         * Constructor
+         *
+         * @param size number of slots, rounded up to a power of two
+         */
+        private OperationCache(int size) {
+            int slots = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+            keys = new long[slots];
+            values = new int[slots];
+            clear();
+        }
+
+        /**
+         * @param first  first key
+         * @param second second key
+         * @return cached value, or -1 if absent
+         */
+        int get(int first, int second) {
+            long key = ((long) first << 32) | second;
+            int slot = slot(key);
+            return keys[slot] == key ? values[slot] : -1;
+        }
+
+        /**
+         * @param first  first key
+         * @param second second key
+         * @param value  value to cache
+         */
+        void put(int first, int second, int value) {
+            long key = ((long) first << 32) | second;
+            int slot = slot(key);
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        /**
+         * @param key packed key
+         * @return slot of the key
+         */
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & (keys.length - 1);
+        }
+
+        /**
+         * Removes every entry
+         */
+        void clear() {
+            Arrays.fill(keys, -1L);
+        }
+    }
+}
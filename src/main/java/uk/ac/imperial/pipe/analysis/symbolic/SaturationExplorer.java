@@ -0,0 +1,467 @@
+package uk.ac.imperial.pipe.analysis.symbolic;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the reachable markings of a Petri net symbolically, storing them as a multi-valued
+ * decision diagram with one level per place using the saturation algorithm of Ciardo et al.
+ * <p>
+ * Each transition only reads and changes the places it is connected to, so its effect on the
+ * marking is a product of local effects, one per connected place. A transition is handled at the
+ * level of its highest connected place, and the node of each level is saturated, that is closed
+ * under every transition whose highest place is at or below that level, before the levels above
+ * it are considered. This keeps intermediate diagrams small, so the memory used is proportional
+ * to the size of the diagrams rather than the number of markings. The local states of each place
+ * are discovered as the transitions fire, so the places do not need known bounds.
+ * </p>
+ * <p>
+ * The markings explored are those of the underlying place/transition net: timing and priorities
+ * are ignored, so every transition enabled by the arcs and capacities may fire. Every functional
+ * arc weight must refer only to the place its arc is connected to.
+ * </p>
+ */
+public final class SaturationExplorer {
+    /**
+     * Local state index marking an entry of a local effect table not yet evaluated
+     */
+    private static final int UNKNOWN = -2;
+
+    /**
+     * Local state index marking a transition that is disabled by a local state
+     */
+    private static final int DISABLED = -1;
+
+    /**
+     * Compiled Petri net being explored
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Number of levels, one per place
+     */
+    private final int levelCount;
+
+    /**
+     * Place of each level, indexed from level 1
+     */
+    private final int[] levelPlace;
+
+    /**
+     * Level of each place
+     */
+    private final int[] placeLevel;
+
+    /**
+     * Number of tokens per place
+     */
+    private final int tokenCount;
+
+    /**
+     * Transitions whose highest connected place is at each level
+     */
+    private final int[][] eventsByTop;
+
+    /**
+     * Level of the lowest place connected to each transition
+     */
+    private final int[] bottom;
+
+    /**
+     * Level of the highest place connected to each transition, 0 if it has none
+     */
+    private final int[] top;
+
+    /**
+     * Position in the local effect tables of each level connected to each transition, -1 if the
+     * transition does not depend on the level
+     */
+    private final int[][] supportPosition;
+
+    /**
+     * Local state each local state moves to when each transition fires, indexed by transition
+     * then support position then local state index
+     */
+    private final int[][][] localEffects;
+
+    /**
+     * Local states of each level
+     */
+    private LocalStateTable[] localStates;
+
+    /**
+     * Forest of the exploration in progress
+     */
+    private MddForest forest;
+
+    /**
+     * Cache of saturated nodes keyed by the node they were built from
+     */
+    private MddForest.OperationCache saturateCache;
+
+    /**
+     * Cache of relational products keyed by transition and node
+     */
+    private MddForest.OperationCache fireCache;
+
+    /**
+     * Scratch marking used to evaluate local effects
+     */
+    private final int[] scratch;
+
+    /**
+     * Scratch successor marking used to evaluate local effects
+     */
+    private final int[] scratchSuccessor;
+
+    /**
+     * Constructor
+     *
+     * @param petriNet Petri net to explore from its current marking
+     */
+    public SaturationExplorer(PetriNet petriNet) {
+        this(new CompiledPetriNet(petriNet));
+    }
+
+    /**
+     * Constructor ordering the places so that places connected by a transition are close together
+     *
+     * @param compiledPetriNet compiled Petri net to explore
+     * @throws IllegalArgumentException if a functional arc weight refers to a place other than its own
+     */
+    public SaturationExplorer(CompiledPetriNet compiledPetriNet) {
+        this(compiledPetriNet, connectedOrder(compiledPetriNet));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net to explore
+     * @param placeOrder       every place index once, from the bottom level of the diagram to the top.
+     *                         Diagrams are smallest when places that interact are close together
+     * @throws IllegalArgumentException if a functional arc weight refers to a place other than its own
+     *                                  or the order is not a permutation of the places
+     */
+    public SaturationExplorer(CompiledPetriNet compiledPetriNet, int[] placeOrder) {
+        this.compiledPetriNet = compiledPetriNet;
+        levelCount = compiledPetriNet.getPlaceCount();
+        if (placeOrder.length != levelCount) {
+            throw new IllegalArgumentException("Place order must contain all " + levelCount + " places");
+        }
+        levelPlace = new int[levelCount + 1];
+        placeLevel = new int[levelCount];
+        Arrays.fill(placeLevel, -1);
+        for (int i = 0; i < placeOrder.length; i++) {
+            if (placeOrder[i] < 0 || placeOrder[i] >= levelCount || placeLevel[placeOrder[i]] >= 0) {
+                throw new IllegalArgumentException("Place order is not a permutation of the places");
+            }
+            levelPlace[i + 1] = placeOrder[i];
+            placeLevel[placeOrder[i]] = i + 1;
+        }
+        tokenCount = compiledPetriNet.getTokenCount();
+        int transitions = compiledPetriNet.getTransitionCount();
+        bottom = new int[transitions];
+        top = new int[transitions];
+        supportPosition = new int[transitions][];
+        localEffects = new int[transitions][][];
+        scratch = new int[compiledPetriNet.getMarkingLength()];
+        scratchSuccessor = new int[scratch.length];
+
+        List<List<Integer>> byTop = new ArrayList<>();
+        for (int level = 0; level <= levelCount; level++) {
+            byTop.add(new ArrayList<Integer>());
+        }
+        for (int t = 0; t < transitions; t++) {
+            if (!compiledPetriNet.hasLocalEffect(t)) {
+                throw new IllegalArgumentException("Transition " + compiledPetriNet.getTransition(t).getId()
+                        + " has an arc weight that depends on a place other than the arc's own");
+            }
+            int[] places = compiledPetriNet.getConnectedPlaces(t);
+            supportPosition[t] = new int[levelCount + 1];
+            Arrays.fill(supportPosition[t], -1);
+            localEffects[t] = new int[places.length][];
+            bottom[t] = Integer.MAX_VALUE;
+            for (int i = 0; i < places.length; i++) {
+                int level = placeLevel[places[i]];
+                supportPosition[t][level] = i;
+                localEffects[t][i] = new int[0];
+                bottom[t] = Math.min(bottom[t], level);
+                top[t] = Math.max(top[t], level);
+            }
+            if (places.length > 0) {
+                byTop.get(top[t]).add(t);
+            }
+        }
+        eventsByTop = new int[levelCount + 1][];
+        for (int level = 0; level <= levelCount; level++) {
+            List<Integer> events = byTop.get(level);
+            eventsByTop[level] = new int[events.size()];
+            for (int i = 0; i < events.size(); i++) {
+                eventsByTop[level][i] = events.get(i);
+            }
+        }
+    }
+
+    /**
+     * Orders the places breadth first through the transitions connecting them, so that the places
+     * of a transition tend to be on neighbouring levels
+     *
+     * @param compiledPetriNet compiled Petri net
+     * @return place indices from the bottom level to the top
+     */
+    private static int[] connectedOrder(CompiledPetriNet compiledPetriNet) {
+        int places = compiledPetriNet.getPlaceCount();
+        List<List<Integer>> neighbours = new ArrayList<>();
+        for (int p = 0; p < places; p++) {
+            neighbours.add(new ArrayList<Integer>());
+        }
+        for (int t = 0; t < compiledPetriNet.getTransitionCount(); t++) {
+            int[] connected = compiledPetriNet.getConnectedPlaces(t);
+            for (int a : connected) {
+                for (int b : connected) {
+                    if (a != b) {
+                        neighbours.get(a).add(b);
+                    }
+                }
+            }
+        }
+        int[] order = new int[places];
+        boolean[] visited = new boolean[places];
+        int size = 0;
+        for (int start = 0; start < places; start++) {
+            if (visited[start]) {
+                continue;
+            }
+            int head = size;
+            order[size++] = start;
+            visited[start] = true;
+            while (head < size) {
+                for (int neighbour : neighbours.get(order[head++])) {
+                    if (!visited[neighbour]) {
+                        visited[neighbour] = true;
+                        order[size++] = neighbour;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Explores every marking reachable from the marking the compiled Petri net was created with
+     *
+     * @return the reachable markings
+     */
+    public SymbolicStateSpace explore() {
+        return explore(compiledPetriNet.getCurrentMarking());
+    }
+
+    /**
+     * Explores every marking reachable from a marking
+     *
+     * @param initialMarking marking to start from
+     * @return the reachable markings
+     */
+    public SymbolicStateSpace explore(int[] initialMarking) {
+        forest = new MddForest();
+        saturateCache = forest.newCache(1 << 14);
+        fireCache = forest.newCache(1 << 16);
+        localStates = new LocalStateTable[levelCount + 1];
+        for (int t = 0; t < localEffects.length; t++) {
+            for (int i = 0; i < localEffects[t].length; i++) {
+                localEffects[t][i] = new int[0];
+            }
+        }
+
+        int node = MddForest.ONE;
+        int[] counts = new int[tokenCount];
+        for (int level = 1; level <= levelCount; level++) {
+            localStates[level] = new LocalStateTable();
+            System.arraycopy(initialMarking, levelPlace[level] * tokenCount, counts, 0, tokenCount);
+            int index = localStates[level].intern(counts);
+            int[] nodeChildren = new int[index + 1];
+            nodeChildren[index] = node;
+            node = forest.checkIn(level, nodeChildren, nodeChildren.length);
+        }
+
+        int root = saturate(levelCount, node);
+        forest.addRoot(root);
+        forest.collect();
+        return new SymbolicStateSpace(compiledPetriNet, forest, root, localStates, levelPlace, placeLevel);
+    }
+
+    /**
+     * @param level level of the node
+     * @param node  node whose set is to be closed
+     * @return node of every marking reachable from the node's set using transitions whose highest
+     *         place is at or below the level
+     */
+    private int saturate(int level, int node) {
+        if (level == 0) {
+            return node;
+        }
+        int cached = saturateCache.get(node, 0);
+        if (cached >= 0) {
+            return cached;
+        }
+        forest.protect(node);
+        MddForest.MutableNode result = new MddForest.MutableNode(level, forest.getChildCount(node));
+        forest.protect(result);
+        for (int i = 0; i < forest.getChildCount(node); i++) {
+            int child = forest.getChild(node, i);
+            if (child != MddForest.EMPTY) {
+                result.set(i, saturate(level - 1, child));
+            }
+        }
+        int saturated = saturateInPlace(result);
+        forest.unprotect();
+        forest.unprotect();
+        saturateCache.put(node, 0, saturated);
+        return saturated;
+    }
+
+    /**
+     * Fires the transitions whose highest place is at the node's level until nothing new is
+     * reached. The children of the node must already be saturated.
+     *
+     * @param node node under construction, which must be protected
+     * @return the unique saturated node
+     */
+    private int saturateInPlace(MddForest.MutableNode node) {
+        int level = node.getLevel();
+        int[] events = eventsByTop[level];
+        if (events.length > 0) {
+            int[] pending = new int[Math.max(node.size(), 4)];
+            boolean[] isPending = new boolean[pending.length];
+            int count = 0;
+            for (int i = 0; i < node.size(); i++) {
+                if (node.get(i) != MddForest.EMPTY) {
+                    pending[count++] = i;
+                    isPending[i] = true;
+                }
+            }
+            while (count > 0) {
+                int i = pending[--count];
+                isPending[i] = false;
+                forest.collectIfNeeded();
+                for (int event : events) {
+                    int j = getLocalEffect(event, level, i);
+                    if (j < 0) {
+                        continue;
+                    }
+                    int fired = fire(event, level - 1, node.get(i));
+                    if (fired == MddForest.EMPTY) {
+                        continue;
+                    }
+                    int union = forest.union(fired, node.get(j));
+                    if (union != node.get(j)) {
+                        node.set(j, union);
+                        if (j >= isPending.length) {
+                            isPending = Arrays.copyOf(isPending, Math.max(j + 1, isPending.length * 2));
+                            pending = Arrays.copyOf(pending, isPending.length);
+                        }
+                        if (!isPending[j]) {
+                            pending[count++] = j;
+                            isPending[j] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return node.checkIn(forest);
+    }
+
+    /**
+     * Applies a transition to every level from the given level down to its lowest place
+     *
+     * @param event transition index
+     * @param level level of the node
+     * @param node  saturated node
+     * @return saturated node of every marking reached by firing the transition once from the
+     *         node's set and then firing transitions whose highest place is at or below the level
+     */
+    private int fire(int event, int level, int node) {
+        if (level < bottom[event]) {
+            return node;
+        }
+        int cached = fireCache.get(event, node);
+        if (cached >= 0) {
+            return cached;
+        }
+        forest.protect(node);
+        MddForest.MutableNode result = new MddForest.MutableNode(level, forest.getChildCount(node));
+        forest.protect(result);
+        for (int i = 0; i < forest.getChildCount(node); i++) {
+            int child = forest.getChild(node, i);
+            if (child == MddForest.EMPTY) {
+                continue;
+            }
+            int j = getLocalEffect(event, level, i);
+            if (j < 0) {
+                continue;
+            }
+            int fired = fire(event, level - 1, child);
+            if (fired != MddForest.EMPTY) {
+                result.set(j, forest.union(result.get(j), fired));
+            }
+        }
+        int saturated = saturateInPlace(result);
+        forest.unprotect();
+        forest.unprotect();
+        fireCache.put(event, node, saturated);
+        return saturated;
+    }
+
+    /**
+     * @param event transition index
+     * @param level level
+     * @param index local state index at the level
+     * @return local state the level moves to when the transition fires, the same local state if the
+     *         transition does not depend on the level, or -1 if the local state disables the transition
+     */
+    private int getLocalEffect(int event, int level, int index) {
+        int position = supportPosition[event][level];
+        if (position < 0) {
+            return index;
+        }
+        int[] effects = localEffects[event][position];
+        if (index >= effects.length) {
+            int length = effects.length;
+            effects = Arrays.copyOf(effects, Math.max(index + 1, length * 2));
+            Arrays.fill(effects, length, effects.length, UNKNOWN);
+            localEffects[event][position] = effects;
+        }
+        if (effects[index] == UNKNOWN) {
+            effects[index] = evaluateLocalEffect(event, level, index);
+        }
+        return effects[index];
+    }
+
+    /**
+     * @param event transition index
+     * @param level level connected to the transition
+     * @param index local state index at the level
+     * @return local state the level moves to when the transition fires, or -1 if it is disabled
+     */
+    private int evaluateLocalEffect(int event, int level, int index) {
+        int place = levelPlace[level];
+        int offset = place * tokenCount;
+        Arrays.fill(scratch, 0);
+        System.arraycopy(localStates[level].get(index), 0, scratch, offset, tokenCount);
+        if (!compiledPetriNet.isEnabledAt(event, place, scratch)) {
+            return DISABLED;
+        }
+        compiledPetriNet.fire(event, scratch, scratchSuccessor);
+        int[] counts = Arrays.copyOfRange(scratchSuccessor, offset, offset + tokenCount);
+        for (int count : counts) {
+            if (count < 0) {
+                return DISABLED;
+            }
+        }
+        return localStates[level].intern(counts);
+    }
+}
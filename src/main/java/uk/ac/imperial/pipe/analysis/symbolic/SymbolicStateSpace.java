@@ -0,0 +1,140 @@
+package uk.ac.imperial.pipe.analysis.symbolic;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Set of reachable markings of a Petri net stored as a multi-valued decision diagram with one
+ * level per place, as computed by a {@link SaturationExplorer}
+ */
+public final class SymbolicStateSpace {
+    /**
+     * Compiled Petri net the markings belong to
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Forest holding the diagram
+     */
+    private final MddForest forest;
+
+    /**
+     * Root node of the diagram
+     */
+    private final int root;
+
+    /**
+     * Local states of each level
+     */
+    private final LocalStateTable[] localStates;
+
+    /**
+     * Place of each level, indexed from level 1
+     */
+    private final int[] levelPlace;
+
+    /**
+     * Level of each place
+     */
+    private final int[] placeLevel;
+
+    /**
+     * Number of markings, computed on first use
+     */
+    private BigInteger stateCount;
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net the markings belong to
+     * @param forest           forest holding the diagram
+     * @param root             root node of the diagram
+     * @param localStates      local states of each level, indexed from level 1
+     * @param levelPlace       place of each level, indexed from level 1
+     * @param placeLevel       level of each place
+     */
+    SymbolicStateSpace(CompiledPetriNet compiledPetriNet, MddForest forest, int root, LocalStateTable[] localStates,
+                       int[] levelPlace, int[] placeLevel) {
+        this.compiledPetriNet = compiledPetriNet;
+        this.forest = forest;
+        this.root = root;
+        this.localStates = localStates;
+        this.levelPlace = levelPlace;
+        this.placeLevel = placeLevel;
+    }
+
+    /**
+     * @return number of reachable markings
+     */
+    public BigInteger getStateCount() {
+        if (stateCount == null) {
+            stateCount = forest.count(root);
+        }
+        return stateCount;
+    }
+
+    /**
+     * @param marking marking of the compiled Petri net
+     * @return true if the marking is reachable
+     */
+    public boolean contains(int[] marking) {
+        int tokenCount = compiledPetriNet.getTokenCount();
+        int node = root;
+        for (int level = localStates.length - 1; level >= 1 && node != MddForest.EMPTY; level--) {
+            int offset = levelPlace[level] * tokenCount;
+            int index = localStates[level].find(Arrays.copyOfRange(marking, offset, offset + tokenCount));
+            if (index < 0) {
+                return false;
+            }
+            node = forest.getChild(node, index);
+        }
+        return node == MddForest.ONE;
+    }
+
+    /**
+     * @return number of nodes in the diagram, excluding the terminals
+     */
+    public int getNodeCount() {
+        return forest.countNodes(root);
+    }
+
+    /**
+     * @return highest number of nodes alive at once during exploration, including the terminals
+     */
+    public int getPeakNodeCount() {
+        return forest.getPeakNodeCount();
+    }
+
+    /**
+     * @return number of garbage collections run during exploration
+     */
+    public int getCollectionCount() {
+        return forest.getCollectionCount() - 1;
+    }
+
+    /**
+     * @param place place index
+     * @return level of the place in the diagram, from 1 at the bottom
+     */
+    public int getLevel(int place) {
+        return placeLevel[place];
+    }
+
+    /**
+     * @param place place index
+     * @return number of distinct token count vectors discovered for the place, which includes every
+     *         vector the place takes in the reachable markings
+     */
+    public int getLocalStateCount(int place) {
+        return localStates[placeLevel[place]].size();
+    }
+
+    /**
+     * @return compiled Petri net the markings belong to
+     */
+    public CompiledPetriNet getCompiledPetriNet() {
+        return compiledPetriNet;
+    }
+}
@@ -0,0 +1,139 @@
+package uk.ac.imperial.pipe.animation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Immutable settings describing how an animation logic cache is bounded.
+ * <p>
+ * A cache may be unbounded, bounded by a number of entries or bounded by a total weight where the
+ * weight of an entry is supplied by the cache owner, for example the number of transitions it holds.
+ * Bounded caches evict the least recently used entries first. Values may optionally be held by soft
+ * references so that the garbage collector can reclaim them under memory pressure, and hit, miss and
+ * eviction statistics may be recorded.
+ * </p>
+ */
+public final class AnimationCacheSettings {
+    /**
+     * Value of the size and weight bounds when there is no bound
+     */
+    private static final long UNBOUNDED = -1;
+
+    /**
+     * Maximum number of entries, or {@link #UNBOUNDED}
+     */
+    private final long maximumSize;
+
+    /**
+     * Maximum total weight of the entries, or {@link #UNBOUNDED}
+     */
+    private final long maximumWeight;
+
+    /**
+     * True if values should be held by soft references
+     */
+    private final boolean softValues;
+
+    /**
+     * True if hit, miss and eviction statistics should be recorded
+     */
+    private final boolean recordStats;
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize   maximum number of entries, or {@link #UNBOUNDED}
+     * @param maximumWeight maximum total weight of the entries, or {@link #UNBOUNDED}
+     * @param softValues    true if values should be held by soft references
+     * @param recordStats   true if statistics should be recorded
+     */
+    private AnimationCacheSettings(long maximumSize, long maximumWeight, boolean softValues, boolean recordStats) {
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.softValues = softValues;
+        this.recordStats = recordStats;
+    }
+
+    /**
+     * @return settings for a cache that is never evicted from, with statistics recorded
+     */
+    public static AnimationCacheSettings unbounded() {
+        return new AnimationCacheSettings(UNBOUNDED, UNBOUNDED, false, true);
+    }
+
+    /**
+     * @return settings for a cache that holds no entries
+     */
+    public static AnimationCacheSettings disabled() {
+        return maximumSize(0);
+    }
+
+    /**
+     * @param maximumSize maximum number of entries held before the least recently used are evicted
+     * @return settings for a size bounded cache, with statistics recorded
+     */
+    public static AnimationCacheSettings maximumSize(long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum cache size cannot be negative: " + maximumSize);
+        }
+        return new AnimationCacheSettings(maximumSize, UNBOUNDED, false, true);
+    }
+
+    /**
+     * @param maximumWeight maximum total weight of the entries held before the least recently used are evicted
+     * @return settings for a weight bounded cache, with statistics recorded
+     */
+    public static AnimationCacheSettings maximumWeight(long maximumWeight) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum cache weight cannot be negative: " + maximumWeight);
+        }
+        return new AnimationCacheSettings(UNBOUNDED, maximumWeight, false, true);
+    }
+
+    /**
+     * @return a copy of these settings where cached values are held by soft references
+     */
+    public AnimationCacheSettings withSoftValues() {
+        return new AnimationCacheSettings(maximumSize, maximumWeight, true, recordStats);
+    }
+
+    /**
+     * @return a copy of these settings where no statistics are recorded
+     */
+    public AnimationCacheSettings withoutStats() {
+        return new AnimationCacheSettings(maximumSize, maximumWeight, softValues, false);
+    }
+
+    /**
+     * @return true if the cache will never hold any entries
+     */
+    public boolean isDisabled() {
+        return maximumSize == 0 || maximumWeight == 0;
+    }
+
+    /**
+     * Builds a concurrent cache with these settings
+     *
+     * @param weigher weighs entries if the cache is weight bounded
+     * @param <K> key type
+     * @param <V> value type
+     * @return new empty cache
+     */
+    <K, V> Cache<K, V> build(Weigher<? super K, ? super V> weigher) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (maximumSize != UNBOUNDED) {
+            builder.maximumSize(maximumSize);
+        }
+        if (softValues) {
+            builder.softValues();
+        }
+        if (recordStats) {
+            builder.recordStats();
+        }
+        if (maximumWeight != UNBOUNDED) {
+            return builder.maximumWeight(maximumWeight).<K, V>weigher(weigher).build();
+        }
+        return builder.build();
+    }
+}
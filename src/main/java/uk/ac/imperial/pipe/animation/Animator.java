@@ -20,7 +20,8 @@ public interface Animator {
     void reset();
 
     /**
-     * @return a random transition that can fire
+     * @return a random transition that can fire, chosen in proportion to the evaluated
+     *         weights of the enabled immediate transitions or rates of the enabled timed transitions
      */
     Transition getRandomEnabledTransition();
 
@@ -0,0 +1,379 @@
+package uk.ac.imperial.pipe.animation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.HashedStateBuilder;
+import uk.ac.imperial.state.State;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Animation logic backed by a {@link CompiledPetriNet} snapshot. States are converted into
+ * int[] markings so that enabling and firing work on dense indices rather than
+ * string keyed maps. It produces the same results as {@link PetriNetAnimationLogic}
+ * provided the Petri net structure is not modified after compilation.
+ */
+public final class CompiledAnimationLogic implements ExtendedAnimationLogic {
+    /**
+     * Compiled snapshot of the Petri net this class represents the logic for
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Cache for storing a states enabled transitions
+     * Needs to be concurrent thus to handle multiple calls to methods using this data structure
+     * from different threads running in analysis modules
+     */
+    private final Cache<State, EnabledTransitions> cachedEnabledTransitions;
+
+    /**
+     * Cache for storing the successors of a state
+     */
+    private final Cache<State, Map<State, Collection<Transition>>> cachedSuccessors;
+
+    /**
+     * Constructor that compiles the current structure of the Petri net
+     * @param petriNet Petri net to perform animation logic on
+     */
+    public CompiledAnimationLogic(PetriNet petriNet) {
+        this(new CompiledPetriNet(petriNet));
+    }
+
+    /**
+     * Constructor with an unbounded enabled transitions cache and no successor cache
+     * @param compiledPetriNet compiled Petri net to perform animation logic on
+     */
+    public CompiledAnimationLogic(CompiledPetriNet compiledPetriNet) {
+        this(compiledPetriNet, AnimationCacheSettings.unbounded(), AnimationCacheSettings.disabled());
+    }
+
+    /**
+     * Constructor
+     * @param compiledPetriNet compiled Petri net to perform animation logic on
+     * @param enabledTransitionsCache settings for the cache of a states enabled transitions, weighed by
+     *                                the number of transitions enabled ignoring priorities
+     * @param successorsCache settings for the cache of a states successors, weighed by the number of
+     *                        successor transitions
+     */
+    public CompiledAnimationLogic(CompiledPetriNet compiledPetriNet, AnimationCacheSettings enabledTransitionsCache,
+                                  AnimationCacheSettings successorsCache) {
+        this.compiledPetriNet = compiledPetriNet;
+        cachedEnabledTransitions = enabledTransitionsCache.build(new Weigher<State, EnabledTransitions>() {
+            @Override
+            public int weigh(State key, EnabledTransitions value) {
+                int weight = 1;
+                for (boolean enabled : value.enabledIgnoringPriority) {
+                    if (enabled) {
+                        weight++;
+                    }
+                }
+                return weight;
+            }
+        });
+        cachedSuccessors = successorsCache.build(new Weigher<State, Map<State, Collection<Transition>>>() {
+            @Override
+            public int weigh(State key, Map<State, Collection<Transition>> value) {
+                int weight = 1;
+                for (Collection<Transition> transitions : value.values()) {
+                    weight += transitions.size();
+                }
+                return weight;
+            }
+        });
+    }
+
+    /**
+     * @return the compiled Petri net used by this logic
+     */
+    public CompiledPetriNet getCompiledPetriNet() {
+        return compiledPetriNet;
+    }
+
+    /**
+     * @param state Must be a valid state for the Petri net this class represents
+     * @return all transitions that are enabled in the given state, the set is immutable
+     */
+    @Override
+    public Set<Transition> getEnabledTransitions(State state) {
+        EnabledTransitions cached = cachedEnabledTransitions.getIfPresent(state);
+        if (cached != null) {
+            return cached.enabled;
+        }
+
+        boolean[] enabled = new boolean[compiledPetriNet.getTransitionCount()];
+        compiledPetriNet.findEnabledTransitions(compiledPetriNet.getMarking(state), enabled);
+        return cacheEnabledTransitions(state, enabled).enabled;
+    }
+
+    /**
+     * @param state    Must be a valid state for the Petri net this class represents
+     * @param previous a state whose enabled transitions have already been calculated
+     * @return all transitions that are enabled in the given state, the set is immutable
+     */
+    @Override
+    public Set<Transition> getEnabledTransitions(State state, State previous) {
+        EnabledTransitions cached = cachedEnabledTransitions.getIfPresent(state);
+        if (cached != null) {
+            return cached.enabled;
+        }
+        EnabledTransitions previousEnabled = cachedEnabledTransitions.getIfPresent(previous);
+        if (previousEnabled == null) {
+            return getEnabledTransitions(state);
+        }
+        return getEnabledTransitions(state, compiledPetriNet.getMarking(state),
+                compiledPetriNet.getMarking(previous), previousEnabled.enabledIgnoringPriority).enabled;
+    }
+
+    /**
+     * Incrementally calculates and caches the enabled transitions of a state from a previously
+     * evaluated marking
+     *
+     * @param state           state to evaluate
+     * @param marking         marking of the state
+     * @param previousMarking marking whose enabled flags are known
+     * @param previousEnabled enabled flags of the previous marking ignoring priorities
+     * @return the cached entry for the state
+     */
+    private EnabledTransitions getEnabledTransitions(State state, int[] marking, int[] previousMarking,
+                                                     boolean[] previousEnabled) {
+        boolean[] enabled = previousEnabled.clone();
+        compiledPetriNet.updateEnabledTransitions(previousMarking, marking, enabled);
+        return cacheEnabledTransitions(state, enabled);
+    }
+
+    /**
+     * Applies the priority rules to the enabled flags and caches the results
+     *
+     * @param state   state the flags were calculated for
+     * @param enabled enabled flags of the state ignoring priorities
+     * @return the cached entry for the state
+     */
+    private EnabledTransitions cacheEnabledTransitions(State state, boolean[] enabled) {
+        int[] indices = new int[enabled.length];
+        int count = compiledPetriNet.applyPriorities(enabled, indices);
+        ImmutableSet.Builder<Transition> enabledTransitions = ImmutableSet.builder();
+        for (int i = 0; i < count; i++) {
+            enabledTransitions.add(compiledPetriNet.getTransition(indices[i]));
+        }
+        EnabledTransitions entry = new EnabledTransitions(enabledTransitions.build(), enabled);
+        cachedEnabledTransitions.put(state, entry);
+        return entry;
+    }
+
+    /**
+     * Calculates the successors of the state. The enabled transitions of each new successor
+     * are calculated incrementally from this state so that they need not be evaluated
+     * from scratch when the successor is explored.
+     *
+     * @param state to be evaluated
+     * @return all successors of this state, the map and its values are immutable
+     */
+    @Override
+    public Map<State, Collection<Transition>> getSuccessors(State state) {
+        Map<State, Collection<Transition>> cached = cachedSuccessors.getIfPresent(state);
+        if (cached != null) {
+            return cached;
+        }
+
+        int[] marking = compiledPetriNet.getMarking(state);
+        EnabledTransitions entry = cachedEnabledTransitions.getIfPresent(state);
+        if (entry == null) {
+            boolean[] enabledIgnoringPriority = new boolean[compiledPetriNet.getTransitionCount()];
+            compiledPetriNet.findEnabledTransitions(marking, enabledIgnoringPriority);
+            entry = cacheEnabledTransitions(state, enabledIgnoringPriority);
+        }
+        int[] enabled = new int[compiledPetriNet.getTransitionCount()];
+        int count = compiledPetriNet.applyPriorities(entry.enabledIgnoringPriority, enabled);
+
+        Map<State, ImmutableList.Builder<Transition>> successors = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            int[] successorMarking = new int[marking.length];
+            compiledPetriNet.fire(enabled[i], marking, successorMarking);
+            State successor = compiledPetriNet.getState(successorMarking);
+            if (!successors.containsKey(successor)) {
+                successors.put(successor, ImmutableList.<Transition>builder());
+                if (cachedEnabledTransitions.getIfPresent(successor) == null) {
+                    getEnabledTransitions(successor, successorMarking, marking, entry.enabledIgnoringPriority);
+                }
+            }
+            successors.get(successor).add(compiledPetriNet.getTransition(enabled[i]));
+        }
+
+        ImmutableMap.Builder<State, Collection<Transition>> result = ImmutableMap.builder();
+        for (Map.Entry<State, ImmutableList.Builder<Transition>> successor : successors.entrySet()) {
+            result.put(successor.getKey(), successor.getValue().build());
+        }
+        Map<State, Collection<Transition>> successorMap = result.build();
+        cachedSuccessors.put(state, successorMap);
+        return successorMap;
+    }
+
+    /**
+     * Calculates the successors of a block of states. Enabled transitions already cached are reused,
+     * the remaining states are evaluated together one transition at a time. The results are not
+     * cached so that exploring a large state space through batches does not allocate per state
+     * beyond the successor states themselves.
+     *
+     * @param states states to be evaluated
+     * @param batch  buffer the successors are written to, its previous contents are discarded
+     */
+    @Override
+    public void getSuccessors(List<State> states, SuccessorBatch batch) {
+        batch.reset();
+        int transitionCount = compiledPetriNet.getTransitionCount();
+        batch.ensureScratch(states.size(), compiledPetriNet.getMarkingLength(), transitionCount);
+
+        int uncached = 0;
+        for (int i = 0; i < states.size(); i++) {
+            compiledPetriNet.getMarking(states.get(i), batch.markings[i]);
+            EnabledTransitions entry = cachedEnabledTransitions.getIfPresent(states.get(i));
+            if (entry == null) {
+                batch.pendingMarkings[uncached] = batch.markings[i];
+                batch.pendingEnabled[uncached++] = batch.enabled[i];
+            } else {
+                System.arraycopy(entry.enabledIgnoringPriority, 0, batch.enabled[i], 0, transitionCount);
+            }
+        }
+        compiledPetriNet.findEnabledTransitions(batch.pendingMarkings, uncached, batch.pendingEnabled);
+
+        for (int i = 0; i < states.size(); i++) {
+            int count = compiledPetriNet.applyPriorities(batch.enabled[i], batch.enabledIndices);
+            for (int e = 0; e < count; e++) {
+                int transition = batch.enabledIndices[e];
+                compiledPetriNet.fire(transition, batch.markings[i], batch.successorMarking);
+                batch.add(compiledPetriNet.getState(batch.successorMarking),
+                        compiledPetriNet.getTransition(transition));
+            }
+            batch.endSource();
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of the enabled transitions cache, these are all
+     *         zero if the cache does not record statistics
+     */
+    public CacheStats getEnabledTransitionsCacheStats() {
+        return cachedEnabledTransitions.stats();
+    }
+
+    /**
+     * @return approximate number of states whose enabled transitions are cached
+     */
+    public long getEnabledTransitionsCacheSize() {
+        return cachedEnabledTransitions.size();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of the successors cache, these are all
+     *         zero if the cache does not record statistics
+     */
+    public CacheStats getSuccessorsCacheStats() {
+        return cachedSuccessors.stats();
+    }
+
+    /**
+     * @return approximate number of states whose successors are cached
+     */
+    public long getSuccessorsCacheSize() {
+        return cachedSuccessors.size();
+    }
+
+    /**
+     * @param state      to be evaluated
+     * @param transition to be fired
+     * @return the successor state after firing the transition, or a copy of the state if the
+     *         transition is not enabled
+     */
+    @Override
+    public State getFiredState(State state, Transition transition) {
+        int index = compiledPetriNet.getTransitionIndex(transition);
+        if (index < 0 || !getEnabledTransitions(state).contains(transition)) {
+            return copy(state);
+        }
+        int[] marking = compiledPetriNet.getMarking(state);
+        int[] successor = new int[marking.length];
+        compiledPetriNet.fire(index, marking, successor);
+        return compiledPetriNet.getState(successor);
+    }
+
+    /**
+     * @param state  petri net state to evaluate weight against
+     * @param weight a functional weight
+     * @return the evaluated weight for the given state
+     */
+    @Override
+    public double getArcWeight(State state, String weight) {
+        return compiledPetriNet.evaluate(weight, compiledPetriNet.getMarking(state));
+    }
+
+    /**
+     * @param state      petri net state to evaluate the rate against
+     * @param transition transition whose rate is evaluated
+     * @return the evaluated rate
+     */
+    @Override
+    public double getRate(State state, Transition transition) {
+        int index = compiledPetriNet.getTransitionIndex(transition);
+        if (index < 0) {
+            return transition.getActualRate(compiledPetriNet.getPetriNet(), state);
+        }
+        return compiledPetriNet.getRate(index, compiledPetriNet.getMarking(state));
+    }
+
+    /**
+     * Clears cached transitions and successors
+     */
+    @Override
+    public void clear() {
+        cachedEnabledTransitions.invalidateAll();
+        cachedSuccessors.invalidateAll();
+    }
+
+    /**
+     * @param state to copy
+     * @return a new state with the same token counts
+     */
+    private State copy(State state) {
+        HashedStateBuilder builder = new HashedStateBuilder();
+        for (String placeId : state.getPlaces()) {
+            builder.placeWithTokens(placeId, state.getTokens(placeId));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Cached enabled transitions of a state
+     */
+    private static final class EnabledTransitions {
+        /**
+         * Immutable set of transitions enabled once priorities have been applied
+         */
+        private final Set<Transition> enabled;
+
+        /**
+         * Enabled flags indexed by transition index before priorities have been applied,
+         * these are never modified once cached
+         */
+        private final boolean[] enabledIgnoringPriority;
+
+        /**
+         * Constructor
+         * @param enabled immutable set of transitions enabled once priorities have been applied
+         * @param enabledIgnoringPriority enabled flags before priorities have been applied
+         */
+        private EnabledTransitions(Set<Transition> enabled, boolean[] enabledIgnoringPriority) {
+            this.enabled = enabled;
+            this.enabledIgnoringPriority = enabledIgnoringPriority;
+        }
+    }
+}
@@ -0,0 +1,1350 @@
+package uk.ac.imperial.pipe.animation;
+
+import com.google.common.primitives.Doubles;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentNotFoundException;
+import uk.ac.imperial.pipe.models.petrinet.Arc;
+import uk.ac.imperial.pipe.models.petrinet.ArcType;
+import uk.ac.imperial.pipe.models.petrinet.Connectable;
+import uk.ac.imperial.pipe.models.petrinet.InboundArc;
+import uk.ac.imperial.pipe.models.petrinet.OutboundArc;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Token;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.pipe.parsers.MarkingExpression;
+import uk.ac.imperial.pipe.parsers.MarkingLayout;
+import uk.ac.imperial.pipe.parsers.ParsedExpression;
+import uk.ac.imperial.state.HashedStateBuilder;
+import uk.ac.imperial.state.State;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, index based snapshot of a Petri net used for fast animation and analysis.
+ * <p>
+ * Places, tokens and transitions are given dense integer indices and the arcs of each
+ * transition are stored in compressed sparse row (CSR) arrays. A marking is an {@code int[]} of
+ * length {@code getPlaceCount() * getTokenCount()} where the count of token {@code k} in
+ * place {@code p} is stored at {@code p * getTokenCount() + k}.
+ * </p>
+ * <p>
+ * Functional rates and arc weights are parsed once and their place and token references resolved
+ * to marking indices when the snapshot is created, so they are evaluated directly against the
+ * {@code int[]} marking. Invalid expressions only fail, with an {@link IllegalArgumentException},
+ * if they are evaluated.
+ * </p>
+ * <p>
+ * The snapshot does not listen for changes to the Petri net it was compiled from, so a new
+ * one must be created if the structure of the net is modified.
+ * </p>
+ */
+public final class CompiledPetriNet implements MarkingLayout {
+
+    /**
+     * Petri net this snapshot was compiled from, used to evaluate functional expressions
+     */
+    private final PetriNet petriNet;
+
+    /**
+     * Place ids indexed by place index
+     */
+    private final String[] placeIds;
+
+    /**
+     * Place capacities indexed by place index, a capacity of 0 or less means there is no restriction
+     */
+    private final int[] placeCapacities;
+
+    /**
+     * Token ids indexed by token index
+     */
+    private final String[] tokenIds;
+
+    /**
+     * Transitions indexed by transition index
+     */
+    private final Transition[] transitions;
+
+    /**
+     * Place id -&gt; place index
+     */
+    private final Map<String, Integer> placeIndices = new HashMap<>();
+
+    /**
+     * Token id -&gt; token index
+     */
+    private final Map<String, Integer> tokenIndices = new HashMap<>();
+
+    /**
+     * Transition id -&gt; transition index
+     */
+    private final Map<String, Integer> transitionIndices = new HashMap<>();
+
+    /**
+     * True if the transition at the index is timed
+     */
+    private final boolean[] timed;
+
+    /**
+     * Priority of the transition at the index
+     */
+    private final int[] priorities;
+
+    /**
+     * Arcs from places into each transition
+     */
+    private final ArcTable inputs;
+
+    /**
+     * Arcs from each transition to places
+     */
+    private final ArcTable outputs;
+
+    /**
+     * Constant rate of each transition, NaN if the rate is a functional expression
+     */
+    private final double[] rateConstants;
+
+    /**
+     * Rate expression of each transition
+     */
+    private final String[] rateExpressions;
+
+    /**
+     * Resolved rate expression of each transition, null if the rate is constant
+     */
+    private final MarkingExpression[] compiledRates;
+
+    /**
+     * Expression text -&gt; expression resolved against the layout of this snapshot
+     */
+    private final ConcurrentMap<String, MarkingExpression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * True for each transition that is an infinite server
+     */
+    private final boolean[] infiniteServer;
+
+    /**
+     * Indices of the transitions whose enabling or rate may change when each transition fires
+     */
+    private final int[][] affectedTransitions;
+
+    /**
+     * Indices of the places whose token counts can affect whether each transition is enabled
+     */
+    private final int[][] readPlaces;
+
+    /**
+     * Start offsets into {@link #dependentTransitions} for each place, of length place count + 1
+     */
+    private final int[] dependentStart;
+
+    /**
+     * Indices of the transitions whose enabling depends on each place
+     */
+    private final int[] dependentTransitions;
+
+    /**
+     * Compiles the current structure of the Petri net into an index based snapshot
+     *
+     * @param petriNet Petri net to compile
+     */
+    public CompiledPetriNet(PetriNet petriNet) {
+        this.petriNet = petriNet;
+
+        Collection<Place> netPlaces = petriNet.getPlaces();
+        placeIds = new String[netPlaces.size()];
+        placeCapacities = new int[netPlaces.size()];
+        int placeIndex = 0;
+        for (Place place : netPlaces) {
+            placeIds[placeIndex] = place.getId();
+            placeCapacities[placeIndex] = place.getCapacity();
+            placeIndices.put(place.getId(), placeIndex);
+            placeIndex++;
+        }
+
+        Collection<Token> netTokens = petriNet.getTokens();
+        tokenIds = new String[netTokens.size()];
+        int tokenIndex = 0;
+        for (Token token : netTokens) {
+            tokenIds[tokenIndex] = token.getId();
+            tokenIndices.put(token.getId(), tokenIndex);
+            tokenIndex++;
+        }
+
+        Collection<Transition> netTransitions = petriNet.getTransitions();
+        transitions = netTransitions.toArray(new Transition[netTransitions.size()]);
+        timed = new boolean[transitions.length];
+        priorities = new int[transitions.length];
+        rateConstants = new double[transitions.length];
+        rateExpressions = new String[transitions.length];
+        compiledRates = new MarkingExpression[transitions.length];
+        infiniteServer = new boolean[transitions.length];
+        List<Collection<? extends Arc<? extends Connectable, ? extends Connectable>>> inbound = new ArrayList<>();
+        List<Collection<? extends Arc<? extends Connectable, ? extends Connectable>>> outbound = new ArrayList<>();
+        for (int t = 0; t < transitions.length; t++) {
+            Transition transition = transitions[t];
+            transitionIndices.put(transition.getId(), t);
+            timed[t] = transition.isTimed();
+            priorities[t] = transition.getPriority();
+            rateExpressions[t] = transition.getRateExpr();
+            Double rate = Doubles.tryParse(rateExpressions[t]);
+            rateConstants[t] = rate == null ? Double.NaN : rate;
+            compiledRates[t] = rate == null ? compile(rateExpressions[t]) : null;
+            infiniteServer[t] = transition.isInfiniteServer();
+            Collection<InboundArc> inArcs = petriNet.inboundArcs(transition);
+            Collection<OutboundArc> outArcs = petriNet.outboundArcs(transition);
+            inbound.add(inArcs);
+            outbound.add(outArcs);
+        }
+        inputs = new ArcTable(inbound, true);
+        outputs = new ArcTable(outbound, false);
+
+        TransitionDependencies dependencies = new TransitionDependencies(petriNet);
+        dependentStart = new int[placeIds.length + 1];
+        List<Integer> dependents = new ArrayList<>();
+        for (int p = 0; p < placeIds.length; p++) {
+            dependentStart[p] = dependents.size();
+            for (Transition transition : dependencies.getDependentTransitions(placeIds[p])) {
+                dependents.add(transitionIndices.get(transition.getId()));
+            }
+        }
+        dependentStart[placeIds.length] = dependents.size();
+        dependentTransitions = new int[dependents.size()];
+        for (int i = 0; i < dependentTransitions.length; i++) {
+            dependentTransitions[i] = dependents.get(i);
+        }
+        affectedTransitions = buildAffectedTransitions();
+        readPlaces = new int[transitions.length][];
+        for (int t = 0; t < transitions.length; t++) {
+            readPlaces[t] = buildReadPlaces(t);
+        }
+    }
+
+    /**
+     * Works out, for each transition, the transitions whose enabling or rate depends on a place the
+     * transition adds tokens to or removes tokens from
+     *
+     * @return affected transition indices of each transition
+     */
+    private int[][] buildAffectedTransitions() {
+        List<Set<Integer>> rateDependents = new ArrayList<>();
+        for (int p = 0; p < placeIds.length; p++) {
+            rateDependents.add(new HashSet<Integer>());
+        }
+        for (int t = 0; t < transitions.length; t++) {
+            if (Double.isNaN(rateConstants[t])) {
+                for (String component : petriNet.parseExpression(rateExpressions[t]).getComponents()) {
+                    Integer place = placeIndices.get(component);
+                    if (place != null) {
+                        rateDependents.get(place).add(t);
+                    }
+                }
+            }
+        }
+
+        int[][] affected = new int[transitions.length][];
+        for (int t = 0; t < transitions.length; t++) {
+            Set<Integer> places = new HashSet<>();
+            for (int arc = inputs.arcStart[t]; arc < inputs.arcStart[t + 1]; arc++) {
+                if (!inputs.arcInhibitor[arc]) {
+                    places.add(inputs.arcPlace[arc]);
+                }
+            }
+            for (int arc = outputs.arcStart[t]; arc < outputs.arcStart[t + 1]; arc++) {
+                places.add(outputs.arcPlace[arc]);
+            }
+            Set<Integer> transitionsAffected = new TreeSet<>();
+            for (int place : places) {
+                for (int i = dependentStart[place]; i < dependentStart[place + 1]; i++) {
+                    transitionsAffected.add(dependentTransitions[i]);
+                }
+                transitionsAffected.addAll(rateDependents.get(place));
+            }
+            affected[t] = new int[transitionsAffected.size()];
+            int i = 0;
+            for (int dependent : transitionsAffected) {
+                affected[t][i++] = dependent;
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return the Petri net this snapshot was compiled from
+     */
+    public PetriNet getPetriNet() {
+        return petriNet;
+    }
+
+    /**
+     * @return number of places in the snapshot
+     */
+    public int getPlaceCount() {
+        return placeIds.length;
+    }
+
+    /**
+     * @return number of tokens in the snapshot
+     */
+    @Override
+    public int getTokenCount() {
+        return tokenIds.length;
+    }
+
+    /**
+     * @return number of transitions in the snapshot
+     */
+    public int getTransitionCount() {
+        return transitions.length;
+    }
+
+    /**
+     * @return length of the int[] markings of this snapshot
+     */
+    public int getMarkingLength() {
+        return placeIds.length * tokenIds.length;
+    }
+
+    /**
+     * @param place place index
+     * @param token token index
+     * @return position of the place/token count in a marking
+     */
+    public int getMarkingIndex(int place, int token) {
+        return place * tokenIds.length + token;
+    }
+
+    /**
+     * @param place place index
+     * @return id of the place
+     */
+    public String getPlaceId(int place) {
+        return placeIds[place];
+    }
+
+    /**
+     * @param place place index
+     * @return capacity of the place, 0 or less if it has no capacity restriction
+     */
+    @Override
+    public int getPlaceCapacity(int place) {
+        return placeCapacities[place];
+    }
+
+    /**
+     * @param token token index
+     * @return id of the token
+     */
+    public String getTokenId(int token) {
+        return tokenIds[token];
+    }
+
+    /**
+     * @param transition transition index
+     * @return the transition
+     */
+    public Transition getTransition(int transition) {
+        return transitions[transition];
+    }
+
+    /**
+     * @param placeId id of the place
+     * @return index of the place or -1 if it is not part of the snapshot
+     */
+    @Override
+    public int getPlaceIndex(String placeId) {
+        Integer index = placeIndices.get(placeId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param tokenId id of the token
+     * @return index of the token or -1 if it is not part of the snapshot
+     */
+    @Override
+    public int getTokenIndex(String tokenId) {
+        Integer index = tokenIndices.get(tokenId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param transition transition to look up
+     * @return index of the transition or -1 if it is not part of the snapshot
+     */
+    public int getTransitionIndex(Transition transition) {
+        Integer index = transitionIndices.get(transition.getId());
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param transition transition index
+     * @return true if the transition is timed, false if immediate
+     */
+    public boolean isTimed(int transition) {
+        return timed[transition];
+    }
+
+    /**
+     * @param transition transition index
+     * @return priority of the transition
+     */
+    public int getPriority(int transition) {
+        return priorities[transition];
+    }
+
+    /**
+     * @param transition transition index
+     * @return true if the transition is an infinite server
+     */
+    public boolean isInfiniteServer(int transition) {
+        return infiniteServer[transition];
+    }
+
+    /**
+     * @param transition transition index
+     * @return indices of the transitions whose enabling or rate may differ after the transition
+     *         fires, in ascending order. The array must not be modified
+     */
+    public int[] getAffectedTransitions(int transition) {
+        return affectedTransitions[transition];
+    }
+
+    /**
+     * Evaluates the rate of a transition against a marking in the same way as
+     * {@link Transition#getActualRate(PetriNet, State)}, so an infinite server's rate is multiplied
+     * by its enabling degree. For immediate transitions the rate is the weight used to choose
+     * between conflicting transitions.
+     *
+     * @param transition transition index
+     * @param marking    marking to evaluate against
+     * @return evaluated rate of the transition
+     */
+    public double getRate(int transition, int[] marking) {
+        double rate = compiledRates[transition] == null ? rateConstants[transition] :
+                evaluate(compiledRates[transition], rateExpressions[transition], marking);
+        if (!infiniteServer[transition]) {
+            return rate;
+        }
+        int enablingDegree = Integer.MAX_VALUE;
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (inputs.arcInhibitor[arc]) {
+                continue;
+            }
+            int place = inputs.arcPlace[arc];
+            for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                int required = (int) Math.floor(inputs.getWeight(entry, marking));
+                if (required == 0) {
+                    enablingDegree = 0;
+                } else {
+                    enablingDegree = Math.min(enablingDegree,
+                            marking[getMarkingIndex(place, inputs.entryToken[entry])] / required);
+                }
+            }
+        }
+        return rate * enablingDegree;
+    }
+
+    /**
+     * @return marking of the tokens currently stored in the Petri net places
+     */
+    public int[] getCurrentMarking() {
+        int[] marking = new int[getMarkingLength()];
+        for (int p = 0; p < placeIds.length; p++) {
+            try {
+                Place place = petriNet.getComponent(placeIds[p], Place.class);
+                for (int k = 0; k < tokenIds.length; k++) {
+                    marking[getMarkingIndex(p, k)] = place.getTokenCount(tokenIds[k]);
+                }
+            } catch (PetriNetComponentNotFoundException ignored) {
+                // Place has been removed since compilation, treat it as empty
+            }
+        }
+        return marking;
+    }
+
+    /**
+     * @param state state of the Petri net
+     * @return marking representing the state. Counts missing from the state are treated as zero
+     */
+    public int[] getMarking(State state) {
+        int[] marking = new int[getMarkingLength()];
+        getMarking(state, marking);
+        return marking;
+    }
+
+    /**
+     * @param state   state of the Petri net
+     * @param marking buffer of at least {@link #getMarkingLength()} entries the marking representing the
+     *                state is written to. Counts missing from the state are written as zero
+     */
+    public void getMarking(State state, int[] marking) {
+        for (int p = 0; p < placeIds.length; p++) {
+            Map<String, Integer> tokens = state.containsTokens(placeIds[p]) ? state.getTokens(placeIds[p]) : null;
+            for (int k = 0; k < tokenIds.length; k++) {
+                Integer count = tokens == null ? null : tokens.get(tokenIds[k]);
+                marking[getMarkingIndex(p, k)] = count == null ? 0 : count;
+            }
+        }
+    }
+
+    /**
+     * @param marking marking of this snapshot
+     * @return Markov chain state containing every place and token count of the marking
+     */
+    public State getState(int[] marking) {
+        HashedStateBuilder builder = new HashedStateBuilder();
+        for (int p = 0; p < placeIds.length; p++) {
+            for (int k = 0; k < tokenIds.length; k++) {
+                builder.placeWithToken(placeIds[p], tokenIds[k], marking[getMarkingIndex(p, k)]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param place   place index
+     * @param marking marking to evaluate
+     * @return total number of tokens of any type in the place
+     */
+    public int getTokensInPlace(int place, int[] marking) {
+        int count = 0;
+        int start = place * tokenIds.length;
+        for (int k = 0; k < tokenIds.length; k++) {
+            count += marking[start + k];
+        }
+        return count;
+    }
+
+    /**
+     * Works out if a transition is enabled in the marking, ignoring priorities. This means that
+     * a) places connected by a normal incoming arc have enough tokens to fire and are not empty
+     * b) places connected by an inhibitor arc are empty
+     * c) places connected by an outgoing arc have enough capacity for the new tokens
+     *
+     * @param transition transition index
+     * @param marking    marking to evaluate
+     * @return true if the transition is enabled in the marking
+     */
+    public boolean isEnabled(int transition, int[] marking) {
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            int place = inputs.arcPlace[arc];
+            if (inputs.arcInhibitor[arc]) {
+                if (!placeIsEmpty(place, marking)) {
+                    return false;
+                }
+            } else {
+                if (placeIsEmpty(place, marking)) {
+                    return false;
+                }
+                for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                    int count = marking[getMarkingIndex(place, inputs.entryToken[entry])];
+                    if (count < inputs.getWeight(entry, marking)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            int place = outputs.arcPlace[arc];
+            if (placeCapacities[place] > 0 && !hasCapacityFor(transition, arc, place, marking)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the transitions which are enabled in the marking. If any immediate transitions are
+     * enabled then timed transitions are not counted as enabled, and immediate transitions with a lower
+     * priority than the highest enabled priority are disabled.
+     *
+     * @param marking marking to evaluate
+     * @param enabled buffer of at least {@link #getTransitionCount()} entries that the enabled
+     *                transition indices are written to
+     * @return the number of enabled transitions written to the buffer
+     */
+    public int getEnabledTransitions(int[] marking, int[] enabled) {
+        int count = 0;
+        boolean hasImmediate = false;
+        int maxPriority = 0;
+        for (int t = 0; t < transitions.length; t++) {
+            if (isEnabled(t, marking)) {
+                enabled[count++] = t;
+                if (!timed[t]) {
+                    hasImmediate = true;
+                    maxPriority = Math.max(maxPriority, priorities[t]);
+                }
+            }
+        }
+        return hasImmediate ? retainImmediate(enabled, count, maxPriority) : count;
+    }
+
+    /**
+     * Works out which transitions are enabled in the marking ignoring priorities
+     *
+     * @param marking marking to evaluate
+     * @param enabled buffer of at least {@link #getTransitionCount()} entries, set to true
+     *                for each enabled transition index
+     */
+    public void findEnabledTransitions(int[] marking, boolean[] enabled) {
+        for (int t = 0; t < transitions.length; t++) {
+            enabled[t] = isEnabled(t, marking);
+        }
+    }
+
+    /**
+     * Works out which transitions are enabled in each of a block of markings ignoring priorities.
+     * Transitions are evaluated one at a time against every marking, and a marking whose token counts
+     * in the places read by the transition match the last marking it was evaluated against reuses
+     * that result. The markings of a breadth first level tend to differ in a few places only, so most
+     * arc weights, functional weights in particular, are evaluated once per run of such markings
+     * rather than once per marking.
+     *
+     * @param markings markings to evaluate
+     * @param count    number of markings from the start of the array to evaluate
+     * @param enabled  buffers of at least {@link #getTransitionCount()} entries for each marking, set to
+     *                 true for each enabled transition index
+     */
+    public void findEnabledTransitions(int[][] markings, int count, boolean[][] enabled) {
+        for (int t = 0; t < transitions.length; t++) {
+            int evaluated = -1;
+            for (int i = 0; i < count; i++) {
+                if (evaluated >= 0 && !placesChanged(readPlaces[t], markings[evaluated], markings[i])) {
+                    enabled[i][t] = enabled[evaluated][t];
+                } else {
+                    enabled[i][t] = isEnabled(t, markings[i]);
+                    evaluated = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Incrementally updates the enabled transitions of a previous marking for a new marking. Only
+     * transitions that depend on places whose token counts differ between the two markings are
+     * re-evaluated.
+     *
+     * @param previous marking the enabled flags were calculated for
+     * @param marking  marking to evaluate
+     * @param enabled  enabled flags of the previous marking ignoring priorities, updated in place
+     */
+    public void updateEnabledTransitions(int[] previous, int[] marking, boolean[] enabled) {
+        boolean[] evaluated = new boolean[transitions.length];
+        for (int place = 0; place < placeIds.length; place++) {
+            if (placeChanged(place, previous, marking)) {
+                for (int i = dependentStart[place]; i < dependentStart[place + 1]; i++) {
+                    int t = dependentTransitions[i];
+                    if (!evaluated[t]) {
+                        evaluated[t] = true;
+                        enabled[t] = isEnabled(t, marking);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the priority rules to transitions enabled ignoring priorities. If any immediate
+     * transitions are enabled then timed transitions and immediate transitions with a lower
+     * priority than the highest enabled priority are removed.
+     *
+     * @param enabledIgnoringPriority enabled flags indexed by transition index
+     * @param enabled                 buffer of at least {@link #getTransitionCount()} entries that the
+     *                                enabled transition indices are written to
+     * @return the number of enabled transitions written to the buffer
+     */
+    public int applyPriorities(boolean[] enabledIgnoringPriority, int[] enabled) {
+        int count = 0;
+        boolean hasImmediate = false;
+        int maxPriority = 0;
+        for (int t = 0; t < transitions.length; t++) {
+            if (enabledIgnoringPriority[t]) {
+                enabled[count++] = t;
+                if (!timed[t]) {
+                    hasImmediate = true;
+                    maxPriority = Math.max(maxPriority, priorities[t]);
+                }
+            }
+        }
+        return hasImmediate ? retainImmediate(enabled, count, maxPriority) : count;
+    }
+
+    /**
+     * @param places   place indices
+     * @param previous first marking
+     * @param marking  second marking
+     * @return true if any token count of the places differs between the markings
+     */
+    private boolean placesChanged(int[] places, int[] previous, int[] marking) {
+        for (int place : places) {
+            if (placeChanged(place, previous, marking)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param place    place index
+     * @param previous first marking
+     * @param marking  second marking
+     * @return true if any token count of the place differs between the markings
+     */
+    private boolean placeChanged(int place, int[] previous, int[] marking) {
+        int start = place * tokenIds.length;
+        for (int i = start; i < start + tokenIds.length; i++) {
+            if (previous[i] != marking[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes timed transitions and immediate transitions whose priority is less than the
+     * specified value from the front of the buffer
+     *
+     * @param enabled     buffer of enabled transition indices
+     * @param count       number of entries in the buffer
+     * @param maxPriority minimum priority of the transitions allowed to remain in the buffer
+     * @return number of transitions remaining in the buffer
+     */
+    private int retainImmediate(int[] enabled, int count, int maxPriority) {
+        int retained = 0;
+        for (int i = 0; i < count; i++) {
+            int t = enabled[i];
+            if (!timed[t] && priorities[t] >= maxPriority) {
+                enabled[retained++] = t;
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Calculates the marking after firing the transition. Weights are evaluated against the
+     * marking before firing and {@code Integer.MAX_VALUE} is treated as infinity.
+     * This method does not check that the transition is enabled.
+     *
+     * @param transition transition index
+     * @param marking    marking before firing, it is not modified
+     * @param successor  buffer the successor marking is written to, may not be the same array as marking
+     */
+    public void fire(int transition, int[] marking, int[] successor) {
+        System.arraycopy(marking, 0, successor, 0, marking.length);
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            int place = inputs.arcPlace[arc];
+            for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                int index = getMarkingIndex(place, inputs.entryToken[entry]);
+                int weight = (int) inputs.getWeight(entry, marking);
+                successor[index] = subtractWeight(marking[index], weight);
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            int place = outputs.arcPlace[arc];
+            for (int entry = outputs.entryStart[arc]; entry < outputs.entryStart[arc + 1]; entry++) {
+                int index = getMarkingIndex(place, outputs.entryToken[entry]);
+                int weight = (int) outputs.getWeight(entry, marking);
+                successor[index] = addWeight(successor[index], weight);
+            }
+        }
+    }
+
+    /**
+     * Calculates the marking after firing each transition a number of times at once, as in a tau leap.
+     * All weights are evaluated against the marking before firing and {@code Integer.MAX_VALUE} is
+     * treated as infinity. Enabling is not checked for any of the firings.
+     *
+     * @param firings   number of times to fire each transition indexed by transition index
+     * @param marking   marking before firing, it is not modified
+     * @param successor buffer the successor marking is written to, may not be the same array as marking
+     * @return true if the successor is valid, false if a count became negative, reached infinity or a
+     *         place exceeded its capacity in which case the contents of the successor are undefined
+     */
+    public boolean fire(long[] firings, int[] marking, int[] successor) {
+        long[] counts = new long[marking.length];
+        for (int i = 0; i < marking.length; i++) {
+            counts[i] = marking[i];
+        }
+        for (int t = 0; t < transitions.length; t++) {
+            long times = firings[t];
+            if (times == 0) {
+                continue;
+            }
+            for (int arc = inputs.arcStart[t]; arc < inputs.arcStart[t + 1]; arc++) {
+                int place = inputs.arcPlace[arc];
+                for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                    int index = getMarkingIndex(place, inputs.entryToken[entry]);
+                    counts[index] -= times * (long) inputs.getWeight(entry, marking);
+                }
+            }
+            for (int arc = outputs.arcStart[t]; arc < outputs.arcStart[t + 1]; arc++) {
+                int place = outputs.arcPlace[arc];
+                for (int entry = outputs.entryStart[arc]; entry < outputs.entryStart[arc + 1]; entry++) {
+                    int index = getMarkingIndex(place, outputs.entryToken[entry]);
+                    counts[index] += times * (long) outputs.getWeight(entry, marking);
+                }
+            }
+        }
+        for (int i = 0; i < marking.length; i++) {
+            if (marking[i] == Integer.MAX_VALUE) {
+                successor[i] = Integer.MAX_VALUE;
+            } else if (counts[i] < 0 || counts[i] >= Integer.MAX_VALUE) {
+                return false;
+            } else {
+                successor[i] = (int) counts[i];
+            }
+        }
+        for (int place = 0; place < placeIds.length; place++) {
+            if (placeCapacities[place] > 0 && getTokensInPlace(place, successor) > placeCapacities[place]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param transition transition index
+     * @return true if the transition has no inhibitor arcs, every arc weight is a constant and it does
+     *         not add tokens to a place with a capacity, so that firing it many times at once changes
+     *         the marking by a fixed multiple of a single firing
+     */
+    public boolean hasConstantEffect(int transition) {
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (inputs.arcInhibitor[arc] || hasExpression(inputs, arc)) {
+                return false;
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            if (placeCapacities[outputs.arcPlace[arc]] > 0 || hasExpression(outputs, arc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param transition transition index
+     * @return indices of the places connected to the transition by any arc in ascending order
+     */
+    public int[] getConnectedPlaces(int transition) {
+        Set<Integer> places = new TreeSet<>();
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            places.add(inputs.arcPlace[arc]);
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            places.add(outputs.arcPlace[arc]);
+        }
+        return toArray(places);
+    }
+
+    /**
+     * @param transition transition index
+     * @return indices in ascending order of the places whose token counts can affect whether the
+     *         transition is enabled or how it changes the marking: its input places, the places of
+     *         its inhibitor arcs, its output places that have a capacity and every place its
+     *         functional arc weights refer to
+     */
+    public int[] getReadPlaces(int transition) {
+        return readPlaces[transition].clone();
+    }
+
+    /**
+     * @param transition transition index
+     * @return indices in ascending order of the places read by the transition, see
+     *         {@link #getReadPlaces(int)}
+     */
+    private int[] buildReadPlaces(int transition) {
+        Set<Integer> places = new TreeSet<>();
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            places.add(inputs.arcPlace[arc]);
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            if (placeCapacities[outputs.arcPlace[arc]] > 0) {
+                places.add(outputs.arcPlace[arc]);
+            }
+        }
+        addWeightPlaces(inputs, transition, places);
+        addWeightPlaces(outputs, transition, places);
+        return toArray(places);
+    }
+
+    /**
+     * @param transition transition index
+     * @return indices in ascending order of the places whose token counts the transition may
+     *         change when it fires, that is the places of its normal input and output arcs
+     */
+    public int[] getWritePlaces(int transition) {
+        Set<Integer> places = new TreeSet<>();
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (!inputs.arcInhibitor[arc]) {
+                places.add(inputs.arcPlace[arc]);
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            places.add(outputs.arcPlace[arc]);
+        }
+        return toArray(places);
+    }
+
+    /**
+     * Adds the places referred to by the functional weights of a transition's arcs
+     *
+     * @param table      arc table
+     * @param transition transition index
+     * @param places     set the place indices are added to
+     */
+    private void addWeightPlaces(ArcTable table, int transition, Set<Integer> places) {
+        for (int arc = table.arcStart[transition]; arc < table.arcStart[transition + 1]; arc++) {
+            for (int entry = table.entryStart[arc]; entry < table.entryStart[arc + 1]; entry++) {
+                if (table.entryExpression[entry] != null) {
+                    for (String component : petriNet.parseExpression(table.entryExpression[entry]).getComponents()) {
+                        Integer place = placeIndices.get(component);
+                        if (place != null) {
+                            places.add(place);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param values set of indices
+     * @return the indices in iteration order
+     */
+    private static int[] toArray(Set<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    /**
+     * @param transition transition index
+     * @return true if every functional weight of the transition's arcs refers only to the place of
+     *         its own arc, so that whether the transition is enabled and how it changes each place
+     *         can be worked out one place at a time
+     */
+    public boolean hasLocalEffect(int transition) {
+        return hasLocalWeights(inputs, transition) && hasLocalWeights(outputs, transition);
+    }
+
+    /**
+     * @param table      arc table
+     * @param transition transition index
+     * @return true if the functional weights of the transition's arcs in the table refer only to
+     *         the place of their own arc
+     */
+    private boolean hasLocalWeights(ArcTable table, int transition) {
+        for (int arc = table.arcStart[transition]; arc < table.arcStart[transition + 1]; arc++) {
+            for (int entry = table.entryStart[arc]; entry < table.entryStart[arc + 1]; entry++) {
+                if (table.entryExpression[entry] == null) {
+                    continue;
+                }
+                for (String component : petriNet.parseExpression(table.entryExpression[entry]).getComponents()) {
+                    Integer place = placeIndices.get(component);
+                    if (place != null && place != table.arcPlace[arc]) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out if the arcs between a transition and a single place allow it to fire, checking the
+     * same conditions as {@link #isEnabled(int, int[])} for that place only. A transition is enabled
+     * if and only if it is enabled at every place connected to it.
+     *
+     * @param transition transition index
+     * @param place      place index
+     * @param marking    marking to evaluate, only the counts of the place are read unless the arc
+     *                   weights refer to other places
+     * @return true if the place does not prevent the transition from firing
+     */
+    public boolean isEnabledAt(int transition, int place, int[] marking) {
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (inputs.arcPlace[arc] != place) {
+                continue;
+            }
+            if (inputs.arcInhibitor[arc]) {
+                if (!placeIsEmpty(place, marking)) {
+                    return false;
+                }
+            } else {
+                if (placeIsEmpty(place, marking)) {
+                    return false;
+                }
+                for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                    int count = marking[getMarkingIndex(place, inputs.entryToken[entry])];
+                    if (count < inputs.getWeight(entry, marking)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            if (outputs.arcPlace[arc] == place && placeCapacities[place] > 0
+                    && !hasCapacityFor(transition, arc, place, marking)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param table arc table
+     * @param arc   arc index
+     * @return true if any token weight of the arc is a functional expression
+     */
+    private static boolean hasExpression(ArcTable table, int arc) {
+        for (int entry = table.entryStart[arc]; entry < table.entryStart[arc + 1]; entry++) {
+            if (table.entryExpression[entry] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the tokens a transition removes from the marking when it fires, ignoring inhibitor arcs
+     *
+     * @param transition transition index
+     * @param marking    marking to evaluate functional weights against
+     * @param indices    buffer of at least {@link #getMarkingLength()} entries the marking indices are written to
+     * @param weights    buffer of the same size the number of tokens removed from each index is written to
+     * @return number of entries written, a marking index appears at most once
+     */
+    public int getInputs(int transition, int[] marking, int[] indices, int[] weights) {
+        int count = 0;
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (inputs.arcInhibitor[arc]) {
+                continue;
+            }
+            int place = inputs.arcPlace[arc];
+            for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                count = accumulate(getMarkingIndex(place, inputs.entryToken[entry]),
+                        (int) inputs.getWeight(entry, marking), indices, weights, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the net change to the marking of a single firing of a transition
+     *
+     * @param transition transition index
+     * @param marking    marking to evaluate functional weights against
+     * @param indices    buffer of at least {@link #getMarkingLength()} entries the marking indices are written to
+     * @param changes    buffer of the same size the change of each marking index is written to
+     * @return number of entries written, a marking index appears at most once and may have a zero change
+     */
+    public int getChange(int transition, int[] marking, int[] indices, int[] changes) {
+        int count = 0;
+        for (int arc = inputs.arcStart[transition]; arc < inputs.arcStart[transition + 1]; arc++) {
+            if (inputs.arcInhibitor[arc]) {
+                continue;
+            }
+            int place = inputs.arcPlace[arc];
+            for (int entry = inputs.entryStart[arc]; entry < inputs.entryStart[arc + 1]; entry++) {
+                count = accumulate(getMarkingIndex(place, inputs.entryToken[entry]),
+                        -(int) inputs.getWeight(entry, marking), indices, changes, count);
+            }
+        }
+        for (int arc = outputs.arcStart[transition]; arc < outputs.arcStart[transition + 1]; arc++) {
+            int place = outputs.arcPlace[arc];
+            for (int entry = outputs.entryStart[arc]; entry < outputs.entryStart[arc + 1]; entry++) {
+                count = accumulate(getMarkingIndex(place, outputs.entryToken[entry]),
+                        (int) outputs.getWeight(entry, marking), indices, changes, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds a value to the entry of a sparse vector with the given index, appending it if absent
+     *
+     * @param index   marking index
+     * @param value   value to add
+     * @param indices indices of the sparse vector
+     * @param values  values of the sparse vector
+     * @param count   number of entries in the sparse vector
+     * @return new number of entries
+     */
+    private static int accumulate(int index, int value, int[] indices, int[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            if (indices[i] == index) {
+                values[i] += value;
+                return count;
+            }
+        }
+        indices[count] = index;
+        values[count] = value;
+        return count + 1;
+    }
+
+    /**
+     * Evaluates a functional expression against the marking
+     *
+     * @param expression functional expression conforming to the rate grammar
+     * @param marking    marking to evaluate against
+     * @return evaluated expression
+     * @throws IllegalArgumentException if the expression cannot be parsed, references components
+     *                                  that are not part of the snapshot or evaluates to a negative value
+     */
+    public double evaluate(String expression, int[] marking) {
+        return evaluate(compile(expression), expression, marking);
+    }
+
+    /**
+     * @param compiled   expression resolved against the layout of this snapshot
+     * @param expression text of the expression, used to describe errors
+     * @param marking    marking to evaluate against
+     * @return evaluated expression
+     * @throws IllegalArgumentException if the expression is invalid or evaluates to a negative value
+     */
+    private static double evaluate(MarkingExpression compiled, String expression, int[] marking) {
+        double value = compiled.evaluate(marking);
+        if (value < 0) {
+            throw new IllegalArgumentException("Functional expression '" + expression
+                    + "' evaluated to a negative value " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @param expression functional expression conforming to the rate grammar
+     * @return the expression resolved against the layout of this snapshot, compiling it if it has
+     *         not been seen before
+     */
+    private MarkingExpression compile(String expression) {
+        MarkingExpression compiled = expressions.get(expression);
+        if (compiled == null) {
+            compiled = resolve(expression);
+            MarkingExpression existing = expressions.putIfAbsent(expression, compiled);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses the expression, using the expression cache of the Petri net, and resolves its place
+     * and token references to marking indices
+     *
+     * @param expression functional expression conforming to the rate grammar
+     * @return resolved expression, which throws an {@link IllegalArgumentException} naming the
+     *         expression when evaluated if it could not be compiled
+     */
+    private MarkingExpression resolve(String expression) {
+        Double constant = Doubles.tryParse(expression);
+        if (constant != null) {
+            return MarkingExpression.constant(constant);
+        }
+        ParsedExpression parsed = petriNet.getExpressionCache().get(expression);
+        if (parsed.hasSyntaxErrors()) {
+            return MarkingExpression.invalid("Could not parse functional expression '" + expression + "': "
+                    + parsed.getSyntaxErrors());
+        }
+        try {
+            return parsed.getExpression().resolve(this);
+        } catch (IllegalArgumentException e) {
+            return MarkingExpression.invalid("Functional expression '" + expression + "' " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param place   place index
+     * @param marking marking to evaluate
+     * @return true if the place holds no tokens of any type
+     */
+    private boolean placeIsEmpty(int place, int[] marking) {
+        int start = place * tokenIds.length;
+        for (int k = 0; k < tokenIds.length; k++) {
+            if (marking[start + k] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the target of an outbound arc will not overflow its capacity, taking into account
+     * any tokens the transition removes from the place via an arc loop
+     *
+     * @param transition transition index
+     * @param arc        outbound arc index
+     * @param place      target place index of the arc
+     * @param marking    marking to evaluate
+     * @return true if firing will not cause the place to exceed its capacity
+     */
+    private boolean hasCapacityFor(int transition, int arc, int place, int[] marking) {
+        int tokensIn = 0;
+        for (int entry = outputs.entryStart[arc]; entry < outputs.entryStart[arc + 1]; entry++) {
+            tokensIn += outputs.getWeight(entry, marking);
+        }
+        int tokensOut = 0;
+        for (int in = inputs.arcStart[transition]; in < inputs.arcStart[transition + 1]; in++) {
+            if (inputs.arcPlace[in] == place) {
+                for (int entry = inputs.entryStart[in]; entry < inputs.entryStart[in + 1]; entry++) {
+                    tokensOut += inputs.getWeight(entry, marking);
+                }
+            }
+        }
+        return getTokensInPlace(place, marking) + tokensIn - tokensOut <= placeCapacities[place];
+    }
+
+    /**
+     * Treats Integer.MAX_VALUE as infinity and so will not subtract the weight
+     * from it if this is the case
+     *
+     * @param currentWeight current token count
+     * @param arcWeight     weight to subtract
+     * @return subtracted weight
+     */
+    private static int subtractWeight(int currentWeight, int arcWeight) {
+        if (currentWeight == Integer.MAX_VALUE) {
+            return currentWeight;
+        }
+        return currentWeight - arcWeight;
+    }
+
+    /**
+     * Treats Integer.MAX_VALUE as infinity and so will not add the weight
+     * to it if this is the case
+     *
+     * @param currentWeight current token count
+     * @param arcWeight     weight to add
+     * @return added weight
+     */
+    private static int addWeight(int currentWeight, int arcWeight) {
+        if (currentWeight == Integer.MAX_VALUE) {
+            return currentWeight;
+        }
+        return currentWeight + arcWeight;
+    }
+
+    /**
+     * CSR representation of the arcs of every transition in one direction.
+     * Arcs of transition {@code t} are {@code arcStart[t]} to {@code arcStart[t + 1] - 1}
+     * and the token weights of arc {@code a} are {@code entryStart[a]} to {@code entryStart[a + 1] - 1}.
+     */
+    private final class ArcTable {
+        /**
+         * Index of the first arc of each transition, with a trailing end marker
+         */
+        private final int[] arcStart;
+
+        /**
+         * Place index each arc connects to
+         */
+        private final int[] arcPlace;
+
+        /**
+         * True if the arc is an inhibitor arc
+         */
+        private final boolean[] arcInhibitor;
+
+        /**
+         * Index of the first token weight of each arc, with a trailing end marker
+         */
+        private final int[] entryStart;
+
+        /**
+         * Token index of each token weight
+         */
+        private final int[] entryToken;
+
+        /**
+         * Constant value of each token weight
+         */
+        private final double[] entryWeight;
+
+        /**
+         * Functional expression of each token weight, null if the weight is constant
+         */
+        private final String[] entryExpression;
+
+        /**
+         * Resolved functional expression of each token weight, null if the weight is constant
+         */
+        private final MarkingExpression[] entryCompiled;
+
+        /**
+         * Constructor
+         *
+         * @param arcsPerTransition arcs of each transition in transition index order
+         * @param inbound           true if the arcs go from places to transitions
+         */
+        private ArcTable(List<Collection<? extends Arc<? extends Connectable, ? extends Connectable>>> arcsPerTransition,
+                         boolean inbound) {
+            int arcCount = 0;
+            int entryCount = 0;
+            for (Collection<? extends Arc<? extends Connectable, ? extends Connectable>> arcs : arcsPerTransition) {
+                for (Arc<? extends Connectable, ? extends Connectable> arc : arcs) {
+                    arcCount++;
+                    entryCount += arc.getTokenWeights().size();
+                }
+            }
+            arcStart = new int[arcsPerTransition.size() + 1];
+            arcPlace = new int[arcCount];
+            arcInhibitor = new boolean[arcCount];
+            entryStart = new int[arcCount + 1];
+            entryToken = new int[entryCount];
+            entryWeight = new double[entryCount];
+            entryExpression = new String[entryCount];
+            entryCompiled = new MarkingExpression[entryCount];
+
+            int arc = 0;
+            int entry = 0;
+            for (int t = 0; t < arcsPerTransition.size(); t++) {
+                arcStart[t] = arc;
+                for (Arc<? extends Connectable, ? extends Connectable> netArc : arcsPerTransition.get(t)) {
+                    Connectable place = inbound ? netArc.getSource() : netArc.getTarget();
+                    arcPlace[arc] = getPlaceIndex(place.getId());
+                    arcInhibitor[arc] = netArc.getType() == ArcType.INHIBITOR;
+                    entryStart[arc] = entry;
+                    for (Map.Entry<String, String> weight : netArc.getTokenWeights().entrySet()) {
+                        entryToken[entry] = getTokenIndex(weight.getKey());
+                        Double constant = Doubles.tryParse(weight.getValue());
+                        if (constant == null) {
+                            entryExpression[entry] = weight.getValue();
+                            entryCompiled[entry] = compile(weight.getValue());
+                        } else {
+                            entryWeight[entry] = constant;
+                        }
+                        entry++;
+                    }
+                    arc++;
+                }
+            }
+            arcStart[arcsPerTransition.size()] = arc;
+            entryStart[arcCount] = entry;
+        }
+
+        /**
+         * @param entry   token weight index
+         * @param marking marking to evaluate functional weights against
+         * @return the evaluated weight
+         */
+        private double getWeight(int entry, int[] marking) {
+            MarkingExpression compiled = entryCompiled[entry];
+            return compiled == null ? entryWeight[entry] : evaluate(compiled, entryExpression[entry], marking);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.imperial.pipe.animation;
+
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Optional operations of an {@link AnimationLogic} that let callers reuse work across states.
+ * Both shipped logics implement it, callers holding an arbitrary {@link AnimationLogic} should
+ * check for it and fall back to the plain methods when it is not implemented.
+ */
+public interface ExtendedAnimationLogic extends AnimationLogic {
+    /**
+     * Calculates the enabled transitions of a state that was reached from a previously
+     * evaluated state. Only transitions that depend on places whose token counts differ
+     * between the two states are re-evaluated, if the previous state is no longer
+     * known all transitions are evaluated.
+     *
+     * @param state    Must be a valid state for the Petri net this class represents
+     * @param previous a state whose enabled transitions have already been calculated
+     * @return all enabled transitions
+     */
+    Set<Transition> getEnabledTransitions(State state, State previous);
+
+    /**
+     * Calculates the successor states of a block of states, for example a chunk of a breadth first
+     * level, writing them into a reusable buffer rather than allocating a map per state.
+     * Implementations may share the evaluation of each transition across the whole block.
+     *
+     * @param states states to be evaluated
+     * @param batch  buffer the successors are written to, its previous contents are discarded
+     */
+    void getSuccessors(List<State> states, SuccessorBatch batch);
+
+    /**
+     * Evaluates the rate of a transition, multiplied by its enabling degree if it is an infinite
+     * server. For immediate transitions this is the weight used to resolve conflicts between them.
+     *
+     * @param state      petri net state to evaluate the rate against
+     * @param transition transition whose rate is evaluated
+     * @return the evaluated rate, negative if the rate expression could not be evaluated
+     */
+    double getRate(State state, Transition transition);
+}
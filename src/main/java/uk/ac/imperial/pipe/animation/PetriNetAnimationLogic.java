@@ -1,5 +1,11 @@
 package uk.ac.imperial.pipe.animation;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import uk.ac.imperial.pipe.models.petrinet.Arc;
 import uk.ac.imperial.pipe.models.petrinet.PetriNet;
 import uk.ac.imperial.pipe.models.petrinet.Place;
@@ -11,13 +17,12 @@ import uk.ac.imperial.state.HashedStateBuilder;
 import uk.ac.imperial.state.State;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class has useful functions relevant for the animation
  * of a Petri net. It does not alter the state of the Petri net.
  */
-public final class PetriNetAnimationLogic implements AnimationLogic {
+public final class PetriNetAnimationLogic implements ExtendedAnimationLogic {
     /**
      * Petri net this class represents the logic for
      */
@@ -28,27 +33,97 @@ public final class PetriNetAnimationLogic implements AnimationLogic {
      * Needs to be concurrent thus to handle multiple calls to methods using this data structure
      * from different threads running in analysis modules
      */
-    public Map<State, Set<Transition>> cachedEnabledTransitions = new ConcurrentHashMap<>();
+    private final Cache<State, EnabledTransitions> cachedEnabledTransitions;
 
     /**
-     * Constructor
+     * Cache for storing the successors of a state, concurrent for the same reasons as the
+     * enabled transitions cache
+     */
+    private final Cache<State, Map<State, Collection<Transition>>> cachedSuccessors;
+
+    /**
+     * Index of place -&gt; dependent transitions, lazily built and discarded on {@link #clear()}
+     */
+    private volatile TransitionDependencies dependencies;
+
+    /**
+     * Constructor with an unbounded enabled transitions cache and no successor cache
      * @param petriNet Petri net to perform animation logic on
      */
     public PetriNetAnimationLogic(PetriNet petriNet) {
+        this(petriNet, AnimationCacheSettings.unbounded(), AnimationCacheSettings.disabled());
+    }
+
+    /**
+     * Constructor
+     * @param petriNet Petri net to perform animation logic on
+     * @param enabledTransitionsCache settings for the cache of a states enabled transitions, weighed by
+     *                                the number of enabled transitions
+     * @param successorsCache settings for the cache of a states successors, weighed by the number of
+     *                        successor transitions
+     */
+    public PetriNetAnimationLogic(PetriNet petriNet, AnimationCacheSettings enabledTransitionsCache,
+                                  AnimationCacheSettings successorsCache) {
         this.petriNet = petriNet;
+        cachedEnabledTransitions = enabledTransitionsCache.build(new Weigher<State, EnabledTransitions>() {
+            @Override
+            public int weigh(State key, EnabledTransitions value) {
+                return 1 + value.enabledIgnoringPriority.size();
+            }
+        });
+        cachedSuccessors = successorsCache.build(new Weigher<State, Map<State, Collection<Transition>>>() {
+            @Override
+            public int weigh(State key, Map<State, Collection<Transition>> value) {
+                int weight = 1;
+                for (Collection<Transition> transitions : value.values()) {
+                    weight += transitions.size();
+                }
+                return weight;
+            }
+        });
     }
 
     /**
      * @param state Must be a valid state for the Petri net this class represents
-     * @return all transitions that are enabled in the given state
+     * @return all transitions that are enabled in the given state, the set is immutable
      */
     @Override
     public Set<Transition> getEnabledTransitions(State state) {
-        if (cachedEnabledTransitions.containsKey(state)) {
-            return cachedEnabledTransitions.get(state);
+        EnabledTransitions cached = cachedEnabledTransitions.getIfPresent(state);
+        if (cached != null) {
+            return cached.enabled;
         }
+        return cacheEnabledTransitions(state, findEnabledTransitions(state));
+    }
 
-        Set<Transition> enabledTransitions = findEnabledTransitions(state);
+    /**
+     * @param state    Must be a valid state for the Petri net this class represents
+     * @param previous a state whose enabled transitions have already been calculated
+     * @return all transitions that are enabled in the given state, the set is immutable
+     */
+    @Override
+    public Set<Transition> getEnabledTransitions(State state, State previous) {
+        EnabledTransitions cached = cachedEnabledTransitions.getIfPresent(state);
+        if (cached != null) {
+            return cached.enabled;
+        }
+        EnabledTransitions previousEnabled = cachedEnabledTransitions.getIfPresent(previous);
+        if (previousEnabled == null) {
+            return getEnabledTransitions(state);
+        }
+        return cacheEnabledTransitions(state,
+                findEnabledTransitions(state, previous, previousEnabled.enabledIgnoringPriority));
+    }
+
+    /**
+     * Applies the priority rules to the enabled transitions and caches the results
+     *
+     * @param state state the transitions are enabled in
+     * @param enabledIgnoringPriority transitions enabled in the state before priorities are applied
+     * @return transitions enabled in the state
+     */
+    private Set<Transition> cacheEnabledTransitions(State state, Set<Transition> enabledIgnoringPriority) {
+        Set<Transition> enabledTransitions = new HashSet<>(enabledIgnoringPriority);
         boolean hasImmediate = areAnyTransitionsImmediate(enabledTransitions);
         int maxPriority = hasImmediate ? getMaxPriority(enabledTransitions) : 0;
 
@@ -57,28 +132,99 @@ public final class PetriNetAnimationLogic implements AnimationLogic {
         }
 
         removePrioritiesLessThan(maxPriority, enabledTransitions);
-        cachedEnabledTransitions.put(state, enabledTransitions);
-        return enabledTransitions;
+        EnabledTransitions entry = new EnabledTransitions(enabledTransitions, enabledIgnoringPriority);
+        cachedEnabledTransitions.put(state, entry);
+        return entry.enabled;
     }
 
     /**
+     * Calculates the successors of the state. The enabled transitions of each new successor
+     * are calculated incrementally from this state so that they need not be evaluated
+     * from scratch when the successor is explored.
+     *
      * @param state to be evaluated
-     * @return all successors of this state
+     * @return all successors of this state, the map and its values are immutable
      */
     @Override
     public Map<State, Collection<Transition>> getSuccessors(State state) {
+        Map<State, Collection<Transition>> cached = cachedSuccessors.getIfPresent(state);
+        if (cached != null) {
+            return cached;
+        }
+
         Collection<Transition> enabled = getEnabledTransitions(state);
-        Map<State, Collection<Transition>> successors = new HashMap<>();
+        Map<State, ImmutableList.Builder<Transition>> successors = new LinkedHashMap<>();
         for (Transition transition : enabled) {
 
             State successor = getFiredState(state, transition);
             if (!successors.containsKey(successor)) {
-                successors.put(successor, new LinkedList<Transition>());
+                successors.put(successor, ImmutableList.<Transition>builder());
+                getEnabledTransitions(successor, state);
             }
             successors.get(successor).add(transition);
         }
-        return successors;
 
+        ImmutableMap.Builder<State, Collection<Transition>> result = ImmutableMap.builder();
+        for (Map.Entry<State, ImmutableList.Builder<Transition>> entry : successors.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().build());
+        }
+        Map<State, Collection<Transition>> successorMap = result.build();
+        cachedSuccessors.put(state, successorMap);
+        return successorMap;
+    }
+
+    /**
+     * Calculates the successors of a block of states. The enabled transitions of each state are
+     * taken from the enabled transitions cache, and each new successor is evaluated incrementally
+     * from the state it was fired from and cached, so that the next block finds its states there.
+     * The successor maps are not cached.
+     *
+     * @param states states to be evaluated
+     * @param batch  buffer the successors are written to, its previous contents are discarded
+     */
+    @Override
+    public void getSuccessors(List<State> states, SuccessorBatch batch) {
+        batch.reset();
+        for (State state : states) {
+            for (Transition transition : getEnabledTransitions(state)) {
+                State successor = getFiredState(state, transition);
+                if (cachedEnabledTransitions.getIfPresent(successor) == null) {
+                    getEnabledTransitions(successor, state);
+                }
+                batch.add(successor, transition);
+            }
+            batch.endSource();
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of the enabled transitions cache, these are all
+     *         zero if the cache does not record statistics
+     */
+    public CacheStats getEnabledTransitionsCacheStats() {
+        return cachedEnabledTransitions.stats();
+    }
+
+    /**
+     * @return approximate number of states whose enabled transitions are cached
+     */
+    public long getEnabledTransitionsCacheSize() {
+        return cachedEnabledTransitions.size();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics of the successors cache, these are all
+     *         zero if the cache does not record statistics
+     */
+    public CacheStats getSuccessorsCacheStats() {
+        return cachedSuccessors.stats();
+    }
+
+    /**
+     * @return approximate number of states whose successors are cached
+     */
+    public long getSuccessorsCacheSize() {
+        return cachedSuccessors.size();
     }
 
     /**
@@ -159,11 +305,23 @@ public final class PetriNetAnimationLogic implements AnimationLogic {
     }
 
     /**
-     * Clears cached transitions
+     * @param state      petri net state to evaluate the rate against
+     * @param transition transition whose rate is evaluated
+     * @return the evaluated rate, negative if the rate expression could not be evaluated
+     */
+    @Override
+    public double getRate(State state, Transition transition) {
+        return transition.getActualRate(petriNet, state);
+    }
+
+    /**
+     * Clears cached transitions, successors and the place dependency index
      */
     @Override
     public void clear() {
-        cachedEnabledTransitions.clear();
+        cachedEnabledTransitions.invalidateAll();
+        cachedSuccessors.invalidateAll();
+        dependencies = null;
     }
 
     /**
@@ -210,6 +368,40 @@ public final class PetriNetAnimationLogic implements AnimationLogic {
         return enabledTransitions;
     }
 
+    /**
+     * Re-evaluates only the transitions that depend on places whose tokens differ
+     * between the previous state and this state
+     *
+     * @param state           state to calculate the enabled transitions of
+     * @param previous        previously evaluated state
+     * @param previousEnabled transitions enabled in the previous state ignoring priorities
+     * @return all the enabled transitions in the state ignoring priorities
+     */
+    private Set<Transition> findEnabledTransitions(State state, State previous, Set<Transition> previousEnabled) {
+        Set<Transition> enabledTransitions = new HashSet<>(previousEnabled);
+        Collection<String> changedPlaces = TransitionDependencies.getChangedPlaces(previous, state);
+        for (Transition transition : getDependencies().getDependentTransitions(changedPlaces)) {
+            if (isEnabled(transition, state)) {
+                enabledTransitions.add(transition);
+            } else {
+                enabledTransitions.remove(transition);
+            }
+        }
+        return enabledTransitions;
+    }
+
+    /**
+     * @return index of place -&gt; dependent transitions for the current Petri net structure
+     */
+    private TransitionDependencies getDependencies() {
+        TransitionDependencies result = dependencies;
+        if (result == null) {
+            result = new TransitionDependencies(petriNet);
+            dependencies = result;
+        }
+        return result;
+    }
+
     /**
      * Works out if an transition is enabled. This means that it checks if
      * a) places connected by an incoming arc to this transition have enough tokens to fire
@@ -300,4 +492,30 @@ public final class PetriNetAnimationLogic implements AnimationLogic {
         }
     }
 
+
+    /**
+     * Cached enabled transitions of a state, both sets are immutable
+     */
+    private static final class EnabledTransitions {
+        /**
+         * Transitions enabled once priorities have been applied
+         */
+        private final Set<Transition> enabled;
+
+        /**
+         * Transitions enabled before priorities have been applied, used to incrementally
+         * calculate the enabled transitions of successor states
+         */
+        private final Set<Transition> enabledIgnoringPriority;
+
+        /**
+         * Constructor
+         * @param enabled transitions enabled once priorities have been applied
+         * @param enabledIgnoringPriority transitions enabled before priorities have been applied
+         */
+        private EnabledTransitions(Set<Transition> enabled, Set<Transition> enabledIgnoringPriority) {
+            this.enabled = ImmutableSet.copyOf(enabled);
+            this.enabledIgnoringPriority = ImmutableSet.copyOf(enabledIgnoringPriority);
+        }
+    }
 }
@@ -15,6 +15,11 @@ import java.util.*;
 public final class PetriNetAnimator implements Animator {
     private static final String ERROR_NO_TRANSITIONS_TO_FIRE = "Error - no transitions to fire!";
 
+    /**
+     * Default maximum number of firings that can be undone
+     */
+    public static final int DEFAULT_JOURNAL_CAPACITY = 1000;
+
 	/**
      * Petri net to animate
      */
@@ -31,13 +36,73 @@ public final class PetriNetAnimator implements Animator {
      */
     private Map<String, Map<String, Integer>> savedStateTokens = new HashMap<>();
 
+    /**
+     * Last state the enabled transitions were calculated for, used to incrementally
+     * calculate the enabled transitions of the next state
+     */
+    private State lastState;
+
+    /**
+     * Maximum number of firings kept in the journal
+     */
+    private final int journalCapacity;
+
+    /**
+     * Token changes of the firings that can be undone, the most recent last
+     */
+    private final Deque<FiringDelta> undoJournal = new ArrayDeque<>();
+
+    /**
+     * Token changes of the undone firings that can be redone, the most recently undone last
+     */
+    private final Deque<FiringDelta> redoJournal = new ArrayDeque<>();
+
+    /**
+     * Source of randomness for choosing between enabled transitions
+     */
+    private Random random = new Random();
+
+    /**
+     * Reusable buffer of the enabled transitions considered by {@link #getRandomEnabledTransition()}
+     */
+    private Transition[] candidates = new Transition[8];
+
+    /**
+     * Reusable buffer of the cumulative weights of the candidates
+     */
+    private double[] cumulativeWeights = new double[8];
+
     /**
      * Constructor
      * @param petriNet petri net to modify the structure for for animaiton
      */
     public PetriNetAnimator(PetriNet petriNet) {
+        this(petriNet, new PetriNetAnimationLogic(petriNet));
+    }
+
+    /**
+     * Constructor for animating with an alternative animation logic, for example
+     * a {@link CompiledAnimationLogic}
+     * @param petriNet petri net to modify the structure for for animaiton
+     * @param animationLogic logic for the petri net used to calculate enabled transitions and firings
+     */
+    public PetriNetAnimator(PetriNet petriNet, AnimationLogic animationLogic) {
+        this(petriNet, animationLogic, DEFAULT_JOURNAL_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param petriNet petri net to modify the structure for for animaiton
+     * @param animationLogic logic for the petri net used to calculate enabled transitions and firings
+     * @param journalCapacity maximum number of firings that can be undone, older firings are forgotten
+     */
+    public PetriNetAnimator(PetriNet petriNet, AnimationLogic animationLogic, int journalCapacity) {
+        if (journalCapacity < 0) {
+            throw new IllegalArgumentException("Journal capacity cannot be negative: " + journalCapacity);
+        }
         this.petriNet = petriNet;
-        animationLogic = new PetriNetAnimationLogic(petriNet);
+        this.animationLogic = animationLogic;
+        this.journalCapacity = journalCapacity;
         saveState();
     }
 
@@ -53,7 +118,8 @@ public final class PetriNetAnimator implements Animator {
     }
 
     /**
-     * Reset the Petri net by applying the saved state back onto the Petri net
+     * Reset the Petri net by applying the saved state back onto the Petri net.
+     * The firings in the journal no longer apply and are forgotten
      */
     @Override
     public void reset() {
@@ -61,21 +127,75 @@ public final class PetriNetAnimator implements Animator {
             Map<String, Integer> originalTokens = savedStateTokens.get(place.getId());
             place.setTokenCounts(originalTokens);
         }
+        undoJournal.clear();
+        redoJournal.clear();
     }
 
     /**
+     * Sets the source of randomness used to choose between enabled transitions, for example a
+     * seeded generator to make an animation reproducible
+     *
+     * @param random source of randomness
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Chooses an enabled transition at random in proportion to its evaluated rate. When
+     * immediate transitions are enabled only they are enabled, so the choice is by their weights,
+     * otherwise it is a race between timed transitions won in proportion to their rates. Transitions
+     * with an infinite rate always win, so the choice is uniform between them if there are any. If
+     * every enabled transition has a zero or invalid rate the choice is uniform.
      *
      * @return a random transition which is enabled given the Petri nets current state
      */
     @Override
     public Transition getRandomEnabledTransition() {
-        Set<Transition> enabledTransitions = getEnabledTransitions();
+        State state = AnimationUtils.getState(petriNet);
+        Set<Transition> enabledTransitions = getEnabledTransitions(state);
         if (enabledTransitions.isEmpty()) {
             throw new RuntimeException(ERROR_NO_TRANSITIONS_TO_FIRE);
         }
-        Transition[] enabledTransitionsArray = enabledTransitions.toArray(new Transition[]{}); 
-        int index = new Random().nextInt(enabledTransitions.size());
-        return enabledTransitionsArray[index]; 
+        int count = enabledTransitions.size();
+        if (count > candidates.length) {
+            int length = Math.max(count, candidates.length * 2);
+            candidates = new Transition[length];
+            cumulativeWeights = new double[length];
+        }
+        double total = 0;
+        int infinite = 0;
+        int index = 0;
+        for (Transition transition : enabledTransitions) {
+            double rate = getRate(state, transition);
+            if (rate == Double.POSITIVE_INFINITY) {
+                candidates[infinite++] = transition;
+            } else if (infinite == 0) {
+                if (rate > 0) {
+                    total += rate;
+                }
+                candidates[index] = transition;
+                cumulativeWeights[index++] = total;
+            }
+        }
+        if (infinite > 0) {
+            return candidates[random.nextInt(infinite)];
+        }
+        if (total <= 0) {
+            return candidates[random.nextInt(count)];
+        }
+        double value = random.nextDouble() * total;
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] > value) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return candidates[low];
     }
 
     /**
@@ -84,31 +204,80 @@ public final class PetriNetAnimator implements Animator {
      */
     @Override
     public Set<Transition> getEnabledTransitions() {
-        return animationLogic.getEnabledTransitions(AnimationUtils.getState(petriNet));
+        return getEnabledTransitions(AnimationUtils.getState(petriNet));
+    }
+
+    /**
+     * @param state      current state of the Petri net
+     * @param transition enabled transition
+     * @return rate of the transition in the state, negative if it could not be evaluated
+     */
+    private double getRate(State state, Transition transition) {
+        if (animationLogic instanceof ExtendedAnimationLogic) {
+            return ((ExtendedAnimationLogic) animationLogic).getRate(state, transition);
+        }
+        return transition.getActualRate(petriNet, state);
+    }
+
+    /**
+     * @param state current state of the Petri net
+     * @return all enabled transitions of the state
+     */
+    private Set<Transition> getEnabledTransitions(State state) {
+        Set<Transition> enabledTransitions = lastState == null || !(animationLogic instanceof ExtendedAnimationLogic)
+                ? animationLogic.getEnabledTransitions(state)
+                : ((ExtendedAnimationLogic) animationLogic).getEnabledTransitions(state, lastState);
+        lastState = state;
+        return enabledTransitions;
     }
 
     /**
      *
-     * Fires the transition if it is enabled in the Petri net for the current underlying state
+     * Fires the transition if it is enabled in the Petri net for the current underlying state.
+     * Only the token counts changed by the firing are set, and the changes are recorded in the
+     * journal so that the firing can be undone. Any undone firings can no longer be redone.
+     * Nothing happens, and the journal is left untouched, if the transition is not enabled.
      *
      * @param transition transition to fire
      */
     @Override
     public void fireTransition(Transition transition) {
-        State newState = animationLogic.getFiredState(AnimationUtils.getState(petriNet), transition);
+        State state = AnimationUtils.getState(petriNet);
+        if (!getEnabledTransitions(state).contains(transition)) {
+            return;
+        }
+        State newState = animationLogic.getFiredState(state, transition);
 
-        //Set all counts
-        for (Place place : petriNet.getPlaces()) {
-            place.setTokenCounts(newState.getTokens(place.getId()));
+        FiringDelta delta = new FiringDelta(transition);
+        for (Arc<Place, Transition> arc : petriNet.inboundArcs(transition)) {
+            delta.record(arc.getSource(), arc.getTokenWeights().keySet(), state, newState);
+        }
+        for (Arc<Transition, Place> arc : petriNet.outboundArcs(transition)) {
+            delta.record(arc.getTarget(), arc.getTokenWeights().keySet(), state, newState);
+        }
+        delta.apply(1);
+
+        redoJournal.clear();
+        if (journalCapacity > 0) {
+            if (undoJournal.size() == journalCapacity) {
+                undoJournal.removeFirst();
+            }
+            undoJournal.addLast(delta);
         }
     }
 
     /**
-     * Undo the firing of the transition
+     * Undo the firing of the transition. If it was the last transition fired its firing is
+     * undone from the journal, otherwise the arc weights are evaluated against the current state
      * @param transition transition to fire backwards
      */
     @Override
     public void fireTransitionBackwards(Transition transition) {
+        FiringDelta last = undoJournal.peekLast();
+        if (last != null && last.transition.equals(transition)) {
+            undo();
+            return;
+        }
         State state = AnimationUtils.getState(petriNet);
         //Increment previous places
         for (Arc<Place, Transition> arc : petriNet.inboundArcs(transition)) {
@@ -134,5 +303,186 @@ public final class PetriNetAnimator implements Animator {
                 place.setTokenCount(tokenId, newCount);
             }
         }
+        undoJournal.clear();
+        redoJournal.clear();
+    }
+
+    /**
+     * Undoes the last firing in the journal by reverting its token changes
+     *
+     * @return the transition whose firing was undone, or null if there is nothing to undo
+     */
+    public Transition undo() {
+        FiringDelta delta = undoJournal.pollLast();
+        if (delta == null) {
+            return null;
+        }
+        delta.apply(-1);
+        redoJournal.addLast(delta);
+        return delta.transition;
+    }
+
+    /**
+     * Redoes the last undone firing by reapplying its token changes
+     *
+     * @return the transition whose firing was redone, or null if there is nothing to redo
+     */
+    public Transition redo() {
+        FiringDelta delta = redoJournal.pollLast();
+        if (delta == null) {
+            return null;
+        }
+        delta.apply(1);
+        undoJournal.addLast(delta);
+        return delta.transition;
+    }
+
+    /**
+     * Undoes up to the given number of firings
+     *
+     * @param steps number of firings to undo
+     * @return number of firings undone, fewer than requested if the journal holds fewer firings
+     */
+    public int rewind(int steps) {
+        int undone = 0;
+        while (undone < steps && undo() != null) {
+            undone++;
+        }
+        return undone;
+    }
+
+    /**
+     * @return number of firings that can be undone
+     */
+    public int getUndoCount() {
+        return undoJournal.size();
+    }
+
+    /**
+     * @return number of undone firings that can be redone
+     */
+    public int getRedoCount() {
+        return redoJournal.size();
+    }
+
+    /**
+     * Token count changes made by a single firing, holding only the (place, token) pairs whose
+     * counts changed
+     */
+    private static final class FiringDelta {
+        /**
+         * Transition fired
+         */
+        private final Transition transition;
+
+        /**
+         * Place of each change
+         */
+        private Place[] places = new Place[4];
+
+        /**
+         * Token id of each change
+         */
+        private String[] tokens = new String[4];
+
+        /**
+         * Number of changes
+         */
+        private int size;
+
+        /**
+         * Change in count of each (place, token) pair
+         */
+        private int[] changes = new int[4];
+
+        /**
+         * Constructor
+         * @param transition transition fired
+         */
+        private FiringDelta(Transition transition) {
+            this.transition = transition;
+        }
+
+        /**
+         * Records the changes to the tokens of a place between two states, skipping pairs already recorded
+         * @param place place connected to the transition
+         * @param tokenIds ids of the tokens on the arc connecting the place
+         * @param state state before firing
+         * @param newState state after firing
+         */
+        private void record(Place place, Set<String> tokenIds, State state, State newState) {
+            for (String tokenId : tokenIds) {
+                if (contains(place, tokenId)) {
+                    continue;
+                }
+                int change = getCount(newState, place, tokenId) - getCount(state, place, tokenId);
+                if (change != 0) {
+                    if (size == changes.length) {
+                        places = Arrays.copyOf(places, size * 2);
+                        tokens = Arrays.copyOf(tokens, size * 2);
+                        changes = Arrays.copyOf(changes, size * 2);
+                    }
+                    places[size] = place;
+                    tokens[size] = tokenId;
+                    changes[size++] = change;
+                }
+            }
+        }
+
+        /**
+         * @param place place
+         * @param tokenId token id
+         * @return true if a change to the pair has been recorded
+         */
+        private boolean contains(Place place, String tokenId) {
+            for (int i = 0; i < size; i++) {
+                if (places[i] == place && tokens[i].equals(tokenId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Applies the changes to the Petri net, removing tokens before adding any so that no
+         * place temporarily exceeds its capacity
+         * @param sign 1 to apply the firing, -1 to revert it
+         */
+        private void apply(int sign) {
+            for (int i = 0; i < size; i++) {
+                if (changes[i] * sign < 0) {
+                    adjust(i, sign);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (changes[i] * sign > 0) {
+                    adjust(i, sign);
+                }
+            }
+        }
+
+        /**
+         * @param change index of the change to apply
+         * @param sign 1 to apply the change, -1 to revert it
+         */
+        private void adjust(int change, int sign) {
+            Place place = places[change];
+            String tokenId = tokens[change];
+            place.setTokenCount(tokenId, place.getTokenCount(tokenId) + sign * changes[change]);
+        }
+
+        /**
+         * @param state Markov chain state
+         * @param place place
+         * @param tokenId token id
+         * @return count of the token in the place in the state, zero if it is missing
+         */
+        private static int getCount(State state, Place place, String tokenId) {
+            if (!state.containsTokens(place.getId())) {
+                return 0;
+            }
+            Integer count = state.getTokens(place.getId()).get(tokenId);
+            return count == null ? 0 : count;
+        }
     }
 }
@@ -0,0 +1,234 @@
+package uk.ac.imperial.pipe.animation;
+
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reusable buffer that {@link ExtendedAnimationLogic#getSuccessors(java.util.List, SuccessorBatch)} writes
+ * the successors of a block of states into.
+ * <p>
+ * Every firing of an enabled transition is recorded as one entry holding the successor state and the
+ * transition fired. The entries of the source state at position {@code i} of the block are those from
+ * {@link #getStart(int)} inclusive to {@link #getEnd(int)} exclusive. Several entries of a source may
+ * lead to the same successor. The buffers grow as needed and are reused by the next call, so a batch
+ * should be kept for the length of an exploration. A batch must not be shared between threads.
+ * </p>
+ */
+public final class SuccessorBatch {
+    /**
+     * Successor state of each entry
+     */
+    private State[] successors = new State[16];
+
+    /**
+     * Transition fired for each entry
+     */
+    private Transition[] transitions = new Transition[16];
+
+    /**
+     * First entry of each source state, followed by the number of entries
+     */
+    private int[] starts = new int[1];
+
+    /**
+     * Number of source states
+     */
+    private int sourceCount;
+
+    /**
+     * Number of entries
+     */
+    private int entryCount;
+
+    /**
+     * Markings of the source states, scratch space for the animation logic
+     */
+    int[][] markings = new int[0][];
+
+    /**
+     * Enabled flags of the source states ignoring priorities, scratch space for the animation logic
+     */
+    boolean[][] enabled = new boolean[0][];
+
+    /**
+     * Markings of the source states whose enabled transitions must be evaluated, scratch space for
+     * the animation logic
+     */
+    int[][] pendingMarkings = new int[0][];
+
+    /**
+     * Enabled flags of the source states whose enabled transitions must be evaluated, scratch space
+     * for the animation logic
+     */
+    boolean[][] pendingEnabled = new boolean[0][];
+
+    /**
+     * Enabled transition indices of a single source state, scratch space for the animation logic
+     */
+    int[] enabledIndices = new int[0];
+
+    /**
+     * Successor marking, scratch space for the animation logic
+     */
+    int[] successorMarking = new int[0];
+
+    /**
+     * @return number of source states in the last block
+     */
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    /**
+     * @return total number of entries for the last block
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @param source position of the source state in the block
+     * @return first entry of the source state
+     */
+    public int getStart(int source) {
+        checkSource(source);
+        return starts[source];
+    }
+
+    /**
+     * @param source position of the source state in the block
+     * @return entry after the last entry of the source state
+     */
+    public int getEnd(int source) {
+        checkSource(source);
+        return starts[source + 1];
+    }
+
+    /**
+     * @param entry entry index
+     * @return successor state of the entry
+     */
+    public State getSuccessor(int entry) {
+        checkEntry(entry);
+        return successors[entry];
+    }
+
+    /**
+     * @param entry entry index
+     * @return transition fired to reach the successor of the entry
+     */
+    public Transition getTransition(int entry) {
+        checkEntry(entry);
+        return transitions[entry];
+    }
+
+    /**
+     * Groups the entries of a source state in the same form as
+     * {@link AnimationLogic#getSuccessors(State)}. This allocates a new map.
+     *
+     * @param source position of the source state in the block
+     * @return successors of the source state and the transitions that lead to each of them
+     */
+    public Map<State, Collection<Transition>> getSuccessors(int source) {
+        Map<State, Collection<Transition>> result = new LinkedHashMap<>();
+        for (int entry = getStart(source); entry < getEnd(source); entry++) {
+            Collection<Transition> fired = result.get(successors[entry]);
+            if (fired == null) {
+                fired = new ArrayList<>();
+                result.put(successors[entry], fired);
+            }
+            fired.add(transitions[entry]);
+        }
+        return result;
+    }
+
+    /**
+     * Empties the batch ready for a new block of states
+     */
+    void reset() {
+        Arrays.fill(successors, 0, entryCount, null);
+        Arrays.fill(transitions, 0, entryCount, null);
+        sourceCount = 0;
+        entryCount = 0;
+    }
+
+    /**
+     * Records a firing of the current source state
+     * @param successor  successor state
+     * @param transition transition fired
+     */
+    void add(State successor, Transition transition) {
+        if (entryCount == successors.length) {
+            successors = Arrays.copyOf(successors, entryCount * 2);
+            transitions = Arrays.copyOf(transitions, entryCount * 2);
+        }
+        successors[entryCount] = successor;
+        transitions[entryCount] = transition;
+        entryCount++;
+    }
+
+    /**
+     * Finishes the entries of the current source state and moves on to the next one
+     */
+    void endSource() {
+        if (sourceCount + 2 > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(2, starts.length * 2));
+        }
+        sourceCount++;
+        starts[sourceCount] = entryCount;
+    }
+
+    /**
+     * Ensures the scratch space can hold the given number of source markings
+     * @param states        number of source states
+     * @param markingLength length of a marking
+     * @param transitions   number of transitions in the net
+     */
+    void ensureScratch(int states, int markingLength, int transitions) {
+        if (markings.length < states) {
+            int length = Math.max(states, markings.length * 2);
+            markings = Arrays.copyOf(markings, length);
+            enabled = Arrays.copyOf(enabled, length);
+            pendingMarkings = new int[length][];
+            pendingEnabled = new boolean[length][];
+        }
+        for (int i = 0; i < states; i++) {
+            if (markings[i] == null || markings[i].length != markingLength) {
+                markings[i] = new int[markingLength];
+            }
+            if (enabled[i] == null || enabled[i].length != transitions) {
+                enabled[i] = new boolean[transitions];
+            }
+        }
+        if (enabledIndices.length != transitions) {
+            enabledIndices = new int[transitions];
+        }
+        if (successorMarking.length != markingLength) {
+            successorMarking = new int[markingLength];
+        }
+    }
+
+    /**
+     * @param source position of a source state
+     */
+    private void checkSource(int source) {
+        if (source < 0 || source >= sourceCount) {
+            throw new IndexOutOfBoundsException("No source state at position " + source);
+        }
+    }
+
+    /**
+     * @param entry entry index
+     */
+    private void checkEntry(int entry) {
+        if (entry < 0 || entry >= entryCount) {
+            throw new IndexOutOfBoundsException("No successor entry " + entry);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package uk.ac.imperial.pipe.animation;
+
+import uk.ac.imperial.pipe.models.petrinet.Arc;
+import uk.ac.imperial.pipe.models.petrinet.Connectable;
+import uk.ac.imperial.pipe.models.petrinet.InboundArc;
+import uk.ac.imperial.pipe.models.petrinet.OutboundArc;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of place id -&gt; transitions whose enabling depends on the token counts of the place.
+ * <p>
+ * A transition depends on the source places of its inbound normal and inhibitor arcs, the target
+ * places of its outbound arcs that have a capacity restriction and any place referenced by a
+ * functional weight on one of its arcs. After a firing only transitions depending on a place
+ * whose token counts changed can change their enabled status.
+ * </p>
+ */
+public final class TransitionDependencies {
+    /**
+     * Place id -&gt; transitions whose enabling depends on the place
+     */
+    private final Map<String, Set<Transition>> dependents = new HashMap<>();
+
+    /**
+     * Builds the index for the current structure of the Petri net
+     * @param petriNet Petri net to index
+     */
+    public TransitionDependencies(PetriNet petriNet) {
+        Set<String> placeIds = new HashSet<>();
+        for (Place place : petriNet.getPlaces()) {
+            placeIds.add(place.getId());
+        }
+        for (Transition transition : petriNet.getTransitions()) {
+            for (InboundArc arc : petriNet.inboundArcs(transition)) {
+                addDependency(arc.getSource().getId(), transition);
+                addWeightDependencies(petriNet, arc, transition, placeIds);
+            }
+            for (OutboundArc arc : petriNet.outboundArcs(transition)) {
+                if (arc.getTarget().hasCapacityRestriction()) {
+                    addDependency(arc.getTarget().getId(), transition);
+                }
+                addWeightDependencies(petriNet, arc, transition, placeIds);
+            }
+        }
+    }
+
+    /**
+     * Registers the places referenced by the arcs functional weights as dependencies of the transition
+     * @param petriNet   Petri net the arc belongs to
+     * @param arc        arc of the transition
+     * @param transition transition the arc connects to
+     * @param placeIds   ids of all places in the Petri net
+     */
+    private void addWeightDependencies(PetriNet petriNet, Arc<? extends Connectable, ? extends Connectable> arc,
+                                       Transition transition, Set<String> placeIds) {
+        for (String weight : arc.getTokenWeights().values()) {
+            for (String component : petriNet.parseExpression(weight).getComponents()) {
+                if (placeIds.contains(component)) {
+                    addDependency(component, transition);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param placeId    place the transition depends on
+     * @param transition dependent transition
+     */
+    private void addDependency(String placeId, Transition transition) {
+        Set<Transition> transitions = dependents.get(placeId);
+        if (transitions == null) {
+            transitions = new HashSet<>();
+            dependents.put(placeId, transitions);
+        }
+        transitions.add(transition);
+    }
+
+    /**
+     * @param placeId id of the place
+     * @return transitions whose enabling depends on the token counts of the place
+     */
+    public Set<Transition> getDependentTransitions(String placeId) {
+        Set<Transition> transitions = dependents.get(placeId);
+        return transitions == null ? Collections.<Transition>emptySet() : Collections.unmodifiableSet(transitions);
+    }
+
+    /**
+     * @param placeIds ids of places whose token counts have changed
+     * @return all transitions whose enabling depends on any of the places
+     */
+    public Set<Transition> getDependentTransitions(Collection<String> placeIds) {
+        Set<Transition> transitions = new HashSet<>();
+        for (String placeId : placeIds) {
+            Set<Transition> placeDependents = dependents.get(placeId);
+            if (placeDependents != null) {
+                transitions.addAll(placeDependents);
+            }
+        }
+        return transitions;
+    }
+
+    /**
+     * @param previous state before the change
+     * @param state    state after the change
+     * @return ids of the places whose token counts differ between the two states
+     */
+    public static Collection<String> getChangedPlaces(State previous, State state) {
+        Collection<String> changed = new LinkedList<>();
+        for (String placeId : state.getPlaces()) {
+            if (!previous.containsTokens(placeId) || !previous.getTokens(placeId).equals(state.getTokens(placeId))) {
+                changed.add(placeId);
+            }
+        }
+        for (String placeId : previous.getPlaces()) {
+            if (!state.containsTokens(placeId)) {
+                changed.add(placeId);
+            }
+        }
+        return changed;
+    }
+}
@@ -298,7 +298,9 @@ public final class DiscreteTransition extends AbstractConnectable implements Tra
      */
     @Override
     public void setRate(Rate rate) {
+        Rate old = this.rate;
         this.rate = rate;
+        changeSupport.firePropertyChange(RATE_CHANGE_MESSAGE, old, rate);
     }
 
     /**
@@ -8,6 +8,7 @@ import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
 import uk.ac.imperial.pipe.exceptions.PetriNetComponentNotFoundException;
 import uk.ac.imperial.pipe.models.petrinet.name.PetriNetName;
 import uk.ac.imperial.pipe.parsers.EvalVisitor;
+import uk.ac.imperial.pipe.parsers.ExpressionCache;
 import uk.ac.imperial.pipe.parsers.FunctionalResults;
 import uk.ac.imperial.pipe.parsers.FunctionalWeightParser;
 import uk.ac.imperial.pipe.parsers.PetriNetWeightParser;
@@ -94,6 +95,17 @@ public class PetriNet {
      */
     protected final PropertyChangeSupport changeSupport = new PropertyChangeSupport(this);
 
+    /**
+     * Parsed functional expressions of this Petri net, cleared whenever an arc weight,
+     * transition rate or rate parameter expression changes
+     */
+    private final ExpressionCache expressionCache = new ExpressionCache();
+
+    /**
+     * Listener clearing the expression cache when expressions change
+     */
+    private final PropertyChangeListener expressionCacheInvalidator = new ExpressionCacheInvalidator();
+
     /**
      * Functional weight parser
      */
@@ -449,6 +461,7 @@ public class PetriNet {
             transitions.put(transition.getId(), transition);
             transition.addPropertyChangeListener(new NameChangeListener<>(transition, transitions));
             transition.addPropertyChangeListener(new NameChangeArcListener());
+            transition.addPropertyChangeListener(expressionCacheInvalidator);
             changeSupport.firePropertyChange(NEW_TRANSITION_CHANGE_MESSAGE, null, transition);
         }
     }
@@ -509,6 +522,7 @@ public class PetriNet {
             inboundArcs.put(inboundArc.getId(), inboundArc);
             transitionInboundArcs.put(inboundArc.getTarget().getId(), inboundArc);
             inboundArc.addPropertyChangeListener(new NameChangeListener<>(inboundArc, inboundArcs));
+            inboundArc.addPropertyChangeListener(expressionCacheInvalidator);
             changeSupport.firePropertyChange(NEW_ARC_CHANGE_MESSAGE, null, inboundArc);
         }
     }
@@ -522,6 +536,7 @@ public class PetriNet {
             outboundArcs.put(outboundArc.getId(), outboundArc);
             transitionOutboundArcs.put(outboundArc.getSource().getId(), outboundArc);
             outboundArc.addPropertyChangeListener(new NameChangeListener<>(outboundArc, outboundArcs));
+            outboundArc.addPropertyChangeListener(expressionCacheInvalidator);
             changeSupport.firePropertyChange(NEW_ARC_CHANGE_MESSAGE, null, outboundArc);
         }
     }
@@ -680,6 +695,7 @@ public class PetriNet {
         if (!rateParameters.containsValue(rateParameter)) {
             rateParameters.put(rateParameter.getId(), rateParameter);
             rateParameter.addPropertyChangeListener(new NameChangeListener<>(rateParameter, rateParameters));
+            rateParameter.addPropertyChangeListener(expressionCacheInvalidator);
             changeSupport.firePropertyChange(NEW_RATE_PARAMETER_CHANGE_MESSAGE, null, rateParameter);
         }
     }
@@ -845,6 +861,28 @@ public class PetriNet {
         return functionalWeightParser.evaluateExpression(expr);
     }
 
+    /**
+     * @return cache of the functional expressions parsed for this Petri net
+     */
+    public ExpressionCache getExpressionCache() {
+        return expressionCache;
+    }
+
+    /**
+     * Clears the expression cache when an arc weight, transition rate or rate parameter
+     * expression changes so that expressions no longer in use are not retained
+     */
+    private class ExpressionCacheInvalidator implements PropertyChangeListener {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            String name = evt.getPropertyName();
+            if (name.equals(Arc.WEIGHT_CHANGE_MESSAGE) || name.equals(Transition.RATE_CHANGE_MESSAGE) ||
+                    name.equals(RateParameter.EXPRESSION_CHANGE_MESSAGE)) {
+                expressionCache.clear();
+            }
+        }
+    }
+
     /**
      * Listener for changing a components name in the set it is referenced by
      * @param <T>
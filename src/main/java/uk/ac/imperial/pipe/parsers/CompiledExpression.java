@@ -0,0 +1,226 @@
+package uk.ac.imperial.pipe.parsers;
+
+/**
+ * Immutable, thread safe tree form of a functional expression that conforms to the rate grammar.
+ * <p>
+ * Expressions are parsed and compiled once by {@link ExpressionCache} and can then be evaluated any
+ * number of times against an {@link ExpressionContext} without invoking the ANTLR lexer and parser.
+ * Evaluation follows exactly the same arithmetic as the rate grammar visitors. Where markings are
+ * held as {@code int[]} the expression can instead be resolved once against their
+ * {@link MarkingLayout} into a {@link MarkingExpression}.
+ * </p>
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * Package private constructor, expressions are created by compiling a parse tree
+     */
+    CompiledExpression() {
+    }
+
+    /**
+     * @param context supplies the values of the components referenced by the expression
+     * @return the value of the expression
+     */
+    public abstract double evaluate(ExpressionContext context);
+
+    /**
+     * @param layout layout of the markings the expression will be evaluated against
+     * @return equivalent expression whose place and token references are marking indices
+     * @throws IllegalArgumentException if the expression references a place or token that is not
+     *                                  part of the layout
+     */
+    public abstract MarkingExpression resolve(MarkingLayout layout);
+
+    /**
+     * @param layout  layout of the markings
+     * @param placeId id of the place
+     * @return index of the place
+     * @throws IllegalArgumentException if the place is not part of the layout
+     */
+    private static int resolvePlace(MarkingLayout layout, String placeId) {
+        int place = layout.getPlaceIndex(placeId);
+        if (place < 0) {
+            throw new IllegalArgumentException("references unknown place " + placeId);
+        }
+        return place;
+    }
+
+    /**
+     * Numeric literal
+     */
+    static final class Constant extends CompiledExpression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return value;
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            return new MarkingExpression.Constant(value);
+        }
+    }
+
+    /**
+     * Binary arithmetic operation
+     */
+    static final class BinaryOperation extends CompiledExpression {
+        private final int operator;
+
+        private final CompiledExpression left;
+
+        private final CompiledExpression right;
+
+        /**
+         * @param operator one of the {@link RateGrammarParser} MUL, DIV, ADD or SUB token types
+         * @param left     left operand
+         * @param right    right operand
+         */
+        BinaryOperation(int operator, CompiledExpression left, CompiledExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            double leftValue = left.evaluate(context);
+            double rightValue = right.evaluate(context);
+            switch (operator) {
+                case RateGrammarParser.MUL:
+                    return leftValue * rightValue;
+                case RateGrammarParser.DIV:
+                    return leftValue / rightValue;
+                case RateGrammarParser.ADD:
+                    return leftValue + rightValue;
+                default:
+                    return leftValue - rightValue;
+            }
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            return new MarkingExpression.BinaryOperation(operator, left.resolve(layout), right.resolve(layout));
+        }
+    }
+
+    /**
+     * floor(expression)
+     */
+    static final class Floor extends CompiledExpression {
+        private final CompiledExpression expression;
+
+        Floor(CompiledExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return Math.floor(expression.evaluate(context));
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            return new MarkingExpression.Floor(expression.resolve(layout));
+        }
+    }
+
+    /**
+     * ceil(expression)
+     */
+    static final class Ceil extends CompiledExpression {
+        private final CompiledExpression expression;
+
+        Ceil(CompiledExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return Math.ceil(expression.evaluate(context));
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            return new MarkingExpression.Ceil(expression.resolve(layout));
+        }
+    }
+
+    /**
+     * #(place)
+     */
+    static final class PlaceTokens extends CompiledExpression {
+        private final String placeId;
+
+        PlaceTokens(String placeId) {
+            this.placeId = placeId;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return context.getTokenCount(placeId);
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            int place = resolvePlace(layout, placeId);
+            return new MarkingExpression.PlaceTokens(place * layout.getTokenCount(), layout.getTokenCount());
+        }
+    }
+
+    /**
+     * #(place, token)
+     */
+    static final class PlaceColorTokens extends CompiledExpression {
+        private final String placeId;
+
+        private final String tokenId;
+
+        PlaceColorTokens(String placeId, String tokenId) {
+            this.placeId = placeId;
+            this.tokenId = tokenId;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return context.getTokenCount(placeId, tokenId);
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            int place = resolvePlace(layout, placeId);
+            int token = layout.getTokenIndex(tokenId);
+            if (token < 0) {
+                throw new IllegalArgumentException("references unknown token " + tokenId);
+            }
+            return new MarkingExpression.PlaceColorTokens(place * layout.getTokenCount() + token);
+        }
+    }
+
+    /**
+     * cap(place)
+     */
+    static final class Capacity extends CompiledExpression {
+        private final String placeId;
+
+        Capacity(String placeId) {
+            this.placeId = placeId;
+        }
+
+        @Override
+        public double evaluate(ExpressionContext context) {
+            return context.getCapacity(placeId);
+        }
+
+        @Override
+        public MarkingExpression resolve(MarkingLayout layout) {
+            return new MarkingExpression.Constant(layout.getPlaceCapacity(resolvePlace(layout, placeId)));
+        }
+    }
+}
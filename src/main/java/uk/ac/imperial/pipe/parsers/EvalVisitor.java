@@ -7,7 +7,7 @@ import uk.ac.imperial.pipe.models.petrinet.PetriNet;
 /**
  * Evaluates a functional expression
  */
-public final class EvalVisitor extends RateGrammarBaseVisitor<Double> {
+public final class EvalVisitor extends RateGrammarBaseVisitor<Double> implements ExpressionContext {
     /**
      * Underlying Petri net
      */
@@ -44,34 +44,17 @@ public final class EvalVisitor extends RateGrammarBaseVisitor<Double> {
 
     @Override
     public Double visitToken_number(RateGrammarParser.Token_numberContext ctx) {
-        try {
-            Place place = getPlace(ctx.ID().getText());
-            return (double) place.getNumberOfTokensStored();
-        } catch (PetriNetComponentNotFoundException ignored) {
-            return 0.0;
-        }
+        return getTokenCount(ctx.ID().getText());
     }
 
     @Override
     public Double visitToken_color_number(RateGrammarParser.Token_color_numberContext ctx) {
-        String name = ctx.ID().get(0).getText();
-        String color = ctx.ID().get(1).getText();
-        try {
-            Place place = getPlace(name);
-            return (double) place.getTokenCount(color);
-        } catch (PetriNetComponentNotFoundException ignored) {
-            return 0.0;
-        }
+        return getTokenCount(ctx.ID().get(0).getText(), ctx.ID().get(1).getText());
     }
 
     @Override
     public Double visitCapacity(RateGrammarParser.CapacityContext ctx) {
-        try {
-            Place place = getPlace(ctx.ID().getText());
-            return (double) place.getCapacity();
-        } catch (PetriNetComponentNotFoundException ignored) {
-            return 0.0;
-        }
+        return getCapacity(ctx.ID().getText());
     }
 
     @Override
@@ -96,6 +79,48 @@ public final class EvalVisitor extends RateGrammarBaseVisitor<Double> {
         return Math.ceil(value);
     }
 
+    /**
+     * @param placeId id of the place
+     * @return number of tokens stored in the place, 0 if it is not in the Petri net
+     */
+    @Override
+    public double getTokenCount(String placeId) {
+        try {
+            Place place = getPlace(placeId);
+            return (double) place.getNumberOfTokensStored();
+        } catch (PetriNetComponentNotFoundException ignored) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * @param placeId id of the place
+     * @param tokenId id of the token
+     * @return number of tokens of the type in the place, 0 if it is not in the Petri net
+     */
+    @Override
+    public double getTokenCount(String placeId, String tokenId) {
+        try {
+            Place place = getPlace(placeId);
+            return (double) place.getTokenCount(tokenId);
+        } catch (PetriNetComponentNotFoundException ignored) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * @param placeId id of the place
+     * @return capacity of the place, 0 if it is not in the Petri net
+     */
+    @Override
+    public double getCapacity(String placeId) {
+        try {
+            Place place = getPlace(placeId);
+            return (double) place.getCapacity();
+        } catch (PetriNetComponentNotFoundException ignored) {
+            return 0.0;
+        }
+    }
 
     /**
      *
@@ -0,0 +1,76 @@
+package uk.ac.imperial.pipe.parsers;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe memoization of parsed and compiled functional expressions keyed by their text.
+ * <p>
+ * The parsed form of an expression depends only on its text, so entries never become stale. Owners
+ * should still {@link #clear()} the cache when the expressions they use change so that it does not
+ * keep growing with expressions that are no longer referenced.
+ * </p>
+ */
+public final class ExpressionCache {
+    /**
+     * Expression text -&gt; parsed expression
+     */
+    private final ConcurrentMap<String, ParsedExpression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * Parses the expression if it has not been seen before
+     *
+     * @param expression functional expression
+     * @return parsed expression
+     */
+    public ParsedExpression get(String expression) {
+        ParsedExpression parsed = expressions.get(expression);
+        if (parsed == null) {
+            parsed = parse(expression);
+            ParsedExpression existing = expressions.putIfAbsent(expression, parsed);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Removes all parsed expressions
+     */
+    public void clear() {
+        expressions.clear();
+    }
+
+    /**
+     * @return number of parsed expressions held
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    /**
+     * Runs the ANTLR parser over the expression, collecting its referenced components
+     * and compiling it if there were no syntax errors
+     *
+     * @param expression functional expression
+     * @return parsed expression
+     */
+    public static ParsedExpression parse(String expression) {
+        RateGrammarErrorListener errorListener = new RateGrammarErrorListener();
+        ParseTree parseTree = GrammarUtils.parse(expression, errorListener);
+
+        ParseTreeWalker walker = new ParseTreeWalker();
+        PetriNetWeightParser.ComponentListener listener = new PetriNetWeightParser.ComponentListener();
+        walker.walk(listener, parseTree);
+
+        if (errorListener.hasErrors()) {
+            return new ParsedExpression(null, errorListener.getErrors(), listener.getComponentIds());
+        }
+        CompiledExpression compiled = new ExpressionCompiler().visit(parseTree);
+        return new ParsedExpression(compiled, errorListener.getErrors(), listener.getComponentIds());
+    }
+}
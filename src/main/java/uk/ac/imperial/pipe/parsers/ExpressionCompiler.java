@@ -0,0 +1,65 @@
+package uk.ac.imperial.pipe.parsers;
+
+/**
+ * Compiles a parse tree of the rate grammar into a {@link CompiledExpression}.
+ * The parse tree must not contain any syntax errors.
+ */
+final class ExpressionCompiler extends RateGrammarBaseVisitor<CompiledExpression> {
+
+    @Override
+    public CompiledExpression visitProgram(RateGrammarParser.ProgramContext ctx) {
+        return visit(ctx.expression());
+    }
+
+    @Override
+    public CompiledExpression visitMultOrDiv(RateGrammarParser.MultOrDivContext ctx) {
+        return new CompiledExpression.BinaryOperation(ctx.op.getType(), visit(ctx.expression(0)),
+                visit(ctx.expression(1)));
+    }
+
+    @Override
+    public CompiledExpression visitAddOrSubtract(RateGrammarParser.AddOrSubtractContext ctx) {
+        return new CompiledExpression.BinaryOperation(ctx.op.getType(), visit(ctx.expression(0)),
+                visit(ctx.expression(1)));
+    }
+
+    @Override
+    public CompiledExpression visitParenExpression(RateGrammarParser.ParenExpressionContext ctx) {
+        return visit(ctx.expression());
+    }
+
+    @Override
+    public CompiledExpression visitToken_number(RateGrammarParser.Token_numberContext ctx) {
+        return new CompiledExpression.PlaceTokens(ctx.ID().getText());
+    }
+
+    @Override
+    public CompiledExpression visitToken_color_number(RateGrammarParser.Token_color_numberContext ctx) {
+        return new CompiledExpression.PlaceColorTokens(ctx.ID().get(0).getText(), ctx.ID().get(1).getText());
+    }
+
+    @Override
+    public CompiledExpression visitCapacity(RateGrammarParser.CapacityContext ctx) {
+        return new CompiledExpression.Capacity(ctx.ID().getText());
+    }
+
+    @Override
+    public CompiledExpression visitInteger(RateGrammarParser.IntegerContext ctx) {
+        return new CompiledExpression.Constant(Double.valueOf(ctx.INT().getText()));
+    }
+
+    @Override
+    public CompiledExpression visitDouble(RateGrammarParser.DoubleContext ctx) {
+        return new CompiledExpression.Constant(Double.valueOf(ctx.DOUBLE().getText()));
+    }
+
+    @Override
+    public CompiledExpression visitFloor(RateGrammarParser.FloorContext ctx) {
+        return new CompiledExpression.Floor(visit(ctx.expression()));
+    }
+
+    @Override
+    public CompiledExpression visitCeil(RateGrammarParser.CeilContext ctx) {
+        return new CompiledExpression.Ceil(visit(ctx.expression()));
+    }
+}
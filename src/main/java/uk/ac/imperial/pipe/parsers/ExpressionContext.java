@@ -0,0 +1,27 @@
+package uk.ac.imperial.pipe.parsers;
+
+/**
+ * Supplies the values of Petri net components referenced by a {@link CompiledExpression}
+ * so that the same compiled expression can be evaluated against the Petri net itself,
+ * a state of the Petri net or any other representation of its marking.
+ */
+public interface ExpressionContext {
+    /**
+     * @param placeId id of the place
+     * @return total number of tokens of every type in the place, i.e. the value of #(placeId)
+     */
+    double getTokenCount(String placeId);
+
+    /**
+     * @param placeId id of the place
+     * @param tokenId id of the token
+     * @return number of tokens of the type in the place, i.e. the value of #(placeId, tokenId)
+     */
+    double getTokenCount(String placeId, String tokenId);
+
+    /**
+     * @param placeId id of the place
+     * @return capacity of the place, i.e. the value of cap(placeId)
+     */
+    double getCapacity(String placeId);
+}
@@ -0,0 +1,191 @@
+package uk.ac.imperial.pipe.parsers;
+
+/**
+ * Immutable, thread safe form of a {@link CompiledExpression} whose place and token references
+ * have been resolved to positions in an {@code int[]} marking, so it is evaluated directly against
+ * the marking without looking up any ids.
+ * <p>
+ * Created by {@link CompiledExpression#resolve(MarkingLayout)}. Capacities are constants of the
+ * layout and so are folded in when the expression is resolved.
+ * </p>
+ */
+public abstract class MarkingExpression {
+
+    /**
+     * Package private constructor, expressions are created by resolving a compiled expression
+     */
+    MarkingExpression() {
+    }
+
+    /**
+     * @param marking marking in the layout the expression was resolved against
+     * @return the value of the expression
+     * @throws IllegalArgumentException if the expression could not be compiled
+     */
+    public abstract double evaluate(int[] marking);
+
+    /**
+     * @param value constant value
+     * @return expression that always evaluates to the value
+     */
+    public static MarkingExpression constant(double value) {
+        return new Constant(value);
+    }
+
+    /**
+     * @param message describes why the expression could not be compiled
+     * @return expression that throws an {@link IllegalArgumentException} with the message whenever
+     *         it is evaluated, so that invalid expressions only fail if they are used
+     */
+    public static MarkingExpression invalid(String message) {
+        return new Invalid(message);
+    }
+
+    /**
+     * Numeric literal, or a capacity of the layout
+     */
+    static final class Constant extends MarkingExpression {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            return value;
+        }
+    }
+
+    /**
+     * Binary arithmetic operation
+     */
+    static final class BinaryOperation extends MarkingExpression {
+        private final int operator;
+
+        private final MarkingExpression left;
+
+        private final MarkingExpression right;
+
+        /**
+         * @param operator one of the {@link RateGrammarParser} MUL, DIV, ADD or SUB token types
+         * @param left     left operand
+         * @param right    right operand
+         */
+        BinaryOperation(int operator, MarkingExpression left, MarkingExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            double leftValue = left.evaluate(marking);
+            double rightValue = right.evaluate(marking);
+            switch (operator) {
+                case RateGrammarParser.MUL:
+                    return leftValue * rightValue;
+                case RateGrammarParser.DIV:
+                    return leftValue / rightValue;
+                case RateGrammarParser.ADD:
+                    return leftValue + rightValue;
+                default:
+                    return leftValue - rightValue;
+            }
+        }
+    }
+
+    /**
+     * floor(expression)
+     */
+    static final class Floor extends MarkingExpression {
+        private final MarkingExpression expression;
+
+        Floor(MarkingExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            return Math.floor(expression.evaluate(marking));
+        }
+    }
+
+    /**
+     * ceil(expression)
+     */
+    static final class Ceil extends MarkingExpression {
+        private final MarkingExpression expression;
+
+        Ceil(MarkingExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            return Math.ceil(expression.evaluate(marking));
+        }
+    }
+
+    /**
+     * #(place), the sum of the counts of every token type of the place
+     */
+    static final class PlaceTokens extends MarkingExpression {
+        private final int start;
+
+        private final int tokenCount;
+
+        /**
+         * @param start      marking index of the first token type of the place
+         * @param tokenCount number of token types per place
+         */
+        PlaceTokens(int start, int tokenCount) {
+            this.start = start;
+            this.tokenCount = tokenCount;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            double count = 0;
+            for (int k = start; k < start + tokenCount; k++) {
+                count += marking[k];
+            }
+            return count;
+        }
+    }
+
+    /**
+     * #(place, token)
+     */
+    static final class PlaceColorTokens extends MarkingExpression {
+        private final int index;
+
+        /**
+         * @param index marking index of the token type in the place
+         */
+        PlaceColorTokens(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            return marking[index];
+        }
+    }
+
+    /**
+     * Expression that could not be compiled
+     */
+    static final class Invalid extends MarkingExpression {
+        private final String message;
+
+        Invalid(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public double evaluate(int[] marking) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package uk.ac.imperial.pipe.parsers;
+
+/**
+ * Layout of an {@code int[]} marking that a {@link CompiledExpression} can be resolved against,
+ * in which the count of token {@code k} in place {@code p} is stored at
+ * {@code p * getTokenCount() + k}
+ */
+public interface MarkingLayout {
+    /**
+     * @param placeId id of the place
+     * @return index of the place or -1 if it is not part of the layout
+     */
+    int getPlaceIndex(String placeId);
+
+    /**
+     * @param tokenId id of the token
+     * @return index of the token or -1 if it is not part of the layout
+     */
+    int getTokenIndex(String tokenId);
+
+    /**
+     * @return number of token types per place
+     */
+    int getTokenCount();
+
+    /**
+     * @param place place index
+     * @return capacity of the place, 0 or less if it has no capacity restriction
+     */
+    int getPlaceCapacity(int place);
+}
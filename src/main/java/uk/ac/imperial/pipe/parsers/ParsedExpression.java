@@ -0,0 +1,68 @@
+package uk.ac.imperial.pipe.parsers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable result of parsing a functional expression once, containing its
+ * compiled form, any syntax errors and the components it references
+ */
+public final class ParsedExpression {
+    /**
+     * Compiled form of the expression, null if there were syntax errors
+     */
+    private final CompiledExpression expression;
+
+    /**
+     * Syntax errors reported whilst parsing the expression
+     */
+    private final List<String> syntaxErrors;
+
+    /**
+     * Ids of the components referenced by the expression
+     */
+    private final Set<String> components;
+
+    /**
+     * Constructor
+     * @param expression   compiled form of the expression, null if there were syntax errors
+     * @param syntaxErrors syntax errors reported whilst parsing
+     * @param components   ids of the components referenced by the expression
+     */
+    ParsedExpression(CompiledExpression expression, List<String> syntaxErrors, Set<String> components) {
+        this.expression = expression;
+        this.syntaxErrors = ImmutableList.copyOf(syntaxErrors);
+        this.components = ImmutableSet.copyOf(components);
+    }
+
+    /**
+     * @return true if any syntax errors were reported whilst parsing
+     */
+    public boolean hasSyntaxErrors() {
+        return !syntaxErrors.isEmpty();
+    }
+
+    /**
+     * @return compiled form of the expression, null if {@link #hasSyntaxErrors()} is true
+     */
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return immutable list of syntax errors
+     */
+    public List<String> getSyntaxErrors() {
+        return syntaxErrors;
+    }
+
+    /**
+     * @return immutable set of ids of the places and tokens referenced by the expression
+     */
+    public Set<String> getComponents() {
+        return components;
+    }
+}
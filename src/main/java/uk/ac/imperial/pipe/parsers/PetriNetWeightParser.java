@@ -2,8 +2,6 @@ package uk.ac.imperial.pipe.parsers;
 
 import com.google.common.primitives.Doubles;
 import org.antlr.v4.runtime.misc.NotNull;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import uk.ac.imperial.pipe.models.petrinet.PetriNet;
 
 import java.util.HashSet;
@@ -23,36 +21,53 @@ public class PetriNetWeightParser implements FunctionalWeightParser<Double> {
     private final PetriNet petriNet;
 
     /**
-     * Evaluator for the PetriNet and functional expression
+     * Evaluator for the PetriNet and functional expression, null if a context is used
      */
     private final RateGrammarBaseVisitor<Double> evalVisitor;
 
+    /**
+     * Context compiled expressions are evaluated against, null if the visitor
+     * is not also an expression context
+     */
+    private final ExpressionContext context;
+
     /**
      * Parses Transition Rates to determine their value and
      * the components they reference.
+     * <p>
+     * If the visitor is also an {@link ExpressionContext}, as {@link EvalVisitor} and
+     * {@link StateEvalVisitor} are, expressions are compiled once and cached by the
+     * Petri net rather than being parsed on every evaluation.
+     * </p>
      * @param evalVisitor visitor to perform parsing 
      * @param petriNet to be parsed 
      */
     public PetriNetWeightParser(RateGrammarBaseVisitor<Double> evalVisitor, PetriNet petriNet) {
         this.evalVisitor = evalVisitor;
+        this.context = evalVisitor instanceof ExpressionContext ? (ExpressionContext) evalVisitor : null;
         this.petriNet = petriNet;
     }
 
-
     /**
-     *
-     * @param parseTree
-     * @return components referenced by the functional expression that is being parsed
+     * Parses Transition Rates to determine their value and the components they
+     * reference using expressions compiled once and cached by the Petri net
+     * @param petriNet to be parsed
+     * @param context supplies the component values that expressions are evaluated against
      */
-    //TODO: Use memoization
-    private Set<String> getReferencedComponents(ParseTree parseTree) {
-        ParseTreeWalker walker = new ParseTreeWalker();
-        ComponentListener listener = new ComponentListener();
-        walker.walk(listener, parseTree);
-        return listener.getComponentIds();
+    public PetriNetWeightParser(PetriNet petriNet, ExpressionContext context) {
+        this.evalVisitor = null;
+        this.context = context;
+        this.petriNet = petriNet;
     }
 
-
+    /**
+     * @param expression to parse
+     * @return the parsed expression, taken from the Petri nets cache if it has one
+     */
+    private ParsedExpression parse(String expression) {
+        ExpressionCache cache = petriNet == null ? null : petriNet.getExpressionCache();
+        return cache == null ? ExpressionCache.parse(expression) : cache.get(expression);
+    }
 
     /**
      *
@@ -81,16 +96,9 @@ public class PetriNetWeightParser implements FunctionalWeightParser<Double> {
             return new FunctionalResults<>(maybeDouble, new HashSet<String>());
         }
 
-
-        RateGrammarErrorListener errorListener = new RateGrammarErrorListener();
-        ParseTree parseTree = GrammarUtils.parse(expression, errorListener);
-
-        List<String> errors = new LinkedList<>();
-        if (errorListener.hasErrors()) {
-            errors.addAll(errorListener.getErrors());
-        }
-
-        Set<String> components = getReferencedComponents(parseTree);
+        ParsedExpression parsed = parse(expression);
+        List<String> errors = new LinkedList<>(parsed.getSyntaxErrors());
+        Set<String> components = parsed.getComponents();
         if (!allComponentsInPetriNet(components)) {
             errors.add("Not all referenced components exist in the Petri net!");
         }
@@ -99,13 +107,14 @@ public class PetriNetWeightParser implements FunctionalWeightParser<Double> {
             return new FunctionalResults<>(-1., errors, components);
         }
 
-        Double result = evalVisitor.visit(parseTree);
+        double result = context != null ? parsed.getExpression().evaluate(context) :
+                evalVisitor.visit(GrammarUtils.parse(expression));
         if (result < 0) {
             errors.add("Expression result cannot be less than zero!");
             return new FunctionalResults<>(-1., errors, components);
         }
 
-        return new FunctionalResults<>(evalVisitor.visit(parseTree), components);
+        return new FunctionalResults<>(result, components);
     }
 
     /**
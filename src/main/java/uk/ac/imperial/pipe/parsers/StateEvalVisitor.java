@@ -13,7 +13,7 @@ import java.util.Map;
  *
  * It is particularly useful for any concurrent analysis.
  */
-public final class StateEvalVisitor extends RateGrammarBaseVisitor<Double> {
+public final class StateEvalVisitor extends RateGrammarBaseVisitor<Double> implements ExpressionContext {
     /**
      * Petri net
      */
@@ -56,33 +56,17 @@ public final class StateEvalVisitor extends RateGrammarBaseVisitor<Double> {
 
     @Override
     public Double visitToken_number(RateGrammarParser.Token_numberContext ctx) {
-        String name = ctx.ID().getText();
-        if (!state.containsTokens(name)) {
-            return 0.0;
-        }
-        double count = 0;
-        for (Integer value : state.getTokens(name).values()) {
-            count += value;
-        }
-        return count;
+        return getTokenCount(ctx.ID().getText());
     }
 
     @Override
     public Double visitToken_color_number(RateGrammarParser.Token_color_numberContext ctx) {
-        String name = ctx.ID().get(0).getText();
-        String color = ctx.ID().get(1).getText();
-        Map<String, Integer> tokens = state.getTokens(name);
-        return (double) tokens.get(color);
+        return getTokenCount(ctx.ID().get(0).getText(), ctx.ID().get(1).getText());
     }
 
     @Override
     public Double visitCapacity(RateGrammarParser.CapacityContext ctx) {
-        try {
-            Place place = getPlace(ctx.ID().getText());
-            return (double) place.getCapacity();
-        } catch (PetriNetComponentNotFoundException ignored) {
-            return 0.0;
-        }
+        return getCapacity(ctx.ID().getText());
     }
 
     @Override
@@ -107,6 +91,46 @@ public final class StateEvalVisitor extends RateGrammarBaseVisitor<Double> {
         return Math.ceil(value);
     }
 
+    /**
+     * @param placeId id of the place
+     * @return total number of tokens in the place in the state, 0 if the state does not contain the place
+     */
+    @Override
+    public double getTokenCount(String placeId) {
+        if (!state.containsTokens(placeId)) {
+            return 0.0;
+        }
+        double count = 0;
+        for (Integer value : state.getTokens(placeId).values()) {
+            count += value;
+        }
+        return count;
+    }
+
+    /**
+     * @param placeId id of the place
+     * @param tokenId id of the token
+     * @return number of tokens of the type in the place in the state
+     */
+    @Override
+    public double getTokenCount(String placeId, String tokenId) {
+        Map<String, Integer> tokens = state.getTokens(placeId);
+        return (double) tokens.get(tokenId);
+    }
+
+    /**
+     * @param placeId id of the place
+     * @return capacity of the place, 0 if it is not in the Petri net
+     */
+    @Override
+    public double getCapacity(String placeId) {
+        try {
+            Place place = getPlace(placeId);
+            return (double) place.getCapacity();
+        } catch (PetriNetComponentNotFoundException ignored) {
+            return 0.0;
+        }
+    }
 
     /**
      *
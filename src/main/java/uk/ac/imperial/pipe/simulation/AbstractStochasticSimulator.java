@@ -0,0 +1,331 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.state.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Base of the stochastic simulators, handling the marking, the clock and immediate transitions.
+ * <p>
+ * Immediate transitions are grouped by priority and the weights of the enabled transitions of each
+ * priority are kept in a {@link FenwickTree}, so the next immediate transition is found in
+ * O(log n). After each firing only the transitions the compiled Petri net reports as affected by the
+ * fired transition are re-evaluated. Subclasses are told about changes to the rates of timed
+ * transitions and decide which timed transition fires next and when.
+ * </p>
+ */
+abstract class AbstractStochasticSimulator implements StochasticSimulator {
+    /**
+     * Compiled Petri net being simulated
+     */
+    protected final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Source of randomness
+     */
+    protected final Random random;
+
+    /**
+     * Current rate of each transition, zero if it is disabled
+     */
+    protected final double[] rates;
+
+    /**
+     * Current marking
+     */
+    protected int[] marking;
+
+    /**
+     * Current simulation time
+     */
+    protected double time;
+
+    /**
+     * Buffer the next marking is written to
+     */
+    private int[] successor;
+
+    /**
+     * Total number of transitions fired
+     */
+    private long firings;
+
+    /**
+     * Priority level of each immediate transition, -1 for timed transitions. Level 0 is the highest priority
+     */
+    private final int[] immediateLevel;
+
+    /**
+     * Position of each immediate transition within its level
+     */
+    private final int[] levelPosition;
+
+    /**
+     * Transition indices of each level
+     */
+    private final int[][] levelTransitions;
+
+    /**
+     * Weights of the enabled immediate transitions of each level
+     */
+    private final FenwickTree[] levelWeights;
+
+    /**
+     * Number of enabled immediate transitions of each level
+     */
+    private final int[] levelEnabled;
+
+    /**
+     * True for each enabled immediate transition
+     */
+    private final boolean[] immediateEnabled;
+
+    /**
+     * Constructor, subclasses must call {@link #initialise()} once their own state is set up
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param initialMarking   marking to start from, it is copied
+     * @param random           source of randomness
+     */
+    protected AbstractStochasticSimulator(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random) {
+        this.compiledPetriNet = compiledPetriNet;
+        this.random = random;
+        marking = initialMarking.clone();
+        successor = new int[marking.length];
+        int transitions = compiledPetriNet.getTransitionCount();
+        rates = new double[transitions];
+        immediateEnabled = new boolean[transitions];
+        immediateLevel = new int[transitions];
+        levelPosition = new int[transitions];
+
+        TreeMap<Integer, Integer> levelSizes = new TreeMap<>();
+        for (int t = 0; t < transitions; t++) {
+            if (!compiledPetriNet.isTimed(t)) {
+                Integer size = levelSizes.get(-compiledPetriNet.getPriority(t));
+                levelSizes.put(-compiledPetriNet.getPriority(t), size == null ? 1 : size + 1);
+            }
+        }
+        TreeMap<Integer, Integer> levels = new TreeMap<>();
+        levelTransitions = new int[levelSizes.size()][];
+        levelWeights = new FenwickTree[levelSizes.size()];
+        levelEnabled = new int[levelSizes.size()];
+        for (int key : levelSizes.keySet()) {
+            int level = levels.size();
+            levels.put(key, level);
+            levelTransitions[level] = new int[levelSizes.get(key)];
+            levelWeights[level] = new FenwickTree(levelSizes.get(key));
+        }
+        int[] filled = new int[levelTransitions.length];
+        for (int t = 0; t < transitions; t++) {
+            if (compiledPetriNet.isTimed(t)) {
+                immediateLevel[t] = -1;
+            } else {
+                int level = levels.get(-compiledPetriNet.getPriority(t));
+                immediateLevel[t] = level;
+                levelPosition[t] = filled[level];
+                levelTransitions[level][filled[level]++] = t;
+            }
+        }
+    }
+
+    /**
+     * Evaluates every transition against the initial marking
+     */
+    protected final void initialise() {
+        for (int t = 0; t < rates.length; t++) {
+            update(t, false);
+        }
+    }
+
+    /**
+     * Called whenever the rate of a timed transition may have changed, and once for a timed
+     * transition that has just fired even if its rate is unchanged
+     *
+     * @param transition timed transition index
+     * @param oldRate    rate before the change, zero if it was disabled
+     * @param newRate    current rate, zero if it is disabled
+     * @param fired      true if the transition has just fired
+     */
+    protected abstract void timedRateChanged(int transition, double oldRate, double newRate, boolean fired);
+
+    /**
+     * Chooses the next timed transition to fire and advances the clock to its firing time. This is
+     * only called when no immediate transition is enabled.
+     *
+     * @param horizon time beyond which no transition may fire
+     * @return transition index, or -1 if no timed transition fires by the horizon in which case the
+     *         clock is advanced to the horizon if any transition is enabled
+     */
+    protected abstract int selectTimed(double horizon);
+
+    @Override
+    public final int step() {
+        return step(Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public long run(double endTime) {
+        long fired = 0;
+        while (step(endTime) >= 0) {
+            fired++;
+        }
+        return fired;
+    }
+
+    /**
+     * Fires the next transition if it fires by the horizon
+     *
+     * @param horizon time beyond which no transition may fire
+     * @return index of the transition fired or -1
+     */
+    protected int step(double horizon) {
+        int transition = selectImmediate();
+        if (transition < 0) {
+            transition = selectTimed(horizon);
+        }
+        if (transition >= 0) {
+            fire(transition);
+        }
+        return transition;
+    }
+
+    /**
+     * @return an enabled immediate transition of the highest enabled priority chosen in proportion
+     *         to its weight, or -1 if no immediate transition is enabled
+     */
+    protected final int selectImmediate() {
+        for (int level = 0; level < levelWeights.length; level++) {
+            if (levelEnabled[level] > 0) {
+                FenwickTree weights = levelWeights[level];
+                int position = weights.find(random.nextDouble() * weights.getTotal());
+                if (position < 0) {
+                    throw new IllegalStateException("Every enabled immediate transition with priority "
+                            + compiledPetriNet.getPriority(levelTransitions[level][0]) + " has zero weight");
+                }
+                return levelTransitions[level][position];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if any immediate transition is enabled
+     */
+    protected final boolean isVanishing() {
+        for (int enabled : levelEnabled) {
+            if (enabled > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fires the transition and re-evaluates the transitions it affects
+     *
+     * @param transition transition index
+     */
+    protected final void fire(int transition) {
+        compiledPetriNet.fire(transition, marking, successor);
+        int[] previous = marking;
+        marking = successor;
+        successor = previous;
+        firings++;
+        markingChanged(transition);
+    }
+
+    /**
+     * Replaces the marking, for example after firing several transitions at once, and re-evaluates
+     * the transitions affected by the transitions fired
+     *
+     * @param newMarking marking to copy into the current marking
+     * @param firings    number of times each transition was fired indexed by transition index
+     */
+    protected final void setMarking(int[] newMarking, long[] firings) {
+        System.arraycopy(newMarking, 0, marking, 0, marking.length);
+        for (int t = 0; t < firings.length; t++) {
+            if (firings[t] > 0) {
+                this.firings += firings[t];
+                markingChanged(t);
+            }
+        }
+    }
+
+    /**
+     * Re-evaluates the transitions affected by a transition after the marking has been changed
+     * by firing it
+     *
+     * @param transition transition index
+     */
+    protected final void markingChanged(int transition) {
+        int[] affected = compiledPetriNet.getAffectedTransitions(transition);
+        for (int t : affected) {
+            update(t, t == transition);
+        }
+        if (compiledPetriNet.isTimed(transition) && Arrays.binarySearch(affected, transition) < 0) {
+            timedRateChanged(transition, rates[transition], rates[transition], true);
+        }
+    }
+
+    /**
+     * Re-evaluates whether a transition is enabled and its rate in the current marking
+     *
+     * @param transition transition index
+     * @param fired      true if the transition has just fired
+     */
+    private void update(int transition, boolean fired) {
+        boolean enabled = compiledPetriNet.isEnabled(transition, marking);
+        double rate = enabled ? compiledPetriNet.getRate(transition, marking) : 0;
+        if (rate < 0 || Double.isNaN(rate)) {
+            throw new IllegalStateException("Transition " + compiledPetriNet.getTransition(transition).getId()
+                    + " has an invalid rate " + rate);
+        }
+        double oldRate = rates[transition];
+        rates[transition] = rate;
+        int level = immediateLevel[transition];
+        if (level < 0) {
+            timedRateChanged(transition, oldRate, rate, fired);
+            return;
+        }
+        if (enabled != immediateEnabled[transition]) {
+            immediateEnabled[transition] = enabled;
+            levelEnabled[level] += enabled ? 1 : -1;
+        }
+        levelWeights[level].set(levelPosition[transition], rate);
+    }
+
+    @Override
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public long getFiringCount() {
+        return firings;
+    }
+
+    @Override
+    public int[] getMarking() {
+        return marking.clone();
+    }
+
+    @Override
+    public State getState() {
+        return compiledPetriNet.getState(marking);
+    }
+
+    @Override
+    public CompiledPetriNet getCompiledPetriNet() {
+        return compiledPetriNet;
+    }
+
+    /**
+     * @return an exponentially distributed delay with unit rate
+     */
+    protected final double nextExponential() {
+        return -Math.log(1.0 - random.nextDouble());
+    }
+}
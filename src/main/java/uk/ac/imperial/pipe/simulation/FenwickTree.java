@@ -0,0 +1,158 @@
+package uk.ac.imperial.pipe.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Fenwick (binary indexed) tree of non negative weights supporting O(log n) updates, prefix
+ * sums and selection of an index with probability proportional to its weight.
+ * <p>
+ * Updates are applied as differences, so rounding errors accumulate in the partial sums. The tree
+ * is therefore rebuilt from the exact weights after every few multiples of its size in updates.
+ * </p>
+ */
+public final class FenwickTree {
+    /**
+     * Number of updates, as a multiple of the size, after which partial sums are recomputed
+     */
+    private static final int REBUILD_FACTOR = 64;
+
+    /**
+     * Weight of each index
+     */
+    private final double[] weights;
+
+    /**
+     * Partial sums, one based
+     */
+    private final double[] tree;
+
+    /**
+     * Highest power of two no greater than the size
+     */
+    private final int topBit;
+
+    /**
+     * Updates applied since the partial sums were last recomputed
+     */
+    private long updates;
+
+    /**
+     * Constructor for a tree whose weights are all zero
+     * @param size number of indices
+     */
+    public FenwickTree(int size) {
+        weights = new double[size];
+        tree = new double[size + 1];
+        topBit = size == 0 ? 0 : Integer.highestOneBit(size);
+    }
+
+    /**
+     * @return number of indices
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    /**
+     * @param index index
+     * @return weight of the index
+     */
+    public double get(int index) {
+        return weights[index];
+    }
+
+    /**
+     * @param index  index
+     * @param weight new non negative weight of the index
+     */
+    public void set(int index, double weight) {
+        if (weight < 0 || Double.isNaN(weight)) {
+            throw new IllegalArgumentException("Weight must be non negative: " + weight);
+        }
+        double delta = weight - weights[index];
+        if (delta == 0) {
+            return;
+        }
+        weights[index] = weight;
+        if (++updates > (long) REBUILD_FACTOR * Math.max(1, weights.length)) {
+            rebuild();
+            return;
+        }
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param end index after the last index to sum
+     * @return sum of the weights of the indices before end
+     */
+    public double prefixSum(int end) {
+        double sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return sum of every weight
+     */
+    public double getTotal() {
+        return Math.max(0, prefixSum(weights.length));
+    }
+
+    /**
+     * Finds the index whose cumulative weight range contains the value, so that for a value drawn
+     * uniformly from [0, total) each index is found with probability proportional to its weight.
+     * Indices with zero weight are never found.
+     *
+     * @param value value in the range [0, total)
+     * @return the selected index, or -1 if every weight is zero
+     */
+    public int find(double value) {
+        int position = 0;
+        double remaining = value;
+        for (int bit = topBit; bit != 0; bit >>>= 1) {
+            int next = position + bit;
+            if (next < tree.length && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        if (position < weights.length && weights[position] > 0) {
+            return position;
+        }
+        // Rounding has pushed the value past the last positive weight
+        for (int i = Math.min(position, weights.length - 1); i >= 0; i--) {
+            if (weights[i] > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets every weight to zero
+     */
+    public void clear() {
+        Arrays.fill(weights, 0);
+        Arrays.fill(tree, 0);
+        updates = 0;
+    }
+
+    /**
+     * Recomputes the partial sums from the weights in O(n)
+     */
+    private void rebuild() {
+        Arrays.fill(tree, 0);
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += weights[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        updates = 0;
+    }
+}
@@ -0,0 +1,81 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.util.Random;
+
+/**
+ * Stochastic simulator implementing Gillespie's direct method.
+ * <p>
+ * The rates of the timed transitions are kept in a {@link FenwickTree}, so each step draws an
+ * exponential delay from the total rate and selects the transition to fire in O(log n), and only
+ * the rates of transitions affected by the firing are updated.
+ * </p>
+ */
+public final class GillespieSimulator extends AbstractStochasticSimulator {
+    /**
+     * Rates of the timed transitions indexed by transition index
+     */
+    private final FenwickTree timedRates;
+
+    /**
+     * Constructor simulating from the current marking of the Petri net
+     *
+     * @param petriNet Petri net to simulate
+     * @param seed     seed of the random number generator
+     */
+    public GillespieSimulator(PetriNet petriNet, long seed) {
+        this(new CompiledPetriNet(petriNet), seed);
+    }
+
+    /**
+     * Constructor simulating from the marking the compiled Petri net was created with
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param seed             seed of the random number generator
+     */
+    public GillespieSimulator(CompiledPetriNet compiledPetriNet, long seed) {
+        this(compiledPetriNet, compiledPetriNet.getCurrentMarking(), new Random(seed));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param initialMarking   marking to start from, it is copied
+     * @param random           source of randomness
+     */
+    public GillespieSimulator(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random) {
+        super(compiledPetriNet, initialMarking, random);
+        timedRates = new FenwickTree(compiledPetriNet.getTransitionCount());
+        initialise();
+    }
+
+    @Override
+    protected void timedRateChanged(int transition, double oldRate, double newRate, boolean fired) {
+        timedRates.set(transition, newRate);
+    }
+
+    @Override
+    protected int selectTimed(double horizon) {
+        double total = timedRates.getTotal();
+        if (total <= 0) {
+            return -1;
+        }
+        double delay = nextExponential() / total;
+        if (time + delay > horizon) {
+            time = horizon;
+            return -1;
+        }
+        time += delay;
+        return timedRates.find(random.nextDouble() * total);
+    }
+
+    /**
+     * @return sum of the rates of the enabled timed transitions
+     */
+    public double getTotalRate() {
+        return timedRates.getTotal();
+    }
+}
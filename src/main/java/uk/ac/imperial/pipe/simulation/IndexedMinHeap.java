@@ -0,0 +1,124 @@
+package uk.ac.imperial.pipe.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of a fixed set of ids 0..n-1 keyed by double values, where the key of any id
+ * can be changed in O(log n) because the heap position of every id is tracked.
+ */
+final class IndexedMinHeap {
+    /**
+     * Key of each id
+     */
+    private final double[] keys;
+
+    /**
+     * Ids in heap order
+     */
+    private final int[] heap;
+
+    /**
+     * Heap position of each id
+     */
+    private final int[] positions;
+
+    /**
+     * Constructor for a heap where every id has a key of positive infinity
+     * @param size number of ids
+     */
+    IndexedMinHeap(int size) {
+        keys = new double[size];
+        Arrays.fill(keys, Double.POSITIVE_INFINITY);
+        heap = new int[size];
+        positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            heap[i] = i;
+            positions[i] = i;
+        }
+    }
+
+    /**
+     * @return id with the smallest key, the heap must not be empty
+     */
+    int peek() {
+        return heap[0];
+    }
+
+    /**
+     * @return the smallest key, positive infinity if the heap is empty
+     */
+    double peekKey() {
+        return heap.length == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+    }
+
+    /**
+     * @param id id
+     * @return key of the id
+     */
+    double getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * @param id  id
+     * @param key new key of the id
+     */
+    void setKey(int id, double key) {
+        double old = keys[id];
+        keys[id] = key;
+        if (key < old) {
+            siftUp(positions[id]);
+        } else if (key > old) {
+            siftDown(positions[id]);
+        }
+    }
+
+    /**
+     * @param position heap position whose key has decreased
+     */
+    private void siftUp(int position) {
+        int id = heap[position];
+        int current = position;
+        while (current > 0) {
+            int parent = (current - 1) >>> 1;
+            if (keys[heap[parent]] <= keys[id]) {
+                break;
+            }
+            place(heap[parent], current);
+            current = parent;
+        }
+        place(id, current);
+    }
+
+    /**
+     * @param position heap position whose key has increased
+     */
+    private void siftDown(int position) {
+        int id = heap[position];
+        int current = position;
+        while (true) {
+            int child = 2 * current + 1;
+            if (child >= heap.length) {
+                break;
+            }
+            if (child + 1 < heap.length && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[heap[child]] >= keys[id]) {
+                break;
+            }
+            place(heap[child], current);
+            current = child;
+        }
+        place(id, current);
+    }
+
+    /**
+     * @param id       id
+     * @param position heap position to put it at
+     */
+    private void place(int id, int position) {
+        heap[position] = id;
+        positions[id] = position;
+    }
+}
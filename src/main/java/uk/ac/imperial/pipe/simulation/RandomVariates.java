@@ -0,0 +1,88 @@
+package uk.ac.imperial.pipe.simulation;
+
+import java.util.Random;
+
+/**
+ * Samples random variates that {@link Random} does not provide
+ */
+final class RandomVariates {
+    /**
+     * Mean below which Poisson variates are sampled by multiplying uniforms
+     */
+    private static final double POISSON_INVERSION_LIMIT = 10;
+
+    /**
+     * Lanczos approximation coefficients for g = 7
+     */
+    private static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+            771.32342877765313, -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+            9.9843695780195716e-6, 1.5056327351493116e-7};
+
+    /**
+     * Private utility constructor
+     */
+    private RandomVariates() {}
+
+    /**
+     * Samples a Poisson distributed count, by multiplication of uniforms for small means and by
+     * Hörmann's transformed rejection method (PTRS) otherwise
+     *
+     * @param random source of randomness
+     * @param mean   non negative mean
+     * @return Poisson distributed count
+     */
+    static long poisson(Random random, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        if (mean < POISSON_INVERSION_LIMIT) {
+            double limit = Math.exp(-mean);
+            double product = random.nextDouble();
+            long count = 0;
+            while (product > limit) {
+                product *= random.nextDouble();
+                count++;
+            }
+            return count;
+        }
+        double root = Math.sqrt(mean);
+        double logMean = Math.log(mean);
+        double b = 0.931 + 2.53 * root;
+        double a = -0.059 + 0.02483 * b;
+        double inverseAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if (us >= 0.07 && v <= vr) {
+                return k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (Math.log(v) + Math.log(inverseAlpha) - Math.log(a / (us * us) + b)
+                    <= -mean + k * logMean - logGamma(k + 1)) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * @param x positive value
+     * @return natural logarithm of the gamma function at x
+     */
+    static double logGamma(double x) {
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        double z = x - 1;
+        double sum = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (z + i);
+        }
+        double t = z + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (z + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+}
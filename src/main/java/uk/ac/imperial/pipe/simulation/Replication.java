@@ -0,0 +1,16 @@
+package uk.ac.imperial.pipe.simulation;
+
+/**
+ * Runs a single replication of a simulation experiment on a freshly created simulator and
+ * reports its result
+ *
+ * @param <R> result of a replication
+ */
+public interface Replication<R> {
+    /**
+     * @param simulator   simulator positioned at the initial marking, owned by this replication
+     * @param replication index of the replication
+     * @return result of the replication
+     */
+    R run(StochasticSimulator simulator, int replication);
+}
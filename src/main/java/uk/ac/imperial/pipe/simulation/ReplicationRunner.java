@@ -0,0 +1,149 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent replications of a stochastic simulation in parallel.
+ * <p>
+ * Every replication simulates the same read only {@link CompiledPetriNet} with its own marking and
+ * its own {@link SplitMix64Random} stream. The streams are split from a single generator seeded with
+ * the experiment seed in replication order before any replication starts, so the result of each
+ * replication depends only on the seed and its index and not on the number of threads or the order
+ * in which replications are scheduled. The live {@link uk.ac.imperial.pipe.models.petrinet.PetriNet}
+ * is never modified.
+ * </p>
+ */
+public final class ReplicationRunner {
+    /**
+     * Compiled Petri net shared by every replication
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Marking every replication starts from
+     */
+    private final int[] initialMarking;
+
+    /**
+     * Creates the simulator of each replication
+     */
+    private final SimulatorFactory simulatorFactory;
+
+    /**
+     * Number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * Constructor using one thread per available processor, starting from the marking the
+     * compiled Petri net was created with
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param simulatorFactory creates the simulator of each replication
+     */
+    public ReplicationRunner(CompiledPetriNet compiledPetriNet, SimulatorFactory simulatorFactory) {
+        this(compiledPetriNet, compiledPetriNet.getCurrentMarking(), simulatorFactory,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param initialMarking   marking every replication starts from, it is copied
+     * @param simulatorFactory creates the simulator of each replication
+     * @param threads          number of worker threads
+     */
+    public ReplicationRunner(CompiledPetriNet compiledPetriNet, int[] initialMarking,
+                             SimulatorFactory simulatorFactory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+        }
+        this.compiledPetriNet = compiledPetriNet;
+        this.initialMarking = initialMarking.clone();
+        this.simulatorFactory = simulatorFactory;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs the replications and waits for them all to finish
+     *
+     * @param replications number of replications
+     * @param seed         seed the stream of every replication is derived from
+     * @param replication  runs a single replication
+     * @param <R>          result of a replication
+     * @return the result of each replication in replication order
+     * @throws InterruptedException if interrupted whilst waiting, outstanding replications are cancelled
+     */
+    public <R> List<R> run(int replications, long seed, final Replication<R> replication)
+            throws InterruptedException {
+        SplitMix64Random root = new SplitMix64Random(seed);
+        List<Callable<R>> tasks = new ArrayList<>(replications);
+        for (int i = 0; i < replications; i++) {
+            final int index = i;
+            final SplitMix64Random random = root.split();
+            tasks.add(new Callable<R>() {
+                @Override
+                public R call() {
+                    StochasticSimulator simulator = simulatorFactory.create(compiledPetriNet, initialMarking, random);
+                    return replication.run(simulator, index);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, replications)));
+        try {
+            List<Future<R>> futures = executor.invokeAll(tasks);
+            List<R> results = new ArrayList<>(replications);
+            for (Future<R> future : futures) {
+                results.add(getResult(future));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param future completed replication
+     * @param <R>    result of a replication
+     * @return result of the replication
+     * @throws InterruptedException if interrupted
+     */
+    private static <R> R getResult(Future<R> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Replication failed", cause);
+        }
+    }
+
+    /**
+     * @param endTime time to simulate each replication until
+     * @return a replication that runs the simulator until the end time and reports its final marking
+     */
+    public static Replication<int[]> markingAt(final double endTime) {
+        return new Replication<int[]>() {
+            @Override
+            public int[] run(StochasticSimulator simulator, int replication) {
+                simulator.run(endTime);
+                return simulator.getMarking();
+            }
+        };
+    }
+}
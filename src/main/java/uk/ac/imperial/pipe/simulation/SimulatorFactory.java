@@ -0,0 +1,50 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+
+import java.util.Random;
+
+/**
+ * Creates a stochastic simulator of a compiled Petri net. Factories for each of the built in
+ * simulators are provided as constants.
+ */
+public interface SimulatorFactory {
+    /**
+     * Creates {@link GillespieSimulator}s
+     */
+    SimulatorFactory GILLESPIE = new SimulatorFactory() {
+        @Override
+        public StochasticSimulator create(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random) {
+            return new GillespieSimulator(compiledPetriNet, initialMarking, random);
+        }
+    };
+
+    /**
+     * Creates {@link NextReactionSimulator}s
+     */
+    SimulatorFactory NEXT_REACTION = new SimulatorFactory() {
+        @Override
+        public StochasticSimulator create(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random) {
+            return new NextReactionSimulator(compiledPetriNet, initialMarking, random);
+        }
+    };
+
+    /**
+     * Creates {@link TauLeapingSimulator}s with the default epsilon
+     */
+    SimulatorFactory TAU_LEAPING = new SimulatorFactory() {
+        @Override
+        public StochasticSimulator create(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random) {
+            return new TauLeapingSimulator(compiledPetriNet, initialMarking, random,
+                    TauLeapingSimulator.DEFAULT_EPSILON);
+        }
+    };
+
+    /**
+     * @param compiledPetriNet compiled Petri net to simulate, shared read only between simulators
+     * @param initialMarking   marking to start from
+     * @param random           source of randomness owned by the simulator
+     * @return a new simulator
+     */
+    StochasticSimulator create(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random);
+}
@@ -0,0 +1,129 @@
+package uk.ac.imperial.pipe.simulation;
+
+import java.util.Random;
+
+/**
+ * Splittable pseudo random number generator using the SplitMix64 algorithm of Steele, Lea and
+ * Flood. {@link #split()} creates a new generator whose stream is statistically independent of this
+ * one, so a tree of streams can be derived deterministically from a single seed, for example one per
+ * simulation replication.
+ * <p>
+ * Unlike {@link Random} instances of this class are not safe to share between threads, each thread
+ * should use its own split generator.
+ * </p>
+ */
+public final class SplitMix64Random extends Random {
+    /**
+     * Odd increment used by generators created from a seed
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Multiplier converting 53 random bits into a double in [0, 1)
+     */
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    /**
+     * Current state
+     */
+    private long state;
+
+    /**
+     * Odd increment added to the state for each value
+     */
+    private long gamma;
+
+    /**
+     * Constructor
+     * @param seed initial seed
+     */
+    public SplitMix64Random(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Constructor
+     * @param state initial state
+     * @param gamma odd increment
+     */
+    private SplitMix64Random(long state, long gamma) {
+        super(state);
+        this.state = state;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return a new generator with an independent stream, advancing this generator
+     */
+    public SplitMix64Random split() {
+        return new SplitMix64Random(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Resets the generator to the stream of a newly created generator with the seed
+     *
+     * @param seed initial seed
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        state = seed;
+        gamma = GOLDEN_GAMMA;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (Long.SIZE - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * @return the next state
+     */
+    private long nextSeed() {
+        state += gamma;
+        return state;
+    }
+
+    /**
+     * @param value value to mix
+     * @return the value with its bits avalanched
+     */
+    private static long mix64(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param value value to mix
+     * @return an odd increment with enough bit transitions to give a good stream
+     */
+    private static long mixGamma(long value) {
+        long z = value;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
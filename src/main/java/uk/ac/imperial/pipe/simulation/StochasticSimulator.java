@@ -0,0 +1,57 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.state.State;
+
+/**
+ * Simulates a single trajectory of the continuous time Markov chain of a generalised stochastic
+ * Petri net. Timed transitions fire after exponentially distributed delays given by their rates,
+ * whilst enabled immediate transitions fire first in zero time, chosen between by priority and
+ * then with probability proportional to their weights.
+ * <p>
+ * Simulators hold mutable state and are not safe to use from multiple threads, run independent
+ * replications on separate simulators instead.
+ * </p>
+ */
+public interface StochasticSimulator {
+    /**
+     * Fires the next transition and advances the clock to its firing time
+     *
+     * @return index of the transition fired, or -1 if no transition is enabled
+     */
+    int step();
+
+    /**
+     * Fires transitions until the clock would pass the end time or no transition is enabled. The
+     * clock is left at the end time unless the simulation deadlocked before it.
+     *
+     * @param endTime time to simulate until
+     * @return number of transitions fired
+     */
+    long run(double endTime);
+
+    /**
+     * @return current simulation time
+     */
+    double getTime();
+
+    /**
+     * @return total number of transitions fired
+     */
+    long getFiringCount();
+
+    /**
+     * @return a copy of the current marking
+     */
+    int[] getMarking();
+
+    /**
+     * @return the current marking as a state
+     */
+    State getState();
+
+    /**
+     * @return compiled Petri net being simulated
+     */
+    CompiledPetriNet getCompiledPetriNet();
+}
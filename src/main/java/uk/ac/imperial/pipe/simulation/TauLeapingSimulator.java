@@ -0,0 +1,428 @@
+package uk.ac.imperial.pipe.simulation;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate stochastic simulator using adaptive tau leaping (Cao, Gillespie and Petzold, 2006)
+ * for nets whose places hold large numbers of tokens.
+ * <p>
+ * Each leap fires every non critical timed transition a Poisson distributed number of times at
+ * once. The leap length is chosen so that the expected relative change of the rate of every
+ * transition stays below epsilon. A transition is critical if it could exhaust one of its input
+ * places within a few firings, or if its effect is not a fixed multiple of a single firing because
+ * of inhibitor arcs, functional weights or capacities. At most one critical transition fires in a
+ * leap. A leap that would make a count negative or overflow a capacity is rejected and retried
+ * with half the leap length. When the leap length is too short to be worthwhile the simulator
+ * falls back to exact Gillespie steps for a while, and immediate transitions are always fired
+ * exactly.
+ * </p>
+ * <p>
+ * Leaps update the marking through {@link CompiledPetriNet#fire(long[], int[], int[])}, which uses
+ * the same arcs as single firings and leaves infinite ({@code Integer.MAX_VALUE}) counts unchanged.
+ * {@link #step()} performs one leap, or one exact step, and returns the transition fired most often.
+ * </p>
+ */
+public final class TauLeapingSimulator extends AbstractStochasticSimulator {
+    /**
+     * Default bound on the relative change of the rates during a leap
+     */
+    public static final double DEFAULT_EPSILON = 0.03;
+
+    /**
+     * Number of firings below which a transition that may exhaust an input place is critical
+     */
+    private static final int CRITICAL_FIRINGS = 10;
+
+    /**
+     * A leap shorter than this many mean exact step lengths is replaced by exact steps
+     */
+    private static final double EXACT_STEP_FACTOR = 10;
+
+    /**
+     * Number of exact steps taken when falling back from leaping
+     */
+    private static final int EXACT_STEPS = 100;
+
+    /**
+     * Bound on the relative change of the rates during a leap
+     */
+    private final double epsilon;
+
+    /**
+     * Rates of the timed transitions, used for exact steps
+     */
+    private final FenwickTree timedRates;
+
+    /**
+     * True for each timed transition whose effect is a fixed multiple of a single firing
+     */
+    private final boolean[] constantEffect;
+
+    /**
+     * Marking indices each transition removes tokens from
+     */
+    private final int[][] inputIndices;
+
+    /**
+     * Tokens each transition removes from each of its input marking indices
+     */
+    private final int[][] inputWeights;
+
+    /**
+     * Marking indices each transition changes
+     */
+    private final int[][] changeIndices;
+
+    /**
+     * Change each transition makes to each of its changed marking indices
+     */
+    private final int[][] changes;
+
+    /**
+     * Highest order of the transitions removing tokens from each marking index
+     */
+    private final int[] highestOrder;
+
+    /**
+     * Largest number of tokens removed from each marking index by a transition of the highest order
+     */
+    private final int[] highestOrderWeight;
+
+    /**
+     * Number of exact steps left before trying to leap again
+     */
+    private int exactStepsRemaining;
+
+    /**
+     * Number of leaps taken
+     */
+    private long leaps;
+
+    /**
+     * True for each transition that is critical in the current marking
+     */
+    private final boolean[] critical;
+
+    /**
+     * Sum of the rates of the critical transitions in the current marking
+     */
+    private double criticalRate;
+
+    /**
+     * Number of times each transition fires in the current leap
+     */
+    private final long[] firings;
+
+    /**
+     * Marking after the current leap
+     */
+    private final int[] leapMarking;
+
+    /**
+     * Expected change per unit time of each marking index due to the non critical transitions
+     */
+    private final double[] drift;
+
+    /**
+     * Variance per unit time of the change of each marking index due to the non critical transitions
+     */
+    private final double[] variance;
+
+    /**
+     * Constructor simulating from the current marking of the Petri net with the default epsilon
+     *
+     * @param petriNet Petri net to simulate
+     * @param seed     seed of the random number generator
+     */
+    public TauLeapingSimulator(PetriNet petriNet, long seed) {
+        this(new CompiledPetriNet(petriNet), seed);
+    }
+
+    /**
+     * Constructor simulating from the marking the compiled Petri net was created with using the
+     * default epsilon
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param seed             seed of the random number generator
+     */
+    public TauLeapingSimulator(CompiledPetriNet compiledPetriNet, long seed) {
+        this(compiledPetriNet, compiledPetriNet.getCurrentMarking(), new Random(seed), DEFAULT_EPSILON);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param compiledPetriNet compiled Petri net to simulate
+     * @param initialMarking   marking to start from, it is copied
+     * @param random           source of randomness
+     * @param epsilon          bound on the relative change of the rates during a leap, smaller values
+     *                         are more accurate but take shorter leaps
+     */
+    public TauLeapingSimulator(CompiledPetriNet compiledPetriNet, int[] initialMarking, Random random,
+                               double epsilon) {
+        super(compiledPetriNet, initialMarking, random);
+        if (epsilon <= 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("Epsilon must be between 0 and 1: " + epsilon);
+        }
+        this.epsilon = epsilon;
+        int transitions = compiledPetriNet.getTransitionCount();
+        int markingLength = compiledPetriNet.getMarkingLength();
+        timedRates = new FenwickTree(transitions);
+        constantEffect = new boolean[transitions];
+        inputIndices = new int[transitions][];
+        inputWeights = new int[transitions][];
+        changeIndices = new int[transitions][];
+        changes = new int[transitions][];
+        highestOrder = new int[markingLength];
+        highestOrderWeight = new int[markingLength];
+
+        int[] indices = new int[markingLength];
+        int[] values = new int[markingLength];
+        for (int t = 0; t < transitions; t++) {
+            constantEffect[t] = compiledPetriNet.isTimed(t) && compiledPetriNet.hasConstantEffect(t);
+            if (!constantEffect[t]) {
+                continue;
+            }
+            int count = compiledPetriNet.getInputs(t, marking, indices, values);
+            inputIndices[t] = Arrays.copyOf(indices, count);
+            inputWeights[t] = Arrays.copyOf(values, count);
+            int order = 0;
+            for (int weight : inputWeights[t]) {
+                order += weight;
+            }
+            for (int i = 0; i < count; i++) {
+                int index = indices[i];
+                if (order > highestOrder[index] || (order == highestOrder[index]
+                        && values[i] > highestOrderWeight[index])) {
+                    highestOrder[index] = order;
+                    highestOrderWeight[index] = values[i];
+                }
+            }
+            count = compiledPetriNet.getChange(t, marking, indices, values);
+            changeIndices[t] = Arrays.copyOf(indices, count);
+            changes[t] = Arrays.copyOf(values, count);
+        }
+
+        critical = new boolean[transitions];
+        firings = new long[transitions];
+        leapMarking = new int[markingLength];
+        drift = new double[markingLength];
+        variance = new double[markingLength];
+        initialise();
+    }
+
+    @Override
+    protected void timedRateChanged(int transition, double oldRate, double newRate, boolean fired) {
+        timedRates.set(transition, newRate);
+    }
+
+    @Override
+    protected int selectTimed(double horizon) {
+        double total = timedRates.getTotal();
+        if (total <= 0) {
+            return -1;
+        }
+        double delay = nextExponential() / total;
+        if (time + delay > horizon) {
+            time = horizon;
+            return -1;
+        }
+        time += delay;
+        return timedRates.find(random.nextDouble() * total);
+    }
+
+    /**
+     * Fires immediate transitions exactly, otherwise leaps or takes an exact step
+     *
+     * @param horizon time beyond which no transition may fire
+     * @return index of the transition fired most often, or -1 if none fired by the horizon
+     */
+    @Override
+    protected int step(double horizon) {
+        if (time >= horizon) {
+            return -1;
+        }
+        if (isVanishing() || exactStepsRemaining > 0) {
+            if (exactStepsRemaining > 0) {
+                exactStepsRemaining--;
+            }
+            return super.step(horizon);
+        }
+        double total = timedRates.getTotal();
+        if (total <= 0) {
+            return -1;
+        }
+        double tau = classifyAndSelectLeap();
+        if (tau < EXACT_STEP_FACTOR / total || Double.isInfinite(tau)) {
+            exactStepsRemaining = EXACT_STEPS - 1;
+            return super.step(horizon);
+        }
+        while (time < horizon) {
+            int fired = leap(tau, horizon);
+            if (fired >= 0) {
+                return fired;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the critical transitions and calculates the leap length for the others. Unlike the
+     * original method every count changed by a non critical transition bounds the leap, not only
+     * the counts they consume, so that transitions without inputs cannot leap arbitrarily far.
+     *
+     * @return largest leap length for the non critical transitions, infinity if there are none
+     */
+    private double classifyAndSelectLeap() {
+        Arrays.fill(drift, 0);
+        Arrays.fill(variance, 0);
+        criticalRate = 0;
+        for (int t = 0; t < rates.length; t++) {
+            critical[t] = false;
+            if (!compiledPetriNet.isTimed(t) || rates[t] == 0) {
+                continue;
+            }
+            if (!constantEffect[t] || maximumFirings(t) < CRITICAL_FIRINGS) {
+                critical[t] = true;
+                criticalRate += rates[t];
+                continue;
+            }
+            for (int i = 0; i < changeIndices[t].length; i++) {
+                int index = changeIndices[t][i];
+                double change = changes[t][i];
+                drift[index] += change * rates[t];
+                variance[index] += change * change * rates[t];
+            }
+        }
+
+        double tau = Double.POSITIVE_INFINITY;
+        for (int index = 0; index < marking.length; index++) {
+            if (marking[index] == Integer.MAX_VALUE) {
+                continue;
+            }
+            double bound = Math.max(epsilon * marking[index] / relativeOrder(index), 1);
+            if (drift[index] != 0) {
+                tau = Math.min(tau, bound / Math.abs(drift[index]));
+            }
+            if (variance[index] != 0) {
+                tau = Math.min(tau, bound * bound / variance[index]);
+            }
+        }
+        return tau;
+    }
+
+    /**
+     * @param transition transition with a constant effect
+     * @return number of times the transition can fire before exhausting an input place
+     */
+    private long maximumFirings(int transition) {
+        long firingsLeft = Long.MAX_VALUE;
+        for (int i = 0; i < inputIndices[transition].length; i++) {
+            int count = marking[inputIndices[transition][i]];
+            int weight = inputWeights[transition][i];
+            if (count != Integer.MAX_VALUE && weight > 0) {
+                firingsLeft = Math.min(firingsLeft, count / weight);
+            }
+        }
+        return firingsLeft;
+    }
+
+    /**
+     * @param index marking index
+     * @return factor g by which the relative change of the count is multiplied in the relative change
+     *         of the rates of the highest order transitions consuming it
+     */
+    private double relativeOrder(int index) {
+        int order = highestOrder[index];
+        int weight = highestOrderWeight[index];
+        double count = marking[index];
+        if (order <= 1 || weight <= 1 || count <= weight) {
+            return Math.max(1, order);
+        }
+        if (order == 2) {
+            return 2 + 1 / (count - 1);
+        }
+        if (order == 3) {
+            return weight == 2 ? 1.5 * (2 + 1 / (count - 1)) : 3 + 1 / (count - 1) + 2 / (count - 2);
+        }
+        return order;
+    }
+
+    /**
+     * Attempts a leap, halving the non critical leap length until the result is valid
+     *
+     * @param nonCriticalTau leap length for the non critical transitions
+     * @param horizon        time beyond which no transition may fire
+     * @return index of the transition fired most often or -1 if none fired
+     */
+    private int leap(double nonCriticalTau, double horizon) {
+        double criticalTau = criticalRate > 0 ? nextExponential() / criticalRate : Double.POSITIVE_INFINITY;
+        double tau = nonCriticalTau;
+        while (true) {
+            double length = Math.min(tau, criticalTau);
+            boolean fireCritical = criticalTau <= tau;
+            if (time + length > horizon) {
+                length = horizon - time;
+                fireCritical = false;
+            }
+            Arrays.fill(firings, 0);
+            for (int t = 0; t < rates.length; t++) {
+                if (!critical[t] && rates[t] > 0 && compiledPetriNet.isTimed(t)) {
+                    firings[t] = RandomVariates.poisson(random, rates[t] * length);
+                }
+            }
+            if (fireCritical) {
+                firings[selectCritical()]++;
+            }
+            if (compiledPetriNet.fire(firings, marking, leapMarking)) {
+                time += length;
+                leaps++;
+                setMarking(leapMarking, firings);
+                return mostFired();
+            }
+            tau /= 2;
+        }
+    }
+
+    /**
+     * @return a critical transition chosen in proportion to its rate
+     */
+    private int selectCritical() {
+        double target = random.nextDouble() * criticalRate;
+        int last = -1;
+        for (int t = 0; t < rates.length; t++) {
+            if (critical[t] && rates[t] > 0) {
+                last = t;
+                target -= rates[t];
+                if (target < 0) {
+                    return t;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return the transition fired most often in the last leap, or -1 if none fired
+     */
+    private int mostFired() {
+        int most = -1;
+        for (int t = 0; t < firings.length; t++) {
+            if (firings[t] > 0 && (most < 0 || firings[t] > firings[most])) {
+                most = t;
+            }
+        }
+        return most;
+    }
+
+    /**
+     * @return number of leaps taken, excluding exact steps
+     */
+    public long getLeapCount() {
+        return leaps;
+    }
+}
@@ -0,0 +1,457 @@
+package uk.ac.imperial.pipe.trace;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.state.State;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Replays a trace written by a {@link FiringTraceWriter}.
+ * <p>
+ * The reader fires the recorded transitions in a {@link CompiledPetriNet} directly on an int array
+ * marking, so no {@link State} is built unless {@link #getState()} is called. {@link #seek(long)}
+ * jumps to the last checkpoint at or before the requested step and replays forwards from there, so
+ * it costs at most one checkpoint interval of firings. Traces that were not closed are read up to
+ * their last complete firing.
+ * </p>
+ */
+public final class FiringTraceReader implements Closeable {
+    /**
+     * Compiled Petri net the trace is replayed in
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * Channel the trace is read from
+     */
+    private final FileChannel channel;
+
+    /**
+     * Bytes read from the channel
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TraceFormat.BUFFER_SIZE);
+
+    /**
+     * True if the trace records the time of each firing
+     */
+    private final boolean timed;
+
+    /**
+     * Number of firings between checkpoints
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Step of each checkpoint in ascending order
+     */
+    private long[] checkpointSteps;
+
+    /**
+     * Offset of each checkpoint record
+     */
+    private long[] checkpointOffsets;
+
+    /**
+     * Number of firings in the trace
+     */
+    private long stepCount;
+
+    /**
+     * Offset in the channel of the first byte of the buffer
+     */
+    private long bufferOffset;
+
+    /**
+     * Current marking
+     */
+    private int[] marking;
+
+    /**
+     * Buffer the next marking is written to
+     */
+    private int[] successor;
+
+    /**
+     * Time of the current step
+     */
+    private double time;
+
+    /**
+     * Number of firings replayed
+     */
+    private long step;
+
+    /**
+     * Transition fired to reach the current step, -1 if unknown
+     */
+    private int lastTransition = -1;
+
+    /**
+     * Constructor, positions the reader at step 0
+     *
+     * @param path             trace file
+     * @param compiledPetriNet compiled Petri net the trace was recorded from
+     * @throws IOException if the file cannot be read or is not a firing trace
+     */
+    public FiringTraceReader(Path path, CompiledPetriNet compiledPetriNet) throws IOException {
+        this.compiledPetriNet = compiledPetriNet;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            buffer.flip();
+            if (readInt() != TraceFormat.MAGIC) {
+                throw new IOException(path + " is not a firing trace");
+            }
+            byte version = readRawByte();
+            if (version != TraceFormat.VERSION) {
+                throw new IOException("Unsupported firing trace version " + version);
+            }
+            timed = (readRawByte() & TraceFormat.TIMED) != 0;
+            int markingLength = readInt();
+            int transitionCount = readInt();
+            checkpointInterval = readInt();
+            if (markingLength != compiledPetriNet.getMarkingLength()
+                    || transitionCount != compiledPetriNet.getTransitionCount()) {
+                throw new IllegalArgumentException("Trace was recorded from a net with " + markingLength
+                        + " marking counts and " + transitionCount + " transitions");
+            }
+            marking = new int[markingLength];
+            successor = new int[markingLength];
+            if (!readIndex()) {
+                scanIndex();
+            }
+            if (checkpointSteps.length == 0) {
+                throw new IOException("Firing trace has no initial marking");
+            }
+            loadCheckpoint(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the checkpoint index from the end record
+     *
+     * @return true if the trace was closed and the index has been read
+     * @throws IOException if the file cannot be read
+     */
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < TraceFormat.HEADER_SIZE + TraceFormat.TRAILER_SIZE) {
+            return false;
+        }
+        position(size - TraceFormat.TRAILER_SIZE);
+        long steps = readLong();
+        long endOffset = readLong();
+        if (readInt() != TraceFormat.MAGIC || endOffset < TraceFormat.HEADER_SIZE || endOffset >= size) {
+            return false;
+        }
+        position(endOffset);
+        if (readVarint() != TraceFormat.END) {
+            return false;
+        }
+        long count = readVarint();
+        if (count < 0 || getPosition() + count * 16 + TraceFormat.TRAILER_SIZE != size) {
+            return false;
+        }
+        checkpointSteps = new long[(int) count];
+        checkpointOffsets = new long[(int) count];
+        for (int i = 0; i < count; i++) {
+            checkpointSteps[i] = readLong();
+            checkpointOffsets[i] = readLong();
+        }
+        stepCount = steps;
+        return true;
+    }
+
+    /**
+     * Rebuilds the checkpoint index of a trace that was not closed by reading every record
+     *
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    private void scanIndex() throws IOException {
+        long[] steps = new long[16];
+        long[] offsets = new long[16];
+        int count = 0;
+        long firings = 0;
+        position(TraceFormat.HEADER_SIZE);
+        try {
+            while (true) {
+                long offset = getPosition();
+                int tag = readTag();
+                if (tag == TraceFormat.END) {
+                    break;
+                }
+                if (tag == TraceFormat.CHECKPOINT) {
+                    long checkpointStep = readVarint();
+                    readVarint();
+                    for (int i = 0; i < marking.length; i++) {
+                        readVarint();
+                    }
+                    if (checkpointStep != firings) {
+                        throw new IOException("Checkpoint at step " + checkpointStep + " found after "
+                                + firings + " firings");
+                    }
+                    if (count == steps.length) {
+                        steps = Arrays.copyOf(steps, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                    }
+                    steps[count] = checkpointStep;
+                    offsets[count] = offset;
+                    count++;
+                } else {
+                    if (timed) {
+                        readVarint();
+                    }
+                    firings++;
+                }
+            }
+        } catch (EOFException e) {
+            // Trace was not closed, it ends at the last complete record
+        }
+        checkpointSteps = Arrays.copyOf(steps, count);
+        checkpointOffsets = Arrays.copyOf(offsets, count);
+        stepCount = firings;
+    }
+
+    /**
+     * Replays the next firing
+     *
+     * @return index of the transition fired, or -1 if the end of the trace has been reached
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public int next() throws IOException {
+        if (step == stepCount) {
+            return -1;
+        }
+        int tag = readTag();
+        while (tag == TraceFormat.CHECKPOINT) {
+            readVarint();
+            readVarint();
+            for (int i = 0; i < marking.length; i++) {
+                readVarint();
+            }
+            tag = readTag();
+        }
+        if (tag == TraceFormat.END) {
+            throw new IOException("Firing trace ends after " + step + " of " + stepCount + " firings");
+        }
+        int transition = tag - TraceFormat.FIRING;
+        if (timed) {
+            time = Double.longBitsToDouble(Double.doubleToLongBits(time) ^ readVarint());
+        }
+        compiledPetriNet.fire(transition, marking, successor);
+        int[] previous = marking;
+        marking = successor;
+        successor = previous;
+        step++;
+        lastTransition = transition;
+        return transition;
+    }
+
+    /**
+     * Positions the reader after the given number of firings
+     *
+     * @param target step to move to, between 0 and {@link #getStepCount()}
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public void seek(long target) throws IOException {
+        if (target < 0 || target > stepCount) {
+            throw new IllegalArgumentException("Step " + target + " is outside the trace of " + stepCount + " firings");
+        }
+        int checkpoint = Arrays.binarySearch(checkpointSteps, target);
+        if (checkpoint < 0) {
+            checkpoint = -checkpoint - 2;
+        }
+        if (target < step || checkpointSteps[checkpoint] > step) {
+            loadCheckpoint(checkpoint);
+        }
+        while (step < target) {
+            next();
+        }
+    }
+
+    /**
+     * Restores the marking, time and step of a checkpoint and positions the reader after it
+     *
+     * @param checkpoint index of the checkpoint
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    private void loadCheckpoint(int checkpoint) throws IOException {
+        position(checkpointOffsets[checkpoint]);
+        if (readTag() != TraceFormat.CHECKPOINT) {
+            throw new IOException("No checkpoint at offset " + checkpointOffsets[checkpoint]);
+        }
+        step = readVarint();
+        time = Double.longBitsToDouble(readVarint());
+        for (int i = 0; i < marking.length; i++) {
+            marking[i] = (int) TraceFormat.unZigZag(readVarint());
+        }
+        lastTransition = -1;
+    }
+
+    /**
+     * @return the tag of the next record
+     * @throws IOException if the file cannot be read or the tag is not valid
+     */
+    private int readTag() throws IOException {
+        long tag = readVarint();
+        if (tag < 0 || tag >= TraceFormat.FIRING + (long) compiledPetriNet.getTransitionCount()) {
+            throw new IOException("Malformed firing trace record " + tag + " at offset " + (getPosition() - 1));
+        }
+        return (int) tag;
+    }
+
+    /**
+     * @return the next unsigned varint
+     * @throws IOException if the file cannot be read or the varint is too long
+     */
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readRawByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at offset " + getPosition());
+    }
+
+    /**
+     * @return the next big endian int
+     * @throws IOException if the file cannot be read
+     */
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (readRawByte() & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return the next big endian long
+     * @throws IOException if the file cannot be read
+     */
+    private long readLong() throws IOException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the next byte
+     * @throws IOException if the file cannot be read
+     * @throws EOFException if the end of the file has been reached
+     */
+    private byte readRawByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            bufferOffset += buffer.limit();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, bufferOffset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (!buffer.hasRemaining()) {
+                throw new EOFException("Unexpected end of firing trace");
+            }
+        }
+        return buffer.get();
+    }
+
+    /**
+     * @param offset offset in the file of the next byte to read
+     */
+    private void position(long offset) {
+        if (offset >= bufferOffset && offset <= bufferOffset + buffer.limit()) {
+            buffer.position((int) (offset - bufferOffset));
+        } else {
+            bufferOffset = offset;
+            buffer.clear();
+            buffer.flip();
+        }
+    }
+
+    /**
+     * @return offset in the file of the next byte to read
+     */
+    private long getPosition() {
+        return bufferOffset + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return number of firings in the trace
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return number of firings replayed to reach the current marking
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @return time of the current step, the initial time for untimed traces
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return true if the trace records the time of each firing
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * @return number of firings between checkpoints
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return number of checkpoints in the trace, including the initial marking
+     */
+    public int getCheckpointCount() {
+        return checkpointSteps.length;
+    }
+
+    /**
+     * @return transition fired to reach the current step, or -1 at a checkpoint reached by seeking
+     */
+    public int getLastTransition() {
+        return lastTransition;
+    }
+
+    /**
+     * @return current marking
+     */
+    public int[] getMarking() {
+        return marking.clone();
+    }
+
+    /**
+     * @return Markov chain state of the current marking
+     */
+    public State getState() {
+        return compiledPetriNet.getState(marking);
+    }
+}
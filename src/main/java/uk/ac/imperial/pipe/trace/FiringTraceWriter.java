@@ -0,0 +1,330 @@
+package uk.ac.imperial.pipe.trace;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a sequence of transition firings of a {@link CompiledPetriNet} to a compact binary trace
+ * that can be replayed by a {@link FiringTraceReader}.
+ * <p>
+ * Each firing is stored as a varint of its transition index, so a firing of a net with fewer than
+ * 126 transitions takes a single byte, plus the varint encoded difference of the bits of its time for
+ * timed traces. Every {@link #getCheckpointInterval()} firings the full marking is written as a
+ * checkpoint so that the reader can seek without replaying the trace from the start. The writer
+ * keeps track of the marking by firing the transitions in the compiled Petri net, which means it
+ * must be told about every firing in order. Enabling is not checked.
+ * </p>
+ * <p>
+ * Records are buffered and written to a {@link FileChannel}. The checkpoint index is written when the
+ * writer is closed; a trace that was never closed can still be read, its index is rebuilt by scanning it.
+ * </p>
+ */
+public final class FiringTraceWriter implements Closeable {
+    /**
+     * Default number of firings between checkpoints
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1 << 16;
+
+    /**
+     * Compiled Petri net whose firings are recorded
+     */
+    private final CompiledPetriNet compiledPetriNet;
+
+    /**
+     * True if the time of each firing is recorded
+     */
+    private final boolean timed;
+
+    /**
+     * Number of firings between checkpoints
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Channel the trace is written to
+     */
+    private final FileChannel channel;
+
+    /**
+     * Records not yet written to the channel
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TraceFormat.BUFFER_SIZE);
+
+    /**
+     * Current marking
+     */
+    private int[] marking;
+
+    /**
+     * Buffer the next marking is written to
+     */
+    private int[] successor;
+
+    /**
+     * Time of the last firing
+     */
+    private double time;
+
+    /**
+     * Number of firings recorded
+     */
+    private long step;
+
+    /**
+     * Offset in the channel of the first byte of the buffer
+     */
+    private long bufferOffset;
+
+    /**
+     * Step of each checkpoint
+     */
+    private long[] checkpointSteps = new long[16];
+
+    /**
+     * Offset of each checkpoint record
+     */
+    private long[] checkpointOffsets = new long[16];
+
+    /**
+     * Number of checkpoints written
+     */
+    private int checkpoints;
+
+    /**
+     * True once closed
+     */
+    private boolean closed;
+
+    /**
+     * Constructor for an untimed trace starting from the marking the compiled Petri net was created
+     * with, checkpointing every {@link #DEFAULT_CHECKPOINT_INTERVAL} firings
+     *
+     * @param path             file to write the trace to, it is replaced if it exists
+     * @param compiledPetriNet compiled Petri net whose firings are recorded
+     * @throws IOException if the file cannot be created
+     */
+    public FiringTraceWriter(Path path, CompiledPetriNet compiledPetriNet) throws IOException {
+        this(path, compiledPetriNet, compiledPetriNet.getCurrentMarking(), false, 0, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param path               file to write the trace to, it is replaced if it exists
+     * @param compiledPetriNet   compiled Petri net whose firings are recorded
+     * @param initialMarking     marking the trace starts from, it is copied
+     * @param timed              true if the time of each firing is recorded
+     * @param initialTime        time the trace starts at
+     * @param checkpointInterval number of firings between checkpoints
+     * @throws IOException if the file cannot be created
+     */
+    public FiringTraceWriter(Path path, CompiledPetriNet compiledPetriNet, int[] initialMarking, boolean timed,
+                             double initialTime, int checkpointInterval) throws IOException {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1: " + checkpointInterval);
+        }
+        if (initialMarking.length != compiledPetriNet.getMarkingLength()) {
+            throw new IllegalArgumentException("Marking has " + initialMarking.length + " counts but the net needs "
+                    + compiledPetriNet.getMarkingLength());
+        }
+        this.compiledPetriNet = compiledPetriNet;
+        this.timed = timed;
+        this.checkpointInterval = checkpointInterval;
+        marking = initialMarking.clone();
+        successor = new int[marking.length];
+        time = initialTime;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(TraceFormat.MAGIC);
+        buffer.put(TraceFormat.VERSION);
+        buffer.put(timed ? TraceFormat.TIMED : 0);
+        buffer.putInt(marking.length);
+        buffer.putInt(compiledPetriNet.getTransitionCount());
+        buffer.putInt(checkpointInterval);
+        writeCheckpoint();
+    }
+
+    /**
+     * Records a firing of an untimed trace
+     *
+     * @param transition transition index
+     * @throws IOException if the trace cannot be written
+     */
+    public void record(int transition) throws IOException {
+        record(transition, time);
+    }
+
+    /**
+     * Records a firing
+     *
+     * @param transition transition to fire
+     * @param time       time of the firing, ignored for untimed traces
+     * @throws IOException if the trace cannot be written
+     */
+    public void record(Transition transition, double time) throws IOException {
+        record(compiledPetriNet.getTransitionIndex(transition), time);
+    }
+
+    /**
+     * Records a firing
+     *
+     * @param transition transition index
+     * @param time       time of the firing, ignored for untimed traces
+     * @throws IOException if the trace cannot be written
+     */
+    public void record(int transition, double time) throws IOException {
+        checkOpen();
+        if (transition < 0 || transition >= compiledPetriNet.getTransitionCount()) {
+            throw new IllegalArgumentException("No transition with index " + transition);
+        }
+        ensureRemaining(2 * TraceFormat.MAX_VARINT_SIZE);
+        TraceFormat.putVarint(buffer, transition + TraceFormat.FIRING);
+        if (timed) {
+            TraceFormat.putVarint(buffer, Double.doubleToLongBits(time) ^ Double.doubleToLongBits(this.time));
+            this.time = time;
+        }
+        compiledPetriNet.fire(transition, marking, successor);
+        int[] previous = marking;
+        marking = successor;
+        successor = previous;
+        step++;
+        if (step % checkpointInterval == 0) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Writes the current marking as a checkpoint
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    private void writeCheckpoint() throws IOException {
+        ensureRemaining(3 * TraceFormat.MAX_VARINT_SIZE);
+        if (checkpoints == checkpointSteps.length) {
+            checkpointSteps = Arrays.copyOf(checkpointSteps, checkpoints * 2);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoints * 2);
+        }
+        checkpointSteps[checkpoints] = step;
+        checkpointOffsets[checkpoints] = bufferOffset + buffer.position();
+        checkpoints++;
+        TraceFormat.putVarint(buffer, TraceFormat.CHECKPOINT);
+        TraceFormat.putVarint(buffer, step);
+        TraceFormat.putVarint(buffer, Double.doubleToLongBits(time));
+        for (int count : marking) {
+            ensureRemaining(TraceFormat.MAX_VARINT_SIZE);
+            TraceFormat.putVarint(buffer, TraceFormat.zigZag(count));
+        }
+    }
+
+    /**
+     * Writes the buffer to the channel if fewer than the given number of bytes remain in it
+     *
+     * @param bytes number of bytes about to be written
+     * @throws IOException if the trace cannot be written
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffer to the channel
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bufferOffset += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes every buffered record to the file, after which the trace can be read up to the last
+     * firing recorded
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        writeBuffer();
+    }
+
+    /**
+     * Writes the checkpoint index and closes the file
+     *
+     * @throws IOException if the trace cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            ensureRemaining(2 * TraceFormat.MAX_VARINT_SIZE);
+            long endOffset = bufferOffset + buffer.position();
+            TraceFormat.putVarint(buffer, TraceFormat.END);
+            TraceFormat.putVarint(buffer, checkpoints);
+            for (int i = 0; i < checkpoints; i++) {
+                ensureRemaining(16);
+                buffer.putLong(checkpointSteps[i]);
+                buffer.putLong(checkpointOffsets[i]);
+            }
+            ensureRemaining(TraceFormat.TRAILER_SIZE);
+            buffer.putLong(step);
+            buffer.putLong(endOffset);
+            buffer.putInt(TraceFormat.MAGIC);
+            writeBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the writer has been closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Trace writer has been closed");
+        }
+    }
+
+    /**
+     * @return number of firings recorded
+     */
+    public long getStepCount() {
+        return step;
+    }
+
+    /**
+     * @return number of firings between checkpoints
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return true if the time of each firing is recorded
+     */
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * @return marking after the last firing recorded
+     */
+    public int[] getMarking() {
+        return marking.clone();
+    }
+}
@@ -0,0 +1,111 @@
+package uk.ac.imperial.pipe.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a binary firing trace.
+ * <p>
+ * A trace starts with a fixed header holding {@link #MAGIC}, {@link #VERSION}, the flags, the marking
+ * length, the transition count and the checkpoint interval. It is followed by a sequence of records,
+ * each starting with an unsigned varint tag:
+ * </p>
+ * <ul>
+ *     <li>{@link #CHECKPOINT} followed by the step as a varint, the raw bits of the time as a varint
+ *     and every marking count as a zig-zag varint</li>
+ *     <li>{@link #END} followed by the checkpoint index, the number of steps, the offset of the end
+ *     record and {@link #MAGIC}, which must be the last bytes of the file</li>
+ *     <li>the transition index plus {@link #FIRING} for a firing, followed in timed traces by the bits
+ *     of the time exclusive or the bits of the previous time as a varint</li>
+ * </ul>
+ * <p>
+ * The first record is always a checkpoint of the initial marking at step 0. The checkpoint index is
+ * written as the number of checkpoints followed by the step and offset of each as fixed size longs.
+ * </p>
+ */
+final class TraceFormat {
+    /**
+     * Bytes "PTRC" identifying a firing trace
+     */
+    static final int MAGIC = 0x50545243;
+
+    /**
+     * Version of the format
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Flag set if the trace records the time of each firing
+     */
+    static final byte TIMED = 1;
+
+    /**
+     * Size of the header in bytes
+     */
+    static final int HEADER_SIZE = 4 + 1 + 1 + 4 + 4 + 4;
+
+    /**
+     * Size in bytes of the fixed fields following the checkpoint index of the end record
+     */
+    static final int TRAILER_SIZE = 8 + 8 + 4;
+
+    /**
+     * Tag of a checkpoint record
+     */
+    static final int CHECKPOINT = 0;
+
+    /**
+     * Tag of the end record
+     */
+    static final int END = 1;
+
+    /**
+     * Offset added to a transition index to form the tag of a firing record
+     */
+    static final int FIRING = 2;
+
+    /**
+     * Maximum number of bytes of a varint encoded long
+     */
+    static final int MAX_VARINT_SIZE = 10;
+
+    /**
+     * Size of the buffers used to read and write traces
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Private utility constructor
+     */
+    private TraceFormat() {}
+
+    /**
+     * Writes an unsigned varint, seven bits per byte with the least significant group first
+     *
+     * @param buffer buffer with at least {@link #MAX_VARINT_SIZE} bytes remaining
+     * @param value  value treated as unsigned
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * @param value signed value
+     * @return value mapped so that small magnitudes have short varint encodings
+     */
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value zig-zag encoded value
+     * @return the signed value
+     */
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
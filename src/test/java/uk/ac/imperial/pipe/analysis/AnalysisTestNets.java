@@ -0,0 +1,64 @@
+package uk.ac.imperial.pipe.analysis;
+
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+
+/**
+ * Petri nets and helpers shared by the state space analysis tests
+ */
+public final class AnalysisTestNets {
+
+    /**
+     * Private constructor for utility class
+     */
+    private AnalysisTestNets() {
+    }
+
+    /**
+     * Builds a net whose token in P0 enters the cycle PA, PA2 at rate 1 or the cycle PB, PB2 at
+     * rate 3. PA is left at rate 1 and PA2 at rate 2, both states of the B cycle at rate 5. The
+     * transition D can never fire since its input place Z is empty
+     *
+     * @return Petri net
+     */
+    public static PetriNet twoCycleNet() throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("PA")).and(
+                APlace.withId("PA2")).and(APlace.withId("PB")).and(APlace.withId("PB2")).and(APlace.withId("Z")).and(
+                ATimedTransition.withId("TA").andRate("1")).and(ATimedTransition.withId("TB").andRate("3")).and(
+                ATimedTransition.withId("TA1").andRate("1")).and(ATimedTransition.withId("TA2").andRate("2")).and(
+                ATimedTransition.withId("TB1").andRate("5")).and(ATimedTransition.withId("TB2").andRate("5")).and(
+                ATimedTransition.withId("D")).and(
+                ANormalArc.withSource("P0").andTarget("TA").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA").andTarget("PA").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("TB").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB").andTarget("PB").with("1", "Default").token()).and(
+                ANormalArc.withSource("PA").andTarget("TA1").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA1").andTarget("PA2").with("1", "Default").token()).and(
+                ANormalArc.withSource("PA2").andTarget("TA2").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA2").andTarget("PA").with("1", "Default").token()).and(
+                ANormalArc.withSource("PB").andTarget("TB1").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB1").andTarget("PB2").with("1", "Default").token()).and(
+                ANormalArc.withSource("PB2").andTarget("TB2").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB2").andTarget("PB").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("Z").andTarget("D").with("1", "Default").token());
+    }
+
+    /**
+     * @param compiledPetriNet compiled Petri net of a net holding a single token
+     * @param marking          marking
+     * @return id of the place holding the token
+     */
+    public static String tokenPlace(CompiledPetriNet compiledPetriNet, int[] marking) {
+        for (int place = 0; place < compiledPetriNet.getPlaceCount(); place++) {
+            if (marking[compiledPetriNet.getMarkingIndex(place, 0)] > 0) {
+                return compiledPetriNet.getPlaceId(place);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+package uk.ac.imperial.pipe.analysis;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledAnimationLogic;
+import uk.ac.imperial.pipe.animation.PetriNetAnimationLogic;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReachabilityExplorerTest {
+
+    private PetriNet petriNet;
+
+    private State initial;
+
+    /**
+     * Three tokens move from P0 to P1 through T0 and back through T1, whilst T2 moves a single
+     * token from P0 to the sink P2 giving 4 + 3 + 2 + 1 states
+     */
+    @Before
+    public void setUp() throws PetriNetComponentException {
+        petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(3, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(ATimedTransition.withId("T0")).and(ATimedTransition.withId("T1")).and(
+                ATimedTransition.withId("T2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P2").with("1", "Default").token());
+        initial = AnimationUtils.getState(petriNet);
+    }
+
+    @Test
+    public void exploresAllReachableStates() {
+        ReachabilityGraph graph = new ReachabilityExplorer(new PetriNetAnimationLogic(petriNet)).explore(initial);
+
+        assertEquals(10, graph.getStateCount());
+        assertEquals(0, graph.getIndex(initial));
+        assertTrue(graph.isComplete());
+        assertEquals(2, graph.getOutDegree(0));
+    }
+
+    @Test
+    public void findsDeadlocks() {
+        ReachabilityGraph graph = new ReachabilityExplorer(new PetriNetAnimationLogic(petriNet)).explore(initial);
+
+        int[] deadlocks = graph.getDeadlocks();
+        assertEquals(1, deadlocks.length);
+        assertEquals(3, (int) graph.getState(deadlocks[0]).getTokens("P2").get("Default"));
+    }
+
+    @Test
+    public void labelsEdgesWithTransitions() throws PetriNetComponentException {
+        ReachabilityGraph graph = new ReachabilityExplorer(new PetriNetAnimationLogic(petriNet)).explore(initial);
+        Transition t2 = petriNet.getComponent("T2", Transition.class);
+
+        int edges = 0;
+        for (int state = 0; state < graph.getStateCount(); state++) {
+            for (ReachabilityGraph.Edge edge : graph.getEdges(state)) {
+                assertEquals(state, edge.getSource());
+                if (edge.getTransitions().contains(t2)) {
+                    int before = graph.getState(edge.getSource()).getTokens("P2").get("Default");
+                    int after = graph.getState(edge.getTarget()).getTokens("P2").get("Default");
+                    assertEquals(before + 1, after);
+                }
+                edges++;
+            }
+        }
+        assertEquals(graph.getEdgeCount(), edges);
+    }
+
+    @Test
+    public void graphDoesNotDependOnParallelism() {
+        ReachabilityGraph sequential = new ReachabilityExplorer(new CompiledAnimationLogic(petriNet), 1,
+                Integer.MAX_VALUE).explore(initial);
+        ReachabilityGraph parallel = new ReachabilityExplorer(new CompiledAnimationLogic(petriNet), 4,
+                Integer.MAX_VALUE).explore(initial);
+
+        assertEquals(sequential.getStates(), parallel.getStates());
+        assertEquals(sequential.getEdgeCount(), parallel.getEdgeCount());
+    }
+
+    @Test
+    public void stopsExpandingAtStateLimit() {
+        ReachabilityGraph graph = new ReachabilityExplorer(new PetriNetAnimationLogic(petriNet), 2, 3).explore(
+                initial);
+
+        assertFalse(graph.isComplete());
+        assertThat(graph.getStateCount()).isLessThan(10);
+        assertThat(graph.getDeadlocks()).isEmpty();
+    }
+
+    @Test
+    public void truncatedGraphDoesNotDependOnParallelism() throws PetriNetComponentException {
+        PetriNet wideNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(20, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(APlace.withId("P3")).and(ATimedTransition.withId("T1")).and(
+                ATimedTransition.withId("T2")).and(ATimedTransition.withId("T3")).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T2").with("1", "Default").token()).and(
+                ANormalArc.withSource("T2").andTarget("P2").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T3").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T3").andTarget("P3").with("1", "Default").token());
+        State wideInitial = AnimationUtils.getState(wideNet);
+        ReachabilityGraph sequential = new ReachabilityExplorer(new CompiledAnimationLogic(wideNet), 1, 500).explore(
+                wideInitial);
+
+        assertFalse(sequential.isComplete());
+        for (int run = 0; run < 5; run++) {
+            ReachabilityGraph parallel = new ReachabilityExplorer(new CompiledAnimationLogic(wideNet), 4, 500)
+                    .explore(wideInitial);
+            assertEquals(sequential.getStates(), parallel.getStates());
+            for (int state = 0; state < sequential.getStateCount(); state++) {
+                assertEquals(sequential.isExpanded(state), parallel.isExpanded(state));
+                assertEquals(sequential.getEdgeStart(state), parallel.getEdgeStart(state));
+            }
+            assertEquals(sequential.getEdgeCount(), parallel.getEdgeCount());
+        }
+    }
+}
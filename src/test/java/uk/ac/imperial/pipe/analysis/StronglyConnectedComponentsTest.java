@@ -0,0 +1,141 @@
+package uk.ac.imperial.pipe.analysis;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StronglyConnectedComponentsTest {
+
+    /**
+     * @param size    number of states
+     * @param targets targets of the single edge of each state, -1 for none
+     * @return graph in which each state has at most one outgoing edge
+     */
+    private static DirectedGraph functionalGraph(final int size, final int[] targets) {
+        final int[] start = new int[size + 1];
+        for (int state = 0; state < size; state++) {
+            start[state + 1] = start[state] + (targets[state] < 0 ? 0 : 1);
+        }
+        final int[] edges = new int[start[size]];
+        for (int state = 0; state < size; state++) {
+            if (targets[state] >= 0) {
+                edges[start[state]] = targets[state];
+            }
+        }
+        return new DirectedGraph() {
+            @Override
+            public int getStateCount() {
+                return size;
+            }
+
+            @Override
+            public int getEdgeStart(int source) {
+                return start[source];
+            }
+
+            @Override
+            public int getEdgeTarget(int edge) {
+                return edges[edge];
+            }
+        };
+    }
+
+    /**
+     * @param transitions transitions
+     * @return ids of the transitions
+     */
+    private static List<String> ids(List<Transition> transitions) {
+        List<String> ids = new ArrayList<>();
+        for (Transition transition : transitions) {
+            ids.add(transition.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void decomposesMillionStateCycleWithoutRecursion() {
+        int size = 1000000;
+        int[] targets = new int[size];
+        for (int state = 0; state < size; state++) {
+            targets[state] = (state + 1) % size;
+        }
+        StronglyConnectedComponents components = new StronglyConnectedComponents(functionalGraph(size, targets));
+
+        assertEquals(1, components.getComponentCount());
+        assertTrue(components.isBottom(0));
+        assertEquals(size, components.getHomeStates().length);
+    }
+
+    @Test
+    public void numbersComponentsOfLongChainInReverseTopologicalOrder() {
+        int size = 1000000;
+        int[] targets = new int[size];
+        for (int state = 0; state < size; state++) {
+            targets[state] = state + 1 < size ? state + 1 : -1;
+        }
+        StronglyConnectedComponents components = new StronglyConnectedComponents(functionalGraph(size, targets));
+
+        assertEquals(size, components.getComponentCount());
+        assertThat(components.getBottomComponents()).containsExactly(0);
+        assertEquals(0, components.getComponent(size - 1));
+        assertEquals(size - 1, components.getComponent(0));
+        assertThat(components.getHomeStates()).containsExactly(size - 1);
+    }
+
+    @Test
+    public void findsBottomComponentsOfBranchingGraph() {
+        int[] targets = {1, 2, 1, 4, 3, -1};
+        StronglyConnectedComponents components = new StronglyConnectedComponents(functionalGraph(6, targets));
+
+        assertEquals(4, components.getComponentCount());
+        assertEquals(components.getComponent(1), components.getComponent(2));
+        assertEquals(components.getComponent(3), components.getComponent(4));
+        assertFalse(components.isRecurrent(0));
+        assertTrue(components.isRecurrent(1));
+        assertTrue(components.isRecurrent(3));
+        assertTrue(components.isRecurrent(5));
+        assertEquals(3, components.getBottomComponents().length);
+        assertThat(components.getComponentStates(components.getComponent(3))).containsExactly(3, 4);
+        assertEquals(0, components.getHomeStates().length);
+    }
+
+    @Test
+    public void reportsDeadAndLiveTransitionsOfTwoCycleNet() throws PetriNetComponentException {
+        LivenessAnalysis liveness = new LivenessAnalysis(AnalysisTestNets.twoCycleNet());
+
+        assertThat(ids(liveness.getDeadTransitions())).containsExactly("D");
+        assertThat(ids(liveness.getLiveTransitions())).isEmpty();
+        assertEquals(0, liveness.getHomeStates().length);
+        assertFalse(liveness.isReversible());
+        assertFalse(liveness.isLive());
+        assertEquals(2, liveness.getComponents().getBottomComponents().length);
+    }
+
+    @Test
+    public void cycleIsLiveAndReversible() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(2, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0")).and(ATimedTransition.withId("T1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        LivenessAnalysis liveness = new LivenessAnalysis(petriNet);
+
+        assertTrue(liveness.isLive());
+        assertTrue(liveness.isReversible());
+        assertThat(liveness.getDeadTransitions()).isEmpty();
+        assertThat(liveness.getHomeStates()).containsExactly(0, 1, 2);
+    }
+}
@@ -0,0 +1,161 @@
+package uk.ac.imperial.pipe.analysis;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledAnimationLogic;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StubbornSetReductionTest {
+
+    /**
+     * Builds a net of independent transitions Ti each moving a token from Pi to Qi, with a
+     * transition C taking the token in P0 to R in conflict with T0
+     *
+     * @param count number of independent transitions
+     * @return Petri net
+     */
+    private static PetriNet independentNet(int count) throws PetriNetComponentException {
+        APetriNet builder = APetriNet.with(AToken.called("Default").withColor(Color.BLACK));
+        for (int i = 0; i < count; i++) {
+            builder = builder.and(APlace.withId("P" + i).containing(1, "Default").token()).and(
+                    APlace.withId("Q" + i)).and(ATimedTransition.withId("T" + i)).and(
+                    ANormalArc.withSource("P" + i).andTarget("T" + i).with("1", "Default").token()).and(
+                    ANormalArc.withSource("T" + i).andTarget("Q" + i).with("1", "Default").token());
+        }
+        builder = builder.and(APlace.withId("R")).and(ATimedTransition.withId("C")).and(
+                ANormalArc.withSource("P0").andTarget("C").with("1", "Default").token());
+        return builder.andFinally(ANormalArc.withSource("C").andTarget("R").with("1", "Default").token());
+    }
+
+    /**
+     * @param graph  reachability graph
+     * @param places place ids to project onto
+     * @return token counts of the places in every state of the graph
+     */
+    private static Set<List<Integer>> project(ReachabilityGraph graph, String... places) {
+        Set<List<Integer>> projections = new HashSet<>();
+        for (int state = 0; state < graph.getStateCount(); state++) {
+            Integer[] counts = new Integer[places.length];
+            for (int i = 0; i < places.length; i++) {
+                counts[i] = graph.getState(state).getTokens(places[i]).get("Default");
+            }
+            projections.add(Arrays.asList(counts));
+        }
+        return projections;
+    }
+
+    /**
+     * @param graph reachability graph
+     * @return deadlock states of the graph
+     */
+    private static Set<State> deadlocks(ReachabilityGraph graph) {
+        Set<State> states = new HashSet<>();
+        for (int deadlock : graph.getDeadlocks()) {
+            states.add(graph.getState(deadlock));
+        }
+        return states;
+    }
+
+    @Test
+    public void preservesDeadlocksWithFarFewerStates() throws PetriNetComponentException {
+        PetriNet petriNet = independentNet(10);
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        State initial = AnimationUtils.getState(petriNet);
+
+        ReachabilityGraph full = new ReachabilityExplorer(new CompiledAnimationLogic(compiledPetriNet), 2,
+                Integer.MAX_VALUE).explore(initial);
+        ReachabilityGraph reduced = new ReachabilityExplorer(new CompiledAnimationLogic(compiledPetriNet),
+                new StubbornSetReduction(compiledPetriNet), 2, Integer.MAX_VALUE).explore(initial);
+
+        assertEquals(3 << 9, full.getStateCount());
+        assertThat(reduced.getStateCount()).isLessThanOrEqualTo(12);
+        assertEquals(2, deadlocks(full).size());
+        assertEquals(deadlocks(full), deadlocks(reduced));
+    }
+
+    @Test
+    public void firesOnlyIndependentTransition() throws PetriNetComponentException {
+        PetriNet petriNet = independentNet(3);
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+
+        int[] stubborn = new StubbornSetReduction(compiledPetriNet).getStubbornTransitions(
+                compiledPetriNet.getCurrentMarking());
+
+        assertEquals(1, stubborn.length);
+        assertThat(compiledPetriNet.getTransition(stubborn[0]).getId()).isIn("T1", "T2");
+    }
+
+    @Test
+    public void deadlockHasEmptyStubbornSet() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0")).and(ATimedTransition.withId("T0")).andFinally(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+
+        assertEquals(0, new StubbornSetReduction(compiledPetriNet).getStubbornTransitions(
+                compiledPetriNet.getCurrentMarking()).length);
+    }
+
+    @Test
+    public void preservesMarkingsOfVisiblePlaces() throws PetriNetComponentException {
+        PetriNet petriNet = independentNet(6);
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        State initial = AnimationUtils.getState(petriNet);
+
+        ReachabilityGraph full = new ReachabilityExplorer(new CompiledAnimationLogic(compiledPetriNet)).explore(
+                initial);
+        ReachabilityGraph reduced = new ReachabilityExplorer(new CompiledAnimationLogic(compiledPetriNet),
+                new StubbornSetReduction(compiledPetriNet, Arrays.asList("Q1", "Q2")), 2, Integer.MAX_VALUE).explore(
+                initial);
+
+        assertThat(reduced.getStateCount()).isLessThan(full.getStateCount());
+        assertEquals(project(full, "Q1", "Q2"), project(reduced, "Q1", "Q2"));
+        assertEquals(deadlocks(full), deadlocks(reduced));
+    }
+
+    @Test
+    public void preservesVisibleMarkingsOnCycles() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("A0").containing(1, "Default").token()).and(APlace.withId("A1")).and(
+                APlace.withId("B0").containing(1, "Default").token()).and(APlace.withId("B1")).and(
+                ATimedTransition.withId("TA")).and(ATimedTransition.withId("UA")).and(
+                ATimedTransition.withId("TB")).and(ATimedTransition.withId("UB")).and(
+                ANormalArc.withSource("A0").andTarget("TA").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA").andTarget("A1").with("1", "Default").token()).and(
+                ANormalArc.withSource("A1").andTarget("UA").with("1", "Default").token()).and(
+                ANormalArc.withSource("UA").andTarget("A0").with("1", "Default").token()).and(
+                ANormalArc.withSource("B0").andTarget("TB").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB").andTarget("B1").with("1", "Default").token()).and(
+                ANormalArc.withSource("B1").andTarget("UB").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("UB").andTarget("B0").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        State initial = AnimationUtils.getState(petriNet);
+
+        ReachabilityGraph reduced = new ReachabilityExplorer(new CompiledAnimationLogic(compiledPetriNet),
+                new StubbornSetReduction(compiledPetriNet, Arrays.asList("B1")), 1, Integer.MAX_VALUE).explore(
+                initial);
+
+        assertTrue(project(reduced, "B1").containsAll(Arrays.asList(Arrays.asList(0), Arrays.asList(1))));
+        assertEquals(0, reduced.getDeadlocks().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVisiblePlace() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(independentNet(1));
+        new StubbornSetReduction(compiledPetriNet, Arrays.asList("missing"));
+    }
+}
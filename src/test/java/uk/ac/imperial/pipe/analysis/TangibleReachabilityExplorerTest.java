@@ -0,0 +1,236 @@
+package uk.ac.imperial.pipe.analysis;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.state.OffHeapStateStore;
+import uk.ac.imperial.pipe.analysis.state.PackedStateEncoder;
+import uk.ac.imperial.pipe.analysis.state.StateStore;
+import uk.ac.imperial.pipe.analysis.state.StateStoreFactory;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TangibleReachabilityExplorerTest {
+
+    private static final double DELTA = 1e-9;
+
+    /**
+     * A token moves from P0 to the vanishing place P1 at rate 3. From P1 it moves to P2 through IA or
+     * to P4 through IB with equal weights, and from P4 it moves back to P1 through IC or on to P3
+     * through ID with equal weights, so it reaches P2 with probability 2/3. It returns to P0 from P2
+     * and P3 at rate 1.
+     *
+     * @param initialPlace place the token starts in
+     * @param withExits    false to remove IA and ID, making P1 and P4 a timeless trap
+     * @return Petri net
+     */
+    private static PetriNet loopNet(String initialPlace, boolean withExits) throws PetriNetComponentException {
+        APetriNet builder = APetriNet.with(AToken.called("Default").withColor(Color.BLACK));
+        for (int p = 0; p <= 4; p++) {
+            String id = "P" + p;
+            builder = id.equals(initialPlace) ? builder.and(APlace.withId(id).containing(1, "Default").token())
+                    : builder.and(APlace.withId(id));
+        }
+        builder = builder.and(ATimedTransition.withId("T0").andRate("3")).and(
+                ATimedTransition.withId("T2").andRate("1")).and(ATimedTransition.withId("T3").andRate("1")).and(
+                AnImmediateTransition.withId("IB").andProbability("1")).and(
+                AnImmediateTransition.withId("IC").andProbability("1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("IB").with("1", "Default").token()).and(
+                ANormalArc.withSource("IB").andTarget("P4").with("1", "Default").token()).and(
+                ANormalArc.withSource("P4").andTarget("IC").with("1", "Default").token()).and(
+                ANormalArc.withSource("IC").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P2").andTarget("T2").with("1", "Default").token()).and(
+                ANormalArc.withSource("T2").andTarget("P0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P3").andTarget("T3").with("1", "Default").token());
+        if (withExits) {
+            builder = builder.and(AnImmediateTransition.withId("IA").andProbability("1")).and(
+                    ANormalArc.withSource("P1").andTarget("IA").with("1", "Default").token()).and(
+                    ANormalArc.withSource("IA").andTarget("P2").with("1", "Default").token()).and(
+                    AnImmediateTransition.withId("ID").andProbability("1")).and(
+                    ANormalArc.withSource("P4").andTarget("ID").with("1", "Default").token()).and(
+                    ANormalArc.withSource("ID").andTarget("P3").with("1", "Default").token());
+        }
+        return builder.andFinally(ANormalArc.withSource("T3").andTarget("P0").with("1", "Default").token());
+    }
+
+    /**
+     * @param compiledPetriNet compiled Petri net
+     * @param place            place id holding the single token
+     * @return marking with the token in the place
+     */
+    private static int[] markingWithTokenIn(CompiledPetriNet compiledPetriNet, String place) {
+        int[] marking = new int[compiledPetriNet.getMarkingLength()];
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex(place), 0)] = 1;
+        return marking;
+    }
+
+    /**
+     * @param graph  tangible reachability graph
+     * @param source source state index
+     * @param target target state index
+     * @return rate of the edge from the source to the target, zero if there is none
+     */
+    private static double rate(TangibleReachabilityGraph graph, int source, int target) {
+        for (int edge = graph.getEdgeStart(source); edge < graph.getEdgeStart(source) + graph.getOutDegree(source);
+             edge++) {
+            if (graph.getEdgeTarget(edge) == target) {
+                return graph.getEdgeRate(edge);
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void storesOnlyTangibleStates() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(loopNet("P0", true));
+
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet).explore();
+
+        assertEquals(3, graph.getStateCount());
+        assertEquals(-1, graph.getIndex(markingWithTokenIn(compiledPetriNet, "P1")));
+        assertEquals(-1, graph.getIndex(markingWithTokenIn(compiledPetriNet, "P4")));
+        assertEquals(0, graph.getDeadlocks().length);
+        assertEquals(0, graph.getIndex(compiledPetriNet.getCurrentMarking()));
+    }
+
+    @Test
+    public void splitsRatesThroughVanishingLoops() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(loopNet("P0", true));
+
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet).explore();
+
+        int p0 = graph.getIndex(markingWithTokenIn(compiledPetriNet, "P0"));
+        int p2 = graph.getIndex(markingWithTokenIn(compiledPetriNet, "P2"));
+        int p3 = graph.getIndex(markingWithTokenIn(compiledPetriNet, "P3"));
+        assertEquals(2, rate(graph, p0, p2), DELTA);
+        assertEquals(1, rate(graph, p0, p3), DELTA);
+        assertEquals(3, graph.getExitRate(p0), DELTA);
+        assertEquals(1, rate(graph, p2, p0), DELTA);
+    }
+
+    @Test
+    public void vanishingInitialMarkingGivesInitialDistribution() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(loopNet("P1", true));
+
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet).explore();
+
+        assertEquals(3, graph.getStateCount());
+        assertEquals(-1, graph.getIndex(compiledPetriNet.getCurrentMarking()));
+        double[] distribution = graph.getInitialDistribution();
+        assertEquals(2.0 / 3, distribution[graph.getIndex(markingWithTokenIn(compiledPetriNet, "P2"))], DELTA);
+        assertEquals(1.0 / 3, distribution[graph.getIndex(markingWithTokenIn(compiledPetriNet, "P3"))], DELTA);
+        assertEquals(0, distribution[graph.getIndex(markingWithTokenIn(compiledPetriNet, "P0"))], DELTA);
+    }
+
+    @Test
+    public void tangibleInitialMarkingStartsWithCertainty() throws PetriNetComponentException {
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(loopNet("P0", true)).explore();
+
+        assertArrayEquals(new int[]{0}, graph.getInitialStates());
+        assertArrayEquals(new double[]{1}, graph.getInitialProbabilities(), DELTA);
+    }
+
+    @Test
+    public void slowlyLeftVanishingLoopKeepsTheWholeRate() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("V1")).and(
+                APlace.withId("V2")).and(APlace.withId("P1")).and(ATimedTransition.withId("T0").andRate("3")).and(
+                ATimedTransition.withId("T1").andRate("1")).and(
+                AnImmediateTransition.withId("Loop").andProbability("99")).and(
+                AnImmediateTransition.withId("Back").andProbability("1")).and(
+                AnImmediateTransition.withId("Exit").andProbability("1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("V1").with("1", "Default").token()).and(
+                ANormalArc.withSource("V1").andTarget("Loop").with("1", "Default").token()).and(
+                ANormalArc.withSource("Loop").andTarget("V2").with("1", "Default").token()).and(
+                ANormalArc.withSource("V2").andTarget("Back").with("1", "Default").token()).and(
+                ANormalArc.withSource("Back").andTarget("V1").with("1", "Default").token()).and(
+                ANormalArc.withSource("V1").andTarget("Exit").with("1", "Default").token()).and(
+                ANormalArc.withSource("Exit").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet).explore();
+
+        int p0 = graph.getIndex(markingWithTokenIn(compiledPetriNet, "P0"));
+        int p1 = graph.getIndex(markingWithTokenIn(compiledPetriNet, "P1"));
+        assertEquals(3, rate(graph, p0, p1), 1e-15);
+    }
+
+    @Test
+    public void vanishingMarkingEnteredFromSeveralStatesIsExploredOnce() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("A").containing(1, "Default").token()).and(APlace.withId("B")).and(
+                APlace.withId("V")).and(ATimedTransition.withId("TA").andRate("1")).and(
+                ATimedTransition.withId("TB").andRate("2")).and(AnImmediateTransition.withId("I")).and(
+                ANormalArc.withSource("A").andTarget("TA").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA").andTarget("V").with("1", "Default").token()).and(
+                ANormalArc.withSource("B").andTarget("TB").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB").andTarget("V").with("1", "Default").token()).and(
+                ANormalArc.withSource("V").andTarget("I").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("I").andTarget("B").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet, 1).explore();
+
+        int a = graph.getIndex(markingWithTokenIn(compiledPetriNet, "A"));
+        int b = graph.getIndex(markingWithTokenIn(compiledPetriNet, "B"));
+        assertEquals(1, rate(graph, a, b), DELTA);
+        assertEquals(2, rate(graph, b, b), DELTA);
+        assertEquals(1, graph.getVanishingStateCount());
+    }
+
+    @Test
+    public void exploresIntoOffHeapStore() throws PetriNetComponentException, IOException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(200, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(APlace.withId("P3")).and(ATimedTransition.withId("T0").andRate("2")).and(
+                ATimedTransition.withId("T2").andRate("1")).and(AnImmediateTransition.withId("I")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("I").with("1", "Default").token()).and(
+                ANormalArc.withSource("I").andTarget("P2").with("1", "Default").token()).and(
+                ANormalArc.withSource("P2").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P3").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        final OffHeapStateStore store = new OffHeapStateStore(1024);
+        StateStoreFactory offHeap = new StateStoreFactory() {
+            @Override
+            public StateStore create() {
+                return store;
+            }
+        };
+
+        try {
+            TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(
+                    new PackedStateEncoder(compiledPetriNet, 255), offHeap, 4).explore();
+            TangibleReachabilityGraph onHeap = new TangibleReachabilityExplorer(compiledPetriNet, 4).explore();
+
+            assertEquals(201 * 202 / 2, graph.getStateCount());
+            assertEquals(graph.getStateCount(), store.size());
+            assertEquals(onHeap.getStateCount(), graph.getStateCount());
+            assertEquals(onHeap.getEdgeCount(), graph.getEdgeCount());
+            for (int state = 0; state < onHeap.getStateCount(); state++) {
+                int index = graph.getIndex(onHeap.getMarking(state));
+                assertArrayEquals(onHeap.getMarking(state), graph.getMarking(index));
+                assertEquals(onHeap.getExitRate(state), graph.getExitRate(index), DELTA);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void reportsTimelessTraps() throws PetriNetComponentException {
+        new TangibleReachabilityExplorer(loopNet("P0", false)).explore();
+    }
+}
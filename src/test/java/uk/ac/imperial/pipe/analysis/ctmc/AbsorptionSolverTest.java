@@ -0,0 +1,132 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.AnalysisTestNets;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+
+public class AbsorptionSolverTest {
+
+    private static final double DELTA = 1e-8;
+
+    /**
+     * Builds a net that fails from Up to Degraded at rate 1 or crashes to Crashed at rate 0.5, and
+     * from Degraded is repaired at rate 2 or dies to Dead at rate 1
+     *
+     * @return Petri net
+     */
+    private static PetriNet failureNet() throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("Up").containing(1, "Default").token()).and(APlace.withId("Degraded")).and(
+                APlace.withId("Dead")).and(APlace.withId("Crashed")).and(
+                ATimedTransition.withId("Fail").andRate("1")).and(ATimedTransition.withId("Repair").andRate("2")).and(
+                ATimedTransition.withId("Die").andRate("1")).and(ATimedTransition.withId("Crash").andRate("0.5")).and(
+                ANormalArc.withSource("Up").andTarget("Fail").with("1", "Default").token()).and(
+                ANormalArc.withSource("Fail").andTarget("Degraded").with("1", "Default").token()).and(
+                ANormalArc.withSource("Degraded").andTarget("Repair").with("1", "Default").token()).and(
+                ANormalArc.withSource("Repair").andTarget("Up").with("1", "Default").token()).and(
+                ANormalArc.withSource("Degraded").andTarget("Die").with("1", "Default").token()).and(
+                ANormalArc.withSource("Die").andTarget("Dead").with("1", "Default").token()).and(
+                ANormalArc.withSource("Up").andTarget("Crash").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("Crash").andTarget("Crashed").with("1", "Default").token());
+    }
+
+    @Test
+    public void solvesFailureAndRecoveryFromEveryState() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(failureNet());
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(compiledPetriNet).explore());
+        AbsorptionResult result = new AbsorptionSolver().solve(generator);
+
+        assertEquals(2, result.getAbsorbingClassCount());
+        int dead = -1;
+        for (int absorbingClass = 0; absorbingClass < 2; absorbingClass++) {
+            int[] states = result.getAbsorbingClassStates(absorbingClass);
+            assertEquals(1, states.length);
+            String place = AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(states[0]));
+            if ("Dead".equals(place)) {
+                dead = absorbingClass;
+            }
+        }
+        int crashed = 1 - dead;
+        for (int state = 0; state < generator.getSize(); state++) {
+            String place = AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(state));
+            if (place.equals("Up")) {
+                assertEquals(1.6, result.getMeanTimeToAbsorption(state), DELTA);
+                assertEquals(0.4, result.getAbsorptionProbability(state, dead), DELTA);
+                assertEquals(0.6, result.getAbsorptionProbability(state, crashed), DELTA);
+                assertEquals(-1, result.getAbsorbingClass(state));
+            } else if (place.equals("Degraded")) {
+                assertEquals(1.4, result.getMeanTimeToAbsorption(state), DELTA);
+                assertEquals(0.6, result.getAbsorptionProbability(state, dead), DELTA);
+                assertEquals(0.4, result.getAbsorptionProbability(state, crashed), DELTA);
+            } else {
+                assertEquals(0, result.getMeanTimeToAbsorption(state), 0);
+                assertEquals(place.equals("Dead") ? dead : crashed, result.getAbsorbingClass(state));
+            }
+        }
+        assertEquals(1.6, result.getMeanTimeToAbsorption(), DELTA);
+        assertEquals(0.4, result.getAbsorptionProbability(dead), DELTA);
+        double[] deadProbabilities = result.getAbsorptionProbabilities(dead);
+        for (int state = 0; state < generator.getSize(); state++) {
+            assertEquals(result.getAbsorptionProbability(state, dead), deadProbabilities[state], 0);
+        }
+    }
+
+    @Test
+    public void solvesRequestedClassesOfManyDeadlocks() throws PetriNetComponentException {
+        int tokens = 200;
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("Stop")).and(ATimedTransition.withId("T0").andRate("3")).and(
+                ATimedTransition.withId("Halt").andRate("1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("Halt").with("1", "Default").token()).and(
+                ANormalArc.withSource("Halt").andTarget("Stop").with("1", "Default").token()).and(
+                AnInhibitorArc.withSource("Stop").andTarget("T0")).andFinally(
+                AnInhibitorArc.withSource("Stop").andTarget("Halt"));
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(compiledPetriNet).explore());
+        AbsorptionResult result = new AbsorptionSolver().solve(generator);
+
+        assertEquals(tokens + 1, result.getAbsorbingClassCount());
+        int p1 = compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P1"), 0);
+        int stop = compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("Stop"), 0);
+        for (int state = 0; state < generator.getSize(); state++) {
+            int[] marking = generator.getGraph().getMarking(state);
+            if (marking[p1] == 0 && marking[stop] == 1) {
+                assertEquals(0.25, result.getAbsorptionProbability(result.getAbsorbingClass(state)), DELTA);
+            } else if (marking[p1] == tokens) {
+                assertEquals(Math.pow(0.75, tokens), result.getAbsorptionProbability(result.getAbsorbingClass(state)),
+                        DELTA);
+            }
+        }
+        double total = 0;
+        for (int absorbingClass = 0; absorbingClass < result.getAbsorbingClassCount(); absorbingClass++) {
+            total += result.getAbsorptionProbability(absorbingClass);
+        }
+        assertEquals(1, total, DELTA);
+    }
+
+    @Test
+    public void meanTimeOfLongDeathChainIsSumOfHoldingTimes() throws PetriNetComponentException {
+        int tokens = 2000;
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("4")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+        AbsorptionResult result = new AbsorptionSolver(1e-12, 100).solve(petriNet);
+
+        assertEquals(1, result.getAbsorbingClassCount());
+        assertEquals(tokens / 4.0, result.getMeanTimeToAbsorption(), 1e-6);
+        assertEquals(1, result.getAbsorptionProbability(0), DELTA);
+    }
+}
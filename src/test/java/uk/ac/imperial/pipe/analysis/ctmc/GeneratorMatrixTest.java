@@ -0,0 +1,121 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityGraph;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratorMatrixTest {
+
+    private static final double DELTA = 1e-12;
+
+    /**
+     * Tokens move from P0 to P1 through the infinite server T0 at rate 2 per token and back
+     * through T1 at rate 1
+     *
+     * @param tokens number of tokens
+     * @return Petri net
+     */
+    private static PetriNet serverNet(int tokens) throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("2")).and(ATimedTransition.withId("T1").andRate("1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        petriNet.getComponent("T0", Transition.class).setInfiniteServer(true);
+        return petriNet;
+    }
+
+    /**
+     * @param compiledPetriNet compiled Petri net
+     * @param graph            tangible reachability graph
+     * @param inP0             tokens in P0
+     * @param inP1             tokens in P1
+     * @return state index of the marking
+     */
+    private static int index(CompiledPetriNet compiledPetriNet, TangibleReachabilityGraph graph, int inP0, int inP1) {
+        int[] marking = new int[compiledPetriNet.getMarkingLength()];
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P0"), 0)] = inP0;
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P1"), 0)] = inP1;
+        return graph.getIndex(marking);
+    }
+
+    @Test
+    public void rowsSumToZero() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(serverNet(5));
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(compiledPetriNet).explore());
+        SparseMatrix q = generator.getMatrix();
+
+        assertEquals(6, generator.getSize());
+        for (int row = 0; row < generator.getSize(); row++) {
+            double sum = 0;
+            for (int entry = q.getRowStart(row); entry < q.getRowStart(row + 1); entry++) {
+                sum += q.getValue(entry);
+                if (entry > q.getRowStart(row)) {
+                    assertTrue(q.getColumn(entry - 1) < q.getColumn(entry));
+                }
+            }
+            assertEquals(0, sum, DELTA);
+            assertEquals(row, q.getColumn(generator.getDiagonalEntry(row)));
+        }
+    }
+
+    @Test
+    public void scalesInfiniteServerRates() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(serverNet(3));
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet).explore();
+        GeneratorMatrix generator = new GeneratorMatrix(graph);
+        SparseMatrix q = generator.getMatrix();
+
+        assertEquals(6, q.get(index(compiledPetriNet, graph, 3, 0), index(compiledPetriNet, graph, 2, 1)), DELTA);
+        assertEquals(2, q.get(index(compiledPetriNet, graph, 1, 2), index(compiledPetriNet, graph, 0, 3)), DELTA);
+        assertEquals(1, q.get(index(compiledPetriNet, graph, 1, 2), index(compiledPetriNet, graph, 2, 1)), DELTA);
+        assertEquals(-3, generator.getDiagonal(index(compiledPetriNet, graph, 1, 2)), DELTA);
+        assertEquals(6, generator.getMaximumExitRate(), DELTA);
+    }
+
+    @Test
+    public void parallelExplorationBuildsSameGenerator() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(serverNet(2000));
+        TangibleReachabilityGraph sequential = new TangibleReachabilityExplorer(compiledPetriNet, 1).explore();
+        TangibleReachabilityGraph parallel = new TangibleReachabilityExplorer(compiledPetriNet, 4).explore();
+        SparseMatrix expected = new GeneratorMatrix(sequential).getMatrix();
+        SparseMatrix actual = new GeneratorMatrix(parallel).getMatrix();
+
+        assertEquals(expected.getNonZeroCount(), actual.getNonZeroCount());
+        for (int inP0 = 1; inP0 <= 2000; inP0++) {
+            assertEquals(expected.get(index(compiledPetriNet, sequential, inP0, 2000 - inP0),
+                            index(compiledPetriNet, sequential, inP0 - 1, 2001 - inP0)),
+                    actual.get(index(compiledPetriNet, parallel, inP0, 2000 - inP0),
+                            index(compiledPetriNet, parallel, inP0 - 1, 2001 - inP0)), DELTA);
+        }
+    }
+
+    @Test
+    public void transposesMatrix() {
+        SparseMatrix matrix = new SparseMatrix(2, 3, new int[]{0, 2, 3}, new int[]{0, 2, 1},
+                new double[]{1, 2, 3});
+        SparseMatrix transpose = matrix.transpose();
+        double[] y = new double[3];
+        transpose.multiply(new double[]{1, 10}, y);
+
+        assertEquals(3, transpose.getRowCount());
+        assertEquals(2, transpose.get(2, 0), DELTA);
+        assertEquals(3, transpose.get(1, 1), DELTA);
+        assertEquals(0, transpose.get(0, 1), DELTA);
+        assertEquals(1, y[0], DELTA);
+        assertEquals(30, y[1], DELTA);
+        assertEquals(2, y[2], DELTA);
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.AnalysisTestNets;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReducibleSteadyStateSolverTest {
+
+    private static final double DELTA = 1e-8;
+
+    @Test
+    public void combinesComponentSteadyStatesWithReachProbabilities() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(AnalysisTestNets.twoCycleNet());
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(compiledPetriNet).explore());
+        ReducibleSteadyStateResult result = new ReducibleSteadyStateSolver(
+                new SteadyStateSolver(SteadyStateMethod.GAUSS_SEIDEL)).solve(generator);
+
+        assertTrue(result.isConverged());
+        assertEquals(2, result.getBottomComponentCount());
+        double total = 0;
+        for (int state = 0; state < generator.getSize(); state++) {
+            String place = AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(state));
+            double expected = place.equals("PA") ? 1.0 / 6 : place.equals("PA2") ? 1.0 / 12
+                    : place.equals("P0") ? 0 : 3.0 / 8;
+            assertEquals(place, expected, result.getProbability(state), DELTA);
+            total += result.getProbability(state);
+        }
+        assertEquals(1, total, DELTA);
+        for (int bottom = 0; bottom < 2; bottom++) {
+            int[] states = result.getBottomComponentStates(bottom);
+            String place = AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(states[0]));
+            double expected = place.startsWith("PA") ? 0.25 : 0.75;
+            assertEquals(expected, result.getComponentProbability(bottom), DELTA);
+        }
+    }
+
+    @Test
+    public void startingInsideComponentStaysThere() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(AnalysisTestNets.twoCycleNet());
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(compiledPetriNet).explore());
+        double[] initial = new double[generator.getSize()];
+        for (int state = 0; state < generator.getSize(); state++) {
+            if ("PB2".equals(AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(state)))) {
+                initial[state] = 1;
+            }
+        }
+        ReducibleSteadyStateResult result = new ReducibleSteadyStateSolver(
+                new SteadyStateSolver(SteadyStateMethod.POWER)).solve(generator, initial);
+
+        for (int state = 0; state < generator.getSize(); state++) {
+            String place = AnalysisTestNets.tokenPlace(compiledPetriNet, generator.getGraph().getMarking(state));
+            assertEquals(place, place.startsWith("PB") ? 0.5 : 0, result.getProbability(state), DELTA);
+        }
+    }
+
+    @Test
+    public void restrictionKeepsDiagonalAndMapsRows() throws PetriNetComponentException {
+        GeneratorMatrix generator = new GeneratorMatrix(
+                new TangibleReachabilityExplorer(new CompiledPetriNet(AnalysisTestNets.twoCycleNet())).explore());
+        GeneratorMatrix restricted = generator.restrict(new int[]{0, 2});
+
+        assertTrue(restricted.isRestricted());
+        assertEquals(2, restricted.getSize());
+        assertEquals(generator.getDiagonal(2), restricted.getDiagonal(1), 0);
+        assertEquals(2, restricted.getGraphState(1));
+        assertEquals(1, restricted.getRow(2));
+        assertEquals(-1, restricted.getRow(1));
+        assertEquals(1, restricted.getInitialDistribution()[0], 0);
+    }
+}
@@ -0,0 +1,215 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityGraph;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SteadyStateSolverTest {
+
+    private static final double DELTA = 1e-7;
+
+    /**
+     * Birth death chain, tokens move from P0 to P1 at rate 2 and back at rate 3, so the
+     * probability of k tokens in P1 is proportional to (2/3)^k
+     *
+     * @param tokens number of tokens
+     * @return Petri net
+     */
+    private static PetriNet birthDeathNet(int tokens) throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("2")).and(ATimedTransition.withId("T1").andRate("3")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+    }
+
+    /**
+     * @param tokens number of tokens of the birth death net
+     * @param method method to solve with
+     * @param parallelism number of threads
+     */
+    private static void assertSolvesBirthDeath(int tokens, SteadyStateMethod method, int parallelism)
+            throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(birthDeathNet(tokens));
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet, parallelism).explore();
+        SteadyStateResult result = new SteadyStateSolver(method, 1e-12, 200000, parallelism).solve(
+                new GeneratorMatrix(graph));
+
+        assertTrue(method + " did not converge", result.isConverged());
+        double normalisation = (1 - Math.pow(2.0 / 3, tokens + 1)) / (1 - 2.0 / 3);
+        int p1 = compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P1"), 0);
+        for (int state = 0; state < graph.getStateCount(); state++) {
+            int k = graph.getMarking(state)[p1];
+            assertEquals(method + " state " + k, Math.pow(2.0 / 3, k) / normalisation, result.getProbability(state),
+                    DELTA);
+        }
+        assertTrue(result.getResidual() < 1e-8);
+    }
+
+    @Test
+    public void powerMethodSolvesBirthDeathChain() throws PetriNetComponentException {
+        assertSolvesBirthDeath(20, SteadyStateMethod.POWER, 1);
+    }
+
+    @Test
+    public void jacobiSolvesPeriodicBirthDeathChain() throws PetriNetComponentException {
+        assertSolvesBirthDeath(20, SteadyStateMethod.JACOBI, 2);
+    }
+
+    @Test
+    public void gaussSeidelSolvesBirthDeathChain() throws PetriNetComponentException {
+        assertSolvesBirthDeath(20, SteadyStateMethod.GAUSS_SEIDEL, 1);
+    }
+
+    @Test
+    public void sorSolvesBirthDeathChain() throws PetriNetComponentException {
+        assertSolvesBirthDeath(20, SteadyStateMethod.SOR, 1);
+    }
+
+    @Test
+    public void blockJacobiSolvesLargeChainInParallel() throws PetriNetComponentException {
+        assertSolvesBirthDeath(6000, SteadyStateMethod.BLOCK_JACOBI, 4);
+    }
+
+    @Test
+    public void gmresSolvesBirthDeathChain() throws PetriNetComponentException {
+        assertSolvesBirthDeath(20, SteadyStateMethod.GMRES, 1);
+    }
+
+    @Test
+    public void krylovMethodsSolveLargeChainInParallel() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("A0").containing(80, "Default").tokens()).and(APlace.withId("A1")).and(
+                APlace.withId("B0").containing(80, "Default").tokens()).and(APlace.withId("B1")).and(
+                ATimedTransition.withId("TA").andRate("2")).and(ATimedTransition.withId("UA").andRate("3")).and(
+                ATimedTransition.withId("TB").andRate("1")).and(ATimedTransition.withId("UB").andRate("2")).and(
+                ANormalArc.withSource("A0").andTarget("TA").with("1", "Default").token()).and(
+                ANormalArc.withSource("TA").andTarget("A1").with("1", "Default").token()).and(
+                ANormalArc.withSource("A1").andTarget("UA").with("1", "Default").token()).and(
+                ANormalArc.withSource("UA").andTarget("A0").with("1", "Default").token()).and(
+                ANormalArc.withSource("B0").andTarget("TB").with("1", "Default").token()).and(
+                ANormalArc.withSource("TB").andTarget("B1").with("1", "Default").token()).and(
+                ANormalArc.withSource("B1").andTarget("UB").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("UB").andTarget("B0").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        GeneratorMatrix generator = new GeneratorMatrix(
+                new TangibleReachabilityExplorer(compiledPetriNet, 4).explore());
+        int a1 = compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("A1"), 0);
+        int b1 = compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("B1"), 0);
+        double normalisation = (1 - Math.pow(2.0 / 3, 81)) / (1 - 2.0 / 3) * (1 - Math.pow(0.5, 81)) / 0.5;
+
+        for (SteadyStateMethod method : new SteadyStateMethod[]{SteadyStateMethod.GMRES, SteadyStateMethod.BICGSTAB}) {
+            SteadyStateResult result = new SteadyStateSolver(method, 1e-12, 1000, 4).solve(generator);
+
+            assertEquals(81 * 81, generator.getSize());
+            assertTrue(method + " did not converge", result.isConverged());
+            for (int state = 0; state < generator.getSize(); state++) {
+                int[] marking = generator.getGraph().getMarking(state);
+                double expected = Math.pow(2.0 / 3, marking[a1]) * Math.pow(0.5, marking[b1]) / normalisation;
+                assertEquals(method.toString(), expected, result.getProbability(state), DELTA);
+            }
+        }
+    }
+
+    /**
+     * Closed cyclic network of three single servers P0 -&gt; P1 -&gt; P2 -&gt; P0 with rates spanning
+     * six orders of magnitude, whose product form solution is proportional to the product of
+     * (1 / rate) to the power of the tokens at each server
+     *
+     * @param method method to solve with
+     */
+    private static void assertSolvesStiffCyclicNetwork(SteadyStateMethod method) throws PetriNetComponentException {
+        double[] rates = {1e3, 1, 1e-3};
+        int tokens = 8;
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(ATimedTransition.withId("T0").andRate("1000")).and(
+                ATimedTransition.withId("T1").andRate("1")).and(ATimedTransition.withId("T2").andRate("0.001")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token()).and(
+                ANormalArc.withSource("P2").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P0").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        TangibleReachabilityGraph graph = new TangibleReachabilityExplorer(compiledPetriNet, 1).explore();
+        SteadyStateResult result = new SteadyStateSolver(method, 1e-13, 1000, 1).solve(new GeneratorMatrix(graph));
+
+        double[] expected = new double[graph.getStateCount()];
+        double total = 0;
+        for (int state = 0; state < expected.length; state++) {
+            int[] marking = graph.getMarking(state);
+            expected[state] = 1;
+            for (int p = 0; p < 3; p++) {
+                int count = marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P" + p), 0)];
+                expected[state] *= Math.pow(1 / rates[p], count);
+            }
+            total += expected[state];
+        }
+        assertTrue(method + " did not converge", result.isConverged());
+        for (int state = 0; state < expected.length; state++) {
+            assertEquals(expected[state] / total, result.getProbability(state), 1e-9);
+        }
+    }
+
+    @Test
+    public void gmresSolvesStiffChain() throws PetriNetComponentException {
+        assertSolvesStiffCyclicNetwork(SteadyStateMethod.GMRES);
+    }
+
+    @Test
+    public void bicgstabSolvesStiffChain() throws PetriNetComponentException {
+        assertSolvesStiffCyclicNetwork(SteadyStateMethod.BICGSTAB);
+    }
+
+    @Test
+    public void reportsTelemetry() throws PetriNetComponentException {
+        SteadyStateResult result = new SteadyStateSolver(SteadyStateMethod.GAUSS_SEIDEL, 1e-9, 1000, 1).solve(
+                birthDeathNet(10));
+
+        assertEquals(result.getIterations(), result.getConvergenceHistory().length);
+        assertTrue(result.getConvergenceHistory()[result.getIterations() - 1] < 1e-9);
+        assertEquals(SteadyStateMethod.GAUSS_SEIDEL, result.getMethod());
+    }
+
+    @Test
+    public void solvesDirectlyFromPetriNet() throws PetriNetComponentException {
+        PetriNet petriNet = birthDeathNet(3);
+        SteadyStateResult result = new SteadyStateSolver(SteadyStateMethod.GAUSS_SEIDEL).solve(petriNet);
+
+        double normalisation = 1 + 2.0 / 3 + 4.0 / 9 + 8.0 / 27;
+        assertEquals(1 / normalisation, result.getProbability(AnimationUtils.getState(petriNet)), DELTA);
+    }
+
+    @Test
+    public void stopsAtIterationLimit() throws PetriNetComponentException {
+        SteadyStateResult result = new SteadyStateSolver(SteadyStateMethod.POWER, 1e-15, 3, 1).solve(
+                birthDeathNet(50));
+
+        assertEquals(3, result.getIterations());
+        assertTrue(!result.isConverged());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gaussSeidelRejectsAbsorbingStates() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+
+        new SteadyStateSolver(SteadyStateMethod.GAUSS_SEIDEL).solve(petriNet);
+    }
+}
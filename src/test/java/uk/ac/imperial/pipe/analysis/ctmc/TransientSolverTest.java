@@ -0,0 +1,116 @@
+package uk.ac.imperial.pipe.analysis.ctmc;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.TangibleReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransientSolverTest {
+
+    private static final double DELTA = 1e-8;
+
+    /**
+     * A single token moves from P0 to P1 at rate 2 and, if returning, back at rate 3
+     *
+     * @param returning true to include the transition back to P0
+     * @return Petri net
+     */
+    private static PetriNet twoStateNet(boolean returning) throws PetriNetComponentException {
+        APetriNet builder = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token());
+        if (returning) {
+            builder = builder.and(ATimedTransition.withId("T1").andRate("3")).and(
+                    ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                    ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        }
+        return builder.andFinally(ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+    }
+
+    @Test
+    public void matchesClosedFormAtManyTimes() throws PetriNetComponentException {
+        PetriNet petriNet = twoStateNet(true);
+        State initial = AnimationUtils.getState(petriNet);
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(petriNet).explore());
+        double[] times = {1, 0, 0.1, 5, 0.5};
+
+        TransientResult result = new TransientSolver(1e-12, false, 2).solve(generator, times);
+
+        for (int i = 0; i < times.length; i++) {
+            double expected = 0.6 + 0.4 * Math.exp(-5 * times[i]);
+            assertEquals("t = " + times[i], expected, result.getProbability(i, initial), DELTA);
+        }
+        assertEquals(5, result.getTimes()[3], 0);
+        assertEquals(-1, result.getSteadyStateIteration());
+    }
+
+    @Test
+    public void stopsEarlyOnceSteadyStateIsReached() throws PetriNetComponentException {
+        PetriNet petriNet = twoStateNet(true);
+        State initial = AnimationUtils.getState(petriNet);
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(petriNet).explore());
+
+        TransientResult result = new TransientSolver(1e-10, true, 1).solve(generator, 1000, 2000);
+
+        assertTrue(result.getSteadyStateIteration() > 0);
+        assertTrue(result.getIterations() < 1000);
+        assertEquals(0.6, result.getProbability(0, initial), DELTA);
+        assertEquals(0.6, result.getProbability(1, initial), DELTA);
+    }
+
+    @Test
+    public void decaysIntoAbsorbingState() throws PetriNetComponentException {
+        PetriNet petriNet = twoStateNet(false);
+        State initial = AnimationUtils.getState(petriNet);
+        GeneratorMatrix generator = new GeneratorMatrix(new TangibleReachabilityExplorer(petriNet).explore());
+
+        TransientResult result = new TransientSolver(1e-12, false, 1).solve(generator, 0.25, 3);
+
+        assertEquals(Math.exp(-0.5), result.getProbability(0, initial), DELTA);
+        assertEquals(Math.exp(-6), result.getProbability(1, initial), DELTA);
+        double total = 0;
+        for (double probability : result.getDistribution(1)) {
+            total += probability;
+        }
+        assertEquals(1, total, DELTA);
+    }
+
+    @Test
+    public void foxGlynnWeightsCoverLargeMeans() {
+        FoxGlynn foxGlynn = new FoxGlynn(1e6, 1e-12);
+
+        double total = 0;
+        double mean = 0;
+        for (int k = foxGlynn.getLeft(); k <= foxGlynn.getRight(); k++) {
+            total += foxGlynn.getWeight(k);
+            mean += k * foxGlynn.getWeight(k);
+        }
+        assertEquals(1, total, 1e-12);
+        assertEquals(1e6, mean, 1e-3);
+        assertTrue(foxGlynn.getLeft() > 1e6 - 10000 && foxGlynn.getRight() < 1e6 + 10000);
+    }
+
+    @Test
+    public void foxGlynnMatchesPoissonProbabilities() {
+        FoxGlynn foxGlynn = new FoxGlynn(3.5, 1e-14);
+
+        assertEquals(0, foxGlynn.getLeft());
+        assertEquals(Math.exp(-3.5), foxGlynn.getWeight(0), 1e-13);
+        assertEquals(Math.exp(-3.5) * Math.pow(3.5, 4) / 24, foxGlynn.getWeight(4), 1e-13);
+        assertEquals(Math.log(3628800), FoxGlynn.logFactorial(10), 1e-12);
+        double logFactorial = 0;
+        for (int k = 1; k <= 30; k++) {
+            logFactorial += Math.log(k);
+        }
+        assertEquals(logFactorial, FoxGlynn.logFactorial(30), 1e-12);
+    }
+}
@@ -0,0 +1,143 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockFreeStateTableTest {
+
+    @Test
+    public void insertsAndFindsMarkings() {
+        LockFreeStateTable table = new LockFreeStateTable();
+
+        int first = table.insertIfAbsent(new long[]{1, 2});
+        int second = table.insertIfAbsent(new long[]{3});
+        int repeated = table.insertIfAbsent(new long[]{1, 2});
+
+        assertTrue(StateStores.isNew(first));
+        assertTrue(StateStores.isNew(second));
+        assertFalse(StateStores.isNew(repeated));
+        assertEquals(0, StateStores.getIndex(repeated));
+        assertEquals(1, table.indexOf(new long[]{3}));
+        assertEquals(-1, table.indexOf(new long[]{3, 0}));
+        assertArrayEquals(new long[]{1, 2}, table.get(0));
+        assertEquals(2, table.size());
+        assertTrue(table.getMemoryFootprint() > 0);
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        LockFreeStateTable table = new LockFreeStateTable(16);
+        int initialCapacity = table.getCapacity();
+
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i, table.insertIfAbsent(new long[]{i, i * 31L}));
+        }
+
+        assertTrue(table.getCapacity() > initialCapacity);
+        assertEquals(100000, table.size());
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(i, table.indexOf(new long[]{i, i * 31L}));
+            assertArrayEquals(new long[]{i, i * 31L}, table.get(i));
+        }
+    }
+
+    @Test
+    public void clampsCapacityOfHugeExpectedSizes() {
+        assertEquals(32, LockFreeStateTable.capacityFor(16));
+        assertEquals(1 << 29, LockFreeStateTable.capacityFor((1 << 28) - 1));
+        assertEquals(LockFreeStateTable.MAXIMUM_CAPACITY, LockFreeStateTable.capacityFor((1 << 29) + 1));
+        assertEquals(LockFreeStateTable.MAXIMUM_CAPACITY, LockFreeStateTable.capacityFor(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void concurrentReadsOnlySeePublishedMarkings() throws Exception {
+        final LockFreeStateTable table = new LockFreeStateTable(16);
+        final int markings = 50000;
+        final int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                writers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = offset; i < markings; i += threads) {
+                            table.insertIfAbsent(new long[]{i, -i});
+                        }
+                    }
+                }));
+            }
+            Future<Boolean> reader = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    int read = 0;
+                    while (read < markings) {
+                        int size = table.size();
+                        for (; read < size; read++) {
+                            long[] marking = table.get(read);
+                            if (marking.length != 2 || marking[0] != -marking[1]) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }
+            });
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            assertTrue(reader.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentInsertsGiveEachMarkingOneDenseIndex() throws Exception {
+        final LockFreeStateTable table = new LockFreeStateTable(16);
+        final int markings = 50000;
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        int[] indices = new int[markings];
+                        for (int i = 0; i < markings; i++) {
+                            indices[i] = StateStores.getIndex(table.insertIfAbsent(new long[]{i}));
+                        }
+                        return indices;
+                    }
+                }));
+            }
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertArrayEquals(expected, future.get());
+            }
+            BitSet seen = new BitSet();
+            for (int index : expected) {
+                seen.set(index);
+            }
+            assertEquals(markings, table.size());
+            assertEquals(markings, seen.cardinality());
+            assertEquals(markings, seen.nextClearBit(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
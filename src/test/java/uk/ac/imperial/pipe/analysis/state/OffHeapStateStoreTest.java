@@ -0,0 +1,127 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapStateStoreTest {
+
+    @Rule
+    public TemporaryFolder scratch = new TemporaryFolder();
+
+    @Test
+    public void storesMarkingsInDirectBuffers() throws IOException {
+        try (OffHeapStateStore store = new OffHeapStateStore(1024)) {
+            assertFalse(store.isFileBacked());
+            insertAndReadBack(store);
+        }
+    }
+
+    @Test
+    public void storesMarkingsInMappedFile() throws IOException {
+        try (OffHeapStateStore store = new OffHeapStateStore(scratch.getRoot().toPath(), 1024)) {
+            assertTrue(store.isFileBacked());
+            insertAndReadBack(store);
+        }
+        assertEquals(0, scratch.getRoot().list().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotBeUsedOnceClosed() throws IOException {
+        OffHeapStateStore store = new OffHeapStateStore(1024);
+        store.close();
+        store.insertIfAbsent(new long[]{1});
+    }
+
+    @Test
+    public void concurrentReadsOnlySeePublishedMarkings() throws Exception {
+        try (OffHeapStateStore store = new OffHeapStateStore(1024)) {
+            final int markings = 50000;
+            final int threads = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+            try {
+                List<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final int offset = t;
+                    writers.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = offset; i < markings; i += threads) {
+                                store.insertIfAbsent(new long[]{i + 1, -(i + 1)});
+                            }
+                        }
+                    }));
+                }
+                Future<Boolean> reader = executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        int read = 0;
+                        while (read < markings) {
+                            int size = store.size();
+                            for (; read < size; read++) {
+                                long[] marking = store.get(read);
+                                if (marking.length != 2 || marking[0] == 0 || marking[0] != -marking[1]) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                });
+                for (Future<?> writer : writers) {
+                    writer.get();
+                }
+                assertTrue(reader.get());
+                for (int i = 0; i < markings; i++) {
+                    assertTrue(store.indexOf(new long[]{i + 1, -(i + 1)}) >= 0);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Inserts enough variable length markings to span many chunks and segment resizes
+     * @param store store to test
+     */
+    private void insertAndReadBack(OffHeapStateStore store) {
+        int markings = 20000;
+        for (int i = 0; i < markings; i++) {
+            assertEquals(i, store.insertIfAbsent(marking(i)));
+        }
+        for (int i = 0; i < markings; i++) {
+            assertEquals(-(i + 1), store.insertIfAbsent(marking(i)));
+            assertEquals(i, store.indexOf(marking(i)));
+            assertArrayEquals(marking(i), store.get(i));
+        }
+        assertEquals(-1, store.indexOf(marking(markings)));
+        assertEquals(markings, store.size());
+        assertTrue(store.getMemoryFootprint() > markings * 8L);
+    }
+
+    /**
+     * @param i marking number
+     * @return encoded marking of one to three words
+     */
+    private long[] marking(int i) {
+        long[] encoded = new long[1 + i % 3];
+        for (int w = 0; w < encoded.length; w++) {
+            encoded[w] = i * 7919L + w;
+        }
+        return encoded;
+    }
+}
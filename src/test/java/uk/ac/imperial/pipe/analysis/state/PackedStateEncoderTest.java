@@ -0,0 +1,93 @@
+package uk.ac.imperial.pipe.analysis.state;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.animation.PetriNetAnimationLogic;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedStateEncoderTest {
+
+    private PetriNet petriNet;
+
+    private CompiledPetriNet compiledPetriNet;
+
+    @Before
+    public void setUp() throws PetriNetComponentException {
+        petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                AToken.called("Red").withColor(Color.RED)).and(
+                APlace.withId("P0").containing(5, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(AnImmediateTransition.withId("T0")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+        petriNet.getComponent("P1", Place.class).setCapacity(3);
+        compiledPetriNet = new CompiledPetriNet(petriNet);
+    }
+
+    @Test
+    public void deriveFieldWidthsFromBounds() {
+        PackedStateEncoder encoder = new PackedStateEncoder(compiledPetriNet,
+                Collections.singletonMap("P2", 1000), 255);
+
+        assertEquals(3, encoder.getFieldWidth(compiledPetriNet.getPlaceIndex("P0")));
+        assertEquals(2, encoder.getFieldWidth(compiledPetriNet.getPlaceIndex("P1")));
+        assertEquals(10, encoder.getFieldWidth(compiledPetriNet.getPlaceIndex("P2")));
+        assertEquals(1, encoder.getPackedLength());
+    }
+
+    @Test
+    public void roundTripsStates() throws PetriNetComponentException {
+        PackedStateEncoder encoder = new PackedStateEncoder(compiledPetriNet, 255);
+        State state = AnimationUtils.getState(petriNet);
+        State successor = new PetriNetAnimationLogic(petriNet).getFiredState(state,
+                petriNet.getComponent("T0", Transition.class));
+
+        long[] encoded = encoder.encode(successor);
+
+        assertFalse(PackedStateEncoder.isWide(encoded));
+        assertEquals(successor, encoder.decodeState(encoded));
+        assertArrayEquals(encoder.encode(state), encoder.encode(compiledPetriNet.getMarking(state)));
+    }
+
+    @Test
+    public void fallsBackToWideEncodingOnOverflow() {
+        PackedStateEncoder encoder = new PackedStateEncoder(compiledPetriNet, 1);
+        int[] marking = compiledPetriNet.getCurrentMarking();
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P2"), 1)] = Integer.MAX_VALUE;
+
+        long[] encoded = encoder.encode(marking);
+
+        assertTrue(PackedStateEncoder.isWide(encoded));
+        assertEquals(encoder.getWideLength(), encoded.length);
+        assertArrayEquals(marking, encoder.decode(encoded));
+    }
+
+    @Test
+    public void packsFieldsAcrossWordBoundaries() {
+        PackedStateEncoder encoder = new PackedStateEncoder(compiledPetriNet,
+                Collections.singletonMap("P2", Integer.MAX_VALUE - 1), 255);
+        int[] marking = compiledPetriNet.getCurrentMarking();
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P2"), 0)] = 123456789;
+        marking[compiledPetriNet.getMarkingIndex(compiledPetriNet.getPlaceIndex("P2"), 1)] = Integer.MAX_VALUE - 1;
+
+        long[] encoded = encoder.encode(marking);
+
+        assertFalse(PackedStateEncoder.isWide(encoded));
+        assertEquals(2, encoded.length);
+        assertArrayEquals(marking, encoder.decode(encoded));
+    }
+}
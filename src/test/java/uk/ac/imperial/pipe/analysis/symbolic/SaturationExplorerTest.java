@@ -0,0 +1,99 @@
+package uk.ac.imperial.pipe.analysis.symbolic;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.analysis.ReachabilityExplorer;
+import uk.ac.imperial.pipe.animation.AnimationUtils;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.animation.PetriNetAnimationLogic;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SaturationExplorerTest {
+
+    /**
+     * Independent cycles of two places, the first of each holding the given number of tokens
+     */
+    private PetriNet cycles(int cycles, int tokens) throws PetriNetComponentException {
+        APetriNet builder = APetriNet.with(AToken.called("Default").withColor(Color.BLACK));
+        for (int c = 0; c < cycles; c++) {
+            String a = "P" + c + "_0";
+            String b = "P" + c + "_1";
+            builder = builder.and(APlace.withId(a).containing(tokens, "Default").tokens()).and(
+                    APlace.withId(b)).and(ATimedTransition.withId("T" + c + "_0")).and(
+                    ATimedTransition.withId("T" + c + "_1")).and(
+                    ANormalArc.withSource(a).andTarget("T" + c + "_0").with("1", "Default").token()).and(
+                    ANormalArc.withSource("T" + c + "_0").andTarget(b).with("1", "Default").token()).and(
+                    ANormalArc.withSource(b).andTarget("T" + c + "_1").with("1", "Default").token()).and(
+                    ANormalArc.withSource("T" + c + "_1").andTarget(a).with("1", "Default").token());
+        }
+        return builder.andFinally(APlace.withId("Unused"));
+    }
+
+    @Test
+    public void matchesExplicitExploration() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                AToken.called("Red").withColor(Color.RED)).and(
+                APlace.withId("P0").containing(3, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2").andCapacity(2)).and(APlace.withId("P3")).and(
+                ATimedTransition.withId("T0")).and(ATimedTransition.withId("T1")).and(
+                ATimedTransition.withId("T2")).and(ATimedTransition.withId("T3")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P3").with("1", "Red").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P3").andTarget("T1").with("1", "Red").token()).and(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T2").with("1", "Default").token()).and(
+                ANormalArc.withSource("T2").andTarget("P2").with("1", "Default").token()).and(
+                AnInhibitorArc.withSource("P2").andTarget("T3")).andFinally(
+                ANormalArc.withSource("P3").andTarget("T3").with("#(P3)", "Red").tokens());
+
+        int explicit = new ReachabilityExplorer(new PetriNetAnimationLogic(petriNet))
+                .explore(AnimationUtils.getState(petriNet)).getStateCount();
+        SymbolicStateSpace stateSpace = new SaturationExplorer(petriNet).explore();
+
+        assertEquals(BigInteger.valueOf(explicit), stateSpace.getStateCount());
+    }
+
+    @Test
+    public void countsProductStateSpaceWithSmallDiagram() throws PetriNetComponentException {
+        SymbolicStateSpace stateSpace = new SaturationExplorer(cycles(25, 9)).explore();
+
+        assertEquals(BigInteger.TEN.pow(25), stateSpace.getStateCount());
+        assertTrue(stateSpace.getNodeCount() < 25 * 2 * 10 + 2);
+    }
+
+    @Test
+    public void containsReachableMarkingsOnly() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(cycles(2, 2));
+        SymbolicStateSpace stateSpace = new SaturationExplorer(compiledPetriNet).explore();
+        int[] marking = compiledPetriNet.getCurrentMarking();
+
+        assertEquals(BigInteger.valueOf(9), stateSpace.getStateCount());
+        assertTrue(stateSpace.contains(marking));
+        marking[compiledPetriNet.getPlaceIndex("P0_0")] = 1;
+        marking[compiledPetriNet.getPlaceIndex("P0_1")] = 1;
+        assertTrue(stateSpace.contains(marking));
+        marking[compiledPetriNet.getPlaceIndex("P0_1")] = 2;
+        assertFalse(stateSpace.contains(marking));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWeightsDependingOnOtherPlaces() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("#(P0)", "Default").tokens());
+
+        new SaturationExplorer(petriNet);
+    }
+}
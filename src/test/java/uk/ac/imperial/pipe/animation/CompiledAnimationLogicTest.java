@@ -0,0 +1,207 @@
+package uk.ac.imperial.pipe.animation;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class CompiledAnimationLogicTest {
+
+    @Test
+    public void matchesPetriNetAnimationLogicForFunctionalWeights() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Red").withColor(Color.RED)).and(
+                AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(5, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("#(P0)", "Default").tokens()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P1").with("#(P0)*2", "Red").tokens());
+
+        assertSameBehaviour(petriNet);
+    }
+
+    @Test
+    public void matchesPetriNetAnimationLogicForInhibitorArcs() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1")).and(APlace.withId("P2").containing(1, "Default").token()).and(
+                AnImmediateTransition.withId("T1")).and(AnImmediateTransition.withId("T2")).and(
+                AnInhibitorArc.withSource("P1").andTarget("T1")).and(
+                AnInhibitorArc.withSource("P2").andTarget("T2")).andFinally(
+                ANormalArc.withSource("T1").andTarget("P1").with("1", "Default").token());
+
+        assertSameBehaviour(petriNet);
+    }
+
+    @Test
+    public void matchesPetriNetAnimationLogicForCapacityAndSelfLoops() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(AnImmediateTransition.withId("T0")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        petriNet.getComponent("P0", Place.class).setCapacity(1);
+
+        CompiledAnimationLogic logic = new CompiledAnimationLogic(petriNet);
+        Collection<Transition> enabled = logic.getEnabledTransitions(AnimationUtils.getState(petriNet));
+        assertThat(enabled).containsExactly(petriNet.getComponent("T0", Transition.class));
+        assertSameBehaviour(petriNet);
+    }
+
+    @Test
+    public void matchesPetriNetAnimationLogicForPriorities() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(2, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T0").andPriority(5)).and(
+                AnImmediateTransition.withId("T1").andPriority(1)).and(ATimedTransition.withId("T2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+
+        CompiledAnimationLogic logic = new CompiledAnimationLogic(petriNet);
+        Collection<Transition> enabled = logic.getEnabledTransitions(AnimationUtils.getState(petriNet));
+        assertThat(enabled).containsExactly(petriNet.getComponent("T0", Transition.class));
+        assertSameBehaviour(petriNet);
+    }
+
+    @Test
+    public void batchEnablingMatchesEachMarkingForWeightsReadingOtherPlaces() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(2, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(AnImmediateTransition.withId("T0")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("#(P1)", "Default").tokens()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P2").with("1", "Default").token());
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        int[][] counts = {{2, 1, 0}, {2, 1, 5}, {2, 3, 5}, {2, 3, 0}, {3, 3, 0}};
+        int[][] markings = new int[counts.length][compiledPetriNet.getMarkingLength()];
+        for (int i = 0; i < counts.length; i++) {
+            for (int place = 0; place < counts[i].length; place++) {
+                int index = compiledPetriNet.getPlaceIndex("P" + place);
+                markings[i][compiledPetriNet.getMarkingIndex(index, 0)] = counts[i][place];
+            }
+        }
+        boolean[][] enabled = new boolean[counts.length][compiledPetriNet.getTransitionCount()];
+        compiledPetriNet.findEnabledTransitions(markings, counts.length, enabled);
+
+        boolean[] expected = new boolean[compiledPetriNet.getTransitionCount()];
+        for (int i = 0; i < counts.length; i++) {
+            compiledPetriNet.findEnabledTransitions(markings[i], expected);
+            assertThat(enabled[i]).containsExactly(expected);
+        }
+        assertThat(enabled[2][0]).isFalse();
+        assertThat(enabled[4][0]).isTrue();
+    }
+
+    @Test
+    public void enabledTransitionsCacheIsWeighedByEnabledCount() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T0")).and(AnImmediateTransition.withId("T1")).and(
+                AnImmediateTransition.withId("T2")).and(AnImmediateTransition.withId("T3")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("P1").andTarget("T3").with("1", "Default").token());
+
+        CompiledAnimationLogic logic = new CompiledAnimationLogic(new CompiledPetriNet(petriNet),
+                AnimationCacheSettings.maximumWeight(2), AnimationCacheSettings.disabled());
+        logic.getEnabledTransitions(AnimationUtils.getState(petriNet));
+
+        assertEquals(1, logic.getEnabledTransitionsCacheSize());
+        assertEquals(0, logic.getSuccessorsCacheSize());
+    }
+
+    @Test
+    public void infinityLogic() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                AnImmediateTransition.withId("T0")).and(
+                APlace.withId("P0").and(Integer.MAX_VALUE, "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P0").with("1", "Default").token());
+
+        assertSameBehaviour(petriNet);
+    }
+
+    @Test
+    public void animatorCanUseCompiledLogic() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(APlace.withId("P2")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token());
+
+        Animator animator = new PetriNetAnimator(petriNet, new CompiledAnimationLogic(petriNet));
+        animator.fireTransition(petriNet.getComponent("T1", Transition.class));
+
+        assertEquals(0, petriNet.getComponent("P1", Place.class).getTokenCount("Default"));
+        assertEquals(1, petriNet.getComponent("P2", Place.class).getTokenCount("Default"));
+    }
+
+    /**
+     * Compares the enabled transitions and successors of the compiled logic with
+     * the original logic for the Petri nets current state and each of its successors
+     * @param petriNet to compare
+     */
+    private void assertSameBehaviour(PetriNet petriNet) {
+        AnimationLogic expected = new PetriNetAnimationLogic(petriNet);
+        AnimationLogic actual = new CompiledAnimationLogic(petriNet);
+        State state = AnimationUtils.getState(petriNet);
+
+        assertEquals(expected.getEnabledTransitions(state), actual.getEnabledTransitions(state));
+        Map<State, Collection<Transition>> expectedSuccessors = expected.getSuccessors(state);
+        Map<State, Collection<Transition>> actualSuccessors = actual.getSuccessors(state);
+        assertEquals(expectedSuccessors.keySet(), actualSuccessors.keySet());
+        for (State successor : expectedSuccessors.keySet()) {
+            assertThat(actualSuccessors.get(successor)).containsOnly(
+                    expectedSuccessors.get(successor).toArray(new Transition[0]));
+            assertEquals(expected.getEnabledTransitions(successor), actual.getEnabledTransitions(successor));
+            for (Transition transition : expected.getEnabledTransitions(successor)) {
+                assertEquals(expected.getFiredState(successor, transition),
+                        actual.getFiredState(successor, transition));
+            }
+        }
+
+        List<State> block = new ArrayList<>();
+        block.add(state);
+        block.addAll(expectedSuccessors.keySet());
+        assertSameBatch(expected, new PetriNetAnimationLogic(petriNet), block);
+        assertSameBatch(expected, new CompiledAnimationLogic(petriNet), block);
+    }
+
+    /**
+     * Checks that the batched successors of a block of states match the successors of each state
+     * @param expected logic calculating the expected successors
+     * @param actual   logic calculating the batched successors
+     * @param block    states to evaluate
+     */
+    private void assertSameBatch(AnimationLogic expected, ExtendedAnimationLogic actual, List<State> block) {
+        SuccessorBatch batch = new SuccessorBatch();
+        actual.getSuccessors(block, batch);
+        actual.getSuccessors(block, batch);
+
+        assertEquals(block.size(), batch.getSourceCount());
+        for (int i = 0; i < block.size(); i++) {
+            Map<State, Collection<Transition>> expectedSuccessors = expected.getSuccessors(block.get(i));
+            Map<State, Collection<Transition>> actualSuccessors = batch.getSuccessors(i);
+            assertEquals(expectedSuccessors.keySet(), actualSuccessors.keySet());
+            for (State successor : expectedSuccessors.keySet()) {
+                assertThat(actualSuccessors.get(successor)).containsOnly(
+                        expectedSuccessors.get(successor).toArray(new Transition[0]));
+            }
+        }
+    }
+}
@@ -371,4 +371,53 @@ public class PetriNetAnimationLogicTest {
         int actualP1 = successor.getTokens("P0").get("Default");
         assertEquals(Integer.MAX_VALUE, actualP1);
     }
-}
\ No newline at end of file
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedEnabledTransitionsAreImmutable() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").and(1, "Default").token()).and(AnImmediateTransition.withId("T0")).andFinally(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token());
+
+        AnimationLogic animator = new PetriNetAnimationLogic(petriNet);
+        animator.getEnabledTransitions(AnimationUtils.getState(petriNet)).clear();
+    }
+
+    @Test
+    public void sizeBoundedCachesEvictAndRecordStatistics() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").and(3, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T0")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+
+        PetriNetAnimationLogic animator = new PetriNetAnimationLogic(petriNet,
+                AnimationCacheSettings.maximumSize(1), AnimationCacheSettings.unbounded());
+        State state = AnimationUtils.getState(petriNet);
+        Map<State, Collection<Transition>> successors = animator.getSuccessors(state);
+
+        assertSame(successors, animator.getSuccessors(state));
+        assertEquals(1, animator.getSuccessorsCacheStats().hitCount());
+        assertEquals(1, animator.getEnabledTransitionsCacheSize());
+        assertThat(animator.getEnabledTransitionsCacheStats().evictionCount()).isGreaterThan(0);
+
+        animator.clear();
+        assertEquals(0, animator.getSuccessorsCacheSize());
+        assertEquals(0, animator.getEnabledTransitionsCacheSize());
+    }
+
+    @Test
+    public void disabledCachesStillCalculateEnabledTransitions() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").and(1, "Default").token()).and(AnImmediateTransition.withId("T0")).andFinally(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token());
+
+        PetriNetAnimationLogic animator = new PetriNetAnimationLogic(petriNet,
+                AnimationCacheSettings.maximumWeight(0).withSoftValues(), AnimationCacheSettings.disabled());
+        State state = AnimationUtils.getState(petriNet);
+
+        assertThat(animator.getEnabledTransitions(state)).containsExactly(
+                petriNet.getComponent("T0", Transition.class));
+        assertThat(animator.getSuccessors(state)).hasSize(1);
+        assertEquals(0, animator.getEnabledTransitionsCacheSize());
+    }
+}
@@ -11,6 +11,7 @@ import uk.ac.imperial.pipe.visitor.ClonePetriNet;
 
 import java.awt.Color;
 import java.util.Collection;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -100,8 +101,8 @@ public class PetriNetAnimatorTest {
     			ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
     			ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token());
     	
-    	Animator animator = new PetriNetAnimator(petriNet);
-//    	animator.setRandom(new Random(123456l)); 
+    	PetriNetAnimator animator = new PetriNetAnimator(petriNet);
+    	animator.setRandom(new Random(123456l)); 
     	Transition t = animator.getRandomEnabledTransition(); 
     	assertEquals("T1", t.getId()); 
     }
@@ -130,6 +131,69 @@ public class PetriNetAnimatorTest {
     	assertTrue(t2 > 0); 
     }
 
+    @Test
+    public void randomTransitionIsChosenInProportionToWeight() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(
+                AnImmediateTransition.withId("T1").andProbability("9")).and(AnImmediateTransition.withId("T2")).and(
+                ATimedTransition.withId("T3").andRate("100")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("P1").andTarget("T3").with("1", "Default").token());
+
+        PetriNetAnimator animator = new PetriNetAnimator(petriNet);
+        animator.setRandom(new Random(42L));
+        int t1 = 0;
+        for (int i = 0; i < 10000; i++) {
+            Transition t = animator.getRandomEnabledTransition();
+            assertThat(t.getId()).isNotEqualTo("T3");
+            if (t.getId().equals("T1")) {
+                t1++;
+            }
+        }
+        assertEquals(0.9, t1 / 10000.0, 0.02);
+    }
+
+    @Test
+    public void infiniteRateTransitionsAlwaysWin() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(
+                ATimedTransition.withId("T1").andRate("1000")).and(ATimedTransition.withId("T2").andRate("1/0")).and(
+                ATimedTransition.withId("T3").andRate("1/0")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("P1").andTarget("T3").with("1", "Default").token());
+
+        PetriNetAnimator animator = new PetriNetAnimator(petriNet);
+        animator.setRandom(new Random(42L));
+        int t2 = 0;
+        for (int i = 0; i < 1000; i++) {
+            Transition t = animator.getRandomEnabledTransition();
+            assertThat(t.getId()).isNotEqualTo("T1");
+            if (t.getId().equals("T2")) {
+                t2++;
+            }
+        }
+        assertEquals(0.5, t2 / 1000.0, 0.1);
+    }
+
+    @Test
+    public void seededRandomTransitionsAreReproducible() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(
+                ATimedTransition.withId("T1").andRate("1")).and(ATimedTransition.withId("T2").andRate("3")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token());
+
+        PetriNetAnimator first = new PetriNetAnimator(petriNet);
+        PetriNetAnimator second = new PetriNetAnimator(petriNet);
+        first.setRandom(new Random(7L));
+        second.setRandom(new Random(7L));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first.getRandomEnabledTransition(), second.getRandomEnabledTransition());
+        }
+    }
+
     @Test
     public void firingTransitionBackwardMovesTokensBack() throws PetriNetComponentException {
         PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
@@ -246,6 +310,102 @@ public class PetriNetAnimatorTest {
     }
 
 
+    @Test
+    public void undoRevertsFunctionalFiring() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Red").withColor(Color.RED)).and(
+                AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(5, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("#(P0)", "Default").tokens()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P1").with("#(P0)*2", "Red").tokens());
+        Place p0 = petriNet.getComponent("P0", Place.class);
+        Place p1 = petriNet.getComponent("P1", Place.class);
+        Transition transition = petriNet.getComponent("T1", Transition.class);
+
+        PetriNetAnimator animator = new PetriNetAnimator(petriNet);
+        animator.fireTransition(transition);
+        assertEquals(transition, animator.undo());
+
+        assertEquals(5, p0.getTokenCount("Default"));
+        assertEquals(0, p1.getTokenCount("Red"));
+        assertEquals(0, animator.getUndoCount());
+        assertEquals(1, animator.getRedoCount());
+
+        assertEquals(transition, animator.redo());
+        assertEquals(0, p0.getTokenCount("Default"));
+        assertEquals(10, p1.getTokenCount("Red"));
+    }
+
+    @Test
+    public void fireTransitionBackwardsUndoesLastFiring() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(3, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("#(P0)", "Default").tokens()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P1").with("#(P0)", "Default").tokens());
+        Transition transition = petriNet.getComponent("T1", Transition.class);
+
+        Animator animator = new PetriNetAnimator(petriNet);
+        animator.fireTransition(transition);
+        animator.fireTransitionBackwards(transition);
+
+        assertEquals(3, petriNet.getComponent("P0", Place.class).getTokenCount("Default"));
+        assertEquals(0, petriNet.getComponent("P1", Place.class).getTokenCount("Default"));
+    }
+
+    @Test
+    public void rewindsBoundedJournal() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(10, "Default").tokens()).and(APlace.withId("P2")).and(
+                AnImmediateTransition.withId("T1")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token());
+        Transition transition = petriNet.getComponent("T1", Transition.class);
+        Place p2 = petriNet.getComponent("P2", Place.class);
+
+        PetriNetAnimator animator = new PetriNetAnimator(petriNet, new PetriNetAnimationLogic(petriNet), 3);
+        for (int i = 0; i < 5; i++) {
+            animator.fireTransition(transition);
+        }
+
+        assertEquals(3, animator.getUndoCount());
+        assertEquals(3, animator.rewind(10));
+        assertEquals(2, p2.getTokenCount("Default"));
+        assertEquals(null, animator.undo());
+
+        animator.redo();
+        animator.fireTransition(transition);
+        assertEquals(0, animator.getRedoCount());
+        assertEquals(4, p2.getTokenCount("Default"));
+    }
+
+    @Test
+    public void firingDisabledTransitionLeavesJournalUntouched() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P1").containing(1, "Default").token()).and(APlace.withId("P2")).and(
+                APlace.withId("P3")).and(AnImmediateTransition.withId("T1")).and(
+                AnImmediateTransition.withId("T2")).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token()).and(
+                ANormalArc.withSource("P3").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P1").with("1", "Default").token());
+        Transition t1 = petriNet.getComponent("T1", Transition.class);
+        Transition t2 = petriNet.getComponent("T2", Transition.class);
+        Place p2 = petriNet.getComponent("P2", Place.class);
+
+        PetriNetAnimator animator = new PetriNetAnimator(petriNet, new PetriNetAnimationLogic(petriNet), 1);
+        animator.fireTransition(t1);
+        animator.fireTransition(t2);
+        assertEquals(1, animator.getUndoCount());
+        assertEquals(t1, animator.undo());
+        assertEquals(0, p2.getTokenCount("Default"));
+
+        animator.fireTransition(t2);
+        assertEquals(1, animator.getRedoCount());
+        assertEquals(t1, animator.redo());
+        assertEquals(1, p2.getTokenCount("Default"));
+    }
+
     /**
      * Create simple Petri net with P1 -> T1 -> P2
      * Initialises a token in P1 and gives arcs A1 and A2 a weight of tokenWeight to a default token
@@ -0,0 +1,112 @@
+package uk.ac.imperial.pipe.animation;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+import uk.ac.imperial.state.State;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+
+public class TransitionDependenciesTest {
+
+    private PetriNet petriNet;
+
+    private Transition t0;
+
+    private Transition t1;
+
+    private Transition t2;
+
+    @Before
+    public void setUp() throws PetriNetComponentException {
+        petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(2, "Default").tokens()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(APlace.withId("P3").containing(1, "Default").token()).and(
+                AnImmediateTransition.withId("T0")).and(AnImmediateTransition.withId("T1")).and(
+                AnImmediateTransition.withId("T2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                AnInhibitorArc.withSource("P1").andTarget("T1")).and(
+                ANormalArc.withSource("P3").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P2").with("#(P3)", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P0").with("1", "Default").token());
+        petriNet.getComponent("P0", Place.class).setCapacity(2);
+        t0 = petriNet.getComponent("T0", Transition.class);
+        t1 = petriNet.getComponent("T1", Transition.class);
+        t2 = petriNet.getComponent("T2", Transition.class);
+    }
+
+    @Test
+    public void indexesInboundInhibitorCapacityAndFunctionalDependencies() {
+        TransitionDependencies dependencies = new TransitionDependencies(petriNet);
+
+        assertThat(dependencies.getDependentTransitions("P0")).containsOnly(t0, t2);
+        assertThat(dependencies.getDependentTransitions("P1")).containsOnly(t1, t2);
+        assertThat(dependencies.getDependentTransitions("P2")).isEmpty();
+        assertThat(dependencies.getDependentTransitions("P3")).containsOnly(t1);
+        assertEquals(new HashSet<>(Arrays.asList(t0, t1, t2)),
+                dependencies.getDependentTransitions(Arrays.asList("P0", "P1")));
+    }
+
+    @Test
+    public void changedPlacesOnlyContainsPlacesWithDifferentCounts() {
+        State state = AnimationUtils.getState(petriNet);
+        State successor = new PetriNetAnimationLogic(petriNet).getFiredState(state, t0);
+
+        assertThat(TransitionDependencies.getChangedPlaces(state, successor)).containsOnly("P0", "P1");
+    }
+
+    @Test
+    public void incrementalEnabledTransitionsMatchFullEvaluation() {
+        assertIncrementalMatchesFull(new PetriNetAnimationLogic(petriNet), new PetriNetAnimationLogic(petriNet));
+        assertIncrementalMatchesFull(new CompiledAnimationLogic(petriNet), new CompiledAnimationLogic(petriNet));
+    }
+
+    @Test
+    public void animatorTracksEnabledTransitionsAcrossFirings() {
+        Animator animator = new PetriNetAnimator(petriNet);
+        assertThat(animator.getEnabledTransitions()).containsOnly(t0, t1);
+        animator.fireTransition(t0);
+        assertThat(animator.getEnabledTransitions()).containsOnly(t0, t2);
+        animator.fireTransition(t2);
+        assertThat(animator.getEnabledTransitions()).containsOnly(t0, t1);
+    }
+
+    /**
+     * Explores successors with the incremental logic and checks each successors enabled
+     * transitions against a logic which evaluates every state from scratch
+     * @param incremental logic whose successors are primed incrementally
+     * @param full        logic used to evaluate states from scratch
+     */
+    private void assertIncrementalMatchesFull(ExtendedAnimationLogic incremental, AnimationLogic full) {
+        Set<State> explored = new HashSet<>();
+        Set<State> frontier = new HashSet<>();
+        frontier.add(AnimationUtils.getState(petriNet));
+        while (!frontier.isEmpty()) {
+            State state = frontier.iterator().next();
+            frontier.remove(state);
+            explored.add(state);
+            Map<State, Collection<Transition>> successors = incremental.getSuccessors(state);
+            for (State successor : successors.keySet()) {
+                assertEquals(full.getEnabledTransitions(successor),
+                        incremental.getEnabledTransitions(successor, state));
+                if (!explored.contains(successor)) {
+                    frontier.add(successor);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.imperial.pipe.parsers;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.Arc;
+import uk.ac.imperial.pipe.models.petrinet.NormalRate;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.awt.Color;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionCacheTest {
+
+    private static final String EXPRESSION = "floor((#(P0) + #(P0, Red) * 3) / 2) + ceil(cap(P0) / 4)";
+
+    private PetriNet createPetriNet() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                AToken.called("Red").withColor(Color.RED)).and(
+                APlace.withId("P0").containing(3, "Default").tokens()).and(APlace.withId("P1")).and(
+                AnImmediateTransition.withId("T0")).andFinally(
+                ANormalArc.withSource("P0").andTarget("T0").with("#(P0)", "Default").tokens());
+        Place place = petriNet.getComponent("P0", Place.class);
+        place.setTokenCount("Red", 2);
+        place.setCapacity(10);
+        return petriNet;
+    }
+
+    @Test
+    public void compiledExpressionMatchesVisitor() throws PetriNetComponentException {
+        PetriNet petriNet = createPetriNet();
+        EvalVisitor visitor = new EvalVisitor(petriNet);
+
+        ParsedExpression parsed = ExpressionCache.parse(EXPRESSION);
+
+        assertEquals(visitor.visit(GrammarUtils.parse(EXPRESSION)), parsed.getExpression().evaluate(visitor), 0.0);
+        assertThat(parsed.getComponents()).containsOnly("P0", "Red");
+    }
+
+    @Test
+    public void resolvedExpressionMatchesVisitor() throws PetriNetComponentException {
+        PetriNet petriNet = createPetriNet();
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(petriNet);
+        EvalVisitor visitor = new EvalVisitor(petriNet);
+
+        MarkingExpression resolved = ExpressionCache.parse(EXPRESSION).getExpression().resolve(compiledPetriNet);
+
+        assertEquals(visitor.visit(GrammarUtils.parse(EXPRESSION)),
+                resolved.evaluate(compiledPetriNet.getCurrentMarking()), 0.0);
+        assertEquals(8.0, compiledPetriNet.evaluate(EXPRESSION, compiledPetriNet.getCurrentMarking()), 0.0);
+    }
+
+    @Test
+    public void invalidExpressionFailsNamingItWhenEvaluated() throws PetriNetComponentException {
+        CompiledPetriNet compiledPetriNet = new CompiledPetriNet(createPetriNet());
+        try {
+            compiledPetriNet.evaluate("#(P9) * 2", compiledPetriNet.getCurrentMarking());
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Functional expression '#(P9) * 2' references unknown place P9", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parsesEachExpressionOnce() {
+        ExpressionCache cache = new ExpressionCache();
+        ParsedExpression parsed = cache.get(EXPRESSION);
+
+        assertSame(parsed, cache.get(EXPRESSION));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void keepsSyntaxErrorsWithoutCompiling() {
+        ParsedExpression parsed = new ExpressionCache().get("2 *");
+
+        assertTrue(parsed.hasSyntaxErrors());
+        assertNull(parsed.getExpression());
+        assertThat(parsed.getSyntaxErrors()).containsExactly("line 1:3 no viable alternative at input '<EOF>'");
+    }
+
+    @Test
+    public void petriNetCachesParsedExpressions() throws PetriNetComponentException {
+        PetriNet petriNet = createPetriNet();
+        FunctionalResults<Double> result = petriNet.parseExpression(EXPRESSION);
+
+        assertEquals(8.0, result.getResult(), 0.0);
+        assertEquals(1, petriNet.getExpressionCache().size());
+    }
+
+    @Test
+    public void clearedWhenArcWeightChanges() throws PetriNetComponentException {
+        PetriNet petriNet = createPetriNet();
+        petriNet.parseExpression(EXPRESSION);
+
+        Arc<?, ?> arc = petriNet.getArcs().iterator().next();
+        arc.setWeight("Default", "2");
+
+        assertEquals(0, petriNet.getExpressionCache().size());
+    }
+
+    @Test
+    public void clearedWhenTransitionRateChanges() throws PetriNetComponentException {
+        PetriNet petriNet = createPetriNet();
+        petriNet.parseExpression(EXPRESSION);
+
+        petriNet.getComponent("T0", Transition.class).setRate(new NormalRate("#(P0)"));
+
+        assertEquals(0, petriNet.getExpressionCache().size());
+    }
+}
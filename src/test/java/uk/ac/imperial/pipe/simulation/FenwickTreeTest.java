@@ -0,0 +1,47 @@
+package uk.ac.imperial.pipe.simulation;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FenwickTreeTest {
+
+    @Test
+    public void maintainsPrefixSums() {
+        FenwickTree tree = new FenwickTree(5);
+        tree.set(0, 1);
+        tree.set(2, 2.5);
+        tree.set(4, 4);
+        tree.set(2, 3);
+
+        assertEquals(8, tree.getTotal(), 1e-12);
+        assertEquals(1, tree.prefixSum(2), 1e-12);
+        assertEquals(4, tree.prefixSum(3), 1e-12);
+    }
+
+    @Test
+    public void findsIndicesInProportionToWeight() {
+        FenwickTree tree = new FenwickTree(6);
+        tree.set(1, 2);
+        tree.set(3, 1);
+        tree.set(5, 3);
+
+        assertEquals(1, tree.find(0));
+        assertEquals(1, tree.find(1.999));
+        assertEquals(3, tree.find(2));
+        assertEquals(5, tree.find(3));
+        assertEquals(5, tree.find(6));
+    }
+
+    @Test
+    public void neverFindsZeroWeights() {
+        FenwickTree tree = new FenwickTree(3);
+        assertEquals(-1, tree.find(0));
+
+        tree.set(1, 1);
+        tree.set(1, 0);
+        tree.set(0, 1);
+        assertEquals(0, tree.find(0.5));
+        assertEquals(0, tree.find(1));
+    }
+}
@@ -0,0 +1,100 @@
+package uk.ac.imperial.pipe.simulation;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GillespieSimulatorTest {
+
+    /**
+     * @return net where P0 moves to P1 through T0 at rate 1 or T1 at rate 3 and returns
+     *         through the immediate transition T2
+     */
+    private PetriNet competingNet() throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("1")).and(ATimedTransition.withId("T1").andRate("3")).and(
+                AnImmediateTransition.withId("T2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P0").with("1", "Default").token());
+    }
+
+    @Test
+    public void selectsTimedTransitionsInProportionToRate() throws PetriNetComponentException {
+        CompiledPetriNet compiled = new CompiledPetriNet(competingNet());
+        GillespieSimulator simulator = new GillespieSimulator(compiled, 42L);
+        int t1 = compiled.getTransitionIndex(compiled.getPetriNet().getComponent("T1", Transition.class));
+        int t2 = compiled.getTransitionIndex(compiled.getPetriNet().getComponent("T2", Transition.class));
+
+        int timedFirings = 0;
+        int t1Firings = 0;
+        for (int i = 0; i < 40000; i++) {
+            int fired = simulator.step();
+            if (fired != t2) {
+                timedFirings++;
+                if (fired == t1) {
+                    t1Firings++;
+                }
+            }
+        }
+
+        assertEquals(20000, timedFirings);
+        assertEquals(0.75, t1Firings / (double) timedFirings, 0.015);
+        assertEquals(0.25, simulator.getTime() / timedFirings, 0.01);
+    }
+
+    @Test
+    public void sameSeedGivesSameTrajectory() throws PetriNetComponentException {
+        CompiledPetriNet compiled = new CompiledPetriNet(competingNet());
+        GillespieSimulator first = new GillespieSimulator(compiled, 7L);
+        GillespieSimulator second = new GillespieSimulator(compiled, 7L);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first.step(), second.step());
+        }
+        assertEquals(first.getTime(), second.getTime(), 0);
+        assertArrayEquals(first.getMarking(), second.getMarking());
+    }
+
+    @Test
+    public void immediateTransitionsFireInZeroTimeByPriority() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                APlace.withId("P2")).and(AnImmediateTransition.withId("T0").andPriority(2)).and(
+                AnImmediateTransition.withId("T1").andPriority(1)).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P2").with("1", "Default").token());
+        CompiledPetriNet compiled = new CompiledPetriNet(petriNet);
+        GillespieSimulator simulator = new GillespieSimulator(compiled, 1L);
+
+        assertEquals(1, simulator.run(10));
+        assertEquals(1, simulator.getState().getTokens("P1").get("Default").intValue());
+        assertEquals(0, simulator.getState().getTokens("P2").get("Default").intValue());
+        assertEquals(0, simulator.getTime(), 0);
+        assertEquals(-1, simulator.step());
+    }
+
+    @Test
+    public void runStopsAtEndTime() throws PetriNetComponentException {
+        GillespieSimulator simulator = new GillespieSimulator(competingNet(), 3L);
+
+        long fired = simulator.run(100);
+
+        assertEquals(100, simulator.getTime(), 0);
+        assertEquals(fired, simulator.getFiringCount());
+    }
+}
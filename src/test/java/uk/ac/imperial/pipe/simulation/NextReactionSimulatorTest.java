@@ -0,0 +1,72 @@
+package uk.ac.imperial.pipe.simulation;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Transition;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NextReactionSimulatorTest {
+
+    @Test
+    public void matchesRatesOfCompetingTransitions() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(1, "Default").token()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("1")).and(ATimedTransition.withId("T1").andRate("3")).and(
+                ATimedTransition.withId("T2").andRate("2")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("P0").andTarget("T1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("T1").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T2").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T2").andTarget("P0").with("1", "Default").token());
+        CompiledPetriNet compiled = new CompiledPetriNet(petriNet);
+        NextReactionSimulator simulator = new NextReactionSimulator(compiled, 11L);
+        int t1 = compiled.getTransitionIndex(petriNet.getComponent("T1", Transition.class));
+        int t2 = compiled.getTransitionIndex(petriNet.getComponent("T2", Transition.class));
+
+        assertTrue(Double.isInfinite(simulator.getScheduledTime(t2)));
+        int cycles = 0;
+        int t1Firings = 0;
+        for (int i = 0; i < 40000; i++) {
+            int fired = simulator.step();
+            if (fired == t2) {
+                cycles++;
+            } else if (fired == t1) {
+                t1Firings++;
+            }
+        }
+
+        assertEquals(20000, cycles);
+        assertEquals(0.75, t1Firings / (double) cycles, 0.015);
+        assertEquals(0.25 + 0.5, simulator.getTime() / cycles, 0.015);
+    }
+
+    @Test
+    public void rescalesFunctionalRates() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(50, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("#(P0)")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+        double total = 0;
+        int runs = 400;
+        for (int seed = 0; seed < runs; seed++) {
+            NextReactionSimulator simulator = new NextReactionSimulator(petriNet, seed);
+            assertEquals(50, simulator.run(Double.MAX_VALUE));
+            total += simulator.getTime();
+        }
+        double harmonic = 0;
+        for (int n = 1; n <= 50; n++) {
+            harmonic += 1.0 / n;
+        }
+
+        assertEquals(harmonic, total / runs, 0.1);
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.imperial.pipe.simulation;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.models.petrinet.Place;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationRunnerTest {
+
+    private PetriNet petriNet() throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(20, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("1").andIsAnInfinite().server()).and(
+                ATimedTransition.withId("T1").andRate("0.5")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+    }
+
+    @Test
+    public void resultsDependOnlyOnSeed() throws Exception {
+        CompiledPetriNet compiled = new CompiledPetriNet(petriNet());
+        int[] initial = compiled.getCurrentMarking();
+
+        List<int[]> sequential = new ReplicationRunner(compiled, initial, SimulatorFactory.GILLESPIE, 1).run(
+                64, 99L, ReplicationRunner.markingAt(5));
+        List<int[]> parallel = new ReplicationRunner(compiled, initial, SimulatorFactory.GILLESPIE, 4).run(
+                64, 99L, ReplicationRunner.markingAt(5));
+
+        assertEquals(64, parallel.size());
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < sequential.size(); i++) {
+            assertArrayEquals(sequential.get(i), parallel.get(i));
+            distinct.add(Arrays.toString(sequential.get(i)));
+        }
+        assertTrue(distinct.size() > 1);
+    }
+
+    @Test
+    public void doesNotModifyThePetriNet() throws Exception {
+        PetriNet petriNet = petriNet();
+        CompiledPetriNet compiled = new CompiledPetriNet(petriNet);
+
+        new ReplicationRunner(compiled, SimulatorFactory.NEXT_REACTION).run(8, 1L, ReplicationRunner.markingAt(5));
+
+        assertEquals(20, petriNet.getComponent("P0", Place.class).getTokenCount("Default"));
+    }
+
+    @Test
+    public void splitStreamsAreReproducibleAndDistinct() {
+        SplitMix64Random first = new SplitMix64Random(5L);
+        SplitMix64Random second = new SplitMix64Random(5L);
+        SplitMix64Random child = first.split();
+        second.split();
+
+        assertEquals(first.nextLong(), second.nextLong());
+        assertTrue(child.nextLong() != first.nextLong());
+        double value = child.nextDouble();
+        assertTrue(value >= 0 && value < 1);
+    }
+}
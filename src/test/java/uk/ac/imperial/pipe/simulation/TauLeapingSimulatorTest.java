@@ -0,0 +1,60 @@
+package uk.ac.imperial.pipe.simulation;
+
+import org.junit.Test;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TauLeapingSimulatorTest {
+
+    /**
+     * @param tokens initial number of tokens
+     * @return net where every token in P0 moves to P1 at rate 1 through an infinite server transition
+     */
+    private PetriNet decayNet(int tokens) throws PetriNetComponentException {
+        return APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(tokens, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("1").andIsAnInfinite().server()).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token());
+    }
+
+    @Test
+    public void leapsThroughLargePopulations() throws PetriNetComponentException {
+        TauLeapingSimulator simulator = new TauLeapingSimulator(decayNet(1000000), 5L);
+
+        simulator.run(1);
+
+        int remaining = simulator.getState().getTokens("P0").get("Default");
+        int moved = simulator.getState().getTokens("P1").get("Default");
+        assertEquals(1000000, remaining + moved);
+        assertEquals(1000000 * Math.exp(-1), remaining, 0.01 * remaining);
+        assertEquals(1, simulator.getTime(), 0);
+        assertTrue(simulator.getLeapCount() > 0);
+        assertTrue(simulator.getLeapCount() < 1000);
+    }
+
+    @Test
+    public void fallsBackToExactStepsForSmallPopulations() throws PetriNetComponentException {
+        TauLeapingSimulator simulator = new TauLeapingSimulator(decayNet(5), 5L);
+
+        assertEquals(5, simulator.run(1000));
+
+        assertEquals(0, simulator.getLeapCount());
+        assertEquals(5, simulator.getState().getTokens("P1").get("Default").intValue());
+    }
+
+    @Test
+    public void leavesInfiniteCountsUnchanged() throws PetriNetComponentException {
+        TauLeapingSimulator simulator = new TauLeapingSimulator(decayNet(Integer.MAX_VALUE), 5L);
+
+        simulator.run(0.001);
+
+        assertEquals(Integer.MAX_VALUE, simulator.getState().getTokens("P0").get("Default").intValue());
+    }
+}
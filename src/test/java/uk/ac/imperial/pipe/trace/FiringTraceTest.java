@@ -0,0 +1,128 @@
+package uk.ac.imperial.pipe.trace;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.imperial.pipe.animation.CompiledPetriNet;
+import uk.ac.imperial.pipe.dsl.*;
+import uk.ac.imperial.pipe.exceptions.PetriNetComponentException;
+import uk.ac.imperial.pipe.models.petrinet.PetriNet;
+import uk.ac.imperial.pipe.simulation.GillespieSimulator;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FiringTraceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CompiledPetriNet compiledPetriNet;
+
+    private final List<int[]> markings = new ArrayList<>();
+
+    private final List<Double> times = new ArrayList<>();
+
+    private final List<Integer> transitions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws PetriNetComponentException {
+        PetriNet petriNet = APetriNet.with(AToken.called("Default").withColor(Color.BLACK)).and(
+                APlace.withId("P0").containing(5, "Default").tokens()).and(APlace.withId("P1")).and(
+                ATimedTransition.withId("T0").andRate("2")).and(ATimedTransition.withId("T1").andRate("1")).and(
+                ANormalArc.withSource("P0").andTarget("T0").with("1", "Default").token()).and(
+                ANormalArc.withSource("T0").andTarget("P1").with("1", "Default").token()).and(
+                ANormalArc.withSource("P1").andTarget("T1").with("1", "Default").token()).andFinally(
+                ANormalArc.withSource("T1").andTarget("P0").with("1", "Default").token());
+        compiledPetriNet = new CompiledPetriNet(petriNet);
+    }
+
+    private Path record(int firings, boolean close) throws IOException {
+        Path path = folder.newFile().toPath();
+        GillespieSimulator simulator = new GillespieSimulator(compiledPetriNet, 3L);
+        FiringTraceWriter writer = new FiringTraceWriter(path, compiledPetriNet, simulator.getMarking(), true, 0, 100);
+        markings.add(simulator.getMarking());
+        times.add(0.0);
+        for (int i = 0; i < firings; i++) {
+            int transition = simulator.step();
+            writer.record(transition, simulator.getTime());
+            transitions.add(transition);
+            markings.add(simulator.getMarking());
+            times.add(simulator.getTime());
+        }
+        assertArrayEquals(simulator.getMarking(), writer.getMarking());
+        if (close) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+        return path;
+    }
+
+    @Test
+    public void replaysEveryFiring() throws IOException {
+        Path path = record(1000, true);
+        try (FiringTraceReader reader = new FiringTraceReader(path, compiledPetriNet)) {
+            assertEquals(1000, reader.getStepCount());
+            assertEquals(11, reader.getCheckpointCount());
+            assertTrue(reader.isTimed());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals((int) transitions.get(i), reader.next());
+                assertArrayEquals(markings.get(i + 1), reader.getMarking());
+                assertEquals(times.get(i + 1), reader.getTime(), 0);
+            }
+            assertEquals(-1, reader.next());
+        }
+    }
+
+    @Test
+    public void seeksForwardsAndBackwards() throws IOException {
+        Path path = record(1000, true);
+        try (FiringTraceReader reader = new FiringTraceReader(path, compiledPetriNet)) {
+            for (long step : new long[]{750, 120, 0, 1000, 999, 300, 301, 300}) {
+                reader.seek(step);
+                assertEquals(step, reader.getStep());
+                assertArrayEquals(markings.get((int) step), reader.getMarking());
+                assertEquals(times.get((int) step), reader.getTime(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void readsTraceThatWasNotClosed() throws IOException {
+        Path path = record(250, false);
+        try (FiringTraceReader reader = new FiringTraceReader(path, compiledPetriNet)) {
+            assertEquals(250, reader.getStepCount());
+            assertEquals(3, reader.getCheckpointCount());
+            reader.seek(240);
+            assertArrayEquals(markings.get(240), reader.getMarking());
+        }
+    }
+
+    @Test
+    public void untimedFiringTakesOneByte() throws IOException {
+        Path path = folder.newFile().toPath();
+        try (FiringTraceWriter writer = new FiringTraceWriter(path, compiledPetriNet)) {
+            for (int i = 0; i < 5000; i++) {
+                writer.record(i % 2);
+            }
+        }
+        assertTrue(Files.size(path) < 5000 + 200);
+        try (FiringTraceReader reader = new FiringTraceReader(path, compiledPetriNet)) {
+            assertEquals(5000, reader.getStepCount());
+            reader.seek(4999);
+            assertArrayEquals(new int[]{4, 1}, reader.getMarking());
+            assertEquals(1, reader.next());
+            assertArrayEquals(new int[]{5, 0}, reader.getMarking());
+        }
+    }
+}